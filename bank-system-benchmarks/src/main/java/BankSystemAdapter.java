@@ -0,0 +1,105 @@
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import benchmark.BankSystem;
+
+/**
+ * BankSystem の実装。ベンチマークからの呼び出しを本体のクラスにそのまま渡す。
+ * 本体と同じデフォルトパッケージに置く必要があるため、このクラスのみパッケージを持たない。
+ */
+public class BankSystemAdapter implements BankSystem {
+
+    @Override
+    public void setMetricsEnabled(boolean enabled) {
+        Metrics.setEnabled(enabled);
+    }
+
+    @Override
+    public Object openAccount(String holderName, int initialBalance, int accountNumber) {
+        return new Bank(holderName, initialBalance, accountNumber);
+    }
+
+    @Override
+    public boolean deposit(Object bank, int amount) {
+        return ((Bank) bank).deposit(amount);
+    }
+
+    @Override
+    public boolean withdraw(Object bank, int amount) {
+        return ((Bank) bank).withdraw(amount);
+    }
+
+    @Override
+    public Object newRegistry(List<?> banks) {
+        AccountRegistry registry = new AccountRegistry(banks.size());
+        for (Object bank : banks) {
+            registry.register((Bank) bank);
+        }
+        return registry;
+    }
+
+    @Override
+    public Object find(Object registry, int number) {
+        return ((AccountRegistry) registry).find(number);
+    }
+
+    @Override
+    public Object findInList(List<?> banks, int number) {
+        for (Object o : banks) {
+            Bank bank = (Bank) o;
+            if (bank.getAccount().getAccountNumber() == number) {
+                return bank;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int loadData(String accountFile, String transactionFile, String outputMode, int threads) {
+        BankCsvOperation op = new BankCsvOperation();
+        op.setOutputSink(new BatchOutputSink(BatchOutputSink.Mode.valueOf(outputMode.toUpperCase(Locale.ROOT)), 0));
+        op.setReplayThreads(threads);
+        return op.loadData(accountFile, transactionFile).size();
+    }
+
+    @Override
+    public void renderTransactionDetails(Object bank, Blackhole bh) {
+        for (Transaction t : ((Bank) bank).getHistory()) {
+            bh.consume(t.getDetail());
+        }
+    }
+
+    @Override
+    public void printTransactionDetails(Object bank, PrintStream target) {
+        for (Transaction t : ((Bank) bank).getHistory()) {
+            target.println(t.getDetail());
+        }
+    }
+
+    @Override
+    public void renderCursorDetails(Object bank, Blackhole bh) {
+        TransactionHistory.Cursor c = ((Bank) bank).getTransactionHistory().cursor();
+        while (c.next()) {
+            bh.consume(c.getDetail());
+        }
+    }
+
+    @Override
+    public Object newReportWriter(PrintStream target) {
+        return new ReportWriter(target);
+    }
+
+    @Override
+    public void writeHistory(Object bank, Object writer) {
+        ReportWriter out = (ReportWriter) writer;
+        TransactionHistory.Cursor c = ((Bank) bank).getTransactionHistory().cursor();
+        while (c.next()) {
+            c.appendDetail(out);
+            out.newLine();
+        }
+        out.flush();
+    }
+}
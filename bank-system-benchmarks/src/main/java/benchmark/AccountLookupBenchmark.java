@@ -0,0 +1,73 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 口座番号による口座の検索 1 回あたりの処理時間を、口座数ごとに計測する。
+ * AccountRegistry.find と、比較用に従来の findAccountInList と同じリストの線形探索を計測する。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountLookupBenchmark {
+
+    private static final BankSystem BANK_SYSTEM = BankSystem.load();
+
+    /** 検索する口座番号の数（2 のべき乗） */
+    private static final int KEY_COUNT = 4096;
+
+    @Param({"1000", "100000"})
+    public int accounts;
+
+    private List<Object> banks;
+    private Object registry;
+    private int[] keys;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        banks = new ArrayList<>(accounts);
+        for (int i = 1; i <= accounts; i++) {
+            banks.add(BANK_SYSTEM.openAccount("bench", 0, i));
+        }
+        registry = BANK_SYSTEM.newRegistry(banks);
+
+        Random rand = new Random(42);
+        keys = new int[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = rand.nextInt(accounts) + 1;
+        }
+    }
+
+    @Benchmark
+    public Object registryFind() {
+        return BANK_SYSTEM.find(registry, nextKey());
+    }
+
+    @Benchmark
+    public Object linearScan() {
+        return BANK_SYSTEM.findInList(banks, nextKey());
+    }
+
+    private int nextKey() {
+        return keys[next++ & (KEY_COUNT - 1)];
+    }
+}
@@ -0,0 +1,97 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bank.deposit / withdraw 1 回あたりの処理時間を計測する。
+ * 成功した入出金は取引履歴に追加されるため、履歴が増え続けないよう
+ * 計測の区切り（イテレーション）ごとに口座を作り直し、1 回の計測時間も短くしている。
+ * metrics を true にすると、Metrics による計測を有効にした場合の負荷を確認できる。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class BankBenchmark {
+
+    private static final BankSystem BANK_SYSTEM = BankSystem.load();
+
+    /** Metrics による計測を有効にするか */
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    @Setup
+    public void setUp() {
+        BANK_SYSTEM.setMetricsEnabled(metrics);
+    }
+
+    /** スレッドごとの口座（残高 0 から開始） */
+    @State(Scope.Thread)
+    public static class Account {
+
+        Object bank;
+
+        @Setup(Level.Iteration)
+        public void open() {
+            bank = BANK_SYSTEM.openAccount("bench", initialBalance(), 1);
+        }
+
+        int initialBalance() {
+            return 0;
+        }
+    }
+
+    /** 出金が残高不足にならないよう、残高を最大にした口座 */
+    @State(Scope.Thread)
+    public static class FundedAccount extends Account {
+
+        @Override
+        int initialBalance() {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /** 全スレッドで共有する口座 */
+    @State(Scope.Benchmark)
+    public static class SharedAccount extends Account {
+    }
+
+    @Benchmark
+    public boolean deposit(Account account) {
+        return BANK_SYSTEM.deposit(account.bank, 1);
+    }
+
+    @Benchmark
+    public boolean withdraw(FundedAccount account) {
+        return BANK_SYSTEM.withdraw(account.bank, 1);
+    }
+
+    /** 残高不足で失敗する出金（履歴は追加されない） */
+    @Benchmark
+    public boolean withdrawRejected(Account account) {
+        return BANK_SYSTEM.withdraw(account.bank, 1);
+    }
+
+    /** 同じ口座に 4 スレッドから同時に入金する（ロック競合時） */
+    @Benchmark
+    @Threads(4)
+    public boolean depositContended(SharedAccount account) {
+        return BANK_SYSTEM.deposit(account.bank, 1);
+    }
+}
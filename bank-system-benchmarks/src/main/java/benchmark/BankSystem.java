@@ -0,0 +1,117 @@
+package benchmark;
+
+import java.io.PrintStream;
+import java.util.List;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * ベンチマークから銀行システム本体（bank-system-console）を呼び出すための窓口。
+ *
+ * 本体のクラスはデフォルトパッケージにあるが、JMH のベンチマークは名前付きパッケージに
+ * 置く必要があり、名前付きパッケージからデフォルトパッケージのクラスは参照できない。
+ * そのため、デフォルトパッケージの BankSystemAdapter がこのインターフェースを実装し、
+ * 口座や台帳などの本体のオブジェクトは Object として受け渡す。
+ * 実装は 1 つだけなので呼び出しは JIT でインライン展開され、計測結果にはほぼ影響しない。
+ */
+public interface BankSystem {
+
+    /** 実装クラス名（デフォルトパッケージ） */
+    String ADAPTER_CLASS = "BankSystemAdapter";
+
+    /**
+     * 実装を読み込む。
+     * @return 本体を呼び出す実装
+     */
+    static BankSystem load() {
+        try {
+            return (BankSystem) Class.forName(ADAPTER_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load " + ADAPTER_CLASS, e);
+        }
+    }
+
+    /**
+     * Metrics による計測の有効・無効を切り替える。
+     * @param enabled 有効にする場合は true
+     */
+    void setMetricsEnabled(boolean enabled);
+
+    /**
+     * 口座番号を指定して口座（Bank）を作成する。
+     * @param holderName 名義
+     * @param initialBalance 初期残高
+     * @param accountNumber 口座番号
+     * @return Bank インスタンス
+     */
+    Object openAccount(String holderName, int initialBalance, int accountNumber);
+
+    /** Bank.deposit を呼び出す。 */
+    boolean deposit(Object bank, int amount);
+
+    /** Bank.withdraw を呼び出す。 */
+    boolean withdraw(Object bank, int amount);
+
+    /**
+     * 口座の一覧を登録した AccountRegistry を作成する。
+     * @param banks Bank インスタンスの一覧
+     * @return AccountRegistry インスタンス
+     */
+    Object newRegistry(List<?> banks);
+
+    /** AccountRegistry.find を呼び出す。 */
+    Object find(Object registry, int number);
+
+    /**
+     * 従来の findAccountInList と同じく、リストを先頭から線形探索する。（比較用）
+     * @param banks Bank インスタンスの一覧
+     * @param number 口座番号
+     * @return 見つかった Bank。見つからない場合は null
+     */
+    Object findInList(List<?> banks, int number);
+
+    /**
+     * BankCsvOperation.loadData で CSV を読み込み、取引を実行する。
+     * @param accountFile account.csv のパス
+     * @param transactionFile transaction.csv のパス
+     * @param outputMode メッセージの出力方法（BatchOutputSink.Mode の名前）
+     * @param threads 取引を実行するスレッド数
+     * @return 読み込んだ口座数
+     */
+    int loadData(String accountFile, String transactionFile, String outputMode, int threads);
+
+    /**
+     * 取引履歴を Transaction.getDetail で 1 件ずつ文字列に変換する。（従来の表示方法）
+     * @param bank Bank インスタンス
+     * @param bh 変換結果の受け取り先
+     */
+    void renderTransactionDetails(Object bank, Blackhole bh);
+
+    /**
+     * 取引履歴を Transaction.getDetail で文字列に変換し、1 件ずつ println で出力する。（従来の printHistory と同じ方法）
+     * @param bank Bank インスタンス
+     * @param target 出力先
+     */
+    void printTransactionDetails(Object bank, PrintStream target);
+
+    /**
+     * 取引履歴を TransactionHistory.Cursor.getDetail で 1 件ずつ文字列に変換する。
+     * @param bank Bank インスタンス
+     * @param bh 変換結果の受け取り先
+     */
+    void renderCursorDetails(Object bank, Blackhole bh);
+
+    /**
+     * 出力先を指定して ReportWriter を作成する。
+     * @param target 出力先
+     * @return ReportWriter インスタンス
+     */
+    Object newReportWriter(PrintStream target);
+
+    /**
+     * 取引履歴を ReportWriter に書き込み、まとめて出力する。（文字列を生成しない表示方法）
+     * @param bank Bank インスタンス
+     * @param writer ReportWriter インスタンス
+     */
+    void writeHistory(Object bank, Object writer);
+}
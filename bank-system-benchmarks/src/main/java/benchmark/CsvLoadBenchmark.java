@@ -0,0 +1,83 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BankCsvOperation.loadData（口座の読み込み + 取引の実行）1 回あたりの処理時間を計測する。
+ * CSV は DataGenerator で生成し、口座数・取引数・偏り・出力方法を @Param で変更できる。
+ * 例: java -jar benchmarks.jar CsvLoadBenchmark -p rows=3000000 -p skew=1.0
+ *
+ * メッセージは捨てる出力先に書き込むため、文字列の生成・変換までが計測対象になる。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class CsvLoadBenchmark {
+
+    private static final BankSystem BANK_SYSTEM = BankSystem.load();
+
+    @Param({"10000"})
+    public int accounts;
+
+    @Param({"200000"})
+    public int rows;
+
+    /** 口座の選ばれ方の偏り（DataGenerator を参照） */
+    @Param({"0.0", "1.0"})
+    public double skew;
+
+    /** メッセージの出力方法（BatchOutputSink.Mode の名前） */
+    @Param({"immediate", "summary"})
+    public String output;
+
+    /** 取引を実行するスレッド数 */
+    @Param({"1"})
+    public int threads;
+
+    private Path dir;
+    private PrintStream console;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("csv-load-bench");
+        new DataGenerator(accounts, rows, skew, 0.01, 42).writeTo(dir);
+
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        Files.delete(dir.resolve(DataGenerator.ACCOUNT_FILE));
+        Files.delete(dir.resolve(DataGenerator.TRANSACTION_FILE));
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public int loadData() {
+        return BANK_SYSTEM.loadData(dir.resolve(DataGenerator.ACCOUNT_FILE).toString(),
+            dir.resolve(DataGenerator.TRANSACTION_FILE).toString(), output, threads);
+    }
+}
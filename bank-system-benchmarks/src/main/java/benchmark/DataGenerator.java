@@ -0,0 +1,179 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ベンチマーク用の account.csv / transaction.csv を生成するクラス。
+ * 口座数・取引数に加え、取引が一部の口座に偏る度合い（skew）を指定できる。
+ *
+ * skew は Zipf 分布の指数で、0 の場合はすべての口座が同じ確率で選ばれる。
+ * 値を大きくするほど一部の口座に取引が集中する（口座数 10,000、skew 1.0 の場合、上位 1% の口座に取引の 5 割程度が集中する）。
+ * 取引が集中する口座は口座番号順ではなく、ランダムに散らばるようにしている。
+ * 同じ引数・シード値であれば、常に同じ内容のファイルを生成する。
+ *
+ * 実行例:
+ *   java -cp bank-system-benchmarks/target/benchmarks.jar benchmark.DataGenerator
+ *       [出力先] [口座数] [取引数] [skew] [残高照会の割合] [シード値]
+ */
+public class DataGenerator {
+
+    /** account.csv / transaction.csv のファイル名 */
+    public static final String ACCOUNT_FILE = "account.csv";
+    public static final String TRANSACTION_FILE = "transaction.csv";
+
+    /** 初期残高の上限 */
+    private static final int MAX_INITIAL_BALANCE = 100_000;
+
+    /** 口座番号の桁数 */
+    private static final int NUMBER_WIDTH = 7;
+
+    /** 取引金額の上限（出金は残高不足で失敗するものも含まれるよう、広めに散らす） */
+    private static final int MAX_AMOUNT = 20_000;
+
+    private final int accounts;
+    private final int rows;
+    private final double skew;
+    private final double balanceRatio;
+    private final long seed;
+
+    /**
+     * @param accounts 口座数
+     * @param rows 取引数
+     * @param skew 口座の選ばれ方の偏り（Zipf 分布の指数。0 で一様）
+     * @param balanceRatio 取引のうち残高照会（getBalance）の割合（0〜1）
+     * @param seed 乱数のシード値
+     */
+    public DataGenerator(int accounts, int rows, double skew, double balanceRatio, long seed) {
+        if (accounts < 1 || rows < 0 || skew < 0 || balanceRatio < 0 || balanceRatio > 1) {
+            throw new IllegalArgumentException(String.format(
+                "accounts=%d rows=%d skew=%s balanceRatio=%s", accounts, rows, skew, balanceRatio));
+        }
+        this.accounts = accounts;
+        this.rows = rows;
+        this.skew = skew;
+        this.balanceRatio = balanceRatio;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args.length > 0 ? args[0] : ".");
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int rows = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        double skew = args.length > 3 ? Double.parseDouble(args[3]) : 0.0;
+        double balanceRatio = args.length > 4 ? Double.parseDouble(args[4]) : 0.01;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 42;
+
+        new DataGenerator(accounts, rows, skew, balanceRatio, seed).writeTo(dir);
+        System.out.printf("%s に口座 %d 件、取引 %d 件を出力しました。%n", dir.toAbsolutePath(), accounts, rows);
+    }
+
+    /**
+     * 指定したディレクトリに account.csv と transaction.csv を出力する。
+     * @param dir 出力先ディレクトリ（存在しない場合は作成する）
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void writeTo(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Random rand = new Random(seed);
+        writeAccounts(dir.resolve(ACCOUNT_FILE), rand);
+        writeTransactions(dir.resolve(TRANSACTION_FILE), rand);
+    }
+
+    private void writeAccounts(Path file, Random rand) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file)) {
+            for (int i = 1; i <= accounts; i++) {
+                w.write("holder");
+                w.write(Integer.toString(i));
+                w.write(',');
+                w.write(Integer.toString(rand.nextInt(MAX_INITIAL_BALANCE + 1)));
+                w.newLine();
+            }
+        }
+    }
+
+    private void writeTransactions(Path file, Random rand) throws IOException {
+        double[] cumulative = cumulativeWeights();
+        int[] numberOfRank = shuffledNumbers(rand);
+
+        try (BufferedWriter w = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < rows; i++) {
+                int number = numberOfRank[pickRank(cumulative, rand.nextDouble())];
+                double r = rand.nextDouble();
+                String type;
+                int amount;
+                if (r < balanceRatio) {
+                    type = "getBalance";
+                    amount = 0;
+                } else {
+                    type = (r - balanceRatio) * 2 < 1 - balanceRatio ? "deposit" : "withdraw";
+                    amount = rand.nextInt(MAX_AMOUNT) + 1;
+                }
+                writeNumber(w, number);
+                w.write(',');
+                w.write(type);
+                w.write(',');
+                w.write(Integer.toString(amount));
+                w.newLine();
+            }
+        }
+    }
+
+    /**
+     * 口座番号を 7 桁の 0 埋めで書き込む。（行ごとに String.format を呼ぶと生成が遅くなるため）
+     */
+    private static void writeNumber(BufferedWriter w, int number) throws IOException {
+        String digits = Integer.toString(number);
+        for (int i = digits.length(); i < NUMBER_WIDTH; i++) {
+            w.write('0');
+        }
+        w.write(digits);
+    }
+
+    /**
+     * 順位ごとの選ばれやすさ（1 / 順位^skew）の累積値を、合計が 1 になるよう正規化して返す。
+     */
+    private double[] cumulativeWeights() {
+        double[] cumulative = new double[accounts];
+        double sum = 0;
+        for (int rank = 0; rank < accounts; rank++) {
+            sum += skew == 0 ? 1.0 : Math.pow(rank + 1, -skew);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < accounts; rank++) {
+            cumulative[rank] /= sum;
+        }
+        return cumulative;
+    }
+
+    /**
+     * 順位 → 口座番号の対応表を返す。（取引が集中する口座が番号順に並ばないよう、シャッフルする）
+     */
+    private int[] shuffledNumbers(Random rand) {
+        int[] numbers = new int[accounts];
+        for (int i = 0; i < accounts; i++) {
+            numbers[i] = i + 1;
+        }
+        for (int i = accounts - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int tmp = numbers[i];
+            numbers[i] = numbers[j];
+            numbers[j] = tmp;
+        }
+        return numbers;
+    }
+
+    /**
+     * 0 以上 1 未満の乱数に対応する順位を二分探索で求める。
+     */
+    private static int pickRank(double[] cumulative, double u) {
+        int i = Arrays.binarySearch(cumulative, u);
+        int rank = i >= 0 ? i + 1 : -i - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
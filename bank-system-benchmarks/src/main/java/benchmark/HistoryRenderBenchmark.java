@@ -0,0 +1,80 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 1 口座分の取引履歴の表示にかかる処理時間を、履歴の件数ごとに計測する。
+ * - transactionGetDetail：Transaction.getDetail で 1 件ずつ文字列を生成する
+ * - cursorGetDetail：TransactionHistory のカーソルから 1 件ずつ文字列を生成する
+ * - transactionPrintln：getDetail の文字列を 1 件ずつ println で出力する（従来の printHistory の方法）
+ * - reportWriter：ReportWriter に書き込み、まとめて出力する（文字列を生成しない）
+ * 出力を伴う 2 つは、文字コードの変換までが計測対象になる。（出力先は捨てる）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HistoryRenderBenchmark {
+
+    private static final BankSystem BANK_SYSTEM = BankSystem.load();
+
+    /** 履歴の件数（初期預金を除く） */
+    @Param({"10", "1000"})
+    public int historySize;
+
+    private Object bank;
+    private PrintStream target;
+    private Object writer;
+
+    @Setup
+    public void setUp() {
+        bank = BANK_SYSTEM.openAccount("bench", 1_000_000, 1);
+        for (int i = 0; i < historySize; i++) {
+            if (i % 2 == 0) {
+                BANK_SYSTEM.deposit(bank, i + 1);
+            } else {
+                BANK_SYSTEM.withdraw(bank, i);
+            }
+        }
+        // 出力先への書き込み自体は計測対象外とする
+        target = new PrintStream(OutputStream.nullOutputStream());
+        writer = BANK_SYSTEM.newReportWriter(target);
+    }
+
+    @Benchmark
+    public void transactionGetDetail(Blackhole bh) {
+        BANK_SYSTEM.renderTransactionDetails(bank, bh);
+    }
+
+    @Benchmark
+    public void cursorGetDetail(Blackhole bh) {
+        BANK_SYSTEM.renderCursorDetails(bank, bh);
+    }
+
+    @Benchmark
+    public void transactionPrintln() {
+        BANK_SYSTEM.printTransactionDetails(bank, target);
+    }
+
+    @Benchmark
+    public void reportWriter() {
+        BANK_SYSTEM.writeHistory(bank, writer);
+    }
+}
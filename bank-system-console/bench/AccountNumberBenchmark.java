@@ -0,0 +1,72 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 口座番号の払い出しにかかる時間を、使用率（払い出し済みの割合）ごとに計測する簡易ベンチマーク。
+ * 次の 2 つを比較する。
+ * - 乱数 + 集合：乱数で番号を選び、使用済みの集合（Set&lt;Integer&gt;）にあれば選び直す（従来の方式）
+ * - AccountNumberAllocator：ビット配列と置換による払い出し
+ * 使用率 10% / 90% / 99% まで払い出したあと、続けて払い出した 1 件ごとの時間を LatencyHistogram で集計する。
+ *
+ * 範囲全体（900 万件）を埋めるため、従来の方式はメモリを多く使用する（-Xmx2g 程度を指定すること）。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -Xmx2g -cp out AccountNumberBenchmark [計測件数]
+ */
+public class AccountNumberBenchmark {
+
+    /** 計測する使用率 */
+    private static final double[] FILL_RATIOS = {0.10, 0.90, 0.99};
+
+    public static void main(String[] args) {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int range = Constants.ACCOUNT_RANGE;
+
+        System.out.printf("%-24s %6s %10s %10s %10s %10s%n", "方式", "使用率", "平均(ns)", "p50(ns)", "p99(ns)", "最大(ns)");
+
+        Set<Integer> usedNumbers = ConcurrentHashMap.newKeySet();
+        AccountNumberAllocator allocator = new AccountNumberAllocator(Constants.ACCOUNT_MIN, range);
+        for (double ratio : FILL_RATIOS) {
+            int target = (int) (range * ratio);
+
+            // 指定の使用率まで払い出す（計測しない）
+            while (usedNumbers.size() < target) {
+                randomRetry(usedNumbers);
+            }
+            while (allocator.getUsedCount() < target) {
+                allocator.allocate();
+            }
+
+            LatencyHistogram random = new LatencyHistogram();
+            LatencyHistogram bitset = new LatencyHistogram();
+            for (int i = 0; i < samples; i++) {
+                long start = System.nanoTime();
+                randomRetry(usedNumbers);
+                random.record(System.nanoTime() - start);
+
+                start = System.nanoTime();
+                allocator.allocate();
+                bitset.record(System.nanoTime() - start);
+            }
+            print("乱数 + 集合", ratio, random.snapshot());
+            print("AccountNumberAllocator", ratio, bitset.snapshot());
+        }
+    }
+
+    /** 従来の方式で番号を 1 つ払い出す。 */
+    private static int randomRetry(Set<Integer> usedNumbers) {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        int num;
+        do {
+            num = rand.nextInt(Constants.ACCOUNT_RANGE) + Constants.ACCOUNT_MIN;
+        } while (!usedNumbers.add(num));
+        return num;
+    }
+
+    private static void print(String label, double ratio, LatencyHistogram.Snapshot s) {
+        System.out.printf("%-24s %5.0f%% %10.0f %10d %10d %10d%n", label, ratio * 100, s.getMean(),
+            s.getValueAtPercentile(50), s.getValueAtPercentile(99), s.getMax());
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * AccountRegistry の検索コストを口座数ごとに計測する簡易ベンチマーク。
+ * 口座数を 1,000 から 1,000,000 まで増やし、1 回あたりの検索時間が
+ * ほぼ一定であることを確認する。比較用に従来のリスト線形探索も計測する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out AccountRegistryBenchmark
+ */
+public class AccountRegistryBenchmark {
+
+    /** 計測する口座数 */
+    private static final int[] SIZES = {1_000, 10_000, 100_000, 1_000_000};
+
+    /** 1 回の計測で行う検索回数 */
+    private static final int LOOKUPS = 5_000_000;
+
+    /** 線形探索を計測する最大口座数（これを超えると時間がかかりすぎるため省略） */
+    private static final int LINEAR_SCAN_LIMIT = 10_000;
+
+    /** ウォームアップ回数 */
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) {
+        Random rand = new Random(42);
+        System.out.printf("%10s %18s %18s%n", "口座数", "台帳検索(ns/回)", "線形探索(ns/回)");
+
+        for (int size : SIZES) {
+            AccountRegistry registry = new AccountRegistry(size);
+            List<Bank> list = new ArrayList<>(size);
+            for (int i = 1; i <= size; i++) {
+                Bank bank = new Bank("bench", 0, i);
+                registry.register(bank);
+                list.add(bank);
+            }
+
+            // 検索する口座番号を事前に用意しておく（乱数生成を計測に含めない）
+            int[] targets = new int[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                targets[i] = rand.nextInt(size) + 1;
+            }
+
+            double registryNs = measureRegistry(registry, targets);
+            String linear = "-";
+            if (size <= LINEAR_SCAN_LIMIT) {
+                linear = String.format("%.1f", measureLinearScan(list, targets));
+            }
+            System.out.printf("%10d %18.1f %18s%n", size, registryNs, linear);
+        }
+    }
+
+    /**
+     * 台帳による検索時間を計測する。
+     * @return 1 回あたりの検索時間（ナノ秒）
+     */
+    private static double measureRegistry(AccountRegistry registry, int[] targets) {
+        long sink = 0;
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            for (int number : targets) {
+                sink += registry.find(number).getAccount().getAccountNumber();
+            }
+        }
+        long start = System.nanoTime();
+        for (int number : targets) {
+            sink += registry.find(number).getAccount().getAccountNumber();
+        }
+        long elapsed = System.nanoTime() - start;
+        consume(sink);
+        return (double) elapsed / targets.length;
+    }
+
+    /**
+     * 従来方式（リストの線形探索）の検索時間を計測する。
+     * 件数が多いと時間がかかるため、検索回数を絞って計測する。
+     * @return 1 回あたりの検索時間（ナノ秒）
+     */
+    private static double measureLinearScan(List<Bank> list, int[] targets) {
+        int count = Math.min(targets.length, 100_000);
+        long sink = 0;
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            for (int i = 0; i < count; i++) {
+                sink += findInList(list, targets[i]).getAccount().getAccountNumber();
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            sink += findInList(list, targets[i]).getAccount().getAccountNumber();
+        }
+        long elapsed = System.nanoTime() - start;
+        consume(sink);
+        return (double) elapsed / count;
+    }
+
+    /** 従来の findAccountInList と同じ線形探索 */
+    private static Bank findInList(List<Bank> list, int number) {
+        for (Bank b : list) {
+            if (b.getAccount().getAccountNumber() == number) {
+                return b;
+            }
+        }
+        return null;
+    }
+
+    /** JIT による計測対象の除去を防ぐため、結果を使用したことにする */
+    private static void consume(long value) {
+        if (value == 42) {
+            System.out.println();
+        }
+    }
+}
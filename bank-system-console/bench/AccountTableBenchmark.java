@@ -0,0 +1,245 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * 口座ごとにオブジェクトを持つ従来方式（Bank + AccountRegistry）と、列ごとの配列で保持する口座表（AccountTable）で、
+ * 口座数ごとのヒープ使用量と GC の停止時間を比較する簡易ベンチマーク。
+ * 方式・口座数ごとに別の JVM を起動し（同じヒープサイズ）、次の値を計測する。
+ * - 口座の作成時間と、作成後のヒープ使用量（1 口座あたり）
+ * - 全口座を保持した状態での Full GC（System.gc）1 回の停止時間
+ * - 入金・出金を無作為な口座に実行している間の GC の回数・停止時間の合計・最大
+ *   （要求の受信・解析で生じる一時的なデータとして、取引ごとに一定サイズの配列を生成する）
+ * 従来方式は取引履歴（TransactionHistory）も含めた実際の口座の構成で計測する。（口座表は取引履歴を保持しない）
+ * 両方式の取引後の残高の合計が一致しない場合は終了コード 1 で終了する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out AccountTableBenchmark [口座数（カンマ区切り）] [ヒープサイズ] [取引件数]
+ */
+public class AccountTableBenchmark {
+
+    /** 名義の種類数（同じ名義の口座が複数ある想定） */
+    private static final int DISTINCT_NAMES = 100_000;
+
+    /** Full GC の計測回数 */
+    private static final int FULL_GC_ROUNDS = 3;
+
+    /** 取引ごとに生成する一時的なデータのサイズ（バイト） */
+    private static final int REQUEST_BYTES = 128;
+
+    /** 一時的なデータの保持先（最適化で生成が省略されないよう、直近の分のみ参照を残す） */
+    private static final Object[] requests = new Object[1024];
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--child")) {
+            runChild(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        String sizes = args.length > 0 ? args[0] : "1000000,10000000";
+        String heap = args.length > 1 ? args[1] : "4g";
+        int ops = args.length > 2 ? Integer.parseInt(args[2]) : 5_000_000;
+
+        System.out.printf("ヒープ: %s 取引件数: %d 名義: %d種類%n", heap, ops, DISTINCT_NAMES);
+        System.out.printf("%-8s %10s %8s %10s %10s %10s %8s %10s %10s%n", "方式", "口座数", "作成(秒)",
+            "ヒープ(MB)", "バイト/口座", "FullGC(ms)", "GC回数", "GC合計(ms)", "GC最大(ms)");
+        boolean ok = true;
+        for (String size : sizes.split(",")) {
+            int accounts = Integer.parseInt(size.trim());
+            String objects = runInChildJvm("objects", accounts, ops, heap);
+            String table = runInChildJvm("table", accounts, ops, heap);
+            // 両方式の残高の合計（最後の項目）が一致することを確認する
+            if (objects != null && table != null && !lastField(objects).equals(lastField(table))) {
+                System.out.printf("NG: 残高の合計が一致しません（従来: %s 口座表: %s）%n", lastField(objects), lastField(table));
+                ok = false;
+            }
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 別の JVM で 1 方式分を計測し、結果の行を表示する。
+     * @return 計測結果（空白区切り）。計測できなかった場合（メモリ不足など）は null
+     */
+    private static String runInChildJvm(String model, int accounts, int ops, String heap)
+            throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process p = new ProcessBuilder(java, "-Xms" + heap, "-Xmx" + heap, "-XX:+UseG1GC",
+                "-cp", System.getProperty("java.class.path"), AccountTableBenchmark.class.getName(),
+                "--child", model, Integer.toString(accounts), Integer.toString(ops))
+            .redirectErrorStream(true)
+            .start();
+        String result = null;
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith("RESULT ")) {
+                    result = line.substring("RESULT ".length());
+                }
+            }
+        }
+        int exit = p.waitFor();
+        String label = model.equals("table") ? "口座表" : "従来";
+        if (exit != 0 || result == null) {
+            System.out.printf("%-8s %10d 計測できませんでした（終了コード %d。メモリ不足の可能性）%n", label, accounts, exit);
+            return null;
+        }
+        String[] f = result.split(" ");
+        long heapBytes = Long.parseLong(f[1]);
+        System.out.printf("%-8s %10d %8.2f %10.1f %10.1f %10.1f %8s %10.1f %10.1f%n", label, accounts,
+            Double.parseDouble(f[0]), heapBytes / 1048576.0, (double) heapBytes / accounts,
+            Double.parseDouble(f[2]), f[3], Double.parseDouble(f[4]), Double.parseDouble(f[5]));
+        return result;
+    }
+
+    private static String lastField(String result) {
+        return result.substring(result.lastIndexOf(' ') + 1);
+    }
+
+    /**
+     * 1 方式分を計測し、結果を "RESULT 作成秒 ヒープバイト FullGCミリ秒 GC回数 GC合計ミリ秒 GC最大ミリ秒 残高の合計" の形式で出力する。
+     */
+    private static void runChild(String model, int accounts, int ops) {
+        GcRecorder gc = new GcRecorder();
+        long base = usedHeap();
+
+        Random rand = new Random(1);
+        long start = System.nanoTime();
+        AccountRegistry registry = null;
+        AccountTable table = null;
+        if (model.equals("table")) {
+            table = new AccountTable(accounts);
+            for (int number = 1; number <= accounts; number++) {
+                table.open("holder" + rand.nextInt(DISTINCT_NAMES), rand.nextInt(1_000_000), number);
+            }
+        } else {
+            registry = new AccountRegistry(accounts);
+            for (int number = 1; number <= accounts; number++) {
+                registry.register(new Bank("holder" + rand.nextInt(DISTINCT_NAMES), rand.nextInt(1_000_000), number));
+            }
+        }
+        double loadSeconds = (System.nanoTime() - start) / 1e9;
+        long heapBytes = usedHeap() - base;
+
+        // 全口座を保持した状態での Full GC の停止時間
+        gc.reset();
+        for (int i = 0; i < FULL_GC_ROUNDS; i++) {
+            System.gc();
+        }
+        double fullGcMillis = gc.totalMillis() / Math.max(gc.count(), 1);
+
+        // 入金・出金を無作為な口座に実行している間の GC
+        gc.reset();
+        for (int i = 0; i < ops; i++) {
+            int number = rand.nextInt(accounts) + 1;
+            long amount = rand.nextInt(10_000) + 1;
+            boolean deposit = (i & 1) == 0;
+            requests[i & (requests.length - 1)] = new byte[REQUEST_BYTES];
+            if (table != null) {
+                int slot = table.slotOf(number);
+                if (deposit) {
+                    table.deposit(slot, amount);
+                } else {
+                    table.withdraw(slot, amount);
+                }
+            } else {
+                Bank bank = registry.find(number);
+                if (deposit) {
+                    bank.deposit(amount);
+                } else {
+                    bank.withdraw(amount);
+                }
+            }
+        }
+        long gcCount = gc.count();
+        double gcTotal = gc.totalMillis();
+        double gcMax = gc.maxMillis();
+
+        long total = 0;
+        if (table != null) {
+            total = table.totalBalance();
+        } else {
+            for (Bank bank : registry.getAccounts()) {
+                total += bank.getAccount().getBalance();
+            }
+        }
+        System.out.printf("RESULT %.3f %d %.3f %d %.3f %.3f %d%n", loadSeconds, heapBytes, fullGcMillis,
+            gcCount, gcTotal, gcMax, total);
+    }
+
+    /** GC を促してからヒープ使用量を返す。 */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * GC の通知を受け取り、停止時間（GC 1 回ごとの所要時間）の回数・合計・最大を記録する。
+     * （G1 の並行マーキングなど、アプリケーションを停止しない処理は通知されない）
+     */
+    private static final class GcRecorder {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong maxMillis = new AtomicLong();
+
+        GcRecorder() {
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) bean).addNotificationListener((notification, handback) -> {
+                    if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                        return;
+                    }
+                    GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    long millis = info.getGcInfo().getDuration();
+                    count.incrementAndGet();
+                    totalMillis.addAndGet(millis);
+                    maxMillis.accumulateAndGet(millis, Math::max);
+                }, null, null);
+            }
+        }
+
+        void reset() {
+            // 通知は別スレッドで届くため、それまでの GC の通知を待ってから消去する
+            sleepQuietly();
+            count.set(0);
+            totalMillis.set(0);
+            maxMillis.set(0);
+        }
+
+        long count() {
+            sleepQuietly();
+            return count.get();
+        }
+
+        double totalMillis() {
+            sleepQuietly();
+            return totalMillis.get();
+        }
+
+        double maxMillis() {
+            sleepQuietly();
+            return maxMillis.get();
+        }
+
+        private static void sleepQuietly() {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
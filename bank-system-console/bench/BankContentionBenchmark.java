@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 複数スレッドから Bank.deposit / withdraw を同時に呼び出した場合の処理性能を計測する簡易ベンチマーク。
+ * - 少数の口座に操作が集中するケース（ロック競合が多い）
+ * - 多数の口座に操作が分散するケース（ロック競合が少ない）
+ * の 2 通りを計測し、終了後に残高と取引履歴の整合性を確認する。
+ * 整合しない場合は終了コード 1 で終了する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out BankContentionBenchmark [スレッド数] [1スレッドあたりの操作数]
+ */
+public class BankContentionBenchmark {
+
+    /** 集中ケースの口座数 */
+    private static final int HOT_ACCOUNTS = 4;
+
+    /** 分散ケースの口座数 */
+    private static final int SPREAD_ACCOUNTS = 100_000;
+
+    /** 各口座の初期残高 */
+    private static final int INITIAL_BALANCE = 10_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int opsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        System.out.printf("スレッド数: %d 1スレッドあたりの操作数: %d%n", threads, opsPerThread);
+        System.out.printf("%10s %10s %14s %8s%n", "ケース", "口座数", "操作数/秒", "整合性");
+
+        boolean ok = true;
+        ok &= run("集中", HOT_ACCOUNTS, threads, opsPerThread);
+        ok &= run("分散", SPREAD_ACCOUNTS, threads, opsPerThread);
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 指定した口座数で計測を行う。
+     * @return 残高と取引履歴が整合していれば true
+     */
+    private static boolean run(String label, int accountCount, int threads, int opsPerThread)
+            throws InterruptedException {
+        List<Bank> banks = new ArrayList<>(accountCount);
+        for (int i = 0; i < accountCount; i++) {
+            banks.add(new Bank("bench", INITIAL_BALANCE));
+        }
+
+        // 成功した入出金の合計（整合性チェック用）
+        AtomicLong netAmount = new AtomicLong();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                long net = 0;
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < opsPerThread; i++) {
+                    Bank bank = banks.get(rand.nextInt(accountCount));
+                    int amount = rand.nextInt(1_000) + 1;
+                    if (rand.nextBoolean()) {
+                        if (bank.deposit(amount)) {
+                            net += amount;
+                        }
+                    } else if (bank.withdraw(amount)) {
+                        net -= amount;
+                    }
+                }
+                netAmount.addAndGet(net);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        boolean consistent = verify(banks, netAmount.get());
+        System.out.printf("%10s %10d %14.0f %8s%n", label, accountCount,
+            (double) threads * opsPerThread / seconds, consistent ? "OK" : "NG");
+        return consistent;
+    }
+
+    /**
+     * 残高の合計が入出金の合計と一致し、各口座の取引履歴が残高の推移と矛盾しないことを確認する。
+     */
+    private static boolean verify(List<Bank> banks, long netAmount) {
+        long total = 0;
+        for (Bank bank : banks) {
+            List<Transaction> history = bank.getHistory();
+            long balance = bank.getAccount().getBalance();
+            total += balance;
+
+            // 各履歴の残高が、直前の残高に取引金額を加減したものになっていること
+            long expected = history.get(0).getBalanceSnapshot();
+            for (int i = 1; i < history.size(); i++) {
+                Transaction t = history.get(i);
+                expected += Constants.TRANSACTION_DEPOSIT.equals(t.getType()) ? t.getAmount() : -t.getAmount();
+                if (t.getBalanceSnapshot() != expected || expected < 0) {
+                    return false;
+                }
+            }
+            // 最後の履歴の残高が現在残高と一致すること
+            if (expected != balance) {
+                return false;
+            }
+        }
+        return total == (long) INITIAL_BALANCE * banks.size() + netAmount;
+    }
+}
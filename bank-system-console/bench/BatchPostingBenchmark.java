@@ -0,0 +1,124 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * 入出金を 1 件ずつ実行する場合と、Bank.applyBatch でまとめて実行する場合の処理時間を比較する簡易ベンチマーク。
+ * 給与振込のように、同じ口座への取引が連続するデータを想定する。
+ * - API：口座ごとに runLength 件の入金を、deposit の繰り返しと applyBatch で実行する
+ * - CSV：同じ口座の行が runLength 行ずつ連続する transaction.csv を作成し、
+ *        BankCsvOperation で 1 行ずつ（setBatchSize(1)）とまとめて（既定）実行する
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out BatchPostingBenchmark [口座数] [取引件数] [連続する件数] [作業ディレクトリ]
+ */
+public class BatchPostingBenchmark {
+
+    /** 計測の繰り返し回数（最初の 1 回はウォームアップとして除く） */
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int runLength = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        Path dir = Files.createTempDirectory(Paths.get(args.length > 3 ? args[3] : "."), "batch-bench");
+
+        System.out.printf("%-24s %12s %12s%n", "方式", "件数", "ns/件");
+
+        double single = 0;
+        double batch = 0;
+        for (int iter = 0; iter < ITERATIONS; iter++) {
+            Bank[] banks = new Bank[accounts];
+            for (int i = 0; i < accounts; i++) {
+                banks[i] = new Bank("口座" + i, 0, i + 1);
+            }
+            long start = System.nanoTime();
+            for (int done = 0; done < transactions; done += runLength) {
+                Bank bank = banks[(done / runLength) % accounts];
+                for (int k = 0; k < runLength; k++) {
+                    bank.deposit(1000);
+                }
+            }
+            long singleNanos = System.nanoTime() - start;
+
+            for (int i = 0; i < accounts; i++) {
+                banks[i] = new Bank("口座" + i, 0, i + 1);
+            }
+            byte[] types = new byte[runLength];
+            long[] amounts = new long[runLength];
+            byte[] results = new byte[runLength];
+            Arrays.fill(types, (byte) Constants.TRANSACTION_CODE_DEPOSIT);
+            Arrays.fill(amounts, 1000);
+            start = System.nanoTime();
+            for (int done = 0; done < transactions; done += runLength) {
+                banks[(done / runLength) % accounts].applyBatch(types, amounts, 0, runLength, results);
+            }
+            long batchNanos = System.nanoTime() - start;
+
+            if (iter > 0) {
+                single += (double) singleNanos / transactions / (ITERATIONS - 1);
+                batch += (double) batchNanos / transactions / (ITERATIONS - 1);
+            }
+        }
+        System.out.printf("%-24s %12d %12.1f%n", "API deposit", transactions, single);
+        System.out.printf("%-24s %12d %12.1f%n", "API applyBatch", transactions, batch);
+
+        Path accountFile = dir.resolve("account.csv");
+        Path transactionFile = dir.resolve("transaction.csv");
+        writeData(accountFile, transactionFile, accounts, transactions, runLength);
+
+        PrintStream stdout = System.out;
+        double rowByRow = 0;
+        double grouped = 0;
+        try {
+            for (int iter = 0; iter < ITERATIONS; iter++) {
+                long[] nanos = new long[2];
+                for (int mode = 0; mode < 2; mode++) {
+                    BankCsvOperation csvOp = new BankCsvOperation();
+                    csvOp.setOutputSink(new BatchOutputSink(BatchOutputSink.Mode.SUMMARY, 0));
+                    csvOp.setBatchSize(mode == 0 ? 1 : Constants.CSV_BATCH_SIZE);
+                    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                    long start = System.nanoTime();
+                    csvOp.loadData(accountFile.toString(), transactionFile.toString());
+                    nanos[mode] = System.nanoTime() - start;
+                    System.setOut(stdout);
+                }
+                if (iter > 0) {
+                    rowByRow += (double) nanos[0] / transactions / (ITERATIONS - 1);
+                    grouped += (double) nanos[1] / transactions / (ITERATIONS - 1);
+                }
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+        System.out.printf("%-24s %12d %12.1f%n", "CSV 1 行ずつ", transactions, rowByRow);
+        System.out.printf("%-24s %12d %12.1f%n", "CSV まとめて実行", transactions, grouped);
+
+        Files.delete(accountFile);
+        Files.delete(transactionFile);
+        Files.delete(dir);
+    }
+
+    /** 同じ口座の入金が runLength 行ずつ連続するデータを作成する。 */
+    private static void writeData(Path accountFile, Path transactionFile, int accounts, int transactions,
+            int runLength) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(accountFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < accounts; i++) {
+                w.write("口座" + i + ",0\n");
+            }
+        }
+        try (BufferedWriter w = Files.newBufferedWriter(transactionFile, StandardCharsets.UTF_8)) {
+            for (int done = 0; done < transactions; done++) {
+                int number = (done / runLength) % accounts + 1;
+                w.write(number + ",deposit,1000\n");
+            }
+        }
+    }
+}
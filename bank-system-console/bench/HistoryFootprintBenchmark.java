@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 取引履歴 1 件あたりのメモリ使用量を、従来方式（ArrayList&lt;Transaction&gt;）と
+ * 列形式（TransactionHistory）で比較する簡易ベンチマーク。
+ * 履歴の多い口座・少ない口座の 2 通りで計測する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -Xmx4g -cp out HistoryFootprintBenchmark
+ */
+public class HistoryFootprintBenchmark {
+
+    /** 計測後も参照を保持し、GC で回収されないようにする */
+    private static Object keep;
+
+    public static void main(String[] args) {
+        System.out.printf("%22s %20s %20s%n", "ケース", "従来(バイト/件)", "列形式(バイト/件)");
+        report("1,000口座 x 10,000件", 1_000, 10_000);
+        report("100,000口座 x 10件", 100_000, 10);
+    }
+
+    private static void report(String label, int accounts, int entries) {
+        double before = measure(accounts, entries, false);
+        double after = measure(accounts, entries, true);
+        System.out.printf("%22s %20.1f %20.1f%n", label, before, after);
+    }
+
+    /**
+     * 指定した件数の履歴を生成し、1 件あたりのヒープ使用量を返す。
+     * @param columnar true の場合は TransactionHistory、false の場合は ArrayList&lt;Transaction&gt;
+     */
+    private static double measure(int accounts, int entries, boolean columnar) {
+        keep = null;
+        long base = usedHeap();
+
+        List<Object> histories = new ArrayList<>(accounts);
+        for (int a = 0; a < accounts; a++) {
+            long balance = 0;
+            if (columnar) {
+                TransactionHistory h = new TransactionHistory();
+                for (int i = 0; i < entries; i++) {
+                    balance += 100;
+                    h.add(Constants.TRANSACTION_CODE_DEPOSIT, 100, balance);
+                }
+                histories.add(h);
+            } else {
+                List<Transaction> h = new ArrayList<>();
+                for (int i = 0; i < entries; i++) {
+                    balance += 100;
+                    h.add(new Transaction(Constants.TRANSACTION_DEPOSIT, 100, balance));
+                }
+                histories.add(h);
+            }
+        }
+        keep = histories;
+
+        long used = usedHeap() - base;
+        return (double) used / ((long) accounts * entries);
+    }
+
+    /** GC を促してからヒープ使用量を返す。 */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,131 @@
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 取引履歴の期間指定の参照について、全件を走査して期間内の履歴を選ぶ場合と、
+ * TransactionHistory.between（取引日の索引を二分探索）の場合の 1 回あたりの時間を比較する簡易ベンチマーク。
+ * あわせて、最新の N 件（recent）の参照時間も表示する。
+ *
+ * 両方の方式で、期間内の件数と金額の合計が一致することを確認し、一致しない場合は終了コード 1 で終了する。
+ * また、日付の順に並んでいない履歴（時計の巻き戻しを想定）でも between の結果が全件走査と一致することを確認する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out HistoryQueryBenchmark [履歴の件数]
+ */
+public class HistoryQueryBenchmark {
+
+    /** 履歴の期間（日数）と、1 回の参照で指定する期間（日数） */
+    private static final int DAYS = 3_650;
+    private static final int RANGE_DAYS = 7;
+
+    /** 計測する参照の回数 */
+    private static final int QUERIES = 2_000;
+
+    /** 最新の N 件として参照する件数 */
+    private static final int RECENT = 20;
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int firstDay = (int) LocalDate.of(2020, 1, 1).toEpochDay();
+
+        TransactionHistory history = new TransactionHistory();
+        for (int i = 0; i < entries; i++) {
+            history.add(firstDay + (int) ((long) i * DAYS / entries), Constants.TRANSACTION_CODE_DEPOSIT, i % 1000 + 1, i);
+        }
+        int[] fromDays = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            fromDays[i] = firstDay + ThreadLocalRandom.current().nextInt(DAYS);
+        }
+
+        System.out.printf("履歴の件数: %d 期間: %d日 参照する期間: %d日%n", entries, DAYS, RANGE_DAYS);
+        System.out.printf("%-20s %14s %12s%n", "方式", "1回あたり(us)", "件数の合計");
+        boolean ok = true;
+        long scanChecksum = 0;
+        long indexChecksum = 0;
+        long matched = 0;
+        // 1 回目はウォームアップ
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            scanChecksum = 0;
+            matched = 0;
+            for (int fromDay : fromDays) {
+                long result = scan(history, fromDay, fromDay + RANGE_DAYS - 1);
+                scanChecksum += result;
+                matched += result >>> 32;
+            }
+            double scanMicros = (System.nanoTime() - start) / 1e3 / QUERIES;
+
+            start = System.nanoTime();
+            indexChecksum = 0;
+            for (int fromDay : fromDays) {
+                indexChecksum += indexed(history, fromDay, fromDay + RANGE_DAYS - 1);
+            }
+            double indexMicros = (System.nanoTime() - start) / 1e3 / QUERIES;
+
+            start = System.nanoTime();
+            long recentCount = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                TransactionHistory.Cursor c = history.recent(RECENT);
+                while (c.next()) {
+                    recentCount++;
+                }
+            }
+            double recentMicros = (System.nanoTime() - start) / 1e3 / QUERIES;
+
+            if (round == 1) {
+                System.out.printf("%-20s %14.2f %12d%n", "全件走査", scanMicros, matched);
+                System.out.printf("%-20s %14.2f %12d%n", "索引（between）", indexMicros, matched);
+                System.out.printf("%-20s %14.2f %12d%n", "最新 " + RECENT + " 件（recent）", recentMicros, recentCount);
+            }
+        }
+        if (scanChecksum != indexChecksum) {
+            System.out.println("全件走査と索引の結果が一致しません");
+            ok = false;
+        }
+
+        // 日付の順に並んでいない履歴
+        TransactionHistory unordered = new TransactionHistory();
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        for (int i = 0; i < 10_000; i++) {
+            unordered.add(firstDay + rand.nextInt(100), Constants.TRANSACTION_CODE_WITHDRAW, i + 1, i);
+        }
+        for (int i = 0; i < 1_000; i++) {
+            int from = firstDay + rand.nextInt(110) - 5;
+            int to = from + rand.nextInt(20) - 2;
+            if (scan(unordered, from, to) != indexed(unordered, from, to)) {
+                System.out.printf("日付の順に並んでいない履歴で、期間 %d - %d の結果が一致しません%n", from, to);
+                ok = false;
+                break;
+            }
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 全件を走査して、期間内の履歴の件数と金額の合計を求める。
+     * @return 上位 32 ビットに件数、下位 32 ビットに金額の合計を加算した値
+     */
+    private static long scan(TransactionHistory history, int fromDay, int toDay) {
+        long result = 0;
+        TransactionHistory.Cursor c = history.cursor();
+        while (c.next()) {
+            if (c.epochDay() >= fromDay && c.epochDay() <= toDay) {
+                result += (1L << 32) + c.amount();
+            }
+        }
+        return result;
+    }
+
+    /** between で、期間内の履歴の件数と金額の合計を求める。（戻り値は scan と同じ形式） */
+    private static long indexed(TransactionHistory history, int fromDay, int toDay) {
+        long result = 0;
+        TransactionHistory.Cursor c = history.between(LocalDate.ofEpochDay(fromDay), LocalDate.ofEpochDay(toDay));
+        while (c.next()) {
+            result += (1L << 32) + c.amount();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TransactionJournal の書き込み性能を計測する簡易ベンチマーク。
+ * 次の 3 つを比較する。
+ * - fsync 毎回：記録 1 件ごとに書き込みと fsync を行う（比較の基準）
+ * - グループコミット：1 スレッドで記録を追加し続け、fsync する件数（groupSize）を変えて計測する（CSV一括処理の場合）
+ * - 同時書き込み：複数スレッドがそれぞれ記録 1 件ごとに永続化を待つ（fsync はスレッド間でまとめられる）
+ *
+ * fsync の速度はディスクに依存するため、実際に使用するディスク上のディレクトリを指定すること。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out JournalBenchmark [記録件数] [作業ディレクトリ]
+ */
+public class JournalBenchmark {
+
+    /** fsync 毎回の計測件数（時間がかかるため少なめにする） */
+    private static final int BASELINE_RECORDS = 2_000;
+
+    /** グループコミットで試す、待ち時間を待たずに fsync する件数 */
+    private static final int[] GROUP_SIZES = {1, 16, 128, 1024, 8192};
+
+    /** 同時書き込みで試すスレッド数 */
+    private static final int[] WRITER_THREADS = {1, 8, 64};
+
+    /** 最大待ち時間（ミリ秒） */
+    private static final long MAX_DELAY_MILLIS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path dir = Files.createTempDirectory(Paths.get(args.length > 1 ? args[1] : "."), "journal-bench");
+
+        System.out.printf("%-28s %10s %12s %10s%n", "方式", "件数", "件/秒", "fsync回数");
+
+        double baseline = fsyncEveryRecord(dir.resolve("baseline.bin"), BASELINE_RECORDS);
+        System.out.printf("%-28s %10d %12.0f %10d%n", "fsync 毎回", BASELINE_RECORDS, baseline, BASELINE_RECORDS);
+
+        for (int groupSize : GROUP_SIZES) {
+            Path file = dir.resolve("group-" + groupSize + ".bin");
+            int n = groupSize == 1 ? BASELINE_RECORDS : records;
+            long start = System.nanoTime();
+            long syncs;
+            try (TransactionJournal journal = new TransactionJournal(file, groupSize, MAX_DELAY_MILLIS)) {
+                for (int i = 0; i < n; i++) {
+                    journal.append(TransactionJournal.RECORD_DEPOSIT, i % 10_000, 100, 0);
+                }
+                journal.sync();
+                syncs = journal.getSyncCount();
+            }
+            double perSec = n / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("%-28s %10d %12.0f %10d%n", "グループコミット " + groupSize + "件", n, perSec, syncs);
+            Files.delete(file);
+        }
+
+        for (int threads : WRITER_THREADS) {
+            Path file = dir.resolve("writers-" + threads + ".bin");
+            int perThread = Math.max(1, BASELINE_RECORDS * 4 / threads);
+            long start = System.nanoTime();
+            long syncs;
+            try (TransactionJournal journal = new TransactionJournal(file, threads, MAX_DELAY_MILLIS)) {
+                List<Thread> writers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    final int account = t;
+                    Thread w = new Thread(() -> {
+                        try {
+                            for (int i = 0; i < perThread; i++) {
+                                journal.awaitDurable(journal.append(TransactionJournal.RECORD_DEPOSIT, account, 100, 0));
+                            }
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+                    writers.add(w);
+                    w.start();
+                }
+                for (Thread w : writers) {
+                    w.join();
+                }
+                syncs = journal.getSyncCount();
+            }
+            double perSec = (double) perThread * threads / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("%-28s %10d %12.0f %10d%n", "同時書き込み " + threads + "スレッド", perThread * threads, perSec, syncs);
+            Files.delete(file);
+        }
+
+        Files.delete(dir.resolve("baseline.bin"));
+        Files.delete(dir);
+    }
+
+    /**
+     * ジャーナルを使わず、記録 1 件ごとに書き込みと fsync を行った場合の処理件数（件/秒）を返す。
+     * 記録のサイズはジャーナルの入出金の記録と同じにする。
+     */
+    private static double fsyncEveryRecord(Path file, int n) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(17);
+        long start = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < n; i++) {
+                record.clear();
+                record.put(TransactionJournal.RECORD_DEPOSIT).putInt(i % 10_000).putInt(100).putInt(0).putInt(0);
+                record.flip();
+                ch.write(record);
+                ch.force(false);
+            }
+        }
+        return n / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,174 @@
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 金額・残高を int から long（桁あふれの確認付き）に変更した場合の処理時間への影響を確認する簡易ベンチマーク。
+ * 入金 1 件の中心部分（残高の加算・桁あふれの確認・取引履歴の列への追加）を、次の方式で比較する。
+ * - int：従来の方式（確認なしで加算し、int の列に追加する）
+ * - long 確認付き：Bank と同じ方式（例外を使わずに桁あふれを確認し、long の列に追加する）
+ * - long addExact：Math.addExact で加算する（桁あふれ時は例外）
+ * - BigDecimal：残高を BigDecimal で保持する（参考）
+ * あわせて、Bank.deposit（ロック・履歴の追加を含む）1 件あたりの時間も表示する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out MoneyPathBenchmark [口座数] [取引件数]
+ */
+public class MoneyPathBenchmark {
+
+    /** 計測の繰り返し回数（最初の 1 回はウォームアップとして除く） */
+    private static final int ITERATIONS = 6;
+
+    /** 計測結果を使用し、計算が最適化で省かれないようにする */
+    private static long sink;
+
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 4_000_000;
+
+        // 口座の選択と金額は事前に決めておき、すべての方式で同じものを使う
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        int[] targets = new int[transactions];
+        int[] amounts = new int[transactions];
+        for (int i = 0; i < transactions; i++) {
+            targets[i] = rand.nextInt(accounts);
+            amounts[i] = rand.nextInt(1, 10_000);
+        }
+
+        double[] nanos = new double[4];
+        for (int iter = 0; iter < ITERATIONS; iter++) {
+            long[] elapsed = {
+                intPath(accounts, targets, amounts),
+                longCheckedPath(accounts, targets, amounts),
+                longAddExactPath(accounts, targets, amounts),
+                bigDecimalPath(accounts, targets, amounts),
+            };
+            if (iter > 0) {
+                for (int m = 0; m < nanos.length; m++) {
+                    nanos[m] += (double) elapsed[m] / transactions / (ITERATIONS - 1);
+                }
+            }
+        }
+
+        System.out.printf("%-20s %12s %10s %10s%n", "方式", "件数", "ns/件", "int 比");
+        String[] labels = {"int", "long 確認付き", "long addExact", "BigDecimal"};
+        for (int m = 0; m < nanos.length; m++) {
+            System.out.printf("%-20s %12d %10.2f %9.2fx%n", labels[m], transactions, nanos[m], nanos[m] / nanos[0]);
+        }
+
+        double deposit = 0;
+        for (int iter = 0; iter < ITERATIONS; iter++) {
+            Bank[] banks = new Bank[accounts];
+            for (int i = 0; i < accounts; i++) {
+                banks[i] = new Bank("口座" + i, 0, i + 1);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < transactions; i++) {
+                banks[targets[i]].deposit(amounts[i]);
+            }
+            if (iter > 0) {
+                deposit += (double) (System.nanoTime() - start) / transactions / (ITERATIONS - 1);
+            }
+        }
+        System.out.printf("%-20s %12d %10.2f%n", "Bank.deposit", transactions, deposit);
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /** 従来の方式：int の残高に確認なしで加算し、int の列に追加する。 */
+    private static long intPath(int accounts, int[] targets, int[] amounts) {
+        int[] balances = new int[accounts];
+        int[] historyAmounts = new int[targets.length];
+        int[] historyBalances = new int[targets.length];
+        long start = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            int amount = amounts[i];
+            if (amount <= 0) {
+                continue;
+            }
+            int balance = balances[targets[i]] + amount;
+            balances[targets[i]] = balance;
+            historyAmounts[i] = amount;
+            historyBalances[i] = balance;
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += historyBalances[targets.length - 1] + historyAmounts[0];
+        return elapsed;
+    }
+
+    /** Bank と同じ方式：long の残高に桁あふれを確認してから加算し、long の列に追加する。 */
+    private static long longCheckedPath(int accounts, int[] targets, int[] amounts) {
+        long[] balances = new long[accounts];
+        long[] historyAmounts = new long[targets.length];
+        long[] historyBalances = new long[targets.length];
+        long start = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            long amount = amounts[i];
+            if (amount <= 0) {
+                continue;
+            }
+            long current = balances[targets[i]];
+            long balance = current + amount;
+            if (((current ^ balance) & (amount ^ balance)) < 0) {
+                continue;
+            }
+            balances[targets[i]] = balance;
+            historyAmounts[i] = amount;
+            historyBalances[i] = balance;
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += historyBalances[targets.length - 1] + historyAmounts[0];
+        return elapsed;
+    }
+
+    /** Math.addExact で加算する。（桁あふれ時は例外を捕捉して拒否する） */
+    private static long longAddExactPath(int accounts, int[] targets, int[] amounts) {
+        long[] balances = new long[accounts];
+        long[] historyAmounts = new long[targets.length];
+        long[] historyBalances = new long[targets.length];
+        long start = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            long amount = amounts[i];
+            if (amount <= 0) {
+                continue;
+            }
+            long balance;
+            try {
+                balance = Math.addExact(balances[targets[i]], amount);
+            } catch (ArithmeticException e) {
+                continue;
+            }
+            balances[targets[i]] = balance;
+            historyAmounts[i] = amount;
+            historyBalances[i] = balance;
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += historyBalances[targets.length - 1] + historyAmounts[0];
+        return elapsed;
+    }
+
+    /** 参考：残高を BigDecimal で保持する。 */
+    private static long bigDecimalPath(int accounts, int[] targets, int[] amounts) {
+        BigDecimal[] balances = new BigDecimal[accounts];
+        for (int i = 0; i < accounts; i++) {
+            balances[i] = BigDecimal.ZERO;
+        }
+        BigDecimal[] historyAmounts = new BigDecimal[targets.length];
+        BigDecimal[] historyBalances = new BigDecimal[targets.length];
+        long start = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            if (amounts[i] <= 0) {
+                continue;
+            }
+            BigDecimal amount = BigDecimal.valueOf(amounts[i]);
+            BigDecimal balance = balances[targets[i]].add(amount);
+            balances[targets[i]] = balance;
+            historyAmounts[i] = amount;
+            historyBalances[i] = balance;
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += historyBalances[targets.length - 1].longValue() + historyAmounts[0].longValue();
+        return elapsed;
+    }
+}
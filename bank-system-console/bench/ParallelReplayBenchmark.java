@@ -0,0 +1,113 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 取引の並列実行（BankCsvOperation.setReplayThreads）の処理時間を計測する簡易ベンチマーク。
+ * 合わせて、並列実行の結果（残高・取引履歴）が 1 スレッドで実行した場合と
+ * 完全に一致することを確認する。一致しない場合は終了コード 1 で終了する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out ParallelReplayBenchmark [口座数] [取引数] [最大スレッド数]
+ */
+public class ParallelReplayBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Path dir = Files.createTempDirectory("replay-bench");
+        Path accountFile = dir.resolve(Constants.FILE_ACCOUNT_CSV);
+        Path transactionFile = dir.resolve(Constants.FILE_TRANSACTION_CSV);
+        generate(accountFile, transactionFile, accounts, rows);
+
+        // 取引ごとのメッセージ出力は計測対象外とする
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        long start = System.nanoTime();
+        List<Bank> expected = new BankCsvOperation().loadData(accountFile.toString(), transactionFile.toString());
+        double sequential = (System.nanoTime() - start) / 1e6;
+
+        console.printf("口座数: %d 取引数: %d%n", accounts, rows);
+        console.printf("%8s %12s %8s %8s%n", "スレッド", "時間(ms)", "倍率", "結果");
+        console.printf("%8d %12.1f %8.2f %8s%n", 1, sequential, 1.0, "-");
+
+        boolean allMatched = true;
+        for (int threads = 2; threads <= maxThreads; threads *= 2) {
+            BankCsvOperation op = new BankCsvOperation();
+            op.setReplayThreads(threads);
+            start = System.nanoTime();
+            List<Bank> actual = op.loadData(accountFile.toString(), transactionFile.toString());
+            double elapsed = (System.nanoTime() - start) / 1e6;
+
+            boolean matched = sameResult(expected, actual);
+            allMatched &= matched;
+            console.printf("%8d %12.1f %8.2f %8s%n", threads, elapsed, sequential / elapsed, matched ? "一致" : "不一致");
+        }
+
+        System.setOut(console);
+        Files.delete(accountFile);
+        Files.delete(transactionFile);
+        Files.delete(dir);
+        if (!allMatched) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 口座ごとの残高と取引履歴がすべて一致するかを判定する。
+     */
+    private static boolean sameResult(List<Bank> expected, List<Bank> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            Bank e = expected.get(i);
+            Bank a = actual.get(i);
+            if (e.getAccount().getBalance() != a.getAccount().getBalance()) {
+                return false;
+            }
+            List<Transaction> eh = e.getHistory();
+            List<Transaction> ah = a.getHistory();
+            if (eh.size() != ah.size()) {
+                return false;
+            }
+            for (int j = 0; j < eh.size(); j++) {
+                if (!eh.get(j).getDetail().equals(ah.get(j).getDetail())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * テスト用の口座データと取引データを生成する。
+     * 出金は残高不足で失敗するものも含まれるよう、金額を広めに散らす。
+     */
+    private static void generate(Path accountFile, Path transactionFile, int accounts, int rows) throws IOException {
+        Random rand = new Random(7);
+        try (BufferedWriter w = Files.newBufferedWriter(accountFile)) {
+            for (int i = 1; i <= accounts; i++) {
+                w.write("holder" + i + "," + rand.nextInt(100_000));
+                w.newLine();
+            }
+        }
+        try (BufferedWriter w = Files.newBufferedWriter(transactionFile)) {
+            for (int i = 0; i < rows; i++) {
+                int number = rand.nextInt(accounts) + 1;
+                String type = rand.nextBoolean() ? Constants.TRANSACTION_DEPOSIT_CSV : Constants.TRANSACTION_WITHDRAW_CSV;
+                w.write(number + "," + type + "," + (rand.nextInt(20_000) + 1));
+                w.newLine();
+            }
+        }
+    }
+}
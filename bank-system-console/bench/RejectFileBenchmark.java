@@ -0,0 +1,200 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 形式エラーの行を除外ファイルに書き込んで処理を続けるモード（CsvRejectWriter）について、次を確認・計測する簡易ベンチマーク。
+ * - 正しい行のみの CSV で、除外しない場合（従来の中断モード）と除外する場合の 1 行あたりの時間
+ * - 形式エラーの行（項目数不正・不正な取引タイプ・非数）を一定間隔で混ぜた CSV を除外モードで実行した時間
+ * - 形式エラーの行を混ぜた CSV の実行結果（全口座の残高と取引履歴の件数）が、正しい行のみの CSV と一致し、
+ *   除外ファイルの件数が混ぜた行数と一致すること
+ * - account.csv の形式エラーの行を除外した場合に、残りの口座が行順どおりの口座番号で読み込まれること
+ * 一致しない場合は終了コード 1 で終了する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out RejectFileBenchmark [口座数] [取引件数] [形式エラーの行の間隔] [作業ディレクトリ]
+ */
+public class RejectFileBenchmark {
+
+    /** 混ぜる形式エラーの行（口座番号は実行時に置き換える） */
+    private static final String[] BAD_ROWS = {
+        "%d,deposit", "%d,depositx,100", "%d,withdraw,1O0", "x%d,deposit,100", "%d,transfer,100", "%d,deposit,100,1",
+    };
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int badInterval = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        Path dir = Files.createTempDirectory(Paths.get(args.length > 3 ? args[3] : "."), "reject-bench");
+        Path accountFile = dir.resolve("account.csv");
+        Path cleanFile = dir.resolve("transaction.csv");
+        Path dirtyFile = dir.resolve("transaction-dirty.csv");
+        Path rejectFile = dir.resolve("rejected.tsv");
+        long badRows = writeData(accountFile, cleanFile, dirtyFile, accounts, transactions, badInterval);
+
+        System.out.printf("口座数: %d 取引件数: %d 形式エラーの行: %d 件%n", accounts, transactions, badRows);
+        System.out.printf("%-32s %10s %12s %14s%n", "方式", "ns/件", "除外件数", "残高の検査値");
+        boolean ok = true;
+        // 1 回目はウォームアップ
+        for (int round = 0; round < 2; round++) {
+            Result strict = run(accountFile, cleanFile, null);
+            Result clean = run(accountFile, cleanFile, rejectFile);
+            Result dirty = run(accountFile, dirtyFile, rejectFile);
+            Result aborted = run(accountFile, dirtyFile, null);
+            if (round == 1) {
+                print("中断モード（正しい行のみ）", strict, transactions);
+                print("除外モード（正しい行のみ）", clean, transactions);
+                print("除外モード（形式エラーあり）", dirty, transactions + badRows);
+                print("中断モード（形式エラーあり）", aborted, transactions + badRows);
+            }
+            if (clean.checksum != strict.checksum || clean.rejected != 0) {
+                System.out.println("NG: 正しい行のみの CSV で、除外モードの結果が中断モードと一致しません");
+                ok = false;
+            }
+            if (dirty.checksum != strict.checksum || dirty.rejected != badRows) {
+                System.out.println("NG: 形式エラーの行を除外した結果が、正しい行のみの CSV と一致しません");
+                ok = false;
+            }
+        }
+        ok &= checkAccounts(dir);
+
+        for (Path file : new Path[] {accountFile, cleanFile, dirtyFile, rejectFile}) {
+            Files.deleteIfExists(file);
+        }
+        Files.delete(dir);
+        if (!ok) {
+            System.exit(1);
+        }
+        System.out.println("OK: 除外モードの結果は一致しました");
+    }
+
+    /**
+     * 口座と取引を読み込んで実行し、残高と取引履歴の件数の検査値と除外した件数を返す。
+     * @param rejectFile 除外ファイル（null の場合は従来どおり形式エラーで中断する）
+     */
+    private static Result run(Path accountFile, Path transactionFile, Path rejectFile) throws IOException {
+        PrintStream stdout = System.out;
+        Result result = new Result();
+        CsvRejectWriter rejects = null;
+        if (rejectFile != null) {
+            Files.deleteIfExists(rejectFile);
+            rejects = new CsvRejectWriter(rejectFile);
+        }
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            BankCsvOperation csvOp = new BankCsvOperation();
+            csvOp.setOutputSink(new BatchOutputSink(BatchOutputSink.Mode.SUMMARY, 0));
+            csvOp.setRejectWriter(rejects);
+            AccountRegistry registry = csvOp.loadAccounts(accountFile.toString());
+            long start = System.nanoTime();
+            List<Bank> banks = csvOp.loadData(registry, transactionFile.toString());
+            result.nanos = System.nanoTime() - start;
+            for (Bank bank : banks) {
+                result.checksum = result.checksum * 31 + bank.getAccount().getBalance();
+                result.checksum = result.checksum * 31 + bank.getTransactionHistory().size();
+            }
+        } finally {
+            System.setOut(stdout);
+            if (rejects != null) {
+                rejects.close();
+                result.rejected = rejects.getCount();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * account.csv の形式エラーの行を除外した場合に、残りの口座が行順の口座番号で読み込まれることを確認する。
+     * @return 期待どおりの場合は true
+     */
+    private static boolean checkAccounts(Path dir) throws IOException {
+        Path accountFile = dir.resolve("account-dirty.csv");
+        Path rejectFile = dir.resolve("account-rejected.tsv");
+        Files.write(accountFile, List.of("holder1,100", "holder2,abc", "holder3,300,x", "holder4,400"), Charset.defaultCharset());
+        PrintStream stdout = System.out;
+        AccountRegistry registry;
+        long rejected;
+        try (CsvRejectWriter rejects = new CsvRejectWriter(rejectFile)) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            BankCsvOperation csvOp = new BankCsvOperation();
+            csvOp.setRejectWriter(rejects);
+            registry = csvOp.loadAccounts(accountFile.toString());
+            rejected = rejects.getCount();
+        } finally {
+            System.setOut(stdout);
+        }
+        Files.delete(accountFile);
+        Files.delete(rejectFile);
+        Bank first = registry.find(1);
+        Bank last = registry.find(4);
+        boolean ok = registry.size() == 2 && rejected == 2 && registry.find(2) == null && registry.find(3) == null
+            && first != null && first.getAccount().getBalance() == 100
+            && last != null && last.getAccount().getBalance() == 400;
+        if (!ok) {
+            System.out.println("NG: account.csv の形式エラーの行を除外した結果が不正です");
+        }
+        return ok;
+    }
+
+    private static void print(String name, Result r, long rows) {
+        System.out.printf("%-32s %10.1f %12d %14x%n", name, (double) r.nanos / rows, r.rejected, r.checksum);
+    }
+
+    /**
+     * 口座・取引データ（正しい行のみ、および badInterval 行ごとに形式エラーの行を混ぜたもの）を書き込む。
+     * @return 混ぜた形式エラーの行数
+     */
+    private static long writeData(Path accountFile, Path cleanFile, Path dirtyFile,
+            int accounts, int transactions, int badInterval) throws IOException {
+        Random rand = new Random(1);
+        try (BufferedWriter w = Files.newBufferedWriter(accountFile, Charset.defaultCharset())) {
+            for (int i = 1; i <= accounts; i++) {
+                w.write("holder" + i + "," + (rand.nextInt(1_000_000) + 1_000));
+                w.newLine();
+            }
+        }
+        long badRows = 0;
+        try (BufferedWriter clean = Files.newBufferedWriter(cleanFile, Charset.defaultCharset());
+             BufferedWriter dirty = Files.newBufferedWriter(dirtyFile, Charset.defaultCharset())) {
+            for (int i = 0; i < transactions; i++) {
+                int number = rand.nextInt(accounts) + 1;
+                int op = rand.nextInt(100);
+                String row;
+                if (op < 45) {
+                    row = number + ",deposit," + (rand.nextInt(10_000) + 1);
+                } else if (op < 90) {
+                    row = number + ",withdraw," + (rand.nextInt(10_000) + 1);
+                } else if (op < 98) {
+                    row = number + ",transfer," + (rand.nextInt(10_000) + 1) + "," + (rand.nextInt(accounts) + 1);
+                } else {
+                    row = number + ",getBalance,0";
+                }
+                clean.write(row);
+                clean.newLine();
+                dirty.write(row);
+                dirty.newLine();
+                if (badInterval > 0 && i % badInterval == badInterval - 1) {
+                    dirty.write(String.format(BAD_ROWS[(int) (badRows % BAD_ROWS.length)], number));
+                    dirty.newLine();
+                    badRows++;
+                }
+            }
+        }
+        return badRows;
+    }
+
+    /** 1 回分の実行結果 */
+    private static final class Result {
+        long nanos;
+        long checksum;
+        long rejected;
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * 残高照会の出力（BatchOutputSink.balanceReport）について、ReportCache を使用しない場合と
+ * 使用する場合（上限が十分な場合・上限が小さく破棄が多い場合・最新の N 件のみの場合）の時間を比較する簡易ベンチマーク。
+ * 入出金と残高照会を乱数で混ぜた同じ操作列を実行し、出力内容（CRC32 とバイト数）が
+ * キャッシュを使用しない場合と一致することを確認する。一致しない場合は終了コード 1 で終了する。
+ *
+ * 出力は計測用のストリームに書き込み、画面には表示しない。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out ReportCacheBenchmark [口座数] [操作回数]
+ */
+public class ReportCacheBenchmark {
+
+    /** 操作のうち残高照会の割合（%） */
+    private static final int INQUIRY_PERCENT = 30;
+
+    /** 最新の N 件のみを出力する場合の件数 */
+    private static final int HISTORY_LIMIT = 20;
+
+    /** 上限が小さい場合のキャッシュの上限（バイト数） */
+    private static final long SMALL_CACHE_BYTES = 256 * 1024;
+
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 300_000;
+
+        PrintStream console = System.out;
+        console.printf("口座数: %d 操作回数: %d 残高照会の割合: %d%%%n", accounts, operations, INQUIRY_PERCENT);
+        console.printf("%-24s %10s %14s %10s %14s%n", "方式", "時間(ms)", "出力(バイト)", "ヒット率", "CRC32");
+        boolean ok = true;
+        // 1 回目はウォームアップ
+        for (int round = 0; round < 2; round++) {
+            Result plain = run(accounts, operations, Integer.MAX_VALUE, 0);
+            Result cached = run(accounts, operations, Integer.MAX_VALUE, Long.MAX_VALUE);
+            Result small = run(accounts, operations, Integer.MAX_VALUE, SMALL_CACHE_BYTES);
+            Result limited = run(accounts, operations, HISTORY_LIMIT, 0);
+            Result limitedCached = run(accounts, operations, HISTORY_LIMIT, Long.MAX_VALUE);
+            if (round == 1) {
+                print(console, "キャッシュなし", plain);
+                print(console, "キャッシュあり", cached);
+                print(console, "キャッシュあり（上限小）", small);
+                print(console, "最新" + HISTORY_LIMIT + "件・キャッシュなし", limited);
+                print(console, "最新" + HISTORY_LIMIT + "件・キャッシュあり", limitedCached);
+            }
+            ok &= plain.sameOutput(cached) && plain.sameOutput(small) && limited.sameOutput(limitedCached);
+        }
+        if (!ok) {
+            console.println("NG: キャッシュを使用した場合の出力が一致しません");
+            System.exit(1);
+        }
+        console.println("OK: 出力内容は一致しました");
+    }
+
+    /**
+     * 同じ操作列を実行し、出力の CRC32 とバイト数を返す。
+     * @param cacheBytes キャッシュの上限（0 の場合は使用しない）
+     */
+    private static Result run(int accounts, int operations, int historyLimit, long cacheBytes) {
+        Bank[] banks = new Bank[accounts];
+        for (int i = 0; i < accounts; i++) {
+            banks[i] = new Bank("口座" + i, 1_000_000, 1_000_000 + i);
+        }
+        PrintStream console = System.out;
+        ChecksumStream sink = new ChecksumStream();
+        System.setOut(new PrintStream(sink, false));
+        Result result = new Result();
+        ReportCache cache = cacheBytes > 0 ? new ReportCache(cacheBytes) : null;
+        try {
+            BatchOutputSink output = new BatchOutputSink(BatchOutputSink.Mode.BUFFERED, 0);
+            output.setHistoryLimit(historyLimit);
+            output.setReportCache(cache);
+            Random random = new Random(42);
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                Bank bank = banks[random.nextInt(accounts)];
+                int op = random.nextInt(100);
+                if (op < INQUIRY_PERCENT) {
+                    output.balanceReport(bank);
+                } else if (op < 65) {
+                    bank.deposit(random.nextInt(10_000) + 1);
+                } else {
+                    bank.withdraw(random.nextInt(10_000) + 1);
+                }
+            }
+            output.flush();
+            result.nanos = System.nanoTime() - start;
+        } finally {
+            System.out.flush();
+            System.setOut(console);
+        }
+        result.crc = sink.crc.getValue();
+        result.bytes = sink.bytes;
+        result.hitRate = cache != null ? cache.getHitRate() : Double.NaN;
+        return result;
+    }
+
+    private static void print(PrintStream console, String name, Result r) {
+        console.printf("%-24s %10.1f %14d %9.1f%% %14x%n", name, r.nanos / 1e6, r.bytes,
+            Double.isNaN(r.hitRate) ? 0 : r.hitRate * 100, r.crc);
+    }
+
+    /** 1 回分の計測結果 */
+    private static final class Result {
+        long nanos;
+        long crc;
+        long bytes;
+        double hitRate;
+
+        boolean sameOutput(Result other) {
+            return crc == other.crc && bytes == other.bytes;
+        }
+    }
+
+    /** 書き込まれたデータの CRC32 とバイト数のみを求める出力先 */
+    private static final class ChecksumStream extends OutputStream {
+        final CRC32 crc = new CRC32();
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            crc.update(b);
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            crc.update(b, off, len);
+            bytes += len;
+        }
+    }
+}
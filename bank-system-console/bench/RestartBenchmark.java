@@ -0,0 +1,87 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 再起動時の復元時間を、ジャーナルのみの場合とスナップショットを使用した場合で比較する簡易ベンチマーク。
+ * 同じ取引をジャーナルに記録したあと、次の時間を計測する。
+ * - ジャーナルのみ：ジャーナルを先頭から再実行する（記録の件数に比例して伸びる）
+ * - スナップショット保存：全口座の状態の取得（ロックする時間）と、ファイルへの書き込み・ジャーナルの削除
+ * - スナップショットから復元：スナップショットを読み込み、保存後に追加した記録（tail 件）だけを再実行する
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out RestartBenchmark [口座数] [取引件数] [保存後の取引件数] [作業ディレクトリ]
+ */
+public class RestartBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        int tail = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        Path dir = Files.createTempDirectory(Paths.get(args.length > 3 ? args[3] : "."), "restart-bench");
+        Path journalOnly = dir.resolve("journal-only.bin");
+        Path journalFile = dir.resolve("journal.bin");
+        Path snapshotFile = dir.resolve("journal.bin" + Constants.SNAPSHOT_FILE_SUFFIX);
+
+        // 同じ取引を 2 つのジャーナルに記録する（片方は途中でスナップショットを保存して記録を削除する）
+        AccountRegistry registry = new AccountRegistry(accounts);
+        try (TransactionJournal plain = new TransactionJournal(journalOnly, Constants.JOURNAL_GROUP_SIZE,
+                Constants.JOURNAL_MAX_DELAY_MILLIS);
+                TransactionJournal journal = new TransactionJournal(journalFile, Constants.JOURNAL_GROUP_SIZE,
+                    Constants.JOURNAL_MAX_DELAY_MILLIS)) {
+            Bank.setJournal(journal);
+            for (int i = 1; i <= accounts; i++) {
+                Bank bank = new Bank("口座" + i, 10_000, i);
+                registry.register(bank);
+                bank.recordOpening();
+                plain.appendOpen(i, "口座" + i, 10_000, 0);
+            }
+            List<Bank> banks = registry.getAccounts();
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            for (int i = 0; i < transactions; i++) {
+                if (i == transactions - tail) {
+                    long seq = journal.getLastSeq();
+                    long start = System.nanoTime();
+                    BankSnapshot snapshot = BankSnapshot.capture(registry, seq);
+                    long captureNanos = System.nanoTime() - start;
+                    snapshot.writeTo(snapshotFile);
+                    journal.truncateThrough(seq);
+                    long writeNanos = System.nanoTime() - start - captureNanos;
+                    System.out.printf("スナップショット保存: 取得 %.1f ミリ秒（ロック中）, 書き込み・削除 %.1f ミリ秒%n",
+                        captureNanos / 1e6, writeNanos / 1e6);
+                }
+                Bank bank = banks.get(rand.nextInt(banks.size()));
+                int amount = rand.nextInt(1, 1000);
+                if (rand.nextBoolean()) {
+                    bank.deposit(amount);
+                    plain.append(TransactionJournal.RECORD_DEPOSIT, bank.getAccount().getAccountNumber(), amount, 0);
+                } else if (bank.withdraw(amount)) {
+                    plain.append(TransactionJournal.RECORD_WITHDRAW, bank.getAccount().getAccountNumber(), amount, 0);
+                }
+            }
+            Bank.setJournal(null);
+        }
+
+        System.out.printf("ジャーナル: %,d バイト / ジャーナルのみ: %,d バイト / スナップショット: %,d バイト%n",
+            Files.size(journalFile), Files.size(journalOnly), Files.size(snapshotFile));
+        System.out.printf("%-28s %12s %12s%n", "方式", "記録件数", "ミリ秒");
+
+        long start = System.nanoTime();
+        long records = TransactionJournal.recover(journalOnly, new AccountRegistry(accounts));
+        System.out.printf("%-28s %12d %12.1f%n", "ジャーナルのみ", records, (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        AccountRegistry restored = new AccountRegistry(accounts);
+        BankSnapshot.load(snapshotFile, restored);
+        records = TransactionJournal.recover(journalFile, restored);
+        System.out.printf("%-28s %12d %12.1f%n", "スナップショット + ジャーナル", records, (System.nanoTime() - start) / 1e6);
+
+        Files.delete(journalOnly);
+        Files.delete(journalFile);
+        Files.delete(snapshotFile);
+        Files.delete(dir);
+    }
+}
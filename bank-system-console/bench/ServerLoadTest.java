@@ -0,0 +1,233 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BankServer に多数の接続から同時に要求を送り、処理件数と応答時間を計測する負荷試験。
+ * 接続ごとに、入金・出金（と約 5% の残高照会）をランダムに、応答を待ってから次の要求を送る方式で繰り返す。
+ * 要求 1 件ごとの応答時間（送信から応答の受信まで）を LatencyHistogram で集計し、
+ * 処理件数/秒と p50 / p99 / p99.9 / 最大を表示する。
+ * 想定外の応答や接続の失敗があった場合は終了コード 1 で終了する。
+ *
+ * ホストとポートを省略した場合は、口座 10,000 件のサーバーを同じプロセスで起動して試験する。
+ * クライアントの接続も、接続ごとに 1 つのスレッド（Java 21 以降では仮想スレッド）で実行する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out ServerLoadTest [接続数] [1接続あたりの要求数] [ホスト ポート]
+ */
+public class ServerLoadTest {
+
+    /** 同じプロセスでサーバーを起動する場合の口座数 */
+    private static final int LOCAL_ACCOUNTS = 10_000;
+
+    /** 残高照会を送る割合（%） */
+    private static final int BALANCE_PERCENT = 5;
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        BankServer localServer = null;
+        String host;
+        int port;
+        int[] numbers;
+        if (args.length > 3) {
+            host = args[2];
+            port = Integer.parseInt(args[3]);
+            numbers = probeAccounts(host, port);
+        } else {
+            AccountRegistry accounts = new AccountRegistry(LOCAL_ACCOUNTS);
+            numbers = new int[LOCAL_ACCOUNTS];
+            for (int i = 0; i < LOCAL_ACCOUNTS; i++) {
+                Bank bank = new Bank("負荷試験" + i, 1_000_000, Constants.ACCOUNT_MIN + i);
+                accounts.register(bank);
+                numbers[i] = bank.getAccount().getAccountNumber();
+            }
+            localServer = new BankServer(accounts, 0);
+            host = "127.0.0.1";
+            port = localServer.getPort();
+            System.out.printf("サーバー: 同じプロセス（ポート %d, 口座 %d 件, %s）%n", port, LOCAL_ACCOUNTS,
+                localServer.isVirtualThreads() ? Constants.MSG_SERVER_VIRTUAL_THREADS : Constants.MSG_SERVER_PLATFORM_THREADS);
+        }
+        if (numbers.length == 0) {
+            System.out.println("試験に使用できる口座がありません");
+            System.exit(1);
+        }
+        System.out.printf("接続数: %d 1接続あたりの要求数: %d%n", sessions, requests);
+
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong completed = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        List<String> errors = new ArrayList<>();
+        CountDownLatch connected = new CountDownLatch(sessions);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(sessions);
+
+        ExecutorService clients = BankServer.newPerTaskExecutor("load-client-");
+        for (int s = 0; s < sessions; s++) {
+            clients.execute(() -> {
+                try {
+                    runSession(host, port, numbers, requests, connected, go, latency, completed, rejected);
+                } catch (IOException | RuntimeException e) {
+                    synchronized (errors) {
+                        errors.add(e.toString());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        // すべての接続が確立してから一斉に要求を送り始める
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        clients.shutdown();
+        if (localServer != null) {
+            localServer.close();
+        }
+
+        LatencyHistogram.Snapshot s = latency.snapshot();
+        System.out.printf("要求数: %d（NG 応答 %d）%.2f 秒 %.0f 件/秒%n", completed.get(), rejected.get(), seconds,
+            completed.get() / seconds);
+        System.out.printf("応答時間(µs): 平均 %.1f p50 %.1f p99 %.1f p99.9 %.1f 最大 %.1f%n", s.getMean() / 1e3,
+            s.getValueAtPercentile(50) / 1e3, s.getValueAtPercentile(99) / 1e3,
+            s.getValueAtPercentile(99.9) / 1e3, s.getMax() / 1e3);
+        if (!errors.isEmpty()) {
+            System.out.printf("エラー: %d 件（例: %s）%n", errors.size(), errors.get(0));
+            System.exit(1);
+        }
+    }
+
+    /** 1 つの接続で要求を繰り返す。 */
+    private static void runSession(String host, int port, int[] numbers, int requests, CountDownLatch connected,
+            CountDownLatch go, LatencyHistogram latency, AtomicLong completed, AtomicLong rejected)
+            throws IOException, InterruptedException {
+        Socket socket;
+        try {
+            socket = new Socket(host, port);
+        } finally {
+            // 接続に失敗した場合も、他の接続が待ち続けないようにする
+            connected.countDown();
+        }
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            go.await();
+
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            for (int i = 0; i < requests; i++) {
+                int number = numbers[rand.nextInt(numbers.length)];
+                int choice = rand.nextInt(100);
+                int menu = choice < BALANCE_PERCENT ? Constants.MENU_BALANCE
+                    : (choice & 1) == 0 ? Constants.MENU_DEPOSIT : Constants.MENU_WITHDRAW;
+
+                long sent = System.nanoTime();
+                out.write(Integer.toString(menu));
+                out.write(Constants.SERVER_FIELD_SEPARATOR);
+                out.write(Integer.toString(number));
+                if (menu != Constants.MENU_BALANCE) {
+                    out.write(Constants.SERVER_FIELD_SEPARATOR);
+                    out.write(Integer.toString(rand.nextInt(1, 10_000)));
+                }
+                out.write('\n');
+                out.flush();
+                if (!readResponse(in, menu)) {
+                    rejected.incrementAndGet();
+                }
+                latency.record(System.nanoTime() - sent);
+                completed.incrementAndGet();
+            }
+            out.write(Constants.MENU_EXIT + "\n");
+            out.flush();
+            expectOk(in.readLine());
+        }
+    }
+
+    /**
+     * 応答を 1 件読み取る。残高照会の場合は続く取引履歴の行も読み取る。
+     * @return OK の場合は true、NG の場合は false
+     */
+    private static boolean readResponse(BufferedReader in, int menu) throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("サーバーが接続を閉じました");
+        }
+        if (line.startsWith(Constants.SERVER_RESPONSE_NG + Constants.SERVER_FIELD_SEPARATOR)) {
+            // 出金の残高不足のみを想定する
+            if (menu != Constants.MENU_WITHDRAW) {
+                throw new IllegalStateException("想定外の応答: " + line);
+            }
+            return false;
+        }
+        String[] fields = line.split(String.valueOf(Constants.SERVER_FIELD_SEPARATOR));
+        int expectedFields = menu == Constants.MENU_BALANCE ? 3 : 2;
+        if (fields.length != expectedFields || !fields[0].equals(Constants.SERVER_RESPONSE_OK)) {
+            throw new IllegalStateException("想定外の応答: " + line);
+        }
+        if (menu == Constants.MENU_BALANCE) {
+            int count = Integer.parseInt(fields[2]);
+            for (int i = 0; i < count; i++) {
+                if (in.readLine() == null) {
+                    throw new IOException("取引履歴の途中で接続が閉じられました");
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void expectOk(String line) {
+        if (!Constants.SERVER_RESPONSE_OK.equals(line)) {
+            throw new IllegalStateException("想定外の応答: " + line);
+        }
+    }
+
+    /**
+     * 外部のサーバーを試験する場合に、使用する口座番号を探す。
+     * BankServer.main は account.csv の口座に 1 から順に番号を振るため、1 から順に残高照会を送り、
+     * 口座が見つからなくなるまで（最大 LOCAL_ACCOUNTS 件）集める。
+     */
+    private static int[] probeAccounts(String host, int port) throws IOException {
+        List<Integer> found = new ArrayList<>();
+        try (Socket socket = new Socket(host, port)) {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            for (int number = 1; found.size() < LOCAL_ACCOUNTS; number++) {
+                out.write(Constants.MENU_BALANCE + " " + number + "\n");
+                out.flush();
+                String line = in.readLine();
+                if (line == null || !line.startsWith(Constants.SERVER_RESPONSE_OK)) {
+                    break;
+                }
+                found.add(number);
+                int count = Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+                for (int i = 0; i < count; i++) {
+                    in.readLine();
+                }
+            }
+            out.write(Constants.MENU_EXIT + "\n");
+            out.flush();
+            in.readLine();
+        }
+        return found.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,236 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * 複数のワーカープロセスに口座を分けた ShardCluster について、1 台のマシン上で次を確認する簡易テスト。
+ * - 入金・出金・残高照会の CSV をルーター経由で各シャードに転送した結果（全口座の残高）が、
+ *   1 プロセスで BankCsvOperation を実行した結果と一致すること
+ * - ワーカーを停止して状態ファイルに保存し、シャードを 1 つ追加して（rebalance）起動し直した後も、
+ *   全口座の残高が一致し、各シャードが割り当て表の範囲の口座のみを持つこと
+ * - 追加後のシャード構成で、続けて取引を転送した結果も 1 プロセスの場合と一致すること
+ * - split で分けたシャードごとのファイルの行数の合計が、元のファイルの行数と一致すること
+ * あわせて、1 プロセスの場合とルーター経由の場合の処理時間を表示する。
+ * 一致しない場合は終了コード 1 で終了する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out ShardClusterTest [口座数] [取引件数] [シャード数] [作業ディレクトリ]
+ */
+public class ShardClusterTest {
+
+    /** ワーカーの JVM に渡すオプション */
+    private static final List<String> WORKER_OPTIONS = List.of("-Xmx512m");
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int shards = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        Path dir = Files.createTempDirectory(Paths.get(args.length > 3 ? args[3] : "."), "shard-test");
+        Path accountFile = dir.resolve("account.csv");
+        Path firstFile = dir.resolve("transaction-1.csv");
+        Path secondFile = dir.resolve("transaction-2.csv");
+        Path stateDir = dir.resolve("state");
+        Random rand = new Random(1);
+        writeAccounts(accountFile, accounts, rand);
+        writeTransactions(firstFile, accounts, transactions, rand);
+        writeTransactions(secondFile, accounts, transactions / 4, rand);
+
+        boolean ok = true;
+        System.out.printf("口座数: %d 取引件数: %d シャード数: %d%n", accounts, transactions, shards);
+
+        // 1 プロセスで実行した結果（基準）
+        long start = System.nanoTime();
+        long[] expected = runSingleProcess(accountFile, firstFile, accounts);
+        double singleSeconds = (System.nanoTime() - start) / 1e9;
+        long[] expectedAfter = runSingleProcess(accountFile, null, accounts, firstFile, secondFile);
+
+        ShardMap map = ShardMap.even(shards, 1, accounts + 1L);
+        double clusterSeconds;
+        try (ShardCluster cluster = ShardCluster.start(map, stateDir, accountFile.toString(), WORKER_OPTIONS)) {
+            ok &= checkOwnership(cluster, accounts);
+            try (ShardRouter router = cluster.connect();
+                 CsvRowReader csv = new CsvRowReader(firstFile.toString())) {
+                start = System.nanoTime();
+                router.replay(csv);
+                clusterSeconds = (System.nanoTime() - start) / 1e9;
+                ok &= compare("シャード " + map.size() + " 個", router, expected);
+            }
+        }
+
+        // シャードを 1 つ追加して起動し直す
+        ShardMap next = map.split();
+        long moved = ShardCluster.rebalance(stateDir, map, next);
+        System.out.printf("シャードを追加: %s → %s（シャードの番号が変わった口座: %d件）%n", map, next, moved);
+        if (!next.equals(ShardCluster.loadMap(stateDir))) {
+            System.out.println("NG: 割り当て表が保存されていません");
+            ok = false;
+        }
+        try (ShardCluster cluster = ShardCluster.start(next, stateDir, accountFile.toString(), WORKER_OPTIONS)) {
+            ok &= checkOwnership(cluster, accounts);
+            try (ShardRouter router = cluster.connect()) {
+                ok &= compare("追加後（状態ファイルから復元）", router, expected);
+                try (CsvRowReader csv = new CsvRowReader(secondFile.toString())) {
+                    router.replay(csv);
+                }
+                ok &= compare("追加後（続けて取引を転送）", router, expectedAfter);
+            }
+        }
+
+        ok &= checkSplit(firstFile, next, dir);
+
+        System.out.printf("%-28s %10s %14s%n", "方式", "秒", "件/秒");
+        System.out.printf("%-28s %10.3f %14.0f%n", "1 プロセス", singleSeconds, transactions / singleSeconds);
+        System.out.printf("%-28s %10.3f %14.0f%n", "ルーター経由（" + map.size() + " シャード）", clusterSeconds,
+            transactions / clusterSeconds);
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+        System.out.println("OK: 1 プロセスの場合と結果が一致しました");
+    }
+
+    /**
+     * 1 プロセスで口座を読み込んで取引データを順に実行し、口座番号ごとの残高を返す。
+     */
+    private static long[] runSingleProcess(Path accountFile, Path transactionFile, int accounts, Path... more) {
+        PrintStream stdout = System.out;
+        long[] balances = new long[accounts + 1];
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            BankCsvOperation csvOp = new BankCsvOperation();
+            csvOp.setOutputSink(new BatchOutputSink(BatchOutputSink.Mode.SUMMARY, 0));
+            AccountRegistry registry = csvOp.loadAccounts(accountFile.toString());
+            if (transactionFile != null) {
+                csvOp.loadData(registry, transactionFile.toString());
+            }
+            for (Path file : more) {
+                csvOp.loadData(registry, file.toString());
+            }
+            for (Bank bank : registry.getAccounts()) {
+                balances[bank.getAccount().getAccountNumber()] = bank.getAccount().getBalance();
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+        return balances;
+    }
+
+    /**
+     * 全口座の残高をルーター経由で照会し、基準の残高と比較する。
+     * @return 一致した場合は true
+     */
+    private static boolean compare(String name, ShardRouter router, long[] expected) throws IOException {
+        int mismatches = 0;
+        for (int number = 1; number < expected.length; number++) {
+            byte result = router.execute(Constants.TRANSACTION_CODE_GET_BALANCE, number, 0);
+            if (result != Constants.RESULT_SUCCESS || router.getLastBalance() != expected[number]) {
+                if (mismatches++ < 5) {
+                    System.out.printf("  口座 %d: 結果 %d 残高 %d（期待値 %d）%n", number, result,
+                        router.getLastBalance(), expected[number]);
+                }
+            }
+        }
+        System.out.printf("%-28s %s%n", name, mismatches == 0 ? "一致" : "NG: 不一致 " + mismatches + " 口座");
+        return mismatches == 0;
+    }
+
+    /**
+     * 各シャードの口座数が、割り当て表の担当範囲の口座数と一致することを確認する。
+     * @return 一致した場合は true
+     */
+    private static boolean checkOwnership(ShardCluster cluster, int accounts) {
+        ShardMap map = cluster.getMap();
+        int[] expected = new int[map.size()];
+        for (int number = 1; number <= accounts; number++) {
+            expected[map.shardOf(number)]++;
+        }
+        boolean ok = true;
+        for (int i = 0; i < map.size(); i++) {
+            if (cluster.getAccountCount(i) != expected[i]) {
+                System.out.printf("NG: シャード %d の口座数 %d（期待値 %d）%n", i, cluster.getAccountCount(i), expected[i]);
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    /**
+     * 取引データをシャードごとのファイルに分け、行数の合計が元のファイルと一致することを確認する。
+     * @return 一致した場合は true
+     */
+    private static boolean checkSplit(Path transactionFile, ShardMap map, Path dir) throws IOException {
+        Path[] outputs = new Path[map.size()];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = dir.resolve(String.format(Constants.SHARD_TRANSACTION_FILE_FORMAT, i));
+        }
+        Path cross = dir.resolve(Constants.SHARD_CROSS_FILE);
+        long rows;
+        long crossRows;
+        try (CsvRowReader csv = new CsvRowReader(transactionFile.toString())) {
+            crossRows = ShardRouter.split(csv, map, outputs, cross);
+            rows = csv.rowCount();
+        }
+        long total = countLines(cross);
+        boolean ok = total == crossRows;
+        for (int i = 0; i < outputs.length; i++) {
+            try (CsvRowReader csv = new CsvRowReader(outputs[i].toString())) {
+                while (csv.next()) {
+                    total++;
+                    // 振込以外の行は、口座番号を担当するシャードのファイルにあること
+                    ok &= map.shardOf(csv.getInt(0)) == i;
+                }
+            }
+        }
+        ok &= total == rows;
+        System.out.printf("%-28s %s%n", "split（" + rows + " 行）", ok ? "一致" : "NG: 行数または振り分けが不正");
+        return ok;
+    }
+
+    private static long countLines(Path file) throws IOException {
+        try (Stream<String> lines = Files.lines(file, Charset.defaultCharset())) {
+            return lines.count();
+        }
+    }
+
+    private static void writeAccounts(Path file, int accounts, Random rand) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, Charset.defaultCharset())) {
+            for (int i = 1; i <= accounts; i++) {
+                w.write("holder" + i + "," + (rand.nextInt(1_000_000) + 1_000));
+                w.newLine();
+            }
+        }
+    }
+
+    /** 入金・出金・残高照会のみの取引データを書き込む。（振込はルーターが転送しないため含めない） */
+    private static void writeTransactions(Path file, int accounts, int transactions, Random rand) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, Charset.defaultCharset())) {
+            for (int i = 0; i < transactions; i++) {
+                int number = rand.nextInt(accounts) + 1;
+                int op = rand.nextInt(100);
+                if (op < 48) {
+                    w.write(number + ",deposit," + (rand.nextInt(10_000) + 1));
+                } else if (op < 96) {
+                    w.write(number + ",withdraw," + (rand.nextInt(10_000) + 1));
+                } else {
+                    w.write(number + ",getBalance,0");
+                }
+                w.newLine();
+            }
+        }
+    }
+}
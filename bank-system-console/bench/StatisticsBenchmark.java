@@ -0,0 +1,339 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * TransactionStatistics（取引のたびに更新する集計値）について、次を確認・計測する簡易ベンチマーク。
+ * - CSV の取引（入金・出金・振込・残高照会）を 1 スレッドと並列で実行し、実行後の集計値が
+ *   全口座の取引履歴から求め直した値と一致すること（口座ごと・日付ごとの件数・金額・残高の最小値・最大値、残高の合計）
+ * - 複数の日付にまたがる取引（日付が前後するものを含む）を Bank.replay で反映した場合も一致すること
+ * - 集計値の更新による CSV の実行時間の増加
+ * - 「本日の入金の合計」「全口座の残高の合計」を、取引履歴の走査と集計値で求める時間
+ * 一致しない場合は終了コード 1 で終了する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out StatisticsBenchmark [口座数] [取引件数] [作業ディレクトリ]
+ */
+public class StatisticsBenchmark {
+
+    /** 比較する取引種別コード */
+    private static final int[] TYPES = {
+        Constants.TRANSACTION_CODE_INITIAL, Constants.TRANSACTION_CODE_DEPOSIT, Constants.TRANSACTION_CODE_WITHDRAW,
+        Constants.TRANSACTION_CODE_TRANSFER_OUT, Constants.TRANSACTION_CODE_TRANSFER_IN,
+    };
+
+    /** 参照の計測回数 */
+    private static final int QUERIES = 20;
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        Path dir = Files.createTempDirectory(Paths.get(args.length > 2 ? args[2] : "."), "statistics-bench");
+        Path accountFile = dir.resolve("account.csv");
+        Path transactionFile = dir.resolve("transaction.csv");
+        writeData(accountFile, transactionFile, accounts, transactions);
+
+        boolean ok = true;
+        PrintStream stdout = System.out;
+        System.out.printf("%-28s %12s%n", "CSV の実行", "ns/件");
+        try {
+            for (int threads : new int[] {1, 4}) {
+                double[] nanos = new double[2];
+                // 1 回目はウォームアップ
+                for (int iter = 0; iter < 2; iter++) {
+                    for (int mode = 0; mode < 2; mode++) {
+                        BankCsvOperation csvOp = new BankCsvOperation();
+                        csvOp.setOutputSink(new BatchOutputSink(BatchOutputSink.Mode.SUMMARY, 0));
+                        csvOp.setReplayThreads(threads);
+                        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                        AccountRegistry registry = csvOp.loadAccounts(accountFile.toString());
+                        // 集計ありの場合は、Main と同じく口座の読み込み後に集計を開始する
+                        TransactionStatistics statistics = null;
+                        if (mode == 1) {
+                            statistics = new TransactionStatistics();
+                            statistics.addAccounts(registry.getAccounts());
+                            Bank.setStatistics(statistics);
+                        }
+                        long start = System.nanoTime();
+                        csvOp.loadData(registry, transactionFile.toString());
+                        nanos[mode] = (double) (System.nanoTime() - start) / transactions;
+                        Bank.setStatistics(null);
+                        System.setOut(stdout);
+                        if (statistics != null && iter == 1) {
+                            ok &= verify("CSV " + threads + " スレッド", statistics, registry.getAccounts());
+                        }
+                    }
+                }
+                System.out.printf("%-28s %12.1f%n", threads + " スレッド 集計なし", nanos[0]);
+                System.out.printf("%-28s %12.1f%n", threads + " スレッド 集計あり", nanos[1]);
+            }
+        } finally {
+            System.setOut(stdout);
+            Bank.setStatistics(null);
+        }
+
+        ok &= replayAcrossDays(accounts);
+        ok &= measureQueries(accountFile, transactionFile);
+
+        Files.delete(accountFile);
+        Files.delete(transactionFile);
+        Files.delete(dir);
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 複数の日付にまたがる取引を Bank.replay で反映し、集計値を確認する。
+     * @return 一致した場合は true
+     */
+    private static boolean replayAcrossDays(int accounts) {
+        Random rand = new Random(1);
+        int today = (int) LocalDate.now().toEpochDay();
+        TransactionStatistics statistics = new TransactionStatistics();
+        Bank.setStatistics(statistics);
+        AccountRegistry registry = new AccountRegistry(accounts);
+        try {
+            for (int i = 0; i < accounts; i++) {
+                registry.register(new Bank("口座" + i, rand.nextInt(100_000)));
+            }
+            List<Bank> banks = registry.getAccounts();
+            for (int i = 0; i < accounts * 20; i++) {
+                Bank bank = banks.get(rand.nextInt(accounts));
+                // 大部分は過去 30 日以内、一部は 1 年前までの日付（集計の日付の列を前方に拡張する）
+                int day = today - (rand.nextInt(10) == 0 ? rand.nextInt(365) : rand.nextInt(30));
+                byte type = rand.nextBoolean() ? (byte) Constants.TRANSACTION_CODE_DEPOSIT
+                    : (byte) Constants.TRANSACTION_CODE_WITHDRAW;
+                long amount = rand.nextInt(1_000) + 1;
+                if (type == Constants.TRANSACTION_CODE_WITHDRAW && bank.getAccount().getBalance() < amount) {
+                    type = (byte) Constants.TRANSACTION_CODE_DEPOSIT;
+                }
+                bank.replay(type, amount, day, 0);
+            }
+        } finally {
+            Bank.setStatistics(null);
+        }
+        return verify("複数日の再実行", statistics, registry.getAccounts());
+    }
+
+    /**
+     * 「本日の入金の合計」と「全口座の残高の合計」を、取引履歴の走査と集計値で求める時間を比較する。
+     * @return 両方の値が一致した場合は true
+     */
+    private static boolean measureQueries(Path accountFile, Path transactionFile) {
+        PrintStream stdout = System.out;
+        TransactionStatistics statistics = new TransactionStatistics();
+        AccountRegistry registry;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            BankCsvOperation csvOp = new BankCsvOperation();
+            csvOp.setOutputSink(new BatchOutputSink(BatchOutputSink.Mode.SUMMARY, 0));
+            registry = csvOp.loadAccounts(accountFile.toString());
+            statistics.addAccounts(registry.getAccounts());
+            Bank.setStatistics(statistics);
+            csvOp.loadData(registry, transactionFile.toString());
+        } finally {
+            Bank.setStatistics(null);
+            System.setOut(stdout);
+        }
+        LocalDate today = LocalDate.now();
+        int todayEpochDay = (int) today.toEpochDay();
+
+        // Transaction は日付を返さないため、表示用の文字列の先頭で本日の取引かを判定する
+        String todayPrefix = "日付: " + Transaction.DATE_FORMATTER.format(today);
+        long scanDeposits = 0;
+        long scanBalance = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < QUERIES; q++) {
+            scanDeposits = 0;
+            scanBalance = 0;
+            for (Bank bank : registry.getAccounts()) {
+                synchronized (bank) {
+                    for (Transaction t : bank.getHistory()) {
+                        if (t.getType().equals(Constants.TRANSACTION_DEPOSIT) && t.getDetail().startsWith(todayPrefix)) {
+                            scanDeposits += t.getAmount();
+                        }
+                    }
+                    scanBalance += bank.getAccount().getBalance();
+                }
+            }
+        }
+        double scanMicros = (System.nanoTime() - start) / 1e3 / QUERIES;
+
+        long cursorDeposits = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < QUERIES; q++) {
+            cursorDeposits = 0;
+            for (Bank bank : registry.getAccounts()) {
+                synchronized (bank) {
+                    TransactionHistory.Cursor c = bank.getTransactionHistory().cursor();
+                    while (c.next()) {
+                        if (c.type() == Constants.TRANSACTION_CODE_DEPOSIT && c.epochDay() == todayEpochDay) {
+                            cursorDeposits += c.amount();
+                        }
+                    }
+                }
+            }
+        }
+        double cursorMicros = (System.nanoTime() - start) / 1e3 / QUERIES;
+
+        long statDeposits = 0;
+        long statBalance = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < QUERIES; q++) {
+            statDeposits = statistics.getDayTotal(today, Constants.TRANSACTION_CODE_DEPOSIT);
+            statBalance = statistics.getTotalBalance();
+        }
+        double statMicros = (System.nanoTime() - start) / 1e3 / QUERIES;
+
+        System.out.printf("%-28s %14s %16s %16s%n", "本日の入金と残高の合計", "1回あたり(us)", "入金の合計", "残高の合計");
+        System.out.printf("%-28s %14.1f %16d %16d%n", "getHistory の走査", scanMicros, scanDeposits, scanBalance);
+        System.out.printf("%-28s %14.1f %16d %16s%n", "カーソルの走査", cursorMicros, cursorDeposits, "-");
+        System.out.printf("%-28s %14.3f %16d %16d%n", "TransactionStatistics", statMicros, statDeposits, statBalance);
+        if (scanDeposits != statDeposits || cursorDeposits != statDeposits || scanBalance != statBalance) {
+            System.out.println("取引履歴の走査と集計値が一致しません");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 集計値を、全口座の取引履歴から求め直した値と比較する。
+     * @return 一致した場合は true
+     */
+    private static boolean verify(String label, TransactionStatistics statistics, List<Bank> banks) {
+        TransactionStatistics expected = new TransactionStatistics();
+        long totalBalance = 0;
+        long entries = 0;
+        int errors = 0;
+        for (Bank bank : banks) {
+            int number = bank.getAccount().getAccountNumber();
+            long[] counts = new long[Constants.TRANSACTION_CODE_TRANSFER_IN + 1];
+            long[] amounts = new long[counts.length];
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            TransactionHistory.Cursor c = bank.getTransactionHistory().cursor();
+            while (c.next()) {
+                counts[c.type()]++;
+                amounts[c.type()] += c.amount();
+                min = Math.min(min, c.balanceSnapshot());
+                max = Math.max(max, c.balanceSnapshot());
+                entries++;
+            }
+            // 日付の範囲を求めるため、同じ履歴を別のインスタンスにも加える
+            expected.addAccounts(List.of(bank));
+            totalBalance += bank.getAccount().getBalance();
+            for (int type : TYPES) {
+                if (statistics.getAccountCount(number, type) != counts[type]
+                        || statistics.getAccountTotal(number, type) != amounts[type]) {
+                    errors++;
+                }
+            }
+            if (statistics.getBalance(number) != bank.getAccount().getBalance()
+                    || statistics.getMinBalance(number) != min || statistics.getMaxBalance(number) != max) {
+                errors++;
+            }
+        }
+        if (statistics.getTotalBalance() != totalBalance || statistics.getEntryCount() != entries
+                || statistics.getAccountCount() != banks.size()) {
+            errors++;
+        }
+        errors += compareDays(statistics, expected, banks);
+        System.out.printf("%-28s 口座: %d 取引履歴: %d件 残高の合計: %d円 %s%n", label, banks.size(), entries,
+            totalBalance, errors == 0 ? "一致" : "不一致 " + errors + " 件");
+        return errors == 0;
+    }
+
+    /**
+     * 日付ごとの値を、取引履歴を日付の順に走査して求めた値と比較する。
+     * 日付の範囲は expected（取引履歴を後から集計したもの）から求め、範囲の前後 1 日も 0 件であることを確認する。
+     * @return 一致しなかった値の数
+     */
+    private static int compareDays(TransactionStatistics actual, TransactionStatistics expected, List<Bank> banks) {
+        LocalDate first = expected.getFirstDay();
+        LocalDate last = expected.getLastDay();
+        if (first == null) {
+            return actual.getEntryCount() == 0 ? 0 : 1;
+        }
+        int days = (int) (last.toEpochDay() - first.toEpochDay()) + 1;
+        long[][] counts = new long[days][Constants.TRANSACTION_CODE_TRANSFER_IN + 1];
+        long[][] amounts = new long[days][Constants.TRANSACTION_CODE_TRANSFER_IN + 1];
+        long[] mins = new long[days];
+        long[] maxs = new long[days];
+        Arrays.fill(mins, Long.MAX_VALUE);
+        Arrays.fill(maxs, Long.MIN_VALUE);
+        for (Bank bank : banks) {
+            TransactionHistory.Cursor c = bank.getTransactionHistory().cursor();
+            while (c.next()) {
+                int day = (int) (c.epochDay() - first.toEpochDay());
+                counts[day][c.type()]++;
+                amounts[day][c.type()] += c.amount();
+                mins[day] = Math.min(mins[day], c.balanceSnapshot());
+                maxs[day] = Math.max(maxs[day], c.balanceSnapshot());
+            }
+        }
+        int errors = 0;
+        for (int day = -1; day <= days; day++) {
+            LocalDate date = first.plusDays(day);
+            boolean inRange = day >= 0 && day < days;
+            for (int type : TYPES) {
+                long count = inRange ? counts[day][type] : 0;
+                long amount = inRange ? amounts[day][type] : 0;
+                if (actual.getDayCount(date, type) != count || actual.getDayTotal(date, type) != amount) {
+                    errors++;
+                }
+            }
+            if (inRange && mins[day] != Long.MAX_VALUE
+                    && (actual.getDayMinBalance(date) != mins[day] || actual.getDayMaxBalance(date) != maxs[day])) {
+                errors++;
+            }
+        }
+        for (int type : TYPES) {
+            long total = 0;
+            for (int day = 0; day < days; day++) {
+                total += amounts[day][type];
+            }
+            if (actual.getTotal(type, first.minusDays(5), last.plusDays(5)) != total) {
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    /** 入金・出金・振込・残高照会を含む取引データを作成する。 */
+    private static void writeData(Path accountFile, Path transactionFile, int accounts, int transactions)
+            throws IOException {
+        Random rand = new Random(42);
+        try (BufferedWriter w = Files.newBufferedWriter(accountFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < accounts; i++) {
+                w.write("口座" + i + "," + rand.nextInt(100_000) + "\n");
+            }
+        }
+        try (BufferedWriter w = Files.newBufferedWriter(transactionFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < transactions; i++) {
+                int number = rand.nextInt(accounts) + 1;
+                int choice = rand.nextInt(20);
+                int amount = rand.nextInt(5_000) + 1;
+                if (choice < 9) {
+                    w.write(number + ",deposit," + amount + "\n");
+                } else if (choice < 17) {
+                    w.write(number + ",withdraw," + amount + "\n");
+                } else if (choice < 19) {
+                    w.write(number + ",transfer," + amount + "," + (rand.nextInt(accounts) + 1) + "\n");
+                } else {
+                    w.write(number + ",getBalance,0\n");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bank.transfer を複数スレッドから同時に呼び出し、整合性と処理性能を確認する簡易ベンチマーク。
+ * - 集中：少数の口座の間で、双方向の振込をランダムに繰り返す（逆向きの振込が同時に実行される）。
+ *         実行中は監査スレッドが全口座をロックして残高の合計を確認し、
+ *         終了後に残高の合計・取引履歴・振込の件数を確認する。
+ *         一定時間内に終わらない場合はデッドロックとみなし、スレッドの状態を表示する。
+ * - 分散：スレッドごとに別の 2 口座の間で振込を繰り返し、スレッド数 1, 2, 4, ... での処理件数を比較する。
+ * 整合しない場合・デッドロックした場合は終了コード 1 で終了する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out TransferStressBenchmark [スレッド数] [1スレッドあたりの振込数] [集中ケースの口座数]
+ */
+public class TransferStressBenchmark {
+
+    /** 各口座の初期残高 */
+    private static final int INITIAL_BALANCE = 1_000_000;
+
+    /** デッドロックとみなすまでの待ち時間（秒） */
+    private static final long DEADLOCK_TIMEOUT_SECONDS = 60;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+            : Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        int opsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int hotAccounts = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        System.out.printf("スレッド数: %d 1スレッドあたりの振込数: %d%n", threads, opsPerThread);
+        boolean ok = stress(threads, opsPerThread, hotAccounts);
+        scaling(threads, opsPerThread);
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 集中ケース。少数の口座の間で振込を繰り返し、整合性を確認する。
+     * @return 整合していれば true
+     */
+    private static boolean stress(int threads, int opsPerThread, int accountCount) throws InterruptedException {
+        Bank[] banks = new Bank[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            banks[i] = new Bank("bench", INITIAL_BALANCE);
+        }
+        // 監査スレッドがロックする順序（口座番号の小さい順。transfer と同じ順序）
+        Bank[] lockOrder = banks.clone();
+        Arrays.sort(lockOrder, (a, b) -> Integer.compare(a.getAccount().getAccountNumber(),
+            b.getAccount().getAccountNumber()));
+        long expectedTotal = (long) INITIAL_BALANCE * accountCount;
+
+        AtomicLong succeeded = new AtomicLong();
+        AtomicLong transferred = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        CountDownLatch go = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                long count = 0;
+                long sum = 0;
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < opsPerThread; i++) {
+                    // 振込元と振込先が同じ場合（失敗する）も含める
+                    Bank from = banks[rand.nextInt(accountCount)];
+                    Bank to = banks[rand.nextInt(accountCount)];
+                    int amount = rand.nextInt(INITIAL_BALANCE / 2) + 1;
+                    if (from.transfer(to, amount) == Constants.RESULT_SUCCESS) {
+                        count++;
+                        sum += amount;
+                    }
+                }
+                succeeded.addAndGet(count);
+                transferred.addAndGet(sum);
+            }, "transfer-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+
+        // 監査スレッド：全口座をロックした状態で、残高の合計が常に一定であることを確認する
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong audits = new AtomicLong();
+        AtomicLong auditErrors = new AtomicLong();
+        Thread auditor = new Thread(() -> {
+            while (!stop.get()) {
+                if (lockedTotal(lockOrder, 0) != expectedTotal) {
+                    auditErrors.incrementAndGet();
+                }
+                audits.incrementAndGet();
+            }
+        }, "transfer-auditor");
+        auditor.start();
+
+        long start = System.nanoTime();
+        go.countDown();
+        long deadline = start + TimeUnit.SECONDS.toNanos(DEADLOCK_TIMEOUT_SECONDS);
+        for (Thread worker : workers) {
+            worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            if (worker.isAlive()) {
+                reportDeadlock();
+                return false;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        stop.set(true);
+        auditor.join();
+
+        String failure = verify(banks, expectedTotal, succeeded.get(), transferred.get());
+        if (auditErrors.get() > 0) {
+            failure = "監査で残高の合計が不一致: " + auditErrors.get() + "回";
+        }
+        System.out.printf("集中: 口座数 %d 振込成功 %d 件 %.0f 件/秒 監査 %d 回 整合性 %s%n", accountCount,
+            succeeded.get(), (double) threads * opsPerThread / seconds, audits.get(),
+            failure == null ? "OK" : "NG（" + failure + "）");
+        return failure == null;
+    }
+
+    /** 口座番号の小さい順に全口座をロックし、残高の合計を返す。 */
+    private static long lockedTotal(Bank[] lockOrder, int index) {
+        if (index == lockOrder.length) {
+            long total = 0;
+            for (Bank bank : lockOrder) {
+                total += bank.getAccount().getBalance();
+            }
+            return total;
+        }
+        synchronized (lockOrder[index]) {
+            return lockedTotal(lockOrder, index + 1);
+        }
+    }
+
+    /**
+     * 残高の合計が変わっていないこと、各口座の取引履歴が残高の推移と矛盾しないこと、
+     * 振込出金・振込入金の履歴の件数と金額が成功した振込と一致することを確認する。
+     * @return 整合していれば null、整合しない場合はその内容
+     */
+    private static String verify(Bank[] banks, long expectedTotal, long succeeded, long transferred) {
+        long total = 0;
+        long outCount = 0;
+        long inCount = 0;
+        long outSum = 0;
+        long inSum = 0;
+        for (Bank bank : banks) {
+            long balance = bank.getAccount().getBalance();
+            total += balance;
+
+            TransactionHistory.Cursor c = bank.getTransactionHistory().cursor();
+            c.next();
+            long expected = c.balanceSnapshot();
+            while (c.next()) {
+                if (c.type() == Constants.TRANSACTION_CODE_TRANSFER_OUT) {
+                    expected -= c.amount();
+                    outCount++;
+                    outSum += c.amount();
+                } else if (c.type() == Constants.TRANSACTION_CODE_TRANSFER_IN) {
+                    expected += c.amount();
+                    inCount++;
+                    inSum += c.amount();
+                } else {
+                    return "想定外の取引種別: " + c.type();
+                }
+                if (c.balanceSnapshot() != expected || expected < 0) {
+                    return "口座 " + bank.getAccount().getAccountNumber() + " の取引履歴の残高が不一致";
+                }
+            }
+            if (expected != balance) {
+                return "口座 " + bank.getAccount().getAccountNumber() + " の残高と取引履歴が不一致";
+            }
+        }
+        if (total != expectedTotal) {
+            return "残高の合計 " + total + "（期待値 " + expectedTotal + "）";
+        }
+        if (outCount != succeeded || inCount != succeeded || outSum != transferred || inSum != transferred) {
+            return "振込の履歴 出金 " + outCount + " 件 / 入金 " + inCount + " 件（成功 " + succeeded + " 件）";
+        }
+        return null;
+    }
+
+    /** デッドロックしているスレッドがあれば、その状態を表示する。 */
+    private static void reportDeadlock() {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        long[] ids = mx.findDeadlockedThreads();
+        if (ids == null) {
+            System.out.printf("集中: %d 秒以内に終了しませんでした%n", DEADLOCK_TIMEOUT_SECONDS);
+            return;
+        }
+        System.out.println("集中: デッドロックを検出しました");
+        for (ThreadInfo info : mx.getThreadInfo(ids, true, true)) {
+            System.out.print(info);
+        }
+    }
+
+    /**
+     * 分散ケース。スレッドごとに別の 2 口座の間で振込を繰り返し、スレッド数ごとの処理件数を表示する。
+     */
+    private static void scaling(int maxThreads, int opsPerThread) throws InterruptedException {
+        System.out.printf("%10s %14s %8s%n", "スレッド数", "振込数/秒", "倍率");
+        double base = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Bank[] banks = new Bank[threads * 2];
+            for (int i = 0; i < banks.length; i++) {
+                banks[i] = new Bank("bench", INITIAL_BALANCE);
+            }
+            CountDownLatch go = new CountDownLatch(1);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Bank a = banks[t * 2];
+                Bank b = banks[t * 2 + 1];
+                Thread worker = new Thread(() -> {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < opsPerThread; i++) {
+                        // 交互に向きを変え、残高不足にならないようにする
+                        if ((i & 1) == 0) {
+                            a.transfer(b, 1);
+                        } else {
+                            b.transfer(a, 1);
+                        }
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            long start = System.nanoTime();
+            go.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            double perSecond = (double) threads * opsPerThread / ((System.nanoTime() - start) / 1e9);
+            if (threads == 1) {
+                base = perSecond;
+            }
+            System.out.printf("%10d %14.0f %7.2fx%n", threads, perSecond, perSecond / base);
+        }
+    }
+}
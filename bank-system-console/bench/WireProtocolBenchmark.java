@@ -0,0 +1,242 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BinaryBankServer に対して、応答を待ってから次の要求を送る場合（パイプラインなし）と、
+ * 応答を待たずに複数の要求を送る場合（パイプライン）の処理件数を、ループバック接続で比較する簡易ベンチマーク。
+ * 同時に未受信にしておく要求の数（ウィンドウ）を 1, 8, 64, 256 と変えて計測する。
+ * 参考として、テキスト形式の BankServer（1 行ずつ応答を待つ）の処理件数も表示する。
+ *
+ * あわせて次を確認し、整合しない場合は終了コード 1 で終了する。
+ * - 応答の要求IDが、送信した要求の順に返ること
+ * - 全口座の残高の合計が、成功した入金・出金の合計と一致すること
+ * また、サーバーのイベントループが要求 1 件あたりに確保したメモリ量を表示する。（HotSpot の場合のみ）
+ * 入出金では取引履歴の配列の拡張分が含まれるため、通信処理のみの値は「残高照会のみ」の行で確認する。
+ *
+ * 実行例（bank-system-console ディレクトリで）:
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out WireProtocolBenchmark [接続数] [1接続あたりの要求数]
+ */
+public class WireProtocolBenchmark {
+
+    /** 口座数と各口座の初期残高 */
+    private static final int ACCOUNTS = 10_000;
+    private static final long INITIAL_BALANCE = 1_000_000;
+
+    /** 計測するウィンドウ（未受信にしておく要求の数） */
+    private static final int[] WINDOWS = {1, 8, 64, 256};
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        AccountRegistry accounts = new AccountRegistry(ACCOUNTS);
+        int[] numbers = new int[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Bank bank = new Bank("bench" + i, INITIAL_BALANCE, Constants.ACCOUNT_MIN + i);
+            accounts.register(bank);
+            numbers[i] = bank.getAccount().getAccountNumber();
+        }
+
+        System.out.printf("接続数: %d 1接続あたりの要求数: %d%n", connections, requests);
+        System.out.printf("%-28s %14s %16s%n", "方式", "要求数/秒", "確保メモリ/要求");
+        boolean ok = true;
+        AtomicLong net = new AtomicLong();
+        try (BinaryBankServer server = new BinaryBankServer(accounts, 0)) {
+            // ウォームアップ
+            run(server.getPort(), numbers, connections, Math.min(requests, 50_000), 64, false, net);
+
+            for (int window : WINDOWS) {
+                String label = window == 1 ? "バイナリ パイプラインなし" : "バイナリ ウィンドウ " + window;
+                ok &= measure(server, label, numbers, connections, requests, window, false, net);
+            }
+            ok &= measure(server, "バイナリ 残高照会のみ 64", numbers, connections, requests, 64, true, net);
+        }
+
+        try (BankServer textServer = new BankServer(accounts, 0)) {
+            double perSecond = runText(textServer.getPort(), numbers, connections, Math.min(requests, 50_000), net);
+            System.out.printf("%-28s %14.0f %16s%n", "テキスト（BankServer）", perSecond, "-");
+        }
+
+        long total = 0;
+        for (Bank bank : accounts.getAccounts()) {
+            total += bank.getAccount().getBalance();
+        }
+        long expected = INITIAL_BALANCE * ACCOUNTS + net.get();
+        if (total != expected) {
+            System.out.printf("残高の合計 %d が、成功した入出金から求めた値 %d と一致しません%n", total, expected);
+            ok = false;
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * run を実行し、処理件数とイベントループの確保メモリ量を表示する。
+     * @return 応答が整合していれば true
+     */
+    private static boolean measure(BinaryBankServer server, String label, int[] numbers, int connections,
+            int requests, int window, boolean balanceOnly, AtomicLong net) throws InterruptedException {
+        long allocatedBefore = loopAllocatedBytes();
+        long requestsBefore = server.getRequestCount();
+        double perSecond = run(server.getPort(), numbers, connections, requests, window, balanceOnly, net);
+        if (perSecond < 0) {
+            return false;
+        }
+        long allocated = loopAllocatedBytes() - allocatedBefore;
+        long handled = server.getRequestCount() - requestsBefore;
+        System.out.printf("%-28s %14.0f %16s%n", label, perSecond,
+            allocatedBefore < 0 ? "-" : String.format("%.2f バイト", (double) allocated / handled));
+        return true;
+    }
+
+    /**
+     * 接続ごとのスレッドから、ウィンドウの数まで応答を待たずに要求を送る。
+     * @param balanceOnly 残高照会のみを送る場合は true（false の場合は入金・出金に約 10% の残高照会を混ぜる）
+     * @param net 成功した入出金の合計（入金は加算、出金は減算）の格納先
+     * @return 要求数/秒。応答が整合しない場合は -1
+     */
+    private static double run(int port, int[] numbers, int connections, int requests, int window,
+            boolean balanceOnly, AtomicLong net) throws InterruptedException {
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            Thread worker = new Thread(() -> {
+                try (BinaryBankClient client = new BinaryBankClient("127.0.0.1", port)) {
+                    ThreadLocalRandom rand = ThreadLocalRandom.current();
+                    // 送信した要求の内容（要求ID をウィンドウの大きさで割った余りの位置に保持する）
+                    int[] types = new int[window];
+                    long[] amounts = new long[window];
+                    long sum = 0;
+                    go.await();
+                    long sent = 0;
+                    long received = 0;
+                    while (received < requests) {
+                        while (sent < requests && sent - received < window) {
+                            int slot = (int) (sent % window);
+                            int choice = rand.nextInt(10);
+                            types[slot] = balanceOnly || choice == 0 ? Constants.TRANSACTION_CODE_GET_BALANCE
+                                : (choice & 1) == 0 ? Constants.TRANSACTION_CODE_DEPOSIT
+                                : Constants.TRANSACTION_CODE_WITHDRAW;
+                            amounts[slot] = rand.nextInt(1, 10_000);
+                            client.send(sent, types[slot], numbers[rand.nextInt(numbers.length)], amounts[slot]);
+                            sent++;
+                        }
+                        client.receive();
+                        if (client.getRequestId() != received) {
+                            throw new IllegalStateException("要求ID " + received + " の応答として "
+                                + client.getRequestId() + " を受信しました");
+                        }
+                        int slot = (int) (received % window);
+                        byte result = client.getResult();
+                        if (result == Constants.RESULT_SUCCESS) {
+                            if (types[slot] == Constants.TRANSACTION_CODE_DEPOSIT) {
+                                sum += amounts[slot];
+                            } else if (types[slot] == Constants.TRANSACTION_CODE_WITHDRAW) {
+                                sum -= amounts[slot];
+                            }
+                        } else if (result != Constants.RESULT_INSUFFICIENT_BALANCE
+                                || types[slot] != Constants.TRANSACTION_CODE_WITHDRAW) {
+                            throw new IllegalStateException("想定外の結果コード: " + result);
+                        }
+                        received++;
+                    }
+                    net.addAndGet(sum);
+                } catch (IOException | RuntimeException | InterruptedException e) {
+                    synchronized (errors) {
+                        errors.add(e.toString());
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        // 接続が確立するのを待ってから計測を始める
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (!errors.isEmpty()) {
+            System.out.printf("ウィンドウ %d: エラー %d 件（例: %s）%n", window, errors.size(), errors.get(0));
+            return -1;
+        }
+        return (double) connections * requests / seconds;
+    }
+
+    /** テキスト形式の BankServer に、1 行ずつ応答を待って要求を送る。 */
+    private static double runText(int port, int[] numbers, int connections, int requests, AtomicLong net)
+            throws InterruptedException {
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            Thread worker = new Thread(() -> {
+                try (Socket socket = new Socket("127.0.0.1", port)) {
+                    socket.setTcpNoDelay(true);
+                    BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    Writer out = new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                    ThreadLocalRandom rand = ThreadLocalRandom.current();
+                    long sum = 0;
+                    go.await();
+                    for (int i = 0; i < requests; i++) {
+                        boolean deposit = rand.nextBoolean();
+                        int amount = rand.nextInt(1, 10_000);
+                        out.write((deposit ? Constants.MENU_DEPOSIT : Constants.MENU_WITHDRAW) + " "
+                            + numbers[rand.nextInt(numbers.length)] + " " + amount + "\n");
+                        out.flush();
+                        if (in.readLine().startsWith(Constants.SERVER_RESPONSE_OK)) {
+                            sum += deposit ? amount : -amount;
+                        }
+                    }
+                    net.addAndGet(sum);
+                } catch (IOException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (double) connections * requests / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * サーバーのイベントループのスレッドがこれまでに確保したメモリ量を返す。
+     * @return 取得できない場合は -1
+     */
+    private static long loopAllocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("bank-wire-loop")) {
+                return mx.getThreadAllocatedBytes(t.getId());
+            }
+        }
+        return -1;
+    }
+}
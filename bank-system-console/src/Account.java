@@ -1,5 +1,6 @@
 /**
  * 口座の基本情報（名義人・口座番号・残高）を保持するクラス。
+ * 金額は円単位の long で保持する。
  * 残高操作は原則として Bank クラスを経由する想定。
  * （業務ロジックを 1 箇所に集約するための設計方針）
  */
@@ -11,8 +12,8 @@ public class Account {
     /** 口座番号 */
     private int accountNumber;
 
-    /** 現在の残高 */
-    private int balance;
+    /** 現在の残高（更新は Bank のロック内で行い、参照はロックなしでも最新値が見えるようにする） */
+    private volatile long balance;
 
     /**
      * コンストラクタ：名義人・口座番号・初期残高を設定する。
@@ -20,7 +21,7 @@ public class Account {
      * @param accountNumber 口座番号
      * @param balance 初期残高
      */
-    public Account(String holderName, int accountNumber, int balance) {
+    public Account(String holderName, int accountNumber, long balance) {
         this.holderName = holderName;
         this.accountNumber = accountNumber;
         this.balance = balance;
@@ -48,7 +49,7 @@ public class Account {
      * 現在の残高を返す。
      * @return 現在の残高
      */
-    public int getBalance() {
+    public long getBalance() {
         return balance;
     }
 
@@ -57,16 +58,17 @@ public class Account {
     /**
      * 残高に金額を加算する。（Bankクラスからのみアクセス可能）
      * @param amount 加算する金額
+     * @throws ArithmeticException 残高が long の範囲を超える場合（残高は変更しない）
      */
-    void addBalance(int amount) {
-        this.balance += amount;
+    void addBalance(long amount) {
+        this.balance = Math.addExact(balance, amount);
     }
 
     /**
      * 残高から金額を減算する。（Bankクラスからのみアクセス可能）
      * @param amount 減算する金額
      */
-    void subtractBalance(int amount) {
+    void subtractBalance(long amount) {
         this.balance -= amount;
     }
 }
\ No newline at end of file
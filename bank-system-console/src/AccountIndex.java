@@ -0,0 +1,96 @@
+/**
+ * 口座番号から列の位置（0 以上の int）を求めるための索引クラス。
+ * 口座ごとの値を列ごとの配列で保持するクラス（AccountTable・TransactionStatistics）が使用する。
+ * AccountRegistry と同じく、口座番号を int のまま扱うオープンアドレス法のハッシュ表で管理し、
+ * ハッシュ関数とサイズ（使用率 50% 以下の 2 のべき乗）も AccountRegistry と共通にしている。
+ * 位置は列に追加した順の番号を想定し、登録後に変更・削除はできない。
+ *
+ * スレッドセーフではない。（登録と検索を同時に行わないこと）
+ */
+public class AccountIndex {
+
+    /** 口座番号の列（positions が 0 のスロットは未使用） */
+    private int[] keys;
+
+    /** 口座番号に対応する位置 + 1 の列 */
+    private int[] positions;
+
+    /** 登録済みの口座数 */
+    private int size;
+
+    /**
+     * 想定口座数を指定して索引を作成する。
+     * @param expectedSize 登録予定の口座数
+     */
+    public AccountIndex(int expectedSize) {
+        int capacity = AccountRegistry.capacityFor(expectedSize);
+        this.keys = new int[capacity];
+        this.positions = new int[capacity];
+    }
+
+    /**
+     * 口座番号に対応する位置を返す。
+     * @param number 口座番号
+     * @return 位置。登録されていない場合は -1
+     */
+    public int get(int number) {
+        int mask = keys.length - 1;
+        int i = AccountRegistry.hash(number) & mask;
+        int position;
+        while ((position = positions[i]) != 0) {
+            if (keys[i] == number) {
+                return position - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 口座番号と位置を登録する。（登録済みの口座番号でないことは呼び出し元で確認すること）
+     * @param number 口座番号
+     * @param position 位置（0 以上）
+     */
+    public void put(int number, int position) {
+        if ((size + 1) * 2L > keys.length) {
+            grow(size + 1);
+        }
+        insert(keys, positions, number, position + 1);
+        size++;
+    }
+
+    /** @return 登録済みの口座数 */
+    public int size() {
+        return size;
+    }
+
+    // ---- 内部処理 ----
+
+    /**
+     * ハッシュ表を拡張する。（使用率 50% 以下を保つ）
+     * @param size 登録後に想定される口座数
+     */
+    private void grow(int size) {
+        int capacity = AccountRegistry.capacityFor(size);
+        int[] newKeys = new int[capacity];
+        int[] newPositions = new int[capacity];
+        for (int j = 0; j < positions.length; j++) {
+            if (positions[j] != 0) {
+                insert(newKeys, newPositions, keys[j], positions[j]);
+            }
+        }
+        keys = newKeys;
+        positions = newPositions;
+    }
+
+    /** 空きスロットまで線形探索して追加する。 */
+    private static void insert(int[] keys, int[] positions, int number, int entry) {
+        int mask = keys.length - 1;
+        int i = AccountRegistry.hash(number) & mask;
+        while (positions[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = number;
+        positions[i] = entry;
+    }
+}
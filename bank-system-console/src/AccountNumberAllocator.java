@@ -0,0 +1,181 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 口座番号の範囲を 1 ビット/番号のビット配列で管理し、重複しない番号を払い出すクラス。
+ *
+ * 払い出す順序は、範囲内の位置 0, 1, 2, ... をフェイステル構造の置換で並べ替えたもの。
+ * そのため番号は連番にならず、同じ位置を 2 度たどることもない。
+ * 乱数で選んで使用済みなら選び直す方式では、空きが少なくなるほど選び直しが増える（使用率 99% で平均 100 回）が、
+ * この方式では、払い出した番号にもう一度当たることはなく、1 件あたりの処理はほぼ一定になる。
+ * （reserve() で外部から登録した番号に当たった場合のみ、次の位置へ進む）
+ *
+ * 複数スレッドから同時に払い出し・登録してよい。
+ * スナップショットには置換の鍵と次の位置のみを保存し、restore() で復元する。
+ * 使用済みのビットは保存せず、復元した口座の番号を reserve() で登録し直して再構成する。
+ */
+public class AccountNumberAllocator {
+
+    /** フェイステル構造の段数 */
+    private static final int ROUNDS = 4;
+
+    /** 範囲の最小値 */
+    private final int min;
+
+    /** 範囲の大きさ */
+    private final int range;
+
+    /** 置換の片側のビット数（置換の定義域は 2^(halfBits * 2) で、range 以上） */
+    private final int halfBits;
+
+    /** 使用済みの番号（min からの位置ごとに 1 ビット） */
+    private final AtomicLongArray used;
+
+    /** 使用済みの番号の件数 */
+    private final AtomicInteger usedCount = new AtomicInteger();
+
+    /** 次にたどる位置 */
+    private final AtomicLong cursor = new AtomicLong();
+
+    /** 置換の鍵（各段の鍵はここから求める） */
+    private volatile long seed;
+
+    /**
+     * 空の状態で作成する。置換の鍵は乱数で決める。
+     * @param min 範囲の最小値
+     * @param range 範囲の大きさ（1 以上）
+     */
+    public AccountNumberAllocator(int min, int range) {
+        if (range < 1) {
+            throw new IllegalArgumentException("range: " + range);
+        }
+        this.min = min;
+        this.range = range;
+        int bits = 64 - Long.numberOfLeadingZeros(range - 1L);
+        this.halfBits = Math.max(1, (bits + 1) / 2);
+        this.used = new AtomicLongArray((range + 63) >>> 6);
+        this.seed = ThreadLocalRandom.current().nextLong();
+    }
+
+    /**
+     * 未使用の番号を 1 つ払い出す。
+     * @return 口座番号
+     * @throws IllegalStateException 範囲内の番号をすべて払い出した場合
+     */
+    public int allocate() {
+        while (true) {
+            long i = cursor.getAndIncrement();
+            if (i >= range) {
+                throw new IllegalStateException("No account number left in range " + min + ".." + (min + range - 1L));
+            }
+            int offset = permute((int) i);
+            if (mark(offset)) {
+                return min + offset;
+            }
+        }
+    }
+
+    /**
+     * 番号を使用済みとして登録する。（CSV・ジャーナルから復元した口座用）
+     * 範囲外の番号は払い出す番号と重複しないため、何もしない。
+     * @param number 口座番号
+     * @return 新たに登録した場合は true。使用済み・範囲外の場合は false
+     */
+    public boolean reserve(int number) {
+        long offset = (long) number - min;
+        return offset >= 0 && offset < range && mark((int) offset);
+    }
+
+    /**
+     * @param number 口座番号
+     * @return 使用済みの場合は true（範囲外は false）
+     */
+    public boolean isUsed(int number) {
+        long offset = (long) number - min;
+        return offset >= 0 && offset < range && (used.get((int) (offset >>> 6)) & (1L << offset)) != 0;
+    }
+
+    /** @return 使用済みの番号の件数 */
+    public int getUsedCount() {
+        return usedCount.get();
+    }
+
+    // ---- 保存・復元用 ----
+
+    /** @return 置換の鍵 */
+    long getSeed() {
+        return seed;
+    }
+
+    /** @return 次にたどる位置 */
+    long getCursor() {
+        return Math.min(cursor.get(), range);
+    }
+
+    /**
+     * 保存した置換の鍵と次の位置を復元する。使用済みの番号は変更しない。
+     * （復元した口座の番号は、口座の生成時に reserve() で登録される）
+     * 起動時の復元用のため、払い出しと同時に呼び出さないこと。
+     * @param seed 置換の鍵
+     * @param cursor 次にたどる位置
+     */
+    void restore(long seed, long cursor) {
+        if (cursor < 0 || cursor > range) {
+            throw new IllegalArgumentException("cursor: " + cursor + ", range: " + range);
+        }
+        this.seed = seed;
+        this.cursor.set(cursor);
+    }
+
+    // ---- 内部処理 ----
+
+    /** 位置のビットを立てる。既に立っていた場合は false */
+    private boolean mark(int offset) {
+        int index = offset >>> 6;
+        long bit = 1L << offset;
+        long old;
+        do {
+            old = used.get(index);
+            if ((old & bit) != 0) {
+                return false;
+            }
+        } while (!used.compareAndSet(index, old, old | bit));
+        usedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 位置 i（0 以上 range 未満）を、同じ範囲の別の位置に 1 対 1 で対応させる。
+     * 定義域 2^(halfBits * 2) のフェイステル置換を、結果が範囲内に入るまで繰り返し適用する（サイクルウォーク）。
+     * 定義域は range の 4 倍未満のため、繰り返しは平均 4 回未満。
+     */
+    private int permute(int i) {
+        long x = i;
+        do {
+            x = feistel(x);
+        } while (x >= range);
+        return (int) x;
+    }
+
+    private long feistel(long x) {
+        long mask = (1L << halfBits) - 1;
+        long left = x >>> halfBits;
+        long right = x & mask;
+        long s = seed;
+        for (int round = 0; round < ROUNDS; round++) {
+            long next = left ^ (mix(right + s + round * 0x9E3779B97F4A7C15L) & mask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    /** 64 ビットの値をかき混ぜる。（SplitMix64 の最終段） */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 口座番号から Bank インスタンスを検索するための口座台帳クラス。
+ * コンソール版・CSV版の両方で共通して使用する。
+ * 口座番号を int のまま扱うオープンアドレス法のハッシュ表で管理し、
+ * 口座数が増えても検索コストがほぼ一定になるようにしている。
+ */
+public class AccountRegistry {
+
+    /** ハッシュ表の最小サイズ（2のべき乗） */
+    private static final int MIN_CAPACITY = 16;
+
+    /** 口座番号の列（values が null のスロットは未使用） */
+    private int[] keys;
+
+    /** 口座番号に対応する Bank インスタンスの列 */
+    private Bank[] values;
+
+    /** 登録順の口座リスト（一覧表示や戻り値用） */
+    private final List<Bank> accounts;
+
+    /**
+     * 既定サイズで空の台帳を作成する。
+     */
+    public AccountRegistry() {
+        this(0);
+    }
+
+    /**
+     * 想定口座数を指定して台帳を作成する。
+     * 一括読み込み時は事前にサイズを確保しておくことで、途中の再ハッシュを防ぐ。
+     * @param expectedSize 登録予定の口座数
+     */
+    public AccountRegistry(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        this.keys = new int[capacity];
+        this.values = new Bank[capacity];
+        this.accounts = new ArrayList<>(Math.max(expectedSize, 0));
+    }
+
+    /**
+     * 口座を台帳に登録する。
+     * @param bank 登録する Bank インスタンス
+     * @return 登録できた場合は true。同じ口座番号が既に登録済みの場合は false。
+     */
+    public boolean register(Bank bank) {
+        ensureCapacity(accounts.size() + 1);
+        int number = bank.getAccount().getAccountNumber();
+        int mask = keys.length - 1;
+        int i = hash(number) & mask;
+
+        // 空きスロットまで線形探索する
+        while (values[i] != null) {
+            if (keys[i] == number) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = number;
+        values[i] = bank;
+        accounts.add(bank);
+        return true;
+    }
+
+    /**
+     * 複数の口座をまとめて登録する。
+     * 先に必要なサイズを確保してから登録する。
+     * @param banks 登録する Bank インスタンスの集合
+     */
+    public void registerAll(Collection<Bank> banks) {
+        ensureCapacity(accounts.size() + banks.size());
+        for (Bank b : banks) {
+            register(b);
+        }
+    }
+
+    /**
+     * 指定した口座番号の Bank インスタンスを返す。
+     * @param number 検索する口座番号
+     * @return 該当する Bank インスタンス。見つからない場合は null。
+     */
+    public Bank find(int number) {
+        long start = Metrics.start();
+        Bank bank = lookup(number);
+        Metrics.record(Metrics.Timer.ACCOUNT_LOOKUP, start);
+        return bank;
+    }
+
+    /**
+     * 口座番号からハッシュ表を探索する。
+     */
+    private Bank lookup(int number) {
+        int mask = keys.length - 1;
+        int i = hash(number) & mask;
+        Bank b;
+        while ((b = values[i]) != null) {
+            if (keys[i] == number) {
+                return b;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * 登録済みの口座数を返す。
+     * @return 口座数
+     */
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * 登録順の口座一覧を返す。（読み取り専用）
+     * @return Bank インスタンスのリスト
+     */
+    public List<Bank> getAccounts() {
+        return Collections.unmodifiableList(accounts);
+    }
+
+    /** 登録済みの口座をすべて破棄する。 */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        accounts.clear();
+    }
+
+    // ---- 内部処理 ----
+
+    /**
+     * 必要に応じてハッシュ表を拡張する。（使用率 50% 以下を保つ）
+     * @param size 登録後に想定される口座数
+     */
+    private void ensureCapacity(int size) {
+        if (size * 2L <= keys.length) {
+            return;
+        }
+        int[] oldKeys = keys;
+        Bank[] oldValues = values;
+        int capacity = capacityFor(size);
+        keys = new int[capacity];
+        values = new Bank[capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] == null) {
+                continue;
+            }
+            int i = hash(oldKeys[j]) & mask;
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    /**
+     * 口座数に対して使用率 50% 以下となる 2 のべき乗サイズを求める。（AccountIndex でも使用する）
+     * @param size 口座数
+     * @return ハッシュ表のサイズ
+     */
+    static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 2L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * 口座番号を分散させるためのハッシュ関数。
+     * CSV版の連番（1, 2, 3...）でも偏らないよう上位ビットを混ぜる。（AccountIndex でも使用する）
+     * @param number 口座番号
+     * @return ハッシュ値
+     */
+    static int hash(int number) {
+        int h = number * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,366 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 大量の口座（数百万件以上）を、口座ごとのオブジェクトを生成せずに保持する口座表。
+ * 口座番号・残高・名義の番号を列ごとの配列で保持し、口座は配列の位置（スロット）で指定する。
+ * 入金・出金・振込もスロットを指定して実行するため、Bank / Account / 名義の String / 取引履歴のオブジェクトを持たない。
+ * 口座数が増えても GC が走査するオブジェクトの数は増えず、1 口座あたりのメモリ使用量は
+ * 約 16 バイト + 口座番号の索引（使用率 50% 以下）+ 名義の辞書のみになる。
+ *
+ * 名義は辞書で符号化する。同じ名義は 1 回だけ UTF-8 のバイト列として 1 つの配列に連結して保持し、
+ * 口座には辞書の番号のみを持つ。（名義の String は getHolderName で参照した時のみ生成する）
+ *
+ * 入金・出金・振込の判定条件と結果コード（Constants.RESULT_*）は Bank と同じ。取引履歴は保持しない。
+ * 集計先（TransactionStatistics）を設定すると、Bank と同様に入出金・振込のたびに同じロックの中で集計に加える。
+ * CSV からの読み込みと取引の実行は BankCsvOperation（loadAccountTable / loadData）で行う。
+ * 入出金・振込・残高の参照は複数スレッドから同時に呼び出せる。ロックは Constants.ACCOUNT_TABLE_LOCK_STRIPES 個を
+ * スロット番号で共有し、振込は 2 つのロックを番号の小さい順に取得するため、デッドロックしない。
+ * 口座の開設（open）は AccountRegistry の登録と同様にスレッドセーフではないため、取引を始める前に行うこと。
+ */
+public class AccountTable {
+
+    /** 配列の最小サイズ（2のべき乗） */
+    private static final int MIN_CAPACITY = 16;
+
+    /** スロットごとの口座番号 */
+    private int[] numbers;
+
+    /** スロットごとの残高（更新・参照はスロットのロック内で行う） */
+    private long[] balances;
+
+    /** スロットごとの名義の番号（辞書の位置） */
+    private int[] nameIds;
+
+    /** 口座数（使用中のスロット数） */
+    private int size;
+
+    /** 口座番号からスロットを求める索引 */
+    private final AccountIndex index;
+
+    /** 名義の UTF-8 のバイト列を連結した配列 */
+    private byte[] nameBytes = new byte[MIN_CAPACITY * 8];
+
+    /** 名義ごとの nameBytes 上の開始位置（名義 i は nameOffsets[i] から nameOffsets[i + 1] まで） */
+    private int[] nameOffsets = new int[MIN_CAPACITY + 1];
+
+    /** 名義の種類数 */
+    private int nameCount;
+
+    /** 名義の索引（オープンアドレス法。名義の番号 + 1、0 の位置は未使用） */
+    private int[] nameIndex = new int[MIN_CAPACITY * 2];
+
+    /** 入出金・振込で使用するロック */
+    private final Object[] locks = new Object[Constants.ACCOUNT_TABLE_LOCK_STRIPES];
+
+    /** 取引の集計先（null の場合は集計しない） */
+    private volatile TransactionStatistics statistics;
+
+    /**
+     * 既定サイズで空の口座表を作成する。
+     */
+    public AccountTable() {
+        this(0);
+    }
+
+    /**
+     * 想定口座数を指定して口座表を作成する。
+     * 一括読み込み時は事前にサイズを確保しておくことで、途中の配列の拡張と再ハッシュを防ぐ。
+     * @param expectedSize 開設予定の口座数
+     */
+    public AccountTable(int expectedSize) {
+        int capacity = Math.max(expectedSize, MIN_CAPACITY);
+        this.numbers = new int[capacity];
+        this.balances = new long[capacity];
+        this.nameIds = new int[capacity];
+        this.index = new AccountIndex(capacity);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 口座を開設する。（取引を始める前に呼び出すこと）
+     * @param holderName 口座名義人
+     * @param initialBalance 初期残高
+     * @param accountNumber 口座番号
+     * @return 口座のスロット。同じ口座番号が既に開設済みの場合は -1
+     */
+    public int open(String holderName, long initialBalance, int accountNumber) {
+        if (slotOf(accountNumber) >= 0) {
+            return -1;
+        }
+        if (size == numbers.length) {
+            int capacity = numbers.length * 2;
+            numbers = Arrays.copyOf(numbers, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+        }
+        int slot = size++;
+        numbers[slot] = accountNumber;
+        balances[slot] = initialBalance;
+        nameIds[slot] = nameId(holderName);
+        index.put(accountNumber, slot);
+        return slot;
+    }
+
+    /**
+     * 口座番号から口座のスロットを返す。
+     * @param accountNumber 口座番号
+     * @return スロット。見つからない場合は -1
+     */
+    public int slotOf(int accountNumber) {
+        long start = Metrics.start();
+        int slot = index.get(accountNumber);
+        Metrics.record(Metrics.Timer.ACCOUNT_LOOKUP, start);
+        return slot;
+    }
+
+    /**
+     * 取引の集計先を設定し、開設済みの口座の残高を初期預金として集計に加える。
+     * 口座の開設後、取引を始める前に呼び出すこと。
+     * @param statistics 集計先。null の場合は集計しない
+     */
+    public void setStatistics(TransactionStatistics statistics) {
+        if (statistics != null) {
+            int today = Bank.today();
+            for (int slot = 0; slot < size; slot++) {
+                statistics.record(numbers[slot], today, Constants.TRANSACTION_CODE_INITIAL, balances[slot], balances[slot]);
+            }
+        }
+        this.statistics = statistics;
+    }
+
+    /** @return 口座数 */
+    public int size() {
+        return size;
+    }
+
+    /** @return 名義の種類数 */
+    public int getHolderNameCount() {
+        return nameCount;
+    }
+
+    /**
+     * 口座番号を返す。
+     * @param slot 口座のスロット
+     * @return 口座番号
+     */
+    public int getAccountNumber(int slot) {
+        checkSlot(slot);
+        return numbers[slot];
+    }
+
+    /**
+     * 口座名義人を返す。（呼び出すたびに辞書のバイト列から String を生成する）
+     * @param slot 口座のスロット
+     * @return 口座名義
+     */
+    public String getHolderName(int slot) {
+        checkSlot(slot);
+        int id = nameIds[slot];
+        return new String(nameBytes, nameOffsets[id], nameOffsets[id + 1] - nameOffsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 現在の残高を返す。
+     * @param slot 口座のスロット
+     * @return 現在の残高
+     */
+    public long getBalance(int slot) {
+        checkSlot(slot);
+        synchronized (lockFor(slot)) {
+            return balances[slot];
+        }
+    }
+
+    /**
+     * 全口座の残高の合計を返す。（口座ごとにロックを取得するため、取引中の場合はある時点の合計とは限らない）
+     * @return 残高の合計
+     */
+    public long totalBalance() {
+        long total = 0;
+        for (int slot = 0; slot < size; slot++) {
+            total += getBalance(slot);
+        }
+        return total;
+    }
+
+    // ---- 入出金処理 ----
+
+    /**
+     * 入金処理。金額が不正な場合、残高が上限を超える場合は失敗する。
+     * @param slot 口座のスロット
+     * @param amount 金額
+     * @return 結果コード（Constants.RESULT_*）
+     */
+    public byte deposit(int slot, long amount) {
+        checkSlot(slot);
+        long start = Metrics.start();
+        if (amount <= 0) {
+            Metrics.record(Metrics.Timer.DEPOSIT, start, Metrics.Counter.INVALID_AMOUNT);
+            return Constants.RESULT_INVALID_AMOUNT;
+        }
+        synchronized (lockFor(slot)) {
+            if (Bank.addOverflows(balances[slot], amount)) {
+                Metrics.record(Metrics.Timer.DEPOSIT, start, Metrics.Counter.BALANCE_OVERFLOW);
+                return Constants.RESULT_BALANCE_OVERFLOW;
+            }
+            balances[slot] += amount;
+            record(slot, Constants.TRANSACTION_CODE_DEPOSIT, amount);
+        }
+        Metrics.record(Metrics.Timer.DEPOSIT, start, Metrics.Counter.DEPOSIT_SUCCESS);
+        return Constants.RESULT_SUCCESS;
+    }
+
+    /**
+     * 出金処理。金額が不正な場合、残高不足の場合は失敗する。
+     * @param slot 口座のスロット
+     * @param amount 金額
+     * @return 結果コード（Constants.RESULT_*）
+     */
+    public byte withdraw(int slot, long amount) {
+        checkSlot(slot);
+        long start = Metrics.start();
+        if (amount <= 0) {
+            Metrics.record(Metrics.Timer.WITHDRAW, start, Metrics.Counter.INVALID_AMOUNT);
+            return Constants.RESULT_INVALID_AMOUNT;
+        }
+        synchronized (lockFor(slot)) {
+            if (balances[slot] < amount) {
+                Metrics.record(Metrics.Timer.WITHDRAW, start, Metrics.Counter.INSUFFICIENT_BALANCE);
+                return Constants.RESULT_INSUFFICIENT_BALANCE;
+            }
+            balances[slot] -= amount;
+            record(slot, Constants.TRANSACTION_CODE_WITHDRAW, amount);
+        }
+        Metrics.record(Metrics.Timer.WITHDRAW, start, Metrics.Counter.WITHDRAW_SUCCESS);
+        return Constants.RESULT_SUCCESS;
+    }
+
+    /**
+     * 振込処理。振込元から振込先へ不可分に送金する。
+     * 金額が不正な場合、振込先が振込元と同じ場合、残高不足の場合、振込先の残高が上限を超える場合は失敗する。
+     * @param from 振込元の口座のスロット
+     * @param to 振込先の口座のスロット
+     * @param amount 金額
+     * @return 結果コード（Constants.RESULT_*）
+     */
+    public byte transfer(int from, int to, long amount) {
+        checkSlot(from);
+        checkSlot(to);
+        long start = Metrics.start();
+        if (amount <= 0 || from == to) {
+            Metrics.record(Metrics.Timer.TRANSFER, start, Metrics.Counter.INVALID_AMOUNT);
+            return Constants.RESULT_INVALID_AMOUNT;
+        }
+        int mask = locks.length - 1;
+        Object first = locks[Math.min(from & mask, to & mask)];
+        Object second = locks[Math.max(from & mask, to & mask)];
+        synchronized (first) {
+            synchronized (second) {
+                if (balances[from] < amount) {
+                    Metrics.record(Metrics.Timer.TRANSFER, start, Metrics.Counter.INSUFFICIENT_BALANCE);
+                    return Constants.RESULT_INSUFFICIENT_BALANCE;
+                }
+                if (Bank.addOverflows(balances[to], amount)) {
+                    Metrics.record(Metrics.Timer.TRANSFER, start, Metrics.Counter.BALANCE_OVERFLOW);
+                    return Constants.RESULT_BALANCE_OVERFLOW;
+                }
+                balances[from] -= amount;
+                balances[to] += amount;
+                record(from, Constants.TRANSACTION_CODE_TRANSFER_OUT, amount);
+                record(to, Constants.TRANSACTION_CODE_TRANSFER_IN, amount);
+            }
+        }
+        Metrics.record(Metrics.Timer.TRANSFER, start, Metrics.Counter.TRANSFER_SUCCESS);
+        return Constants.RESULT_SUCCESS;
+    }
+
+    // ---- 内部処理 ----
+
+    /** スロットが開設済みの口座か確認する。 */
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("slot: " + slot + " size: " + size);
+        }
+    }
+
+    /**
+     * 集計先が設定されていれば、取引を集計に加える。（ロック内で、残高を変更した後に呼び出す）
+     */
+    private void record(int slot, int type, long amount) {
+        TransactionStatistics s = statistics;
+        if (s != null) {
+            s.record(numbers[slot], Bank.today(), type, amount, balances[slot]);
+        }
+    }
+
+    /** スロットの入出金に使用するロックを返す。 */
+    private Object lockFor(int slot) {
+        return locks[slot & (locks.length - 1)];
+    }
+
+    /**
+     * 名義の番号を返す。辞書にない場合は追加する。
+     */
+    private int nameId(String holderName) {
+        byte[] bytes = holderName.getBytes(StandardCharsets.UTF_8);
+        int mask = nameIndex.length - 1;
+        int i = hashBytes(bytes, 0, bytes.length) & mask;
+        int entry;
+        while ((entry = nameIndex[i]) != 0) {
+            int id = entry - 1;
+            if (Arrays.equals(nameBytes, nameOffsets[id], nameOffsets[id + 1], bytes, 0, bytes.length)) {
+                return id;
+            }
+            i = (i + 1) & mask;
+        }
+
+        int id = nameCount++;
+        int offset = nameOffsets[id];
+        if (offset + bytes.length > nameBytes.length) {
+            nameBytes = Arrays.copyOf(nameBytes, Math.max(nameBytes.length * 2, offset + bytes.length));
+        }
+        System.arraycopy(bytes, 0, nameBytes, offset, bytes.length);
+        if (id + 2 > nameOffsets.length) {
+            nameOffsets = Arrays.copyOf(nameOffsets, nameOffsets.length * 2);
+        }
+        nameOffsets[id + 1] = offset + bytes.length;
+        nameIndex[i] = id + 1;
+        if (nameCount * 2L > nameIndex.length) {
+            rehashNames();
+        }
+        return id;
+    }
+
+    /**
+     * 名義の索引を 2 倍のサイズで作り直す。（使用率 50% 以下を保つ）
+     */
+    private void rehashNames() {
+        int[] newIndex = new int[nameIndex.length * 2];
+        int mask = newIndex.length - 1;
+        for (int id = 0; id < nameCount; id++) {
+            int i = hashBytes(nameBytes, nameOffsets[id], nameOffsets[id + 1]) & mask;
+            while (newIndex[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            newIndex[i] = id + 1;
+        }
+        nameIndex = newIndex;
+    }
+
+    /**
+     * 名義のバイト列のハッシュ関数。（31 倍の和のビットを口座番号と同じ関数で混ぜる）
+     * @param bytes バイト列
+     * @param from 開始位置
+     * @param to 終了位置（含まない）
+     */
+    private static int hashBytes(byte[] bytes, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + bytes[i];
+        }
+        return AccountRegistry.hash(h);
+    }
+}
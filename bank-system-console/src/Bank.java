@@ -1,115 +1,525 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
-import java.util.Set;
 
 /**
- * 口座管理と入出金処理を担当するクラス。
+ * 口座管理と入出金・振込処理を担当するクラス。
  * このクラスに業務ロジックをまとめることで整合性を確保する。
+ *
+ * 複数スレッドから同時に呼び出しても安全に動作する。
+ * 入出金は口座（Bank インスタンス）ごとのロックで保護し、
+ * 残高チェック・残高更新・履歴追加を 1 つの操作として実行する。
+ * ロックは口座単位のため、異なる口座への操作は互いに待たされない。
+ * 振込は振込元・振込先の両方のロックを口座番号の小さい順に取得するため、
+ * 逆向きの振込が同時に実行されてもデッドロックしない。
+ * 残高と履歴をまとめて参照する場合は、Bank インスタンスで synchronized すること。
+ *
+ * 金額・残高は円単位の long で扱う。入金後の残高が long の範囲を超える場合は、
+ * 桁あふれさせずに取引を拒否する（RESULT_BALANCE_OVERFLOW）。
  */
 public class Bank {
 
     /**
-     * このアプリ実行中に払い出された口座番号を保持する集合。
-     * 再起動するとクリアされるため永続化は行わない。
+     * 口座番号の払い出しと、使用済みの番号の管理。
+     * 複数スレッドから同時に口座を開設しても番号は重複しない。
+     * 状態はスナップショット（BankSnapshot）に保存し、再起動後も同じ順序で払い出しを続ける。
      */
-    private static final Set<Integer> usedNumbers = new HashSet<>();
+    private static final AccountNumberAllocator numbers =
+        new AccountNumberAllocator(Constants.ACCOUNT_MIN, Constants.ACCOUNT_RANGE);
+
+    /**
+     * 口座開設・入出金・振込の記録先。（未設定の場合は記録しない）
+     * 入出金・振込は残高を変更する前に記録する。
+     */
+    private static volatile TransactionJournal journal;
+
+    /** 取引の集計先。（未設定の場合は集計しない） */
+    private static volatile TransactionStatistics statistics;
+
+    /** 省略した取引履歴の件数のメッセージ（解析済み） */
+    private static final MessageTemplate HISTORY_OMITTED_MESSAGE =
+        MessageTemplate.compile(Constants.MSG_HISTORY_OMITTED_FORMAT);
 
     /** この銀行インスタンスが保持する口座データ */
     private Account account;
 
-    /** この口座の取引履歴 */
-    private List<Transaction> history;
+    /** この口座の取引履歴（列ごとの配列で保持） */
+    private TransactionHistory history;
+
+    /**
+     * この口座に反映済みの最後のジャーナルの記録の通し番号（記録していない場合は 0）。
+     * スナップショットからの復元時に、反映済みの記録を読み飛ばすために使用する。
+     */
+    private long journalSeq;
 
     /**
      * 名義と初期残高を受け取り、重複しない口座番号を自動生成して口座を作成する。
      */
-    public Bank(String holderName, int initialBalance) {
-        int number = generateUniqueNumber();
+    public Bank(String holderName, long initialBalance) {
+        int number = numbers.allocate();
         this.account = new Account(holderName, number, initialBalance);
-        this.history = new ArrayList<>();
-        history.add(new Transaction(Constants.TRANSACTION_INITIAL, initialBalance, initialBalance));
+        this.history = new TransactionHistory();
+        addHistory(today(), Constants.TRANSACTION_CODE_INITIAL, initialBalance);
+        recordOpening();
     }
     
     /**
      * CSVファイルからの復元用コンストラクタ。
      * 既存の口座番号を引き継いでインスタンスを生成する。
      */
-    public Bank(String holderName, int initialBalance, int accountNumber) {
+    public Bank(String holderName, long initialBalance, int accountNumber) {
+        this(holderName, initialBalance, accountNumber, today(), 0);
+    }
+
+    /**
+     * ジャーナルからの復元用コンストラクタ。
+     * 口座番号と開設日を引き継いでインスタンスを生成する。（ジャーナルには記録しない）
+     * @param journalSeq 口座開設の記録の通し番号
+     */
+    Bank(String holderName, long initialBalance, int accountNumber, int openedEpochDay, long journalSeq) {
         // 読み込んだ番号を使用済みリストに登録し、重複を防ぐ
-        usedNumbers.add(accountNumber);
+        numbers.reserve(accountNumber);
         this.account = new Account(holderName, accountNumber, initialBalance);
-        this.history = new ArrayList<>();
-        history.add(new Transaction(Constants.TRANSACTION_INITIAL, initialBalance, initialBalance));
+        this.history = new TransactionHistory();
+        history.add(openedEpochDay, Constants.TRANSACTION_CODE_INITIAL, initialBalance, initialBalance);
+        this.journalSeq = journalSeq;
+    }
+
+    /**
+     * スナップショットからの復元用コンストラクタ。
+     * 残高と取引履歴をそのまま引き継ぐ。（ジャーナルには記録しない）
+     */
+    Bank(Account account, TransactionHistory history, long journalSeq) {
+        numbers.reserve(account.getAccountNumber());
+        this.account = account;
+        this.history = history;
+        this.journalSeq = journalSeq;
+    }
+
+    /**
+     * 口座開設・入出金の記録先を設定する。
+     * 復元（TransactionJournal.recover）が終わってから設定すること。
+     * @param journal 記録先。null の場合は記録しない
+     */
+    public static void setJournal(TransactionJournal journal) {
+        Bank.journal = journal;
+    }
+
+    /**
+     * 取引の集計先を設定する。設定後の口座開設（自動採番の場合）・入出金・振込・ジャーナルの再実行を集計に加える。
+     * CSV・ジャーナル・スナップショットから読み込んだ口座は、読み込みが終わってから
+     * TransactionStatistics.addAccounts で集計に加えてから設定すること。
+     * @param statistics 集計先。null の場合は集計しない
+     */
+    public static void setStatistics(TransactionStatistics statistics) {
+        Bank.statistics = statistics;
+    }
+
+    /**
+     * この口座の開設をジャーナルに記録する。（記録先が未設定の場合は何もしない）
+     * CSVから読み込んだ口座は、すべての口座の読み込みに成功してから記録する。
+     */
+    synchronized void recordOpening() {
+        TransactionJournal j = journal;
+        if (j == null) {
+            return;
+        }
+        // 履歴の先頭は必ず初期預金
+        TransactionHistory.Cursor c = history.cursor();
+        c.next();
+        journalSeq = j.appendOpen(account.getAccountNumber(), account.getHolderName(), c.amount(), c.epochDay());
+    }
+
+    /**
+     * 反映済みの最後のジャーナルの記録の通し番号を返す。
+     * 残高・取引履歴と合わせて参照する場合は、Bank インスタンスで synchronized すること。
+     */
+    long getJournalSeq() {
+        return journalSeq;
     }
 
     public Account getAccount() {
         return account;
     }
 
+    /**
+     * 取引履歴を Transaction のリストとして返す。（読み取り専用）
+     * 要素を取り出すたびに Transaction を生成するため、表示などには getTransactionHistory のカーソルを使用すること。
+     * 他のスレッドが入出金中の可能性がある場合は、Bank インスタンスで synchronized して参照すること。
+     */
     public List<Transaction> getHistory() {
-        return history;
+        return history.asList();
+    }
+
+    /**
+     * 最新の N 件の取引履歴を古い順に返す。
+     * @param count 件数の上限
+     * @return 取引履歴（呼び出し時点の内容のコピー）
+     */
+    public synchronized List<Transaction> getRecentHistory(int count) {
+        return toList(history.recent(count));
+    }
+
+    /**
+     * 位置 start から最大 count 件の取引履歴を返す。
+     * 履歴は追加のみのため、次のページは start + 戻り値の件数の位置から取得できる。
+     * @param start 先頭の位置（0 から始まる。0 は初期預金）
+     * @param count 件数の上限
+     * @return 取引履歴（呼び出し時点の内容のコピー）
+     */
+    public synchronized List<Transaction> getHistoryPage(int start, int count) {
+        return toList(history.page(start, count));
     }
 
     /**
-     * ランダムな口座番号を生成し、重複しない番号を返す。
+     * 取引日が from から to まで（両端を含む）の取引履歴を返す。
+     * 取引日の索引を二分探索するため、履歴の件数が多くても期間外の履歴は読み込まない。
+     * @param from 期間の開始日
+     * @param to 期間の終了日
+     * @return 取引履歴（呼び出し時点の内容のコピー）
      */
-    private int generateUniqueNumber() {
-        Random rand = new Random();
-        int num;
+    public synchronized List<Transaction> getHistoryBetween(LocalDate from, LocalDate to) {
+        return toList(history.between(from, to));
+    }
 
-        do {
-            num = rand.nextInt(Constants.ACCOUNT_RANGE) + Constants.ACCOUNT_MIN;
-        } while (usedNumbers.contains(num));
+    /** カーソルの範囲の履歴を Transaction のリストに変換する。 */
+    private static List<Transaction> toList(TransactionHistory.Cursor c) {
+        List<Transaction> list = new ArrayList<>(c.end() - c.start());
+        while (c.next()) {
+            list.add(new Transaction(LocalDate.ofEpochDay(c.epochDay()), TransactionHistory.typeName(c.type()),
+                c.amount(), c.balanceSnapshot()));
+        }
+        return list;
+    }
 
-        usedNumbers.add(num);
-        return num;
+    /**
+     * 取引履歴を列形式のまま返す。
+     * 他のスレッドが入出金中の可能性がある場合は、Bank インスタンスで synchronized して参照すること。
+     */
+    public TransactionHistory getTransactionHistory() {
+        return history;
+    }
+
+    /**
+     * 口座番号の払い出しを管理するインスタンスを返す。（スナップショットの保存・復元用）
+     */
+    static AccountNumberAllocator getNumberAllocator() {
+        return numbers;
     }
 
     // ---- 入出金処理 ----
 
-    public boolean deposit(int amount) {
+    /**
+     * 入金処理。金額が不正な場合、残高が上限を超える場合は false を返す。
+     */
+    public synchronized boolean deposit(long amount) {
+        return postDeposit(amount, today()) == Constants.RESULT_SUCCESS;
+    }
+
+    /**
+     * 出金処理。残高不足の場合は false を返す。
+     */
+    public synchronized boolean withdraw(long amount) {
+        return postWithdraw(amount, today()) == Constants.RESULT_SUCCESS;
+    }
+
+    /**
+     * 入出金をまとめて実行する。（給与振込など、同じ口座への大量の取引用）
+     * ロックの取得と取引日の取得は 1 回のみで、各取引は配列の順に deposit / withdraw と同じ条件で実行する。
+     * 取引履歴は取引ごとに 1 件追加する。
+     * @param types 取引種別コード（Constants.TRANSACTION_CODE_DEPOSIT / TRANSACTION_CODE_WITHDRAW）
+     * @param amounts 金額
+     * @param offset 開始位置
+     * @param count 件数
+     * @param results 取引ごとの結果（Constants.RESULT_*）の格納先。types と同じ位置に格納する
+     * @return 成功した件数
+     * @throws IllegalArgumentException 入出金以外の取引種別コードが含まれる場合（取引は実行しない）
+     */
+    public synchronized int applyBatch(byte[] types, long[] amounts, int offset, int count, byte[] results) {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            if (types[i] != Constants.TRANSACTION_CODE_DEPOSIT && types[i] != Constants.TRANSACTION_CODE_WITHDRAW) {
+                throw new IllegalArgumentException("type: " + types[i]);
+            }
+        }
+
+        int today = today();
+        int succeeded = 0;
+        for (int i = offset; i < end; i++) {
+            byte result = types[i] == Constants.TRANSACTION_CODE_DEPOSIT
+                ? postDeposit(amounts[i], today)
+                : postWithdraw(amounts[i], today);
+            results[i] = result;
+            if (result == Constants.RESULT_SUCCESS) {
+                succeeded++;
+            }
+        }
+        return succeeded;
+    }
+
+    /**
+     * 複数口座の入出金をまとめて実行する。
+     * 連続する同じ口座の取引を 1 つにまとめ、口座ごとの applyBatch で実行する。
+     * 同じ口座の取引は配列の順に実行するが、異なる口座の取引をまとめて不可分に実行するものではない。
+     * @param targets 取引ごとの対象口座
+     * @param types 取引種別コード（Constants.TRANSACTION_CODE_DEPOSIT / TRANSACTION_CODE_WITHDRAW）
+     * @param amounts 金額
+     * @param count 件数（先頭から）
+     * @param results 取引ごとの結果（Constants.RESULT_*）の格納先
+     * @return 成功した件数
+     * @throws IllegalArgumentException 入出金以外の取引種別コードが含まれる場合（取引は実行しない）
+     */
+    public static int applyBatch(Bank[] targets, byte[] types, long[] amounts, int count, byte[] results) {
+        for (int i = 0; i < count; i++) {
+            if (types[i] != Constants.TRANSACTION_CODE_DEPOSIT && types[i] != Constants.TRANSACTION_CODE_WITHDRAW) {
+                throw new IllegalArgumentException("type: " + types[i]);
+            }
+        }
+
+        int succeeded = 0;
+        int start = 0;
+        while (start < count) {
+            Bank target = targets[start];
+            int end = start + 1;
+            while (end < count && targets[end] == target) {
+                end++;
+            }
+            succeeded += target.applyBatch(types, amounts, start, end - start, results);
+            start = end;
+        }
+        return succeeded;
+    }
+
+    /**
+     * 振込処理。この口座から振込先の口座へ、不可分に送金する。
+     * 振込元・振込先のロックを口座番号の小さい順に取得し、両方の残高と履歴を 1 つの操作として更新する。
+     * 失敗の理由は、両方のロック内で判定した結果コードで返す。（振込先がこの口座と同じ場合は金額不正とする）
+     * @param to 振込先の口座
+     * @param amount 金額
+     * @return 結果コード（Constants.RESULT_SUCCESS / INVALID_AMOUNT / INSUFFICIENT_BALANCE / BALANCE_OVERFLOW）
+     */
+    public byte transfer(Bank to, long amount) {
+        if (to == this) {
+            Metrics.record(Metrics.Timer.TRANSFER, Metrics.start(), Metrics.Counter.INVALID_AMOUNT);
+            return Constants.RESULT_INVALID_AMOUNT;
+        }
+        Bank first = account.getAccountNumber() < to.account.getAccountNumber() ? this : to;
+        Bank second = first == this ? to : this;
+        synchronized (first) {
+            synchronized (second) {
+                return postTransfer(to, amount, today());
+            }
+        }
+    }
+
+    /**
+     * 振込を 1 件実行する。（振込元・振込先の両方のロック内で呼び出す）
+     * @return 結果コード
+     */
+    private byte postTransfer(Bank to, long amount, int today) {
+        long start = Metrics.start();
+
         // 金額が業務上有効かチェック (1以上)
         if (amount <= 0) {
-            return false;
+            Metrics.record(Metrics.Timer.TRANSFER, start, Metrics.Counter.INVALID_AMOUNT);
+            return Constants.RESULT_INVALID_AMOUNT;
         }
 
+        if (account.getBalance() < amount) {
+            Metrics.record(Metrics.Timer.TRANSFER, start, Metrics.Counter.INSUFFICIENT_BALANCE);
+            return Constants.RESULT_INSUFFICIENT_BALANCE;
+        }
+
+        if (addOverflows(to.account.getBalance(), amount)) {
+            Metrics.record(Metrics.Timer.TRANSFER, start, Metrics.Counter.BALANCE_OVERFLOW);
+            return Constants.RESULT_BALANCE_OVERFLOW;
+        }
+
+        // 振込元・振込先の両方を 1 件の記録で記録する
+        TransactionJournal j = journal;
+        if (j != null) {
+            long seq = j.appendTransfer(account.getAccountNumber(), to.account.getAccountNumber(), amount, today);
+            journalSeq = seq;
+            to.journalSeq = seq;
+        }
+        account.subtractBalance(amount);
+        addHistory(today, Constants.TRANSACTION_CODE_TRANSFER_OUT, amount);
+        to.account.addBalance(amount);
+        to.addHistory(today, Constants.TRANSACTION_CODE_TRANSFER_IN, amount);
+        Metrics.record(Metrics.Timer.TRANSFER, start, Metrics.Counter.TRANSFER_SUCCESS);
+        return Constants.RESULT_SUCCESS;
+    }
+
+    /**
+     * 入金を 1 件実行する。（ロック内で呼び出す）
+     * @return 結果コード
+     */
+    private byte postDeposit(long amount, int today) {
+        long start = Metrics.start();
+
+        // 金額が業務上有効かチェック (1以上)
+        if (amount <= 0) {
+            Metrics.record(Metrics.Timer.DEPOSIT, start, Metrics.Counter.INVALID_AMOUNT);
+            return Constants.RESULT_INVALID_AMOUNT;
+        }
+
+        // 入金後の残高が上限を超えないかチェック
+        if (addOverflows(account.getBalance(), amount)) {
+            Metrics.record(Metrics.Timer.DEPOSIT, start, Metrics.Counter.BALANCE_OVERFLOW);
+            return Constants.RESULT_BALANCE_OVERFLOW;
+        }
+
+        journal(TransactionJournal.RECORD_DEPOSIT, amount, today);
         account.addBalance(amount);
-        history.add(new Transaction(Constants.TRANSACTION_DEPOSIT, amount, account.getBalance()));
-        return true;
+        addHistory(today, Constants.TRANSACTION_CODE_DEPOSIT, amount);
+        Metrics.record(Metrics.Timer.DEPOSIT, start, Metrics.Counter.DEPOSIT_SUCCESS);
+        return Constants.RESULT_SUCCESS;
     }
 
     /**
-     * 出金処理。残高不足の場合は false を返す。
+     * 出金を 1 件実行する。（ロック内で呼び出す）
+     * @return 結果コード
      */
-    public boolean withdraw(int amount) {
+    private byte postWithdraw(long amount, int today) {
+        long start = Metrics.start();
+
         // 金額が業務上有効かチェック (1以上)
         if (amount <= 0) {
-            return false;
+            Metrics.record(Metrics.Timer.WITHDRAW, start, Metrics.Counter.INVALID_AMOUNT);
+            return Constants.RESULT_INVALID_AMOUNT;
         }
         
         // 2. 残高不足のチェック
         if (account.getBalance() < amount) {
-            return false;
+            Metrics.record(Metrics.Timer.WITHDRAW, start, Metrics.Counter.INSUFFICIENT_BALANCE);
+            return Constants.RESULT_INSUFFICIENT_BALANCE;
         }
         
+        journal(TransactionJournal.RECORD_WITHDRAW, amount, today);
         account.subtractBalance(amount);
-        history.add(new Transaction(Constants.TRANSACTION_WITHDRAW, amount, account.getBalance()));
-        return true;
+        addHistory(today, Constants.TRANSACTION_CODE_WITHDRAW, amount);
+        Metrics.record(Metrics.Timer.WITHDRAW, start, Metrics.Counter.WITHDRAW_SUCCESS);
+        return Constants.RESULT_SUCCESS;
     }
 
-    /** 取引履歴を表示する */
-    public void printHistory() {
-        System.out.println(Constants.MSG_HISTORY_HEADER);
+    /**
+     * ジャーナルに記録済みの入出金・振込を反映する。（復元用。金額・残高のチェックは行わない）
+     * 振込は振込元・振込先のそれぞれで呼び出す。
+     * @param type 取引種別コード（Constants.TRANSACTION_CODE_DEPOSIT / WITHDRAW / TRANSFER_OUT / TRANSFER_IN）
+     * @param amount 金額
+     * @param epochDay 取引日（1970-01-01 からの日数）
+     * @param seq 記録の通し番号
+     */
+    synchronized void replay(byte type, long amount, int epochDay, long seq) {
+        journalSeq = seq;
+        if (type == Constants.TRANSACTION_CODE_DEPOSIT || type == Constants.TRANSACTION_CODE_TRANSFER_IN) {
+            account.addBalance(amount);
+        } else {
+            account.subtractBalance(amount);
+        }
+        addHistory(epochDay, type, amount);
+    }
 
-        if (history.isEmpty()) {
-            System.out.println(Constants.MSG_NO_HISTORY);
-            return;
+    /**
+     * 取引履歴に 1 件追加し、集計先が設定されていれば集計に加える。（ロック内で、残高を変更した後に呼び出す）
+     */
+    private void addHistory(int epochDay, int type, long amount) {
+        long balance = account.getBalance();
+        history.add(epochDay, type, amount, balance);
+        TransactionStatistics s = statistics;
+        if (s != null) {
+            s.record(account.getAccountNumber(), epochDay, type, amount, balance);
+        }
+    }
+
+    /**
+     * 入出金をジャーナルに記録する。（記録先が未設定の場合は何もしない）
+     * 記録に失敗した場合は例外となり、残高は変更しない。
+     */
+    private void journal(byte type, long amount, int epochDay) {
+        TransactionJournal j = journal;
+        if (j != null) {
+            journalSeq = j.append(type, account.getAccountNumber(), amount, epochDay);
         }
+    }
+
+    /**
+     * 残高に金額を加算すると long の範囲を超えるかを判定する。（Math.addExact と同じ判定を、例外を使わずに行う）
+     * （口座表（AccountTable）の入金・振込でも使用する）
+     */
+    static boolean addOverflows(long balance, long amount) {
+        long sum = balance + amount;
+        return ((balance ^ sum) & (amount ^ sum)) < 0;
+    }
+
+    /**
+     * 本日の日付（1970-01-01 からの日数）。
+     * 取引ごとに LocalDate を生成しないよう、日付が変わる時刻まで前回求めた日付を使用する。
+     * （口座表（AccountTable）の集計でも使用する）
+     */
+    static int today() {
+        long now = System.currentTimeMillis();
+        BusinessDay day = currentDay;
+        if (now < day.startMillis || now >= day.endMillis) {
+            day = BusinessDay.of(now);
+            currentDay = day;
+        }
+        return day.epochDay;
+    }
+
+    /** 最後に求めた本日の日付 */
+    private static volatile BusinessDay currentDay = BusinessDay.of(System.currentTimeMillis());
+
+    /** 日付と、その日の開始・終了時刻（既定のタイムゾーン） */
+    private static final class BusinessDay {
+        final int epochDay;
+        final long startMillis;
+        final long endMillis;
+
+        private BusinessDay(int epochDay, long startMillis, long endMillis) {
+            this.epochDay = epochDay;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+
+        static BusinessDay of(long millis) {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate date = LocalDate.ofInstant(Instant.ofEpochMilli(millis), zone);
+            return new BusinessDay((int) date.toEpochDay(),
+                date.atStartOfDay(zone).toInstant().toEpochMilli(),
+                date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+        }
+    }
+
+    /** 取引履歴を表示する（バッファにまとめて書き込み、最後に 1 回だけ出力する） */
+    public synchronized void printHistory() {
+        printHistory(Integer.MAX_VALUE);
+    }
+
+    /**
+     * 最新の N 件の取引履歴を表示する。それより前の履歴は件数のみを表示する。
+     * @param limit 表示する件数の上限
+     */
+    public synchronized void printHistory(int limit) {
+        ReportWriter out = ReportWriter.stdout();
+        synchronized (out) {
+            out.append(Constants.MSG_HISTORY_HEADER).newLine();
 
-        for (Transaction t : history) {
-            System.out.println(t.getDetail());
+            if (history.isEmpty()) {
+                out.append(Constants.MSG_NO_HISTORY).newLine();
+            } else {
+                TransactionHistory.Cursor c = history.recent(limit);
+                if (c.start() > 0) {
+                    HISTORY_OMITTED_MESSAGE.write(out, c.start());
+                }
+                while (c.next()) {
+                    c.appendDetail(out);
+                    out.newLine();
+                }
+            }
+            out.flush();
         }
     }
 }
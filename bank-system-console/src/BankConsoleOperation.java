@@ -1,5 +1,3 @@
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -11,23 +9,31 @@ public class BankConsoleOperation {
     /** 入力受付用の Scanner。nextLine() に統一して使用する。 */
     private static final Scanner sc = new Scanner(System.in);
 
+    /** 残高照会で表示する取引履歴の件数の上限（起動オプション --history-limit=N。既定は全件） */
+    private static int historyLimit = Integer.MAX_VALUE;
+
     /**
      * アプリケーションのエントリーポイント。
      * 口座開設からメイン操作ループまでの処理フローを制御する。
      * 
-     * @param args コマンドライン引数 (未使用)
+     * @param args コマンドライン引数（--history-limit=N で、残高照会で表示する取引履歴を最新の N 件に制限する）
      */
     public static void main(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith(Constants.OPTION_HISTORY_LIMIT)) {
+                historyLimit = Integer.parseInt(arg.substring(Constants.OPTION_HISTORY_LIMIT.length()));
+            }
+        }
 
         System.out.println(Constants.MSG_SYSTEM_START);
 
-        // 作成された全ての口座インスタンスを管理するリスト
-        List<Bank> accounts = new ArrayList<>();
-
         // ---- 開設する口座数の入力 ----
         // 1以上の整数入力を保証する readPositiveInt を使用
         int people = readPositiveInt(Constants.MSG_INPUT_PEOPLE);
 
+        // 作成された全ての口座インスタンスを管理する台帳
+        AccountRegistry accounts = new AccountRegistry(people);
+
         // ---- 口座開設処理 ----
         // 指定された人数分だけ繰り返し口座を作成する
         for (int i = 0; i < people; i++) {
@@ -36,12 +42,12 @@ public class BankConsoleOperation {
             // 名前と初期残高の入力（入力チェック付き）
             String name = readName(Constants.MSG_INPUT_NAME);
 
-            // 初期残高の入力に readPositiveInt を使用
-            int balance = readPositiveInt(Constants.MSG_INPUT_INITIAL_BALANCE);
+            // 初期残高の入力に readPositiveLong を使用
+            long balance = readPositiveLong(Constants.MSG_INPUT_INITIAL_BALANCE);
 
-            // 口座インスタンスの生成とリストへの登録
+            // 口座インスタンスの生成と台帳への登録
             Bank bank = new Bank(name, balance);
-            accounts.add(bank);
+            accounts.register(bank);
 
             System.out.println(Constants.MSG_ACCOUNT_NUMBER + bank.getAccount().getAccountNumber());
         }
@@ -70,7 +76,7 @@ public class BankConsoleOperation {
             int accNum = readInt(Constants.MSG_INPUT_ACCOUNT);
 
             // 入力された番号に該当する口座を検索
-            Bank target = findAccount(accounts, accNum);
+            Bank target = accounts.find(accNum);
 
             // 該当する口座が存在しない場合のエラーハンドリング
             if (target == null) {
@@ -83,18 +89,21 @@ public class BankConsoleOperation {
 
                 case Constants.MENU_DEPOSIT:
                     // 入金処理
-                    int depo = readInt(Constants.MSG_INPUT_DEPOSIT);
+                    long depo = readLong(Constants.MSG_INPUT_DEPOSIT);
                     if (target.deposit(depo)) {
                         System.out.println(Constants.MSG_DEPOSIT_DONE);
-                    } else {
+                    } else if (depo <= 0) {
                         // deposit が false を返した場合（金額不正の場合）
                     	System.out.println(Constants.MSG_AMOUNT_INVALID); 
+                    } else {
+                        // 入金後の残高が上限を超える場合
+                        System.out.println(Constants.MSG_BALANCE_OVERFLOW);
                     }
                     break;
 
                 case Constants.MENU_WITHDRAW:
                     // 出金処理
-                    int draw = readInt(Constants.MSG_INPUT_WITHDRAW);
+                    long draw = readLong(Constants.MSG_INPUT_WITHDRAW);
                     // 残高確認を行い、出金可否を判定
                     if (target.withdraw(draw)) {
                         System.out.println(Constants.MSG_WITHDRAW_DONE);
@@ -145,6 +154,27 @@ public class BankConsoleOperation {
         }
     }
 
+    /**
+     * 金額の入力を安全に読み取る。（long の範囲で読み取る）
+     * 不正な入力（非数）があった場合、エラーメッセージを表示して再入力を促す。
+     * 
+     * @param message 入力前に表示するメッセージ
+     * @return ユーザーが入力した金額
+     */
+    private static long readLong(String message) {
+        while (true) {
+            if (!message.isEmpty()) {
+                System.out.print(message);
+            }
+            String input = sc.nextLine().trim();
+            try {
+                return Long.parseLong(input);
+            } catch (NumberFormatException e) {
+                System.out.println(Constants.MSG_INVALID_INPUT);
+            }
+        }
+    }
+
     /**
      * 1以上の整数入力を安全に読み取る。
      * 0や負の値、不正な入力があった場合、再入力を促す。
@@ -166,6 +196,23 @@ public class BankConsoleOperation {
         }
     }
 
+    /**
+     * 1以上の金額入力を安全に読み取る。
+     * 0や負の値、不正な入力があった場合、再入力を促す。
+     * 
+     * @param message 入力前に表示するメッセージ
+     * @return ユーザーが入力した 1以上の金額
+     */
+    private static long readPositiveLong(String message) {
+        while (true) {
+            long value = readLong(message);
+            if (value > 0) {
+                return value;
+            }
+            System.out.println(Constants.MSG_INVALID_INPUT);
+        }
+    }
+
     /**
      * 名前の入力を読み取る。
      * 空文字や空白のみの名前は弾き、エラーメッセージを表示して再入力を促す。
@@ -185,22 +232,6 @@ public class BankConsoleOperation {
         }
     }
 
-    /**
-     * 指定した口座番号の Bank インスタンスをリストから検索して返す。
-     * 
-     * @param list   検索対象の Bank リスト
-     * @param number 検索する口座番号
-     * @return 該当する Bank インスタンス。見つからない場合は null。
-     */
-    private static Bank findAccount(List<Bank> list, int number) {
-        for (Bank b : list) {
-            if (b.getAccount().getAccountNumber() == number) {
-                return b;
-            }
-        }
-        return null;
-    }
-
     /** メニュー一覧をコンソールに出力する。 */
     private static void printMenu() {
         System.out.println();
@@ -219,8 +250,11 @@ public class BankConsoleOperation {
      */
     private static void showAccountInfo(Bank bank) {
         Account acc = bank.getAccount();
-        System.out.println(Constants.MSG_ACCOUNT_HOLDER + acc.getHolderName());
-        System.out.println(Constants.MSG_BALANCE + acc.getBalance() + "円");
-        bank.printHistory();
+        // 残高と履歴が食い違わないよう、口座をロックして表示する
+        synchronized (bank) {
+            System.out.println(Constants.MSG_ACCOUNT_HOLDER + acc.getHolderName());
+            System.out.println(Constants.MSG_BALANCE + acc.getBalance() + "円");
+            bank.printHistory(historyLimit);
+        }
     }
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -10,52 +13,221 @@ import java.util.List;
  */
 public class BankCsvOperation {
 
+    /** transaction.csv をメモリマップで読み込むかどうか */
+    private final boolean useMappedFile;
+
+    /** 入出金・振込結果・残高照会の出力先 */
+    private BatchOutputSink output = new BatchOutputSink();
+
+    /** 形式エラーの行の書き込み先（null の場合は従来どおり形式エラーで中断する） */
+    private CsvRejectWriter rejects;
+
+    /** 取引を実行するスレッド数（1 の場合は従来どおり記載順に 1 件ずつ実行） */
+    private int replayThreads = 1;
+
+    /**
+     * 1 スレッドで実行する場合に、まとめて実行する入出金（Bank.applyBatch に渡す）。
+     * 残高照会の行に達した時、または batchSize 件に達した時に実行する。
+     */
+    private int batchSize = Constants.CSV_BATCH_SIZE;
+    private Bank[] batchTargets;
+    private int[] batchNumbers;
+    private byte[] batchTypes;
+    private long[] batchAmounts;
+    private byte[] batchResults;
+    private int batchCount;
+
+    /** 直近の取引処理で読み込んだ行数・バイト数・処理時間（ナノ秒） */
+    private long replayRows;
+    private long replayBytes;
+    private long replayNanos;
+
+    /**
+     * 従来どおりストリームで読み込むインスタンスを作成する。
+     */
+    public BankCsvOperation() {
+        this(false);
+    }
+
+    /**
+     * 読み込み方式を指定してインスタンスを作成する。
+     * メモリマップを指定しても、小さなファイルやパイプなどはストリームで読み込む。
+     * @param useMappedFile transaction.csv をメモリマップで読み込む場合は true
+     */
+    public BankCsvOperation(boolean useMappedFile) {
+        this.useMappedFile = useMappedFile;
+    }
+
+    /**
+     * 取引を実行するスレッド数を設定する。
+     * 2 以上を指定すると、口座番号ごとにスレッドを割り当てて並列に実行する。
+     * 同じ口座の取引は記載順に実行されるため、最終的な残高と取引履歴は 1 スレッドの場合と同じになる。
+     * ただし、異なる口座間のメッセージ出力の順序は記載順と異なる場合がある。
+     * @param replayThreads スレッド数（1 以上）
+     */
+    public void setReplayThreads(int replayThreads) {
+        if (replayThreads < 1) {
+            throw new IllegalArgumentException("replayThreads: " + replayThreads);
+        }
+        this.replayThreads = replayThreads;
+    }
+
+    /**
+     * 1 スレッドで実行する場合に、連続する入出金をまとめて実行する最大件数を設定する。
+     * 1 を指定すると、1 行ずつ実行する。
+     * 同じ口座の連続する行は、1 回のロックでまとめて実行する。メッセージの出力順と結果は 1 行ずつの場合と同じ。
+     * @param batchSize 件数（1 以上）
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 入出金・振込結果・残高照会の出力先を設定する。
+     * @param output 出力先
+     */
+    public void setOutputSink(BatchOutputSink output) {
+        this.output = output;
+    }
+
+    /**
+     * 形式エラーの行を除外ファイルに書き込み、残りの行の処理を続けるよう設定する。
+     * 設定しない場合（null の場合）は、従来どおり形式エラーの行で読み込みを中断する。
+     * @param rejects 除外ファイル
+     */
+    public void setRejectWriter(CsvRejectWriter rejects) {
+        this.rejects = rejects;
+    }
+
+    /**
+     * 入出金・振込結果・残高照会の出力先を返す。
+     * @return 出力先
+     */
+    public BatchOutputSink getOutputSink() {
+        return output;
+    }
+
 	/**
      * 口座情報と取引履歴を読み込むメインメソッド。
      * @return 処理後の Bank インスタンスのリスト。
      */
     public List<Bank> loadData() {
-        List<Bank> list = loadAccounts();
-        loadTransactions(list);
-        return list;
+        return loadData(Constants.FILE_ACCOUNT_CSV, Constants.FILE_TRANSACTION_CSV);
+    }
+
+    /**
+     * ファイル名を指定して口座情報と取引履歴を読み込む。
+     * @param accountFile 口座情報のファイル名
+     * @param transactionFile 取引データのファイル名
+     * @return 処理後の Bank インスタンスのリスト。
+     */
+    public List<Bank> loadData(String accountFile, String transactionFile) {
+        AccountRegistry registry = loadAccounts(accountFile);
+        loadTransactions(registry, null, transactionFile);
+        return registry.getAccounts();
+    }
+
+    /**
+     * account.csv のみを読み込み、口座台帳を返す。（取引は実行しない）
+     * 続けて loadData(AccountRegistry) を呼び出すと、loadData() と同じ処理になる。
+     * @return 口座台帳。CSV形式エラーの場合は空の台帳
+     */
+    public AccountRegistry loadAccounts() {
+        return loadAccounts(Constants.FILE_ACCOUNT_CSV);
+    }
+
+    /**
+     * 復元済みの口座に対して取引データを実行する。（口座情報のファイルは読み込まない）
+     * @param accounts 口座台帳（ジャーナルなどから復元したもの）
+     * @return 処理後の Bank インスタンスのリスト。
+     */
+    public List<Bank> loadData(AccountRegistry accounts) {
+        return loadData(accounts, Constants.FILE_TRANSACTION_CSV);
+    }
+
+    /**
+     * ファイル名を指定して、復元済みの口座に対して取引データを実行する。
+     * @param accounts 口座台帳
+     * @param transactionFile 取引データのファイル名
+     * @return 処理後の Bank インスタンスのリスト。
+     */
+    public List<Bank> loadData(AccountRegistry accounts, String transactionFile) {
+        loadTransactions(accounts, null, transactionFile);
+        return accounts.getAccounts();
+    }
+
+    /**
+     * 取引データのうち、指定した位置以降の行を、復元済みの口座に対して実行する。（ジャーナルを使用する場合の再開用）
+     * 取引データは末尾に追記される前提で、前回までに反映した行を読み飛ばす。
+     * ファイルが指定した位置より短い場合（作り直された場合）は、先頭から実行する。
+     * 形式エラー・除外ファイル・並列実行の扱いは loadData(AccountRegistry, String) と同じ。
+     * （位置から再開した場合、エラーメッセージ・除外ファイルの行番号はその位置からの行数となる）
+     * @param accounts 口座台帳
+     * @param transactionFile 取引データのファイル名
+     * @param offset 反映済みの位置（ファイルの先頭からのバイト数）
+     * @return 反映済みの位置（次回の開始位置）。形式エラーで中断した場合はその行の先頭、ファイルを読めない場合は offset
+     */
+    public long loadData(AccountRegistry accounts, String transactionFile, long offset) {
+        Path file = Paths.get(transactionFile);
+        long next = offset;
+        try {
+            long size = Files.size(file);
+            if (size < offset) {
+                System.out.println(Constants.MSG_FOLLOW_RESTARTED + transactionFile);
+                offset = 0;
+            }
+            // 先頭から読み込む場合は、従来どおりメモリマップも使用できる
+            try (CsvRowReader csv = offset == 0 ? CsvRowReader.open(transactionFile, useMappedFile)
+                    : CsvRowReader.openRange(file, offset, size)) {
+                boolean applied = applyTransactions(csv, accounts, null, transactionFile);
+                next = applied ? csv.bytesRead() : csv.rowOffset();
+            }
+        } catch (IOException e) {
+            // ファイルを開けない場合
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+            System.out.println(Constants.MSG_CSV_LOAD_ERROR + transactionFile);
+        }
+        output.printSummary();
+        return next;
+    }
+
+    /**
+     * 口座表（AccountTable）の口座に対して取引データを実行する。
+     * 形式エラー・除外ファイル・並列実行の扱いは AccountRegistry の場合と同じ。
+     * 口座表は取引履歴を保持しないため、残高照会は件数のみを記録する。（メッセージは出力しない）
+     * @param table 口座表
+     * @param transactionFile 取引データのファイル名
+     */
+    public void loadData(AccountTable table, String transactionFile) {
+        loadTransactions(null, table, transactionFile);
     }
 
     /**
      * account.csv を読み込み、口座インスタンスを生成する。
      * CSV形式エラー（項目数不正、非数など）が発生した場合、
-     * 読み込み済みの口座データも含めてすべて破棄し、空のリストを返す（取引の中断）。
+     * 読み込み済みの口座データも含めてすべて破棄し、空の台帳を返す（取引の中断）。
+     * 除外ファイルを設定している場合は、形式エラーの行のみを除外ファイルに書き込み、残りの口座を読み込む。
+     * （口座番号は行順のため、除外した行の口座番号は欠番になる）
      */
-    private List<Bank> loadAccounts() {
-        List<Bank> list = new ArrayList<>();
+    public AccountRegistry loadAccounts(String fileName) {
+        // 行数から口座数を見積もり、台帳のサイズを事前に確保する
+        AccountRegistry registry = new AccountRegistry(countLines(fileName));
         List<String> accountInfoMessages = new ArrayList<>();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(Constants.FILE_ACCOUNT_CSV))) {
-            String line;
-            
-            // CSV内の行順を口座番号として使用
-            int currentAccountNumber = 1; 
-            
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(",");
-                
-                // 項目数チェック: 2以外であれば例外をスローし、読み込み中断
-                if (data.length != 2) { 
-                    throw new IOException(Constants.ERR_MSG_ACCOUNT_ITEM_COUNT + line); 
-                }
-
-                String name = data[0].trim();
-                
-                // 初期残高の数値変換。非数であればNumberFormatExceptionが発生
-                int balance = Integer.parseInt(data[1].trim());
-
-                Bank bank = new Bank(name, balance, currentAccountNumber);
-                list.add(bank);
+        try (CsvRowReader csv = new CsvRowReader(fileName)) {
+            CsvRowDecoder rows = new CsvRowDecoder(csv, rejects, fileName);
+            while (rows.nextAccount()) {
+                String name = rows.holderName();
+                Bank bank = new Bank(name, rows.initialBalance(), rows.accountNumber());
+                registry.register(bank);
                 
                 accountInfoMessages.add(String.format(
                     Constants.ACCOUNT_INFO_FORMAT, 
-                    currentAccountNumber, name, balance
+                    rows.accountNumber(), name, rows.initialBalance()
                 ));
-                currentAccountNumber++;
             }
             
             // 口座情報を全て出力し、開設完了メッセージを表示
@@ -64,112 +236,475 @@ public class BankCsvOperation {
             }
             System.out.println(Constants.MSG_ACCOUNT_OPENED);
 
+            // 途中で中断した場合に一部の口座だけが復元されないよう、すべて読み込めてからジャーナルに記録する
+            for (Bank bank : registry.getAccounts()) {
+                bank.recordOpening();
+            }
+
         } catch (IOException e) {
             // 項目数不正など
-            list.clear();// 既に読み込んだ正しい口座データも破棄
+            registry.clear();// 既に読み込んだ正しい口座データも破棄
             System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
-            System.out.println(Constants.MSG_CSV_LOAD_ERROR + Constants.FILE_ACCOUNT_CSV);
+            System.out.println(Constants.MSG_CSV_LOAD_ERROR + fileName);
             
         } catch (NumberFormatException e) {
             // 残高フィールドが非数だった場合
-            list.clear();// 既に読み込んだ正しい口座データも破棄
+            registry.clear();// 既に読み込んだ正しい口座データも破棄
             System.out.println(Constants.ERR_MSG_DETAIL_HEADER + Constants.ERR_MSG_INITIAL_BALANCE_FORMAT);
-            System.out.println(Constants.MSG_CSV_LOAD_ERROR + Constants.FILE_ACCOUNT_CSV);
+            System.out.println(Constants.MSG_CSV_LOAD_ERROR + fileName);
         }
-        return list;
+        return registry;
+    }
+
+    /**
+     * account.csv を読み込み、口座表（AccountTable）を作成する。
+     * 口座番号・形式エラー・除外ファイルの扱いは loadAccounts と同じ。（口座ごとのメッセージは出力しない）
+     * @param fileName 口座情報のファイル名
+     * @return 口座表。CSV形式エラーの場合は空の口座表
+     */
+    public AccountTable loadAccountTable(String fileName) {
+        // 行数から口座数を見積もり、配列と索引のサイズを事前に確保する
+        AccountTable table = new AccountTable(countLines(fileName));
+        try (CsvRowReader csv = new CsvRowReader(fileName)) {
+            CsvRowDecoder rows = new CsvRowDecoder(csv, rejects, fileName);
+            while (rows.nextAccount()) {
+                table.open(rows.holderName(), rows.initialBalance(), rows.accountNumber());
+            }
+            System.out.printf(Constants.MSG_ACCOUNT_TABLE_LOADED_FORMAT, table.size(), table.getHolderNameCount());
+            return table;
+        } catch (IOException e) {
+            // 項目数不正など（読み込み済みの口座も破棄する）
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+            System.out.println(Constants.MSG_CSV_LOAD_ERROR + fileName);
+        } catch (NumberFormatException e) {
+            // 残高フィールドが非数だった場合
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + Constants.ERR_MSG_INITIAL_BALANCE_FORMAT);
+            System.out.println(Constants.MSG_CSV_LOAD_ERROR + fileName);
+        }
+        return new AccountTable();
     }
 
     /**
      * transaction.csv を読み込み、取引を実行する。
      * CSV形式エラー（項目数不正、不正な取引タイプ、非数）が発生した場合、
      * 処理を即座に中断し、それ以降の取引をすべてスキップする。
+     * 除外ファイルを設定している場合は、形式エラーの行のみを除外ファイルに書き込み、以降の取引を続ける。
+     * @param accounts 口座台帳（口座表の場合は null）
+     * @param table 口座表（口座台帳の場合は null）
      */
-    private void loadTransactions(List<Bank> accounts) {
-        try (BufferedReader br = new BufferedReader(new FileReader(Constants.FILE_TRANSACTION_CSV))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(",");
-                
-                // 項目数チェック: 3以外であれば例外をスローし、取引中断
-                if (data.length != 3) {
-                	throw new IOException(Constants.ERR_MSG_TRANSACTION_ITEM_COUNT + line);
+    private void loadTransactions(AccountRegistry accounts, AccountTable table, String fileName) {
+        try (CsvRowReader csv = CsvRowReader.open(fileName, useMappedFile)) {
+            applyTransactions(csv, accounts, table, fileName);
+        } catch (IOException e) {
+            // ファイルを開けない場合
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+            System.out.println(Constants.MSG_CSV_LOAD_ERROR + fileName);
+        }
+        output.printSummary();
+    }
+
+    /**
+     * 取引データの一部（追跡モードで追記された範囲など）を読み込み、取引を実行する。
+     * 形式エラーの行に達した場合は、エラーメッセージを出力し、その行より前の取引のみを実行して中断する。
+     * （中断した行の位置は csv.rowOffset() で取得できる）
+     * 除外ファイルを設定している場合は、形式エラーの行を除外ファイルに書き込んで続ける。（書き込みに失敗した場合のみ中断する）
+     * SUMMARY の場合も件数は出力しない。（printSummary で出力する）
+     * @param csv 取引データのリーダー（CsvRowReader.openRange など）
+     * @param accounts 口座台帳
+     * @param fileName エラーメッセージに表示するファイル名
+     * @return 最後まで実行した場合は true、形式エラーや実行中の例外で中断した場合は false
+     */
+    public boolean applyTransactions(CsvRowReader csv, AccountRegistry accounts, String fileName) {
+        return applyTransactions(csv, accounts, null, fileName);
+    }
+
+    /**
+     * 口座台帳または口座表に対して取引を実行する。（エラー処理は applyTransactions(CsvRowReader, AccountRegistry, String) と同じ）
+     * @param accounts 口座台帳（口座表の場合は null）
+     * @param table 口座表（口座台帳の場合は null）
+     */
+    private boolean applyTransactions(CsvRowReader csv, AccountRegistry accounts, AccountTable table, String fileName) {
+        long startNanos = System.nanoTime();
+        try {
+            try {
+                if (table != null) {
+                    replayTable(csv, table, fileName);
+                } else {
+                    replayTransactions(csv, accounts, fileName);
                 }
-                
-                // 口座番号と金額の数値変換。非数であればNumberFormatExceptionが発生し中断
-                int number = Integer.parseInt(data[0].trim());
-                String type = data[1].trim();
-                int amount = Integer.parseInt(data[2].trim());
-                
-                // 対象口座を検索。見つからなければ当該取引をスキップ
-                Bank target = findAccountInList(accounts, number);
-                if (target == null) {
-                    continue;
+            } finally {
+                // エラーメッセージより前に、溜まっているメッセージを出力しておく
+                output.flush();
+                if (rejects != null) {
+                    rejects.flush();
                 }
 
-                // 取引タイプを判別し、取引を実行
-                if (Constants.TRANSACTION_DEPOSIT_CSV.equals(type)) {
-                	// 入金処理を実行。depositが成功した場合のみメッセージ出力
-                	if (target.deposit(amount)) { 
-                		System.out.printf(Constants.MSG_DEPOSIT_FORMAT, number, amount);
-                	}
-                	
-                } else if (Constants.TRANSACTION_WITHDRAW_CSV.equals(type)) {
-                	// 出金処理を実行。withdrawが成功した場合のみメッセージ出力
-                	if (target.withdraw(amount)) {
-                		System.out.printf(Constants.MSG_WITHDRAW_FORMAT, number, amount);
-                	}
-                	
-                } else if (Constants.TRANSACTION_GET_BALANCE_CSV.equals(type)) {
-                	// 残高照会を実行
-                	showAccountInfo(target);
-                	
-                }else {
-                // 許可されていない不正な取引タイプが検出された場合、例外をスローし取引中断
-                throw new IOException(Constants.ERR_MSG_TRANSACTION_TYPE + type + " (行データ: " + line + ")");
-                }
+                // 中断した場合も、そこまでの処理件数を記録する
+                replayRows = csv.rowCount();
+                replayBytes = csv.bytesRead();
+                replayNanos = System.nanoTime() - startNanos;
             }
+            return true;
         } catch (IOException e) {
         	// 項目数不正や不正な取引タイプなどによる中断
             System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
-            System.out.println(Constants.MSG_CSV_LOAD_ERROR + Constants.FILE_TRANSACTION_CSV);
+            System.out.println(Constants.MSG_CSV_LOAD_ERROR + fileName);
             
         } catch (NumberFormatException e) {
         	// 口座番号や金額が非数であったことによる中断
             System.out.println(Constants.ERR_MSG_DETAIL_HEADER + Constants.ERR_MSG_AMOUNT_FORMAT);
-            System.out.println(Constants.MSG_CSV_LOAD_ERROR + Constants.FILE_TRANSACTION_CSV);
+            System.out.println(Constants.MSG_CSV_LOAD_ERROR + fileName);
+
+        } catch (RuntimeException e) {
+            // 並列実行のスレッドなど、取引の実行中に発生した想定外の例外による中断
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e);
+            System.out.println(Constants.MSG_REPLAY_ERROR + fileName);
+        }
+        return false;
+    }
+
+    /**
+     * SUMMARY の場合、これまでの結果ごとの件数を出力する。
+     */
+    public void printSummary() {
+        output.printSummary();
+    }
+
+    /**
+     * 取引データを 1 行ずつ読み込み、対象口座に対して取引を実行する。
+     * 1 スレッドの場合、入出金は batchSize 件までまとめてから実行し、残高照会・振込の前には必ず実行しておく。
+     * 振込の行は「振込元の口座番号,transfer,金額,振込先の口座番号」の 4 項目。
+     * 並列実行の場合、読み込みと形式チェックはこのスレッドで記載順に行い、
+     * 取引の実行のみを口座ごとのスレッドに割り当てる。
+     * 除外ファイルを設定している場合、形式エラーの行は除外ファイルに書き込んで読み飛ばす。
+     * （数値の変換も例外を使用せずに判定するため、正しい行の処理は除外しない場合と変わらない）
+     * @param csv 取引データのリーダー
+     * @param accounts 口座台帳
+     * @param fileName 除外ファイルに書き込むファイル名
+     * @throws IOException 項目数不正・不正な取引タイプの場合（除外ファイルを設定していない場合）、除外ファイルの書き込みに失敗した場合
+     */
+    private void replayTransactions(CsvRowReader csv, AccountRegistry accounts, String fileName) throws IOException {
+        ParallelTransactionReplayer replayer = null;
+        if (replayThreads > 1) {
+            replayer = new ParallelTransactionReplayer(replayThreads, this::applyTransaction, this::applyTransfer);
+        } else if (batchTargets == null || batchTargets.length != batchSize) {
+            batchTargets = new Bank[batchSize];
+            batchNumbers = new int[batchSize];
+            batchTypes = new byte[batchSize];
+            batchAmounts = new long[batchSize];
+            batchResults = new byte[batchSize];
+        }
+        CsvRowDecoder rows = new CsvRowDecoder(csv, rejects, fileName);
+        try {
+            while (rows.nextTransaction()) {
+                int number = rows.accountNumber();
+                int toNumber = rows.toAccountNumber();
+                long amount = rows.amount();
+                boolean transfer = rows.isTransfer();
+
+                // 対象口座を検索。見つからなければ当該取引をスキップ
+                Bank target = accounts.find(number);
+                Bank to = transfer ? accounts.find(toNumber) : null;
+                if (target == null || (transfer && to == null)) {
+                    output.skippedUnknownAccount();
+                    Metrics.record(Metrics.Timer.CSV_ROW, rows.rowStart(), Metrics.Counter.UNKNOWN_ACCOUNT);
+                    continue;
+                }
+
+                // 取引タイプを判別する（不正な取引タイプの行を除外した場合は次の行へ）
+                int type = rows.type();
+                if (type == CsvRowDecoder.REJECTED) {
+                    continue;
+                }
+
+                if (transfer) {
+                    if (replayer != null) {
+                        replayer.submitTransfer(target, number, to, toNumber, amount);
+                    } else {
+                        // 振込元・振込先の残高に、それまでの入出金を反映しておく
+                        flushBatch();
+                        applyTransfer(target, number, to, toNumber, amount);
+                    }
+                } else if (replayer != null) {
+                    replayer.submit(target, number, type, amount);
+                } else if (type == Constants.TRANSACTION_CODE_GET_BALANCE) {
+                    // 照会する残高に、それまでの入出金を反映しておく
+                    flushBatch();
+                    applyTransaction(target, number, type, amount);
+                } else {
+                    addToBatch(target, number, type, amount);
+                }
+                // 並列実行・まとめて実行する場合は、割り当てまでの時間になる
+                Metrics.record(Metrics.Timer.CSV_ROW, rows.rowStart());
+            }
+        } finally {
+            // 中断した場合も、それまでに読み込んだ取引はすべて実行してから終了する
+            if (replayer != null) {
+                replayer.finish();
+            } else {
+                flushBatch();
+            }
         }
     }
 
     /**
-     * 指定した口座番号の Bank インスタンスをリストから検索して返す。
-     * @param list 検索対象の口座リスト
-     * @param number 検索する口座番号
-     * @return 該当する Bank インスタンス。見つからない場合は null。
+     * 取引データを 1 行ずつ読み込み、口座表の口座に対して取引を実行する。
+     * 形式チェックと除外ファイルの扱いは replayTransactions と同じ。
+     * 並列実行の場合は、口座のスロットで担当スレッドを決める。（同じ口座の取引は記載順に実行される）
+     * @param csv 取引データのリーダー
+     * @param table 口座表
+     * @param fileName 除外ファイルに書き込むファイル名
+     * @throws IOException 項目数不正・不正な取引タイプの場合（除外ファイルを設定していない場合）、除外ファイルの書き込みに失敗した場合
      */
-    private Bank findAccountInList(List<Bank> list, int number) {
-        for (Bank b : list) {
-            if (b.getAccount().getAccountNumber() == number) {
-                return b;
+    private void replayTable(CsvRowReader csv, AccountTable table, String fileName) throws IOException {
+        ParallelTransactionReplayer replayer = null;
+        if (replayThreads > 1) {
+            // 口座表には口座のオブジェクトがないため、口座番号の代わりにスロットを渡す
+            replayer = new ParallelTransactionReplayer(replayThreads,
+                (target, slot, type, amount) -> applyTableTransaction(table, slot, type, amount),
+                (from, fromSlot, to, toSlot, amount) -> applyTableTransfer(table, fromSlot, toSlot, amount));
+        }
+        CsvRowDecoder rows = new CsvRowDecoder(csv, rejects, fileName);
+        try {
+            while (rows.nextTransaction()) {
+                boolean transfer = rows.isTransfer();
+                long amount = rows.amount();
+
+                // 対象口座を検索。見つからなければ当該取引をスキップ
+                int slot = table.slotOf(rows.accountNumber());
+                int toSlot = transfer ? table.slotOf(rows.toAccountNumber()) : 0;
+                if (slot < 0 || toSlot < 0) {
+                    output.skippedUnknownAccount();
+                    Metrics.record(Metrics.Timer.CSV_ROW, rows.rowStart(), Metrics.Counter.UNKNOWN_ACCOUNT);
+                    continue;
+                }
+
+                int type = rows.type();
+                if (type == CsvRowDecoder.REJECTED) {
+                    continue;
+                }
+
+                if (replayer == null) {
+                    if (transfer) {
+                        applyTableTransfer(table, slot, toSlot, amount);
+                    } else {
+                        applyTableTransaction(table, slot, type, amount);
+                    }
+                } else if (transfer) {
+                    replayer.submitTransfer(null, slot, null, toSlot, amount);
+                } else {
+                    replayer.submit(null, slot, type, amount);
+                }
+                Metrics.record(Metrics.Timer.CSV_ROW, rows.rowStart());
+            }
+        } finally {
+            // 中断した場合も、それまでに読み込んだ取引はすべて実行してから終了する
+            if (replayer != null) {
+                replayer.finish();
             }
         }
-        return null;
     }
-    
+
+    /**
+     * 口座表の口座に対して入出金・残高照会を 1 件実行し、結果を記録する。
+     * 並列実行時は口座ごとのスレッドから呼び出される。
+     */
+    private void applyTableTransaction(AccountTable table, int slot, int type, long amount) {
+        byte result;
+        switch (type) {
+            case Constants.TRANSACTION_CODE_DEPOSIT:
+                result = table.deposit(slot, amount);
+                if (result == Constants.RESULT_SUCCESS) {
+                    output.deposited(table.getAccountNumber(slot), amount);
+                }
+                break;
+
+            case Constants.TRANSACTION_CODE_WITHDRAW:
+                result = table.withdraw(slot, amount);
+                if (result == Constants.RESULT_SUCCESS) {
+                    output.withdrew(table.getAccountNumber(slot), amount);
+                }
+                break;
+
+            default:
+                // 取引履歴を保持しないため、件数のみを記録する
+                output.balanceInquired();
+                return;
+        }
+        recordFailure(result);
+    }
+
     /**
-     * 残高照会と取引履歴表示を行う。
-     * CSV取引の残高照会コマンド専用の出力形式を実装。
-     * @param bank 表示対象の Bank インスタンス
+     * 口座表の口座間で振込を 1 件実行し、結果を記録する。
+     * 並列実行時は振込元・振込先のどちらかのスレッドから呼び出される。
      */
-    private void showAccountInfo(Bank bank) {
-        Account acc = bank.getAccount();
-        
-        System.out.printf("残高照会 (%s) : %d円%n", acc.getHolderName(), acc.getBalance());
-        
-        System.out.printf("取引履歴 (口座番号: " + Constants.ACCOUNT_NUMBER_FORMAT_7DIGIT + ")%n", acc.getAccountNumber());
-        
-        // 取引履歴の詳細情報を出力
-        for (Transaction t : bank.getHistory()) {
-            System.out.println(t.getDetail());
+    private void applyTableTransfer(AccountTable table, int fromSlot, int toSlot, long amount) {
+        byte result = table.transfer(fromSlot, toSlot, amount);
+        if (result == Constants.RESULT_SUCCESS) {
+            output.transferred(table.getAccountNumber(fromSlot), table.getAccountNumber(toSlot), amount);
+        }
+        recordFailure(result);
+    }
+
+    /**
+     * 失敗した取引の結果コードを、結果ごとの件数に記録する。（成功の場合は何もしない）
+     */
+    private void recordFailure(byte result) {
+        switch (result) {
+            case Constants.RESULT_INVALID_AMOUNT:
+                output.rejectedInvalidAmount();
+                break;
+
+            case Constants.RESULT_INSUFFICIENT_BALANCE:
+                output.rejectedInsufficientBalance();
+                break;
+
+            case Constants.RESULT_BALANCE_OVERFLOW:
+                output.rejectedBalanceOverflow();
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 入出金をまとめて実行する取引に加える。batchSize 件に達した場合は実行する。
+     */
+    private void addToBatch(Bank target, int number, int type, long amount) {
+        batchTargets[batchCount] = target;
+        batchNumbers[batchCount] = number;
+        batchTypes[batchCount] = (byte) type;
+        batchAmounts[batchCount] = amount;
+        if (++batchCount == batchTargets.length) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * まとめた入出金を実行し、1 行ずつ実行した場合と同じ順序で結果を出力する。
+     */
+    private void flushBatch() {
+        if (batchCount == 0) {
+            return;
+        }
+        Bank.applyBatch(batchTargets, batchTypes, batchAmounts, batchCount, batchResults);
+        for (int i = 0; i < batchCount; i++) {
+            switch (batchResults[i]) {
+                case Constants.RESULT_SUCCESS:
+                    if (batchTypes[i] == Constants.TRANSACTION_CODE_DEPOSIT) {
+                        output.deposited(batchNumbers[i], batchAmounts[i]);
+                    } else {
+                        output.withdrew(batchNumbers[i], batchAmounts[i]);
+                    }
+                    break;
+
+                case Constants.RESULT_INVALID_AMOUNT:
+                    output.rejectedInvalidAmount();
+                    break;
+
+                case Constants.RESULT_BALANCE_OVERFLOW:
+                    output.rejectedBalanceOverflow();
+                    break;
+
+                default:
+                    output.rejectedInsufficientBalance();
+                    break;
+            }
+            // 口座への参照を残さない
+            batchTargets[i] = null;
+        }
+        batchCount = 0;
+    }
+
+    /**
+     * 取引を 1 件実行し、結果を出力する。
+     * 並列実行時は口座ごとのスレッドから呼び出される。
+     * @param target 対象口座
+     * @param number 口座番号
+     * @param type 取引種別コード
+     * @param amount 金額
+     */
+    private void applyTransaction(Bank target, int number, int type, long amount) {
+        switch (type) {
+            case Constants.TRANSACTION_CODE_DEPOSIT:
+                // 入金処理を実行。depositが成功した場合のみメッセージ出力
+                if (target.deposit(amount)) {
+                    output.deposited(number, amount);
+                } else if (amount <= 0) {
+                    output.rejectedInvalidAmount();
+                } else {
+                    output.rejectedBalanceOverflow();
+                }
+                break;
+
+            case Constants.TRANSACTION_CODE_WITHDRAW:
+                // 出金処理を実行。withdrawが成功した場合のみメッセージ出力
+                if (target.withdraw(amount)) {
+                    output.withdrew(number, amount);
+                } else if (amount <= 0) {
+                    output.rejectedInvalidAmount();
+                } else {
+                    output.rejectedInsufficientBalance();
+                }
+                break;
+
+            default:
+                // 残高照会を実行
+                output.balanceReport(target);
+                break;
+        }
+    }
+
+    /**
+     * 振込を 1 件実行し、結果を出力する。
+     * 並列実行時は振込元・振込先のどちらかのスレッドから呼び出される。
+     * @param from 振込元の口座
+     * @param fromNumber 振込元の口座番号
+     * @param to 振込先の口座
+     * @param toNumber 振込先の口座番号
+     * @param amount 金額
+     */
+    private void applyTransfer(Bank from, int fromNumber, Bank to, int toNumber, long amount) {
+        byte result = from.transfer(to, amount);
+        if (result == Constants.RESULT_SUCCESS) {
+            output.transferred(fromNumber, toNumber, amount);
+        }
+        recordFailure(result);
+    }
+
+    /**
+     * 直近の取引処理の処理性能（行/秒、MB/秒）を出力する。
+     */
+    public void printThroughput() {
+        double seconds = replayNanos / 1e9;
+        double rowsPerSec = seconds > 0 ? replayRows / seconds : 0;
+        double mbPerSec = seconds > 0 ? replayBytes / (1024.0 * 1024.0) / seconds : 0;
+        System.out.printf(Constants.MSG_THROUGHPUT_FORMAT, replayRows, seconds, rowsPerSec, mbPerSec);
+    }
+
+    /**
+     * ファイルの行数を数える。（台帳の事前サイズ確保用の見積もり）
+     * 読み込めない場合は 0 を返し、エラー処理は本読み込み側に任せる。
+     * @param fileName 対象ファイル名
+     * @return 行数
+     */
+    private int countLines(String fileName) {
+        int lines = 0;
+        byte[] buf = new byte[8192];
+        try (InputStream in = new FileInputStream(fileName)) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    if (buf[i] == '\n') {
+                        lines++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return 0;
         }
+        // 最終行に改行がない場合の分を加える
+        return lines + 1;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,410 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * コンソール版のメニュー（入金・出金・残高照会）と同じ操作を、TCP で受け付けるサーバー。
+ * 接続ごとに 1 つのスレッドで要求を順に処理する。Java 21 以降では仮想スレッドを使用するため、
+ * 数千の接続を同時に受け付けても OS のスレッドは増えない。
+ * 口座への操作は Bank のロックで保護されるため、複数の接続から同じ口座を操作してよい。
+ *
+ * 通信は UTF-8 の 1 行単位の要求・応答で、項目は空白 1 つで区切る。
+ *   要求: メニュー番号 口座番号 [金額]
+ *         1（入金）・2（出金）は金額が必要。3（残高照会）は金額なし。4（終了）は口座番号も不要で、接続を閉じる。
+ *   応答: OK 残高                     … 入金・出金の成功
+ *         OK 残高 件数 + 取引履歴の行  … 残高照会（続く「件数」行が取引履歴。最新の Constants.SERVER_HISTORY_LIMIT 件を古い順に送る。
+ *                                      形式は Transaction.getDetail と同じ）
+ *         OK                         … 終了
+ *         NG メッセージ               … 金額不正・残高不足・口座なし・要求の形式不正
+ * 応答は、受信済みの要求をすべて処理してからまとめて送信する。（連続して送られた要求は 1 回の送信で応答する）
+ * 1 行が Constants.SERVER_MAX_LINE_LENGTH 文字を超える要求には NG を応答し、接続を閉じる。
+ *
+ * 単独で起動する場合は、account.csv の口座を読み込んでから待ち受ける。
+ *   java -cp out BankServer [ポート番号]
+ */
+public class BankServer implements AutoCloseable {
+
+    /** 口座台帳 */
+    private final AccountRegistry accounts;
+
+    /** 待ち受け用のソケット */
+    private final ServerSocket serverSocket;
+
+    /** 接続ごとの処理を実行するスレッド */
+    private final ExecutorService sessions;
+
+    /** 仮想スレッドを使用しているか */
+    private final boolean virtualThreads;
+
+    /** 接続を受け付けるスレッド */
+    private final Thread acceptor;
+
+    /** 接続中のソケット（停止時に閉じる） */
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+
+    /** 受け付けた接続数と、処理した要求数 */
+    private final LongAdder connectionCount = new LongAdder();
+    private final LongAdder requestCount = new LongAdder();
+
+    /** close が呼び出されたか */
+    private volatile boolean closing;
+
+    /**
+     * ループバックアドレスの指定したポートで待ち受けを開始する。
+     * @param accounts 口座台帳（起動後に口座を追加しないこと）
+     * @param port ポート番号（0 の場合は空いているポート）
+     * @throws IOException ポートを使用できない場合
+     */
+    public BankServer(AccountRegistry accounts, int port) throws IOException {
+        this(accounts, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * 指定したアドレスで待ち受けを開始する。
+     * @param accounts 口座台帳（起動後に口座を追加しないこと）
+     * @param address 待ち受けるアドレスとポート
+     * @throws IOException ポートを使用できない場合
+     */
+    public BankServer(AccountRegistry accounts, InetSocketAddress address) throws IOException {
+        this.accounts = accounts;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address, Constants.SERVER_BACKLOG);
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.sessions = virtual != null ? virtual : newPlatformThreadExecutor("bank-session-");
+
+        acceptor = new Thread(this::acceptLoop, "bank-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** @return 待ち受けているポート番号 */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /** @return 接続ごとの処理に仮想スレッドを使用している場合は true */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /** @return これまでに受け付けた接続数 */
+    public long getConnectionCount() {
+        return connectionCount.sum();
+    }
+
+    /** @return これまでに処理した要求数 */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * 待ち受けを停止し、接続中のソケットをすべて閉じて、処理中の要求の完了を待つ。
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        serverSocket.close();
+        for (Socket socket : openSockets) {
+            socket.close();
+        }
+        sessions.shutdown();
+        try {
+            acceptor.join();
+            sessions.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 接続ごとに 1 つのスレッドで処理を実行する ExecutorService を作成する。
+     * Java 21 以降では仮想スレッド、それより前では スタックサイズを小さくしたデーモンスレッドを使用する。
+     * （負荷試験のクライアントからも使用する）
+     * @param namePrefix 仮想スレッドを使用できない場合のスレッド名の接頭辞
+     */
+    static ExecutorService newPerTaskExecutor(String namePrefix) {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        return virtual != null ? virtual : newPlatformThreadExecutor(namePrefix);
+    }
+
+    // ---- 内部処理 ----
+
+    /**
+     * 仮想スレッドを使用する ExecutorService を作成する。
+     * Java 17 でもビルドできるよう、Executors.newVirtualThreadPerTaskExecutor は実行時に探す。
+     * @return 使用できない場合は null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 21 より前、またはプレビュー機能が無効な場合
+            return null;
+        }
+    }
+
+    /** 接続ごとにスタックサイズの小さいデーモンスレッドを作成する ExecutorService を作成する。 */
+    private static ExecutorService newPlatformThreadExecutor(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(null, r, namePrefix + threadNumber.incrementAndGet(),
+                Constants.SERVER_SESSION_STACK_SIZE);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 接続を受け付け、接続ごとのスレッドに渡す。
+     * 受け付けに失敗した場合（ファイル記述子の不足など）は、少し待ってから次の接続を待つ。
+     * 連続して失敗するたびに待ち時間を倍にし（上限あり）、失敗が続く間に CPU を使い続けないようにする。
+     */
+    private void acceptLoop() {
+        long retryMillis = Constants.SERVER_ACCEPT_RETRY_MILLIS;
+        while (!closing) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // close() でソケットを閉じた場合は終了する
+                if (closing) {
+                    break;
+                }
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                retryMillis = Math.min(retryMillis * 2, Constants.SERVER_ACCEPT_RETRY_MAX_MILLIS);
+                continue;
+            }
+            retryMillis = Constants.SERVER_ACCEPT_RETRY_MILLIS;
+            connectionCount.increment();
+            openSockets.add(socket);
+            try {
+                sessions.execute(() -> serve(socket));
+            } catch (RuntimeException e) {
+                // 停止中に受け付けた接続
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /** 1 つの接続の要求を、接続が閉じられるまで順に処理する。 */
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            InputStream input = socket.getInputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            StringBuilder line = new StringBuilder();
+            StringBuilder response = new StringBuilder();
+            while (true) {
+                try {
+                    if (!readLine(in, line)) {
+                        break;
+                    }
+                } catch (ProtocolException e) {
+                    // 上限を超えた行の残りは読まずに、応答を送信して接続を閉じる
+                    response.setLength(0);
+                    rejected(response, Constants.MSG_SERVER_LINE_TOO_LONG);
+                    out.append(response).flush();
+                    break;
+                }
+                response.setLength(0);
+                boolean exit = handle(line.toString(), response);
+                requestCount.increment();
+                out.append(response);
+                // 受信済みの要求が残っている場合は、まとめて送信する
+                if (exit || !in.ready()) {
+                    out.flush();
+                }
+                if (exit) {
+                    break;
+                }
+            }
+        } catch (SocketException e) {
+            // 相手が切断した場合・停止時にソケットを閉じた場合
+        } catch (IOException e) {
+            // 読み書きに失敗した接続のみを閉じ、他の接続は続ける
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+
+    /**
+     * 1 行（改行まで）を読み込み、line に設定する。改行と、その直前の \r は含めない。
+     * BufferedReader.readLine と異なり、Constants.SERVER_MAX_LINE_LENGTH 文字を超える行は読み込まない。
+     * @return 読み込んだ場合は true（改行のない最後の行を含む）。接続が閉じられた場合は false
+     * @throws ProtocolException 行の長さが上限を超えた場合
+     */
+    private static boolean readLine(BufferedReader in, StringBuilder line) throws IOException {
+        line.setLength(0);
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                return line.length() > 0;
+            }
+            if (line.length() >= Constants.SERVER_MAX_LINE_LENGTH) {
+                throw new ProtocolException(Constants.MSG_SERVER_LINE_TOO_LONG);
+            }
+            line.append((char) c);
+        }
+        int last = line.length() - 1;
+        if (last >= 0 && line.charAt(last) == '\r') {
+            line.setLength(last);
+        }
+        return true;
+    }
+
+    /**
+     * 要求 1 件を処理し、応答を response に追加する。
+     * @return 終了の要求の場合は true
+     */
+    private boolean handle(String line, StringBuilder response) {
+        int first = line.indexOf(Constants.SERVER_FIELD_SEPARATOR);
+        int menu;
+        int number;
+        long amount = 0;
+        try {
+            menu = Integer.parseInt(first < 0 ? line : line.substring(0, first));
+            if (menu == Constants.MENU_EXIT) {
+                response.append(Constants.SERVER_RESPONSE_OK).append('\n');
+                return true;
+            }
+            if (first < 0 || menu < Constants.MENU_DEPOSIT || menu > Constants.MENU_BALANCE) {
+                return rejected(response, Constants.MSG_INVALID_INPUT);
+            }
+            int second = line.indexOf(Constants.SERVER_FIELD_SEPARATOR, first + 1);
+            boolean needsAmount = menu != Constants.MENU_BALANCE;
+            if (needsAmount != (second >= 0)) {
+                return rejected(response, Constants.MSG_INVALID_INPUT);
+            }
+            number = Integer.parseInt(needsAmount ? line.substring(first + 1, second) : line.substring(first + 1));
+            if (needsAmount) {
+                amount = Long.parseLong(line.substring(second + 1));
+            }
+        } catch (NumberFormatException e) {
+            return rejected(response, Constants.MSG_INVALID_INPUT);
+        }
+
+        Bank target = accounts.find(number);
+        if (target == null) {
+            return rejected(response, Constants.MSG_NO_ACCOUNT);
+        }
+
+        switch (menu) {
+            case Constants.MENU_DEPOSIT:
+                // 応答の残高が他の接続の操作を含まないよう、口座をロックしたまま読み取る
+                synchronized (target) {
+                    if (target.deposit(amount)) {
+                        succeeded(response, target);
+                    } else if (amount <= 0) {
+                        rejected(response, Constants.MSG_AMOUNT_INVALID);
+                    } else {
+                        rejected(response, Constants.MSG_BALANCE_OVERFLOW);
+                    }
+                }
+                break;
+
+            case Constants.MENU_WITHDRAW:
+                synchronized (target) {
+                    if (target.withdraw(amount)) {
+                        succeeded(response, target);
+                    } else if (amount <= 0) {
+                        rejected(response, Constants.MSG_AMOUNT_INVALID);
+                    } else {
+                        rejected(response, Constants.MSG_WITHDRAW_FAIL);
+                    }
+                }
+                break;
+
+            default:
+                // 残高と履歴が食い違わないよう、口座をロックして読み取る（送信はロックの外で行う）
+                // ロックを長く保持しないよう、履歴は最新の Constants.SERVER_HISTORY_LIMIT 件に限る
+                synchronized (target) {
+                    TransactionHistory.Cursor c = target.getTransactionHistory().recent(Constants.SERVER_HISTORY_LIMIT);
+                    response.append(Constants.SERVER_RESPONSE_OK).append(Constants.SERVER_FIELD_SEPARATOR)
+                        .append(target.getAccount().getBalance()).append(Constants.SERVER_FIELD_SEPARATOR)
+                        .append(c.end() - c.start()).append('\n');
+                    while (c.next()) {
+                        response.append(c.getDetail()).append('\n');
+                    }
+                }
+                break;
+        }
+        return false;
+    }
+
+    /** 成功の応答（OK 残高）を追加する。 */
+    private static void succeeded(StringBuilder response, Bank target) {
+        response.append(Constants.SERVER_RESPONSE_OK).append(Constants.SERVER_FIELD_SEPARATOR)
+            .append(target.getAccount().getBalance()).append('\n');
+    }
+
+    /** 失敗の応答（NG メッセージ）を追加する。 */
+    private static boolean rejected(StringBuilder response, String message) {
+        response.append(Constants.SERVER_RESPONSE_NG).append(Constants.SERVER_FIELD_SEPARATOR)
+            .append(message).append('\n');
+        return false;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 閉じられない場合も続ける
+        }
+    }
+
+    /**
+     * account.csv の口座を読み込み、サーバーを起動する。標準入力が閉じられると停止する。
+     * @param args [0] ポート番号（省略時は Constants.SERVER_PORT）
+     */
+    public static void main(String[] args) throws IOException {
+        System.out.println(Constants.MSG_SYSTEM_START);
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Constants.SERVER_PORT;
+        AccountRegistry accounts = new BankCsvOperation().loadAccounts();
+
+        BankServer server;
+        try {
+            server = new BankServer(accounts, port);
+        } catch (IOException e) {
+            System.out.println(Constants.MSG_SERVER_ERROR + e.getMessage());
+            return;
+        }
+        System.out.printf(Constants.MSG_SERVER_STARTED_FORMAT, server.getPort(), accounts.size(),
+            server.isVirtualThreads() ? Constants.MSG_SERVER_VIRTUAL_THREADS : Constants.MSG_SERVER_PLATFORM_THREADS);
+
+        // 標準入力が閉じられる（Ctrl+D など）まで待つ
+        while (System.in.read() >= 0) {
+            // 入力内容は使用しない
+        }
+        server.close();
+        System.out.println(Constants.MSG_SERVER_STOPPED);
+    }
+}
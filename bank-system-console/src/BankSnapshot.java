@@ -0,0 +1,493 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 全口座の残高と取引履歴を保存するスナップショット（バイナリ形式）。
+ * 起動時はスナップショットを読み込んでから、それ以降のジャーナルの記録だけを再実行する。
+ * ジャーナルを先頭から再実行する場合と比べて、復元時間が記録の件数に比例して伸びなくなる。
+ *
+ * capture() は口座ごとに Bank のロックを取り、残高・件数・履歴の配列の参照だけを取得する。
+ * 履歴は追加のみで追加済みの要素は変わらないため、書き込み（writeTo）はロックの外で行い、その間も取引を続けられる。
+ * 口座ごとに取得する時点が異なる（ファジーなスナップショット）が、各口座は反映済みの記録の通し番号を保持しており、
+ * 復元時は TransactionJournal.recover() がその番号以下の記録を読み飛ばすため、結果はジャーナルのみの場合と同じになる。
+ *
+ * 追跡モード（TransactionFollower）では、ジャーナルの代わりに、反映済みの取引データの位置（SourcePosition）を
+ * 口座の状態と同じファイルに保存する。取引を実行していない間に取得するため、状態と位置は常に一致する。
+ * ジャーナルを使用する場合は、ジャーナルに最後に記録した反映位置（TransactionJournal.getSource()）を保存する。
+ * 取引データの実行中に保存した場合は「反映中」（SourcePosition.isApplying()）となる。
+ *
+ * ファイル形式（数値はすべてビッグエンディアン）:
+ *   ヘッダ: マジックナンバー（int）, 通し番号（long, この番号以前の記録はすべて反映済み）,
+ *           取引データのファイル名の長さ（short）, ファイル名（UTF-8）, 取引データの位置（long）, 口座数（int）
+ *   口座:   口座番号（int）, 残高（long）, 反映済みの通し番号（long）, 名義の長さ（short）, 名義（UTF-8）,
+ *           履歴の件数（int）, 取引日の列（int × 件数）, 種別の列（byte × 件数）, 金額の列（long × 件数）,
+ *           取引後残高の列（long × 件数）
+ *   口座番号: 置換の鍵（long）, 次にたどる位置（long）
+ *             （使用済みの番号は保存せず、復元した口座の番号から再構成する）
+ *   末尾:   CRC32（int, ヘッダから直前までのバイト列）
+ * 一時ファイルに書き込んで fsync してから、ファイル名の変更で置き換える。
+ */
+public class BankSnapshot {
+
+    /** ファイル先頭のマジックナンバー（"BKS5"。口座番号の使用済みのビット配列を保存しない形式） */
+    private static final int MAGIC = 0x424B5335;
+
+    /** 読み書きに使用するバッファのサイズ（バイト数） */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** ヘッダの固定部分のサイズ（マジックナンバー + 通し番号 + ファイル名の長さ） */
+    private static final int HEADER_SIZE = 4 + 8 + 2;
+
+    /** 口座ごとの固定部分のサイズ（口座番号 + 残高 + 通し番号 + 名義の長さ + 履歴の件数） */
+    private static final int ACCOUNT_FIXED_SIZE = 4 + 8 + 8 + 2 + 4;
+
+    /** この番号以前のジャーナルの記録は、すべての口座に反映済み */
+    private final long journalSeq;
+
+    /** 反映済みの取引データの位置 */
+    private final SourcePosition source;
+
+    /** 取得した口座の状態 */
+    private final List<Entry> entries;
+
+    /** 口座番号の払い出しの状態 */
+    private final long numberSeed;
+    private final long numberCursor;
+
+    private BankSnapshot(long journalSeq, SourcePosition source, List<Entry> entries,
+            AccountNumberAllocator numbers) {
+        this.journalSeq = journalSeq;
+        this.source = source;
+        this.entries = entries;
+        this.numberSeed = numbers.getSeed();
+        this.numberCursor = numbers.getCursor();
+    }
+
+    /**
+     * 台帳の全口座の状態を取得する。
+     * journalSeq は取得を始める前に TransactionJournal.getLastSeq() で取得しておくこと。
+     * （それ以前の記録は、取得時点で各口座に反映済みとなる）
+     * 取得中に台帳へ口座を追加しないこと。
+     * @param accounts 口座台帳
+     * @param journalSeq 反映済みのジャーナルの記録の通し番号
+     * @return スナップショット
+     */
+    public static BankSnapshot capture(AccountRegistry accounts, long journalSeq) {
+        return capture(accounts, journalSeq, SourcePosition.NONE);
+    }
+
+    /**
+     * 台帳の全口座の状態を、反映済みの取引データの位置とあわせて取得する。
+     * 追跡モードでは、取得中に取引を実行しないこと。（口座の状態と位置が一致しなくなる）
+     * ジャーナルを使用する場合は、TransactionJournal.getSource() の位置を渡す。
+     * （取引データの実行中は反映中の位置となり、反映済みの位置と口座の状態は、ジャーナルの記録により一致する）
+     * @param accounts 口座台帳
+     * @param journalSeq 反映済みのジャーナルの記録の通し番号（ジャーナルを使用しない場合は 0）
+     * @param source 反映済みの取引データの位置
+     * @return スナップショット
+     */
+    public static BankSnapshot capture(AccountRegistry accounts, long journalSeq, SourcePosition source) {
+        List<Entry> entries = new ArrayList<>(accounts.size());
+        for (Bank bank : accounts.getAccounts()) {
+            synchronized (bank) {
+                entries.add(new Entry(bank));
+            }
+        }
+        return new BankSnapshot(journalSeq, source, entries, Bank.getNumberAllocator());
+    }
+
+    /** @return この番号以前のジャーナルの記録は、すべての口座に反映済み */
+    public long getJournalSeq() {
+        return journalSeq;
+    }
+
+    /** @return 反映済みの取引データの位置 */
+    public SourcePosition getSource() {
+        return source;
+    }
+
+    /** @return 口座数 */
+    public int getAccountCount() {
+        return entries.size();
+    }
+
+    /**
+     * スナップショットをファイルに書き込む。既存のファイルは、書き込みが完了してから置き換える。
+     * @param file 書き込み先
+     * @return 書き込んだバイト数
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public long writeTo(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long written;
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(ch);
+            byte[] sourceName = source.getFileName().getBytes(StandardCharsets.UTF_8);
+            out.require(HEADER_SIZE + sourceName.length + 8 + 4);
+            out.buffer.putInt(MAGIC).putLong(journalSeq).putShort((short) sourceName.length).put(sourceName)
+                .putLong(source.getOffset()).putInt(entries.size());
+            for (Entry e : entries) {
+                out.require(ACCOUNT_FIXED_SIZE + e.name.length);
+                out.buffer.putInt(e.number).putLong(e.balance).putLong(e.journalSeq)
+                    .putShort((short) e.name.length).put(e.name).putInt(e.size);
+                out.putInts(e.epochDays, e.size);
+                out.putBytes(e.types, e.size);
+                out.putLongs(e.amounts, e.size);
+                out.putLongs(e.balanceSnapshots, e.size);
+            }
+            out.require(8 + 8);
+            out.buffer.putLong(numberSeed).putLong(numberCursor);
+            written = out.finish();
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        TransactionJournal.force(file.toAbsolutePath().getParent());
+        return written;
+    }
+
+    /**
+     * スナップショットを読み込み、口座を台帳に登録する。
+     * 続けて TransactionJournal.recover() を呼び出し、それ以降の記録を反映すること。
+     * @param file スナップショットのファイル
+     * @param accounts 復元した口座の登録先
+     * @return スナップショットに反映済みのジャーナルの記録の通し番号
+     * @throws IOException ファイルの形式が不正な場合（CRC 不一致を含む）、読み込みに失敗した場合
+     */
+    public static long load(Path file, AccountRegistry accounts) throws IOException {
+        return load(file, accounts, null);
+    }
+
+    /**
+     * スナップショットを読み込み、口座を台帳に登録する。反映済みの取引データの位置もあわせて取得する。（追跡モード用）
+     * @param file スナップショットのファイル
+     * @param accounts 復元した口座の登録先
+     * @param source 反映済みの取引データの位置の格納先（[0] に格納する。不要な場合は null）
+     * @return スナップショットに反映済みのジャーナルの記録の通し番号
+     * @throws IOException ファイルの形式が不正な場合（CRC 不一致を含む）、読み込みに失敗した場合
+     */
+    public static long load(Path file, AccountRegistry accounts, SourcePosition[] source) throws IOException {
+        List<Bank> banks;
+        long seq;
+        SourcePosition position;
+        long numberSeed;
+        long numberCursor;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input in = new Input(ch);
+            in.require(HEADER_SIZE);
+            if (in.buffer.getInt() != MAGIC) {
+                throw new IOException(Constants.ERR_MSG_SNAPSHOT_FORMAT + file);
+            }
+            seq = in.buffer.getLong();
+            byte[] sourceName = new byte[Short.toUnsignedInt(in.buffer.getShort())];
+            in.getBytes(sourceName, sourceName.length);
+            in.require(8 + 4);
+            position = new SourcePosition(new String(sourceName, StandardCharsets.UTF_8), in.buffer.getLong());
+            int count = in.buffer.getInt();
+            banks = new ArrayList<>(Math.max(count, 0));
+            for (int i = 0; i < count; i++) {
+                in.require(4 + 8 + 8 + 2);
+                int number = in.buffer.getInt();
+                long balance = in.buffer.getLong();
+                long accountSeq = in.buffer.getLong();
+                byte[] name = new byte[Short.toUnsignedInt(in.buffer.getShort())];
+                in.getBytes(name, name.length);
+                in.require(4);
+                int size = in.buffer.getInt();
+                if (size < 1) {
+                    throw new IOException(Constants.ERR_MSG_SNAPSHOT_FORMAT + file);
+                }
+                int[] epochDays = in.getInts(size);
+                byte[] types = new byte[size];
+                in.getBytes(types, size);
+                long[] amounts = in.getLongs(size);
+                long[] balanceSnapshots = in.getLongs(size);
+                banks.add(new Bank(new Account(new String(name, StandardCharsets.UTF_8), number, balance),
+                    new TransactionHistory(epochDays, types, amounts, balanceSnapshots, size), accountSeq));
+            }
+            in.require(8 + 8);
+            numberSeed = in.buffer.getLong();
+            numberCursor = in.buffer.getLong();
+            in.verify(file);
+        } catch (EOFException e) {
+            throw new IOException(Constants.ERR_MSG_SNAPSHOT_FORMAT + file, e);
+        }
+
+        try {
+            Bank.getNumberAllocator().restore(numberSeed, numberCursor);
+        } catch (IllegalArgumentException e) {
+            // 口座番号の範囲が保存時と異なる
+            throw new IOException(Constants.ERR_MSG_SNAPSHOT_FORMAT + file, e);
+        }
+
+        // CRC を確認してから登録し、不正なファイルから一部の口座だけが復元されないようにする
+        for (Bank bank : banks) {
+            if (!accounts.register(bank)) {
+                throw new IOException(Constants.ERR_MSG_SNAPSHOT_FORMAT + file);
+            }
+        }
+        if (source != null) {
+            source[0] = position;
+        }
+        return seq;
+    }
+
+    /**
+     * 反映済みの取引データの位置。（追跡モードで、次に読み込むファイルと位置）
+     */
+    public static final class SourcePosition {
+
+        /** 位置を記録していない場合の値 */
+        public static final SourcePosition NONE = new SourcePosition("", 0);
+
+        /** 取引データを反映している途中であることを表す位置（反映済みの行を特定できない） */
+        private static final long APPLYING_OFFSET = -1;
+
+        /** ファイル名（取り込み用ディレクトリの場合はその中のファイル名） */
+        private final String fileName;
+
+        /** ファイルの先頭からのバイト数（この位置より前の行は反映済み） */
+        private final long offset;
+
+        public SourcePosition(String fileName, long offset) {
+            this.fileName = fileName;
+            this.offset = offset;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * 取引データを反映している途中であることを表す位置を返す。
+         * @param fileName 反映中の取引データのファイル名
+         */
+        public static SourcePosition applying(String fileName) {
+            return new SourcePosition(fileName, APPLYING_OFFSET);
+        }
+
+        /** @return 取引データを反映している途中の位置（applying() で作成したもの）の場合は true */
+        public boolean isApplying() {
+            return offset == APPLYING_OFFSET;
+        }
+    }
+
+    // ---- 内部処理 ----
+
+    /** 取得時点の口座の状態（履歴の配列は size 件目まで変更されない） */
+    private static class Entry {
+
+        final int number;
+        final long balance;
+        final long journalSeq;
+        final byte[] name;
+        final int size;
+        final int[] epochDays;
+        final byte[] types;
+        final long[] amounts;
+        final long[] balanceSnapshots;
+
+        /** Bank のロック内で呼び出す */
+        Entry(Bank bank) {
+            Account account = bank.getAccount();
+            TransactionHistory history = bank.getTransactionHistory();
+            this.number = account.getAccountNumber();
+            this.balance = account.getBalance();
+            this.journalSeq = bank.getJournalSeq();
+            this.name = account.getHolderName().getBytes(StandardCharsets.UTF_8);
+            this.size = history.size();
+            this.epochDays = history.epochDayColumn();
+            this.types = history.typeColumn();
+            this.amounts = history.amountColumn();
+            this.balanceSnapshots = history.balanceSnapshotColumn();
+        }
+    }
+
+    /** バッファを介してファイルに書き込み、書き込んだバイト列の CRC を計算する。 */
+    private static class Output {
+
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private long written;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /** バッファの空きが n バイト未満の場合は、書き込んで空ける。 */
+        void require(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                drain();
+            }
+        }
+
+        void putInts(int[] values, int length) throws IOException {
+            int done = 0;
+            while (done < length) {
+                require(4);
+                int n = Math.min(length - done, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, done, n);
+                buffer.position(buffer.position() + n * 4);
+                done += n;
+            }
+        }
+
+        void putLongs(long[] values, int length) throws IOException {
+            int done = 0;
+            while (done < length) {
+                require(8);
+                int n = Math.min(length - done, buffer.remaining() / 8);
+                buffer.asLongBuffer().put(values, done, n);
+                buffer.position(buffer.position() + n * 8);
+                done += n;
+            }
+        }
+
+        void putBytes(byte[] values, int length) throws IOException {
+            int done = 0;
+            while (done < length) {
+                require(1);
+                int n = Math.min(length - done, buffer.remaining());
+                buffer.put(values, done, n);
+                done += n;
+            }
+        }
+
+        /** 残りを書き込み、末尾に CRC を付ける。 */
+        long finish() throws IOException {
+            drain();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            write();
+            return written;
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            write();
+        }
+
+        private void write() throws IOException {
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * ファイルを読み込み、読み込んだバイト列の CRC を計算する。
+     * 2GB 以下のファイルはメモリマップで読み込み、それ以上はバッファを介して読み込む。
+     */
+    private static class Input {
+
+        final ByteBuffer buffer;
+        /** バッファを介して読み込む場合の読み込み元（メモリマップの場合は null） */
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+
+        /** buffer のうち、CRC を計算済みの位置 */
+        private int checked;
+
+        Input(FileChannel channel) throws IOException {
+            long size = channel.size();
+            if (size <= Integer.MAX_VALUE) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                this.channel = null;
+            } else {
+                this.buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+                this.channel = channel;
+            }
+        }
+
+        /** バッファに n バイト以上を読み込む。 */
+        void require(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return;
+            }
+            if (channel == null) {
+                throw new EOFException();
+            }
+            consume();
+            buffer.compact();
+            while (buffer.position() < n) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+            checked = 0;
+        }
+
+        int[] getInts(int length) throws IOException {
+            int[] values = new int[length];
+            int done = 0;
+            while (done < length) {
+                require(4);
+                int n = Math.min(length - done, buffer.remaining() / 4);
+                buffer.asIntBuffer().get(values, done, n);
+                buffer.position(buffer.position() + n * 4);
+                done += n;
+            }
+            return values;
+        }
+
+        long[] getLongs(int length) throws IOException {
+            long[] values = new long[length];
+            int done = 0;
+            while (done < length) {
+                require(8);
+                int n = Math.min(length - done, buffer.remaining() / 8);
+                buffer.asLongBuffer().get(values, done, n);
+                buffer.position(buffer.position() + n * 8);
+                done += n;
+            }
+            return values;
+        }
+
+        void getBytes(byte[] values, int length) throws IOException {
+            int done = 0;
+            while (done < length) {
+                require(1);
+                int n = Math.min(length - done, buffer.remaining());
+                buffer.get(values, done, n);
+                done += n;
+            }
+        }
+
+        /** 末尾の CRC を確認し、ファイルの終わりであることを確認する。 */
+        void verify(Path file) throws IOException {
+            consume();
+            int expected = (int) crc.getValue();
+            require(4);
+            if (buffer.getInt() != expected || buffer.hasRemaining()
+                    || (channel != null && channel.position() != channel.size())) {
+                throw new IOException(Constants.ERR_MSG_SNAPSHOT_FORMAT + file);
+            }
+        }
+
+        /** 読み終えた部分の CRC を計算する。 */
+        private void consume() {
+            ByteBuffer done = buffer.duplicate();
+            done.position(checked).limit(buffer.position());
+            crc.update(done);
+            checked = buffer.position();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CSV一括処理中のメッセージ（入出金・振込結果・残高照会）の出力先。
+ * 出力方法を次の中から選択できる。
+ * - IMMEDIATE：1 件ごとに出力する（従来と同じ）
+ * - BUFFERED：バッファが一杯になった時と処理の最後にまとめて出力する
+ * - FLUSH_EVERY_N：指定した行数ごとにまとめて出力する
+ * - SUMMARY：1 件ごとのメッセージは出力せず、最後に結果ごとの件数のみを出力する
+ *
+ * どの方法でも、出力される 1 件ごとのメッセージの内容は従来と同じ。
+ * 件数の集計はすべての方法で行う。
+ * 並列実行時は複数のスレッドから呼び出されるため、出力はこのインスタンスで同期する。
+ */
+public class BatchOutputSink {
+
+    /** 出力方法 */
+    public enum Mode {
+        IMMEDIATE,
+        BUFFERED,
+        FLUSH_EVERY_N,
+        SUMMARY
+    }
+
+    /** 入出金メッセージ（解析済み） */
+    private static final MessageTemplate DEPOSIT_MESSAGE = MessageTemplate.compile(Constants.MSG_DEPOSIT_FORMAT);
+    private static final MessageTemplate WITHDRAW_MESSAGE = MessageTemplate.compile(Constants.MSG_WITHDRAW_FORMAT);
+    private static final MessageTemplate TRANSFER_MESSAGE = MessageTemplate.compile(Constants.MSG_TRANSFER_FORMAT);
+    private static final MessageTemplate HISTORY_OMITTED_MESSAGE =
+        MessageTemplate.compile(Constants.MSG_HISTORY_OMITTED_FORMAT);
+
+    /** 出力方法 */
+    private final Mode mode;
+
+    /** FLUSH_EVERY_N の場合の出力間隔（行数） */
+    private final int flushInterval;
+
+    /** 出力先 */
+    private final ReportWriter out;
+
+    /** 残高照会で出力する取引履歴の件数の上限（最新の N 件。既定は全件） */
+    private int historyLimit = Integer.MAX_VALUE;
+
+    /** 残高照会の取引履歴の行のキャッシュ（null の場合は毎回整形する） */
+    private ReportCache reportCache;
+
+    /** 前回の出力以降に書き込んだメッセージ数 */
+    private int pendingLines;
+
+    /** 結果ごとの件数（並列実行時もロックなしで集計する） */
+    private final LongAdder deposits = new LongAdder();
+    private final LongAdder withdrawals = new LongAdder();
+    private final LongAdder transfers = new LongAdder();
+    private final LongAdder balanceInquiries = new LongAdder();
+    private final LongAdder invalidAmounts = new LongAdder();
+    private final LongAdder insufficientBalances = new LongAdder();
+    private final LongAdder balanceOverflows = new LongAdder();
+    private final LongAdder unknownAccounts = new LongAdder();
+
+    /**
+     * 従来どおり 1 件ごとに出力する出力先を作成する。
+     */
+    public BatchOutputSink() {
+        this(Mode.IMMEDIATE, 0);
+    }
+
+    /**
+     * 出力方法を指定して作成する。
+     * @param mode 出力方法
+     * @param flushInterval FLUSH_EVERY_N の場合の出力間隔（行数）。それ以外の場合は無視する。
+     */
+    public BatchOutputSink(Mode mode, int flushInterval) {
+        if (mode == Mode.FLUSH_EVERY_N && flushInterval < 1) {
+            throw new IllegalArgumentException("flushInterval: " + flushInterval);
+        }
+        this.mode = mode;
+        this.flushInterval = flushInterval;
+        this.out = ReportWriter.stdout();
+    }
+
+    /**
+     * 残高照会で出力する取引履歴を最新の N 件に制限する。それより前の履歴は件数のみを出力する。
+     * 取引の実行を始める前に設定すること。
+     * @param historyLimit 件数の上限
+     */
+    public void setHistoryLimit(int historyLimit) {
+        if (historyLimit < 1) {
+            throw new IllegalArgumentException("historyLimit: " + historyLimit);
+        }
+        this.historyLimit = historyLimit;
+    }
+
+    /**
+     * 残高照会で出力する取引履歴の行を、口座ごとにキャッシュするよう設定する。
+     * 取引の実行を始める前に設定すること。
+     * @param reportCache キャッシュ（null の場合はキャッシュしない）
+     */
+    public void setReportCache(ReportCache reportCache) {
+        this.reportCache = reportCache;
+    }
+
+    /** @return 残高照会の取引履歴の行のキャッシュ（設定していない場合は null） */
+    public ReportCache getReportCache() {
+        return reportCache;
+    }
+
+    /**
+     * 入金成功を記録する。
+     * @param number 口座番号
+     * @param amount 金額
+     */
+    public void deposited(int number, long amount) {
+        deposits.increment();
+        if (mode != Mode.SUMMARY) {
+            synchronized (this) {
+                DEPOSIT_MESSAGE.write(out, number, amount);
+                lineWritten();
+            }
+        }
+    }
+
+    /**
+     * 出金成功を記録する。
+     * @param number 口座番号
+     * @param amount 金額
+     */
+    public void withdrew(int number, long amount) {
+        withdrawals.increment();
+        if (mode != Mode.SUMMARY) {
+            synchronized (this) {
+                WITHDRAW_MESSAGE.write(out, number, amount);
+                lineWritten();
+            }
+        }
+    }
+
+    /**
+     * 振込成功を記録する。
+     * @param fromNumber 振込元の口座番号
+     * @param toNumber 振込先の口座番号
+     * @param amount 金額
+     */
+    public void transferred(int fromNumber, int toNumber, long amount) {
+        transfers.increment();
+        if (mode != Mode.SUMMARY) {
+            synchronized (this) {
+                TRANSFER_MESSAGE.write(out, fromNumber, toNumber, amount);
+                lineWritten();
+            }
+        }
+    }
+
+    /** 金額不正による入出金・振込の失敗を記録する。（メッセージは出力しない） */
+    public void rejectedInvalidAmount() {
+        invalidAmounts.increment();
+    }
+
+    /** 残高不足による出金・振込の失敗を記録する。（メッセージは出力しない） */
+    public void rejectedInsufficientBalance() {
+        insufficientBalances.increment();
+    }
+
+    /** 残高の上限超過による入金・振込の失敗を記録する。（メッセージは出力しない） */
+    public void rejectedBalanceOverflow() {
+        balanceOverflows.increment();
+    }
+
+    /** 口座が見つからずスキップした取引を記録する。（メッセージは出力しない） */
+    public void skippedUnknownAccount() {
+        unknownAccounts.increment();
+    }
+
+    /**
+     * 残高照会を件数のみ記録する。（取引履歴を保持しない AccountTable 用。メッセージは出力しない）
+     */
+    public void balanceInquired() {
+        balanceInquiries.increment();
+    }
+
+    /**
+     * 残高照会と取引履歴を出力する。
+     * CSV取引の残高照会コマンド専用の出力形式。
+     * @param bank 表示対象の Bank インスタンス
+     */
+    public void balanceReport(Bank bank) {
+        balanceInquiries.increment();
+        if (mode == Mode.SUMMARY) {
+            return;
+        }
+        Account acc = bank.getAccount();
+
+        // 残高と履歴が食い違わないよう、口座をロックして読み取る
+        // 並列実行時に他の口座の出力と混ざらないよう、レポート全体を続けて書き込む
+        synchronized (bank) {
+            synchronized (this) {
+                out.append("残高照会 (").append(acc.getHolderName()).append(") : ")
+                   .append(acc.getBalance()).append("円").newLine();
+
+                out.append("取引履歴 (口座番号: ").appendZeroPadded(acc.getAccountNumber(), 7)
+                   .append(")").newLine();
+
+                // 取引履歴の詳細情報を出力（上限を超える場合は最新の N 件のみ）
+                TransactionHistory.Cursor c = bank.getTransactionHistory().recent(historyLimit);
+                if (c.start() > 0) {
+                    HISTORY_OMITTED_MESSAGE.write(out, c.start());
+                }
+                if (reportCache != null) {
+                    // 前回の残高照会までに整形した行を再利用し、追加された行のみを整形する
+                    reportCache.appendHistory(bank, c.start(), out);
+                } else {
+                    while (c.next()) {
+                        c.appendDetail(out);
+                        out.newLine();
+                    }
+                }
+                lineWritten();
+            }
+        }
+    }
+
+    /**
+     * 未出力のメッセージをすべて出力する。
+     * 他の出力（エラーメッセージなど）の前に必ず呼び出すこと。
+     */
+    public synchronized void flush() {
+        out.flush();
+        pendingLines = 0;
+    }
+
+    /**
+     * SUMMARY の場合、結果ごとの件数を出力する。それ以外の場合は何もしない。
+     */
+    public void printSummary() {
+        if (mode != Mode.SUMMARY) {
+            return;
+        }
+        System.out.printf(Constants.MSG_BATCH_SUMMARY_FORMAT,
+            deposits.sum(), withdrawals.sum(), transfers.sum(), balanceInquiries.sum(),
+            invalidAmounts.sum(), insufficientBalances.sum(), balanceOverflows.sum(), unknownAccounts.sum());
+    }
+
+    // ---- 件数の参照 ----
+
+    public long getDeposits() {
+        return deposits.sum();
+    }
+
+    public long getWithdrawals() {
+        return withdrawals.sum();
+    }
+
+    public long getTransfers() {
+        return transfers.sum();
+    }
+
+    public long getBalanceInquiries() {
+        return balanceInquiries.sum();
+    }
+
+    public long getInvalidAmounts() {
+        return invalidAmounts.sum();
+    }
+
+    public long getInsufficientBalances() {
+        return insufficientBalances.sum();
+    }
+
+    public long getBalanceOverflows() {
+        return balanceOverflows.sum();
+    }
+
+    public long getUnknownAccounts() {
+        return unknownAccounts.sum();
+    }
+
+    // ---- 内部処理 ----
+
+    /**
+     * メッセージ 1 件の書き込み後、出力方法に応じて出力する。（ロック内で呼び出す）
+     */
+    private void lineWritten() {
+        switch (mode) {
+            case IMMEDIATE:
+                out.flush();
+                break;
+            case FLUSH_EVERY_N:
+                if (++pendingLines >= flushInterval) {
+                    out.flush();
+                    pendingLines = 0;
+                } else {
+                    out.flushIfFull();
+                }
+                break;
+            default:
+                // 溜めすぎないよう、一定量を超えた場合のみ出力する
+                out.flushIfFull();
+                break;
+        }
+    }
+}
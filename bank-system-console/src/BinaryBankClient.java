@@ -0,0 +1,130 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * BinaryBankServer のクライアント。
+ * send で要求を送信用バッファに追加し、receive で応答を 1 件ずつ受信する。
+ * 応答を待たずに複数の要求を send してから、同じ件数を receive することで要求をパイプライン化できる。
+ * 受信した応答の内容は、次の receive までの間 getRequestId / getResult / getBalance で取得する。
+ * （要求・応答ごとにオブジェクトを生成しない）
+ *
+ * 応答を受信しないまま送信できる要求の数には上限がある。
+ * サーバーの送信用バッファ（Constants.WIRE_BUFFER_SIZE）を超える応答が溜まるとサーバーは受信を止めるため、
+ * 未受信の要求は数千件程度までにすること。
+ *
+ * スレッドセーフではない。（スレッドごとに接続を作成すること）
+ */
+public class BinaryBankClient implements AutoCloseable {
+
+    /** 要求・応答のフレーム全体のサイズ（先頭の長さを含む） */
+    private static final int REQUEST_FRAME_SIZE = Integer.BYTES + Constants.WIRE_REQUEST_LENGTH;
+    private static final int RESPONSE_FRAME_SIZE = Integer.BYTES + Constants.WIRE_RESPONSE_LENGTH;
+
+    private final SocketChannel channel;
+
+    /** 送信用バッファ（書き込み可能な状態で保持する） */
+    private final ByteBuffer out = ByteBuffer.allocateDirect(Constants.WIRE_BUFFER_SIZE);
+
+    /** 受信用バッファ（読み取り可能な状態で保持する） */
+    private final ByteBuffer in = ByteBuffer.allocateDirect(Constants.WIRE_BUFFER_SIZE).flip();
+
+    /** 最後に受信した応答 */
+    private long requestId;
+    private byte result;
+    private long balance;
+
+    /**
+     * サーバーに接続する。
+     * @throws IOException 接続できない場合
+     */
+    public BinaryBankClient(String host, int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    /**
+     * 要求を送信用バッファに追加する。バッファに空きがない場合は、先に送信する。
+     * @param requestId 応答に付けて返される要求ID
+     * @param type 取引種別コード（Constants.TRANSACTION_CODE_DEPOSIT / WITHDRAW / GET_BALANCE）
+     * @param accountNumber 口座番号
+     * @param amount 金額（残高照会の場合は 0）
+     */
+    public void send(long requestId, int type, int accountNumber, long amount) throws IOException {
+        if (out.remaining() < REQUEST_FRAME_SIZE) {
+            flush();
+        }
+        out.putInt(Constants.WIRE_REQUEST_LENGTH);
+        out.putLong(requestId);
+        out.put((byte) type);
+        out.putInt(accountNumber);
+        out.putLong(amount);
+    }
+
+    /**
+     * 送信用バッファの要求をすべて送信する。
+     */
+    public void flush() throws IOException {
+        out.flip();
+        try {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } finally {
+            out.compact();
+        }
+    }
+
+    /**
+     * 応答を 1 件受信する。送信していない要求があれば、先に送信する。
+     * @throws EOFException サーバーが接続を閉じた場合
+     * @throws IOException 応答の形式が不正な場合
+     */
+    public void receive() throws IOException {
+        if (out.position() > 0) {
+            flush();
+        }
+        while (in.remaining() < RESPONSE_FRAME_SIZE) {
+            in.compact();
+            int read;
+            try {
+                read = channel.read(in);
+            } finally {
+                in.flip();
+            }
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+        int length = in.getInt();
+        if (length != Constants.WIRE_RESPONSE_LENGTH) {
+            throw new IOException("応答の長さが不正です: " + length);
+        }
+        requestId = in.getLong();
+        result = in.get();
+        balance = in.getLong();
+    }
+
+    /** @return 最後に受信した応答の要求ID */
+    public long getRequestId() {
+        return requestId;
+    }
+
+    /** @return 最後に受信した応答の結果コード（Constants.RESULT_*） */
+    public byte getResult() {
+        return result;
+    }
+
+    /** @return 最後に受信した応答の残高 */
+    public long getBalance() {
+        return balance;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,367 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+/**
+ * 入金・出金・残高照会を、長さ付きのバイナリ形式で受け付けるサーバー。
+ * 1 つの接続で応答を待たずに複数の要求を送る（パイプライン化する）ことができ、
+ * 応答には要求の要求IDを付けて、同じ接続の要求の順に返す。
+ *
+ * フレーム（数値はすべてビッグエンディアン）:
+ *   要求: 長さ(int = Constants.WIRE_REQUEST_LENGTH) 要求ID(long) 取引種別コード(byte) 口座番号(int) 金額(long)
+ *         取引種別コードは Constants.TRANSACTION_CODE_DEPOSIT / WITHDRAW / GET_BALANCE（残高照会の金額は無視する）
+ *   応答: 長さ(int = Constants.WIRE_RESPONSE_LENGTH) 要求ID(long) 結果コード(byte) 残高(long)
+ *         結果コードは Constants.RESULT_*。残高は処理後の残高（口座がない場合・要求が不正な場合は 0）
+ * 長さが想定と異なるフレームには RESULT_BAD_REQUEST を返す。長さが要求IDより短い・バッファより長い場合は接続を閉じる。
+ *
+ * NIO のセレクタを使い、1 つのスレッド（イベントループ）ですべての接続を処理する。
+ * 接続ごとの受信用・送信用バッファは DirectBufferPool から取得したダイレクトバッファで、
+ * 要求の解析・口座への操作・応答の作成はバッファを直接読み書きするため、接続後の要求の処理ではオブジェクトを生成しない。
+ * 送信用バッファに空きがなくなった場合は、送信できるまで要求の処理を止める。（受信用バッファが埋まると相手の送信も止まる）
+ *
+ * 口座への操作はイベントループのスレッドで実行するため、ジャーナルを使用する場合は記録の待ち時間がすべての接続の応答時間に加わる。
+ *
+ * 単独で起動する場合は、account.csv の口座を読み込んでから待ち受ける。
+ *   java -cp out BinaryBankServer [ポート番号]
+ */
+public class BinaryBankServer implements AutoCloseable {
+
+    /** 応答のフレーム全体のサイズ（先頭の長さを含む） */
+    private static final int RESPONSE_FRAME_SIZE = Integer.BYTES + Constants.WIRE_RESPONSE_LENGTH;
+
+    /** 口座台帳 */
+    private final AccountRegistry accounts;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+
+    /** 接続ごとのバッファのプール（イベントループのスレッドのみで使用する） */
+    private final DirectBufferPool buffers = new DirectBufferPool(Constants.WIRE_BUFFER_SIZE,
+        Constants.WIRE_BUFFER_POOL_SIZE);
+
+    /** イベントループのスレッド */
+    private final Thread loop;
+
+    /** 準備のできた接続を処理する（select のたびに生成しないよう保持しておく） */
+    private final Consumer<SelectionKey> readyHandler = this::onReady;
+
+    /** 一括入出金（Bank.applyBatch）に 1 件ずつ渡すための作業領域 */
+    private final byte[] types = new byte[1];
+    private final long[] amounts = new long[1];
+    private final byte[] results = new byte[1];
+
+    /** 処理した要求数と、受け付けた接続数（イベントループのスレッドのみが更新する） */
+    private volatile long requestCount;
+    private volatile long connectionCount;
+
+    /** close が呼び出されたか */
+    private volatile boolean closing;
+
+    /**
+     * ループバックアドレスの指定したポートで待ち受けを開始する。
+     * @param accounts 口座台帳（起動後に口座を追加しないこと）
+     * @param port ポート番号（0 の場合は空いているポート）
+     * @throws IOException ポートを使用できない場合
+     */
+    public BinaryBankServer(AccountRegistry accounts, int port) throws IOException {
+        this.accounts = accounts;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), Constants.SERVER_BACKLOG);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+
+        loop = new Thread(this::runLoop, "bank-wire-loop");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /** @return 待ち受けているポート番号 */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /** @return これまでに処理した要求数 */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /** @return これまでに受け付けた接続数 */
+    public long getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * 待ち受けを停止し、すべての接続を閉じる。
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---- イベントループ ----
+
+    private void runLoop() {
+        try {
+            while (!closing) {
+                selector.select(readyHandler);
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // セレクタが使用できなくなった場合は停止する
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Session) {
+                    closeSession(key, (Session) key.attachment());
+                }
+            }
+            closeQuietly(serverChannel);
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // 停止中のため無視する
+            }
+        }
+    }
+
+    private void onReady(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Session session = (Session) key.attachment();
+        try {
+            if (key.isWritable()) {
+                session.flush();
+            }
+            if (key.isReadable() && session.channel.read(session.in) < 0) {
+                // 相手が送信を終えた。受信済みの要求の応答を送信し終えてから閉じる
+                session.inputClosed = true;
+            }
+            // 送信用バッファが空になるたびに、受信用バッファに残っているフレームを続けて処理する
+            do {
+                if (!process(session)) {
+                    closeSession(key, session);
+                    return;
+                }
+                session.flush();
+            } while (session.out.position() == 0 && session.hasCompleteFrame());
+
+            int ops = 0;
+            if (!session.inputClosed && session.in.hasRemaining()) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (session.out.position() > 0) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            if (ops == 0) {
+                closeSession(key, session);
+            } else if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        } catch (IOException e) {
+            // この接続のみを閉じ、他の接続は続ける
+            closeSession(key, session);
+        }
+    }
+
+    /** 待ち受け中の接続をすべて受け付ける。 */
+    private void accept() {
+        while (true) {
+            SocketChannel channel = null;
+            try {
+                channel = serverChannel.accept();
+                if (channel == null) {
+                    return;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.register(selector, SelectionKey.OP_READ,
+                    new Session(channel, buffers.acquire(), buffers.acquire()));
+                connectionCount++;
+            } catch (IOException e) {
+                if (channel != null) {
+                    closeQuietly(channel);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 受信用バッファにある完全なフレームを順に処理し、応答を送信用バッファに書き込む。
+     * 送信用バッファに空きがない場合は、残りのフレームを受信用バッファに残す。
+     * @return フレームの長さが扱えない値で、接続を閉じる必要がある場合は false
+     */
+    private boolean process(Session session) {
+        ByteBuffer in = session.in;
+        ByteBuffer out = session.out;
+        in.flip();
+        try {
+            while (in.remaining() >= Integer.BYTES && out.remaining() >= RESPONSE_FRAME_SIZE) {
+                int position = in.position();
+                int length = in.getInt(position);
+                if (length < Long.BYTES || length > in.capacity() - Integer.BYTES) {
+                    return false;
+                }
+                if (in.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                int body = position + Integer.BYTES;
+                long requestId = in.getLong(body);
+                if (length == Constants.WIRE_REQUEST_LENGTH) {
+                    execute(requestId, in.get(body + 8), in.getInt(body + 9), in.getLong(body + 13), out);
+                } else {
+                    respond(out, requestId, Constants.RESULT_BAD_REQUEST, 0);
+                }
+                in.position(body + length);
+                requestCount++;
+            }
+            return true;
+        } finally {
+            in.compact();
+        }
+    }
+
+    /** 要求 1 件を実行し、応答を書き込む。 */
+    private void execute(long requestId, byte type, int number, long amount, ByteBuffer out) {
+        if (type != Constants.TRANSACTION_CODE_DEPOSIT && type != Constants.TRANSACTION_CODE_WITHDRAW
+                && type != Constants.TRANSACTION_CODE_GET_BALANCE) {
+            respond(out, requestId, Constants.RESULT_BAD_REQUEST, 0);
+            return;
+        }
+        Bank target = accounts.find(number);
+        if (target == null) {
+            respond(out, requestId, Constants.RESULT_NO_ACCOUNT, 0);
+            return;
+        }
+        if (type == Constants.TRANSACTION_CODE_GET_BALANCE) {
+            respond(out, requestId, Constants.RESULT_SUCCESS, target.getAccount().getBalance());
+            return;
+        }
+        // 処理後の残高を他の取引が割り込む前に読み取る
+        synchronized (target) {
+            types[0] = type;
+            amounts[0] = amount;
+            target.applyBatch(types, amounts, 0, 1, results);
+            respond(out, requestId, results[0], target.getAccount().getBalance());
+        }
+    }
+
+    private static void respond(ByteBuffer out, long requestId, byte result, long balance) {
+        out.putInt(Constants.WIRE_RESPONSE_LENGTH);
+        out.putLong(requestId);
+        out.put(result);
+        out.putLong(balance);
+    }
+
+    private void closeSession(SelectionKey key, Session session) {
+        key.cancel();
+        closeQuietly(session.channel);
+        if (!session.released) {
+            session.released = true;
+            buffers.release(session.in);
+            buffers.release(session.out);
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 閉じられない場合も続ける
+        }
+    }
+
+    /** 接続 1 つ分の状態。 */
+    private static final class Session {
+
+        final SocketChannel channel;
+
+        /** 受信用バッファ（書き込み可能な状態で保持する） */
+        final ByteBuffer in;
+
+        /** 送信用バッファ（書き込み可能な状態で保持する） */
+        final ByteBuffer out;
+
+        /** 相手が送信を終えたか */
+        boolean inputClosed;
+
+        /** バッファをプールに返却したか */
+        boolean released;
+
+        Session(SocketChannel channel, ByteBuffer in, ByteBuffer out) {
+            this.channel = channel;
+            this.in = in;
+            this.out = out;
+        }
+
+        /** 受信用バッファに、まだ処理していない完全なフレームがあるか */
+        boolean hasCompleteFrame() {
+            return in.position() >= Integer.BYTES && in.position() >= Integer.BYTES + in.getInt(0);
+        }
+
+        /** 送信用バッファの内容を、送信できるところまで送信する。 */
+        void flush() throws IOException {
+            if (out.position() == 0) {
+                return;
+            }
+            out.flip();
+            try {
+                channel.write(out);
+            } finally {
+                out.compact();
+            }
+        }
+    }
+
+    /**
+     * account.csv の口座を読み込み、サーバーを起動する。標準入力が閉じられると停止する。
+     * @param args [0] ポート番号（省略時は Constants.WIRE_PORT）
+     */
+    public static void main(String[] args) throws IOException {
+        System.out.println(Constants.MSG_SYSTEM_START);
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Constants.WIRE_PORT;
+        AccountRegistry accounts = new BankCsvOperation().loadAccounts();
+
+        BinaryBankServer server;
+        try {
+            server = new BinaryBankServer(accounts, port);
+        } catch (IOException e) {
+            System.out.println(Constants.MSG_SERVER_ERROR + e.getMessage());
+            return;
+        }
+        System.out.printf(Constants.MSG_WIRE_SERVER_STARTED_FORMAT, server.getPort(), accounts.size());
+
+        // 標準入力が閉じられる（Ctrl+D など）まで待つ
+        while (System.in.read() >= 0) {
+            // 入力内容は使用しない
+        }
+        server.close();
+        System.out.println(Constants.MSG_SERVER_STOPPED);
+    }
+}
@@ -11,16 +11,159 @@ public class Constants {
     // ---- ファイル設定 ---- // 
     public static final String FILE_ACCOUNT_CSV = "account.csv";
     public static final String FILE_TRANSACTION_CSV = "transaction.csv";
+
+    // ---- ファイル読み込み設定 ----
+    // このサイズ以上の transaction.csv のみメモリマップで読み込む (小さなファイルは従来の読み込み)
+    public static final long MMAP_MIN_FILE_SIZE = 1024 * 1024;
+    // 一度にメモリマップする区間のサイズ
+    public static final int MMAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    // ---- 起動オプション ----
+    public static final String OPTION_MMAP = "--mmap";
+    public static final String OPTION_PARALLEL = "--parallel=";
+    public static final String OPTION_OUTPUT = "--output=";
+    public static final String OPTION_OUTPUT_BUFFERED = "buffered";
+    public static final String OPTION_OUTPUT_SUMMARY = "summary";
+    public static final String OPTION_FLUSH_EVERY = "--flush-every=";
+    public static final String OPTION_METRICS = "--metrics";
+    public static final String OPTION_JOURNAL = "--journal=";
+    public static final String OPTION_JOURNAL_GROUP = "--journal-group=";
+    public static final String OPTION_JOURNAL_DELAY = "--journal-delay=";
+    public static final String OPTION_SNAPSHOT = "--snapshot";
+    public static final String OPTION_SNAPSHOT_INTERVAL = "--snapshot-interval=";
+    public static final String OPTION_FOLLOW = "--follow";
+    public static final String OPTION_CHECKPOINT_INTERVAL = "--checkpoint-interval=";
+    public static final String OPTION_HISTORY_LIMIT = "--history-limit=";
+    public static final String OPTION_STATISTICS = "--statistics";
+    public static final String OPTION_REPORT_CACHE = "--report-cache";
+    public static final String OPTION_REJECT_FILE = "--reject-file=";
+    public static final String OPTION_SHARDS = "--shards=";
+    public static final String OPTION_ADD_SHARD = "--add-shard";
+    public static final String OPTION_SHARD_DIR = "--dir=";
+    public static final String OPTION_SPLIT = "--split";
+    public static final String OPTION_ACCOUNT_TABLE = "--account-table";
+
+    // ---- ジャーナル設定 ----
+    // 待ち時間を待たずに fsync する未書き込みの件数
+    public static final int JOURNAL_GROUP_SIZE = 1024;
+    // 記録してから fsync するまでの最大待ち時間（ミリ秒）
+    public static final long JOURNAL_MAX_DELAY_MILLIS = 10;
+    // スナップショットのファイル名（ジャーナルのファイル名に付加する）
+    public static final String SNAPSHOT_FILE_SUFFIX = ".snapshot";
+
+    // ---- 追跡モード（TransactionFollower）の設定 ----
+    // 追記を確認する間隔（ミリ秒）
+    public static final long FOLLOW_POLL_MILLIS = 200;
+    // チェックポイント（口座の状態と読み込み位置の保存）の既定の間隔（秒）
+    public static final long FOLLOW_CHECKPOINT_SECONDS = 10;
+    // チェックポイントのファイル名（transaction.csv または取り込み用ディレクトリの名前に付加する）
+    public static final String FOLLOW_CHECKPOINT_SUFFIX = ".checkpoint";
+    // 取り込み用ディレクトリで処理するファイルの拡張子
+    public static final String FOLLOW_FILE_EXTENSION = ".csv";
+
+    // ---- レポートキャッシュ（ReportCache）の設定 ----
+    // 保持するデータの合計の既定の上限（メガバイト）
+    public static final long REPORT_CACHE_MEGABYTES = 64;
+    // --report-cache=N で指定できる上限（メガバイト。バイト数に変換しても long の範囲を超えない値）
+    public static final long REPORT_CACHE_MAX_MEGABYTES = 1024 * 1024;
+
+    // ---- 口座表（AccountTable）の設定 ----
+    // 入出金・振込で使用するロックの数（口座をスロット番号で振り分ける。2のべき乗）
+    public static final int ACCOUNT_TABLE_LOCK_STRIPES = 256;
+
+    // ---- 取引の集計（TransactionStatistics）の設定 ----
+    // 集計値を分けて保持する単位の数（口座番号のハッシュ値で振り分け、単位ごとにロックする。2のべき乗）
+    public static final int STATISTICS_STRIPES = 64;
+
+    // ---- ネットワーク版（BankServer）の設定 ----
+    // 既定の待ち受けポート
+    public static final int SERVER_PORT = 50000;
+    // 接続待ちの最大数
+    public static final int SERVER_BACKLOG = 4096;
+    // 仮想スレッドを使用できない場合に、接続ごとに作成するスレッドのスタックサイズ（バイト数）
+    public static final long SERVER_SESSION_STACK_SIZE = 256 * 1024;
+    // 要求の区切り文字と応答の先頭
+    public static final char SERVER_FIELD_SEPARATOR = ' ';
+    public static final String SERVER_RESPONSE_OK = "OK";
+    public static final String SERVER_RESPONSE_NG = "NG";
+    // 要求 1 行の最大文字数（超えた場合は接続を閉じる）
+    public static final int SERVER_MAX_LINE_LENGTH = 1024;
+    // 残高照会で応答する取引履歴の最大件数（最新のものから）
+    public static final int SERVER_HISTORY_LIMIT = 100;
+    // 接続の受け付けに失敗した場合の待ち時間（ミリ秒。連続して失敗するたびに倍にし、上限で止める）
+    public static final long SERVER_ACCEPT_RETRY_MILLIS = 10;
+    public static final long SERVER_ACCEPT_RETRY_MAX_MILLIS = 1000;
+
+    // ---- バイナリプロトコル（BinaryBankServer）の設定 ----
+    // 既定の待ち受けポート
+    public static final int WIRE_PORT = 50001;
+    // 接続ごとの受信用・送信用バッファのサイズ（バイト数。1 つのフレームはこのサイズ以下）
+    public static final int WIRE_BUFFER_SIZE = 64 * 1024;
+    // 再利用のために保持しておくバッファの最大数
+    public static final int WIRE_BUFFER_POOL_SIZE = 1024;
+    // フレームの長さ（先頭の int。この長さ自体は含まない）
+    // 要求: 要求ID(long) 取引種別コード(byte) 口座番号(int) 金額(long)
+    public static final int WIRE_REQUEST_LENGTH = 8 + 1 + 4 + 8;
+    // 応答: 要求ID(long) 結果コード(byte) 残高(long)
+    public static final int WIRE_RESPONSE_LENGTH = 8 + 1 + 8;
+
+    // ---- シャード（ShardCluster）の設定 ----
+    // 作業ディレクトリと、割り当て表がない場合のシャード数
+    public static final String SHARD_DIR = "shards";
+    public static final int SHARD_COUNT = 2;
+    // 割り当て表・状態ファイル・書き直し中の状態ファイルの名前
+    public static final String SHARD_MAP_FILE = "shards.map";
+    public static final String SHARD_STATE_FILE_FORMAT = "shard-%d.snapshot";
+    public static final String SHARD_REBALANCE_SUFFIX = ".rebalance";
+    // 転送済みの取引データの位置（次回はこの位置から転送する）を記録するファイルの名前
+    public static final String SHARD_SOURCE_FILE = "shards.source";
+    // --split で書き込む、シャードごとの取引データと、異なるシャード間の振込のファイル名
+    public static final String SHARD_TRANSACTION_FILE_FORMAT = "transaction-shard-%d.csv";
+    public static final String SHARD_CROSS_FILE = "transaction-cross-shard.csv";
+    // ルーターがシャードごとに応答を待たずに送る要求の最大数（WIRE_BUFFER_SIZE に応答が収まる数）
+    public static final int SHARD_WINDOW = 1024;
+    // ワーカーの停止（状態ファイルの保存）を待つ最大時間（秒）
+    public static final long SHARD_STOP_TIMEOUT_SECONDS = 60;
+    // ワーカーが待ち受けを開始した時に出力する行（ポート番号・口座数。ShardCluster が読み取る）
+    public static final String SHARD_READY_FORMAT = "SHARD_READY %d %d%n";
+
+    // ---- CSV一括処理の設定 ----
+    // 連続する入出金をまとめて実行する最大件数
+    public static final int CSV_BATCH_SIZE = 1024;
     
     // ---- 取引種別 (プログラム内部で使用する定数) ---- //
     public static final String TRANSACTION_DEPOSIT_CSV = "deposit";
     public static final String TRANSACTION_WITHDRAW_CSV = "withdraw";
     public static final String TRANSACTION_GET_BALANCE_CSV = "getBalance";
+    public static final String TRANSACTION_TRANSFER_CSV = "transfer";
+
+    // ---- 取引種別コード (プログラム内部で使用する定数) ---- //
+    public static final int TRANSACTION_CODE_INITIAL = 0;
+    public static final int TRANSACTION_CODE_DEPOSIT = 1;
+    public static final int TRANSACTION_CODE_WITHDRAW = 2;
+    public static final int TRANSACTION_CODE_GET_BALANCE = 3;
+    // 振込（振込元の履歴・CSVの取引種別・ジャーナルの記録に使用）
+    public static final int TRANSACTION_CODE_TRANSFER_OUT = 4;
+    // 振込（振込先の履歴のみに使用）
+    public static final int TRANSACTION_CODE_TRANSFER_IN = 5;
+
+    // ---- 一括入出金（Bank.applyBatch）の結果コード ---- //
+    public static final byte RESULT_SUCCESS = 0;
+    public static final byte RESULT_INVALID_AMOUNT = 1;
+    public static final byte RESULT_INSUFFICIENT_BALANCE = 2;
+    // 入金後の残高が上限（Long.MAX_VALUE 円）を超える
+    public static final byte RESULT_BALANCE_OVERFLOW = 3;
+    // 以下はバイナリプロトコルの応答のみで使用する
+    public static final byte RESULT_NO_ACCOUNT = 4;
+    public static final byte RESULT_BAD_REQUEST = 5;
 
     // ---- 取引種別 (ユーザー出力や履歴表示用)----
     public static final String TRANSACTION_DEPOSIT = "入金";
     public static final String TRANSACTION_WITHDRAW = "出金";
     public static final String TRANSACTION_INITIAL = "初期預金";
+    public static final String TRANSACTION_TRANSFER = "振込";
+    public static final String TRANSACTION_TRANSFER_OUT = "振込出金";
+    public static final String TRANSACTION_TRANSFER_IN = "振込入金";
 
     // ---- 日付フォーマット ----
     public static final String DATE_FORMAT = "yyyy-MM-dd";
@@ -54,23 +197,66 @@ public class Constants {
     public static final String MSG_DEPOSIT_DONE = "入金が完了しました";
     public static final String MSG_WITHDRAW_DONE = "出金が完了しました";
     public static final String MSG_WITHDRAW_FAIL = "残高不足のため出金できません";
+    public static final String MSG_BALANCE_OVERFLOW = "残高が上限を超えるため入金できません";
 
     public static final String MSG_NO_ACCOUNT = "該当する口座がありません。";
     public static final String MSG_EXIT = "システムを終了します。";
     public static final String MSG_EXIT_CSV = "銀行システム終了";
+    public static final String MSG_BATCH_SUMMARY_FORMAT = "【処理結果】入金: %d件 出金: %d件 振込: %d件 残高照会: %d件 金額不正: %d件 残高不足: %d件 残高上限超過: %d件 口座なし: %d件%n";
+    public static final String MSG_THROUGHPUT_FORMAT = "取引処理: %d行 %.3f秒 (%.0f行/秒, %.1fMB/秒)%n";
+    public static final String MSG_JOURNAL_RECOVERED_FORMAT = "ジャーナルから口座 %d 件を復元しました（記録 %d 件）%n";
+    public static final String MSG_JOURNAL_ERROR = "ジャーナルの読み書きに失敗しました: ";
+    public static final String MSG_SNAPSHOT_LOADED_FORMAT = "スナップショットから口座 %d 件を復元しました（記録 %d 件目まで反映済み）%n";
+    public static final String MSG_SNAPSHOT_ERROR = "スナップショットの読み書きに失敗しました: ";
+    public static final String MSG_JOURNAL_RESUMED_FORMAT = "%s の %d バイト目から取引を実行します（それより前の行は反映済み）%n";
+    public static final String MSG_METRICS_COUNTER_FORMAT = "【計測結果】入金成功: %d件 出金成功: %d件 振込成功: %d件 金額不正: %d件 残高不足: %d件 残高上限超過: %d件 口座なし: %d件 除外: %d件%n";
+    public static final String MSG_SERVER_STARTED_FORMAT = "サーバーを起動しました（ポート: %d, 口座: %d件, 接続ごとのスレッド: %s）。標準入力を閉じると終了します。%n";
+    public static final String MSG_SERVER_VIRTUAL_THREADS = "仮想スレッド";
+    public static final String MSG_SERVER_PLATFORM_THREADS = "プラットフォームスレッド";
+    public static final String MSG_SERVER_STOPPED = "サーバーを停止しました。";
+    public static final String MSG_SERVER_ERROR = "サーバーを起動できません: ";
+    public static final String MSG_SERVER_LINE_TOO_LONG = "要求が長すぎるため、接続を閉じます";
+    public static final String MSG_FOLLOW_STARTED_FORMAT = "追跡モードを開始しました（対象: %s, 再開位置: %s の %d バイト目）。標準入力を閉じると終了します。%n";
+    public static final String MSG_FOLLOW_RESTORED_FORMAT = "チェックポイントから口座 %d 件を復元しました%n";
+    public static final String MSG_FOLLOW_RESTARTED = "ファイルが読み込み済みの位置より短くなったため、先頭から読み込みます: ";
+    public static final String MSG_FOLLOW_STOPPED_FORMAT = "追跡モードを終了しました（取引 %d 行, チェックポイント %d 回）%n";
+    public static final String MSG_FOLLOW_CSV_STOPPED = "CSV形式エラーの行に達したため、追跡を終了しました（行を修正して再起動すると、その行から再開します）: ";
+    public static final String MSG_FOLLOW_ERROR = "チェックポイントの読み書きに失敗しました: ";
+    public static final String MSG_SHARD_STARTED_FORMAT = "シャードを起動しました（シャード数: %d, 口座: %d件, 割り当て表: %s）%n";
+    public static final String MSG_SHARD_SUMMARY_FORMAT = "【シャード】取引: %d行 応答: %d件 成功: %d件 金額不正: %d件 残高不足: %d件 残高上限超過: %d件 口座なし: %d件 振込（未転送）: %d件 %.3f秒%n";
+    public static final String MSG_SHARD_REBALANCED_FORMAT = "シャードを追加しました（%d → %d, 割り当て表: %s, 移動した口座: %d件）%n";
+    public static final String MSG_SHARD_SPLIT_FORMAT = "取引データ %d 行を %d シャードに分けました（異なるシャード間の振込: %d件）%n";
+    public static final String MSG_SHARD_LOAD_ERROR = "シャードを起動できません: ";
+    public static final String MSG_SHARD_STOP_ERROR = "シャードが正常に終了しませんでした: ";
+    public static final String MSG_SHARD_WORKER_USAGE = "使い方: ShardWorker シャード番号 割り当て表 状態ファイル [口座情報のファイル]";
+    public static final String MSG_ACCOUNT_TABLE_LOADED_FORMAT = "口座表に口座を読み込みました（口座: %d件, 名義: %d種類）%n";
+    public static final String MSG_ACCOUNT_TABLE_TOTAL_FORMAT = "【口座表】口座数: %d 残高の合計: %d円%n";
+    public static final String MSG_WIRE_SERVER_STARTED_FORMAT = "バイナリプロトコルのサーバーを起動しました（ポート: %d, 口座: %d件）。標準入力を閉じると終了します。%n";
+    public static final String MSG_METRICS_LATENCY_HEADER = "【処理時間（マイクロ秒）】";
+    public static final String MSG_REPORT_CACHE_FORMAT = "【レポートキャッシュ】ヒット: %d件 ミス: %d件 ヒット率: %.1f%% 再利用: %dバイト 保持: %d口座 %dバイト 破棄: %d口座%n";
+    public static final String MSG_STATISTICS_HEADER = "【取引の集計】";
+    public static final String MSG_STATISTICS_TOTAL_FORMAT = "口座数: %d 残高の合計: %d円 取引履歴: %d件%n";
+    public static final String MSG_STATISTICS_DAY_FORMAT = "%s 入金: %d件 %d円 出金: %d件 %d円 振込: %d件 %d円 取引後の残高 最小: %d円 最大: %d円%n";
+    public static final String MSG_METRICS_LATENCY_FORMAT = "%s: %d件 平均: %.2f p50: %.2f p99: %.2f p99.9: %.2f 最大: %.2f%n";
+    public static final String METRICS_LABEL_ACCOUNT_LOOKUP = "口座検索";
+    public static final String METRICS_LABEL_CSV_ROW = "CSV取引（1行）";
 
     public static final String MSG_BALANCE = "残高：";
     public static final String MSG_ACCOUNT_HOLDER = "口座名義：";
 
     public static final String MSG_HISTORY_HEADER = "【取引履歴】";
     public static final String MSG_NO_HISTORY = "取引履歴はありません。";
+    public static final String MSG_HISTORY_OMITTED_FORMAT = "（これより前の取引履歴 %d 件は省略しました）%n";
 
     public static final String MSG_INVALID_AMOUNT = "金額が不正です。";
     public static final String MSG_INVALID_INPUT = "入力値が不正です。もう一度入力してください。";
     public static final String MSG_AMOUNT_INVALID = "金額が不正です。取引は実行されませんでした｡";
 
     public static final String MSG_INVALID_NAME = "名前が空白です。もう一度入力してください。";
+    public static final String MSG_REPLAY_ERROR = "取引の実行中にエラーが発生しました｡取引を中断します｡：";
     public static final String MSG_CSV_LOAD_ERROR = "データの読み込みに失敗しました｡取引を中断します｡：";
+    public static final String MSG_REJECTED_FORMAT = "【除外】形式エラーの行 %d 件を %s に書き込みました。%n";
+    public static final String MSG_REJECT_FILE_ERROR = "除外ファイルの書き込みに失敗しました: ";
     public static final String MSG_ACCOUNT_OPENED = "口座開設完了";
     
     // エラー詳細メッセージのヘッダー
@@ -85,11 +271,24 @@ public class Constants {
 
     // transaction.csv 関連
     public static final String ERR_MSG_TRANSACTION_ITEM_COUNT = "不正なデータ形式です。項目数が期待値(3)と異なります: ";
+    public static final String ERR_MSG_TRANSFER_ITEM_COUNT = "不正なデータ形式です。振込の項目数が期待値(4)と異なります: ";
     public static final String ERR_MSG_TRANSACTION_TYPE = "不正な取引タイプが検出されました: ";
+    public static final String ERR_MSG_ROW_DATA_FORMAT = " (行データ: %s)";
+    public static final String ERR_MSG_JOURNAL_FORMAT = "ジャーナルの形式が不正です: ";
+    public static final String ERR_MSG_SNAPSHOT_FORMAT = "スナップショットの形式が不正です: ";
+    public static final String ERR_MSG_JOURNAL_SOURCE_UNKNOWN = "前回の実行が取引データの反映の途中で停止したか、反映済みの位置が記録されていないため、取引データを実行できません（二重に実行しないよう中断します）: ";
+    public static final String ERR_MSG_SHARD_SOURCE_UNKNOWN = "シャードの状態ファイルがありますが、前回の転送が途中で停止したか、転送済みの位置が記録されていないため、取引データを転送できません（二重に転送しないよう中断します）: ";
+    public static final String ERR_MSG_SHARD_MAP_FORMAT = "割り当て表の形式が不正です: ";
+    public static final String ERR_MSG_SHARD_SOURCE_FORMAT = "転送済みの位置の形式が不正です: ";
+    public static final String ERR_MSG_OPTION_VALUE_FORMAT = "起動オプションの値が不正です: %s（%d 以上の整数を指定してください）";
+    public static final String ERR_MSG_OPTION_RANGE_FORMAT = "起動オプションの値が不正です: %s（%d 以上 %d 以下の整数を指定してください）";
+    public static final String ERR_MSG_FOLLOW_WITH_JOURNAL = "--follow は --journal と同時に指定できません（チェックポイントに口座の状態を保存します）。";
+    public static final String ERR_MSG_ACCOUNT_TABLE_OPTIONS = "--account-table は --journal / --follow と同時に指定できません（口座表は取引履歴を保持せず、ジャーナル・チェックポイントに対応していません）。";
 
     // 出力フォーマット
     public static final String ACCOUNT_INFO_FORMAT = "口座番号: %07d 口座名義人: %s 初期残高: %d";
     public static final String ACCOUNT_NUMBER_FORMAT_7DIGIT = "%07d";
     public static final String MSG_DEPOSIT_FORMAT = ACCOUNT_NUMBER_FORMAT_7DIGIT + "に入金しました。金額: %d%n";
     public static final String MSG_WITHDRAW_FORMAT = ACCOUNT_NUMBER_FORMAT_7DIGIT + "から出金しました。金額: %d%n";
+    public static final String MSG_TRANSFER_FORMAT = ACCOUNT_NUMBER_FORMAT_7DIGIT + "から" + ACCOUNT_NUMBER_FORMAT_7DIGIT + "へ振り込みました。金額: %d%n";
 }
\ No newline at end of file
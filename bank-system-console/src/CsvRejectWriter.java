@@ -0,0 +1,90 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * CSV の形式エラーの行（項目数不正・不正な取引タイプ・非数など）を書き込む除外ファイル。
+ * BankCsvOperation に設定すると、形式エラーの行で読み込みを中断せず、その行のみを除外して処理を続ける。
+ *
+ * 1 行に 1 件ずつ、タブ区切りで次の項目を書き込む。行データは読み込んだ内容をそのまま書き込むため、
+ * 修正して CSV に戻すことができる。（文字コードは CSV の読み込みと同じ既定の文字コード）
+ *   ファイル名, 行番号, 位置（ファイル先頭からのバイト数）, 理由, 行データ
+ * 行番号は読み込みを開始した位置から数える。（追跡モードでは追記された範囲ごとの行番号になるため、位置で特定する）
+ *
+ * 既存のファイルには追記する。書き込みは形式エラーの行でのみ行うため、正しい行の処理には影響しない。
+ * スレッドセーフではない。（CSV を読み込むスレッドのみが使用する）
+ */
+public class CsvRejectWriter implements AutoCloseable {
+
+    /** 項目の区切り文字 */
+    private static final char SEPARATOR = '\t';
+
+    /** 除外ファイル */
+    private final Path file;
+
+    /** 書き込み先 */
+    private final BufferedWriter out;
+
+    /** 書き込んだ件数 */
+    private long count;
+
+    /**
+     * 除外ファイルを開く。（存在しない場合は作成する）
+     * @param file 除外ファイル
+     * @throws IOException ファイルを開けない場合
+     */
+    public CsvRejectWriter(Path file) throws IOException {
+        this.file = file;
+        // 既定の文字コードで表せない文字は、標準出力と同様に置き換えて書き込む（例外にしない）
+        this.out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), Charset.defaultCharset()));
+    }
+
+    /**
+     * 形式エラーの行を書き込む。
+     * @param fileName 読み込み中のファイル名
+     * @param csv 形式エラーの行を読み込んだリーダー
+     * @param reason 理由（エラーメッセージ）
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void reject(String fileName, CsvRowReader csv, String reason) throws IOException {
+        out.write(fileName);
+        out.write(SEPARATOR);
+        out.write(Long.toString(csv.rowCount()));
+        out.write(SEPARATOR);
+        out.write(Long.toString(csv.rowOffset()));
+        out.write(SEPARATOR);
+        out.write(reason);
+        out.write(SEPARATOR);
+        out.write(csv.line());
+        out.newLine();
+        count++;
+    }
+
+    /**
+     * 書き込んだ行をファイルに出力する。（追跡モードで取引の範囲ごとに呼び出す）
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /** @return これまでに書き込んだ件数 */
+    public long getCount() {
+        return count;
+    }
+
+    /** @return 除外ファイル */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.IOException;
+
+/**
+ * CsvRowReader で読み込んだ口座情報（account.csv）・取引データ（transaction.csv）の行を、
+ * 項目数・数値・取引タイプを確認しながら取り出すクラス。
+ * 口座情報・取引データを読み込む処理（BankCsvOperation・ShardRouter・ShardWorker）はすべてこのクラスを使用し、
+ * 形式エラーの判定とエラーメッセージを共通にする。
+ *
+ * 除外ファイル（CsvRejectWriter）を指定しない場合は、形式エラーの行で例外をスローする。
+ * - 項目数不正・不正な取引タイプ：IOException（メッセージに行データを含む）
+ * - 口座番号・金額・初期残高が数値でない：NumberFormatException
+ * 除外ファイルを指定した場合は、形式エラーの行を除外ファイルに書き込んで読み飛ばす。
+ * （数値の変換も例外を使用せずに判定するため、正しい行の処理は除外しない場合と変わらない）
+ *
+ * 取引タイプは、呼び出し元が対象口座を検索した後に type() で判定する。
+ * （対象口座が見つからない行は、取引タイプが不正でもスキップする従来の扱いのため）
+ * スレッドセーフではない。（CSV を読み込むスレッドのみが使用する）
+ */
+public class CsvRowDecoder {
+
+    /** type() が、不正な取引タイプの行を除外ファイルに書き込んだことを表す値 */
+    public static final int REJECTED = -1;
+
+    /** 読み込み元 */
+    private final CsvRowReader csv;
+
+    /** 形式エラーの行の書き込み先（null の場合は例外をスローする） */
+    private final CsvRejectWriter rejects;
+
+    /** 除外ファイルに書き込むファイル名 */
+    private final String fileName;
+
+    /** 現在行の処理を開始した時刻（Metrics.start の戻り値） */
+    private long start;
+
+    /** 現在行の値 */
+    private boolean transfer;
+    private int number;
+    private int toNumber;
+    private long amount;
+
+    /**
+     * @param csv 読み込み元
+     * @param rejects 形式エラーの行の書き込み先（null の場合は形式エラーで例外をスローする）
+     * @param fileName 除外ファイルに書き込むファイル名
+     */
+    public CsvRowDecoder(CsvRowReader csv, CsvRejectWriter rejects, String fileName) {
+        this.csv = csv;
+        this.rejects = rejects;
+        this.fileName = fileName;
+    }
+
+    // ---- 口座情報 ----
+
+    /**
+     * 口座情報の次の行を読み込む。（項目数 2：口座名義人, 初期残高）
+     * 口座番号は行番号とする。（除外した行の口座番号は欠番になる）
+     * @return 読み込んだ場合は true。終端に達した場合は false
+     * @throws IOException 項目数が不正な場合（除外ファイルを指定していない場合）、除外ファイルの書き込みに失敗した場合
+     * @throws NumberFormatException 初期残高が数値でない場合（除外ファイルを指定していない場合）
+     */
+    public boolean nextAccount() throws IOException {
+        while (csv.next()) {
+            // 項目数チェック: 2以外であれば形式エラー
+            if (csv.fieldCount() != 2) {
+                if (rejects == null) {
+                    throw new IOException(Constants.ERR_MSG_ACCOUNT_ITEM_COUNT + csv.line());
+                }
+                rejects.reject(fileName, csv, Constants.ERR_MSG_ACCOUNT_ITEM_COUNT + csv.fieldCount());
+                continue;
+            }
+            // CSV内の行順を口座番号として使用
+            number = (int) csv.rowCount();
+            if (rejects == null) {
+                amount = csv.getLong(1);
+            } else {
+                // 除外する場合は、行ごとに例外を発生させずに判定する
+                amount = csv.tryGetLong(1);
+                if (csv.hasInvalidNumber()) {
+                    rejects.reject(fileName, csv, Constants.ERR_MSG_INITIAL_BALANCE_FORMAT);
+                    continue;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** @return 口座名義人（呼び出すたびに String を生成する） */
+    public String holderName() {
+        return csv.getString(0);
+    }
+
+    /** @return 初期残高 */
+    public long initialBalance() {
+        return amount;
+    }
+
+    // ---- 取引データ ----
+
+    /**
+     * 取引データの次の行を読み込み、項目数を確認して口座番号・金額を変換する。
+     * 振込の行は「振込元の口座番号,transfer,金額,振込先の口座番号」の 4 項目、それ以外は 3 項目。
+     * @return 読み込んだ場合は true。終端に達した場合は false
+     * @throws IOException 項目数が不正な場合（除外ファイルを指定していない場合）、除外ファイルの書き込みに失敗した場合
+     * @throws NumberFormatException 口座番号・金額が数値でない場合（除外ファイルを指定していない場合）
+     */
+    public boolean nextTransaction() throws IOException {
+        while (csv.next()) {
+            start = Metrics.start();
+
+            // 項目数チェック: 3以外（振込は4以外）であれば形式エラー
+            transfer = csv.fieldCount() >= 2 && csv.fieldEquals(1, Constants.TRANSACTION_TRANSFER_CSV);
+            if (transfer && csv.fieldCount() != 4) {
+                if (rejects == null) {
+                    throw new IOException(Constants.ERR_MSG_TRANSFER_ITEM_COUNT + csv.line());
+                }
+                reject(Constants.ERR_MSG_TRANSFER_ITEM_COUNT + csv.fieldCount());
+                continue;
+            }
+            if (!transfer && csv.fieldCount() != 3) {
+                if (rejects == null) {
+                    throw new IOException(Constants.ERR_MSG_TRANSACTION_ITEM_COUNT + csv.line());
+                }
+                reject(Constants.ERR_MSG_TRANSACTION_ITEM_COUNT + csv.fieldCount());
+                continue;
+            }
+
+            // 口座番号と金額の数値変換。非数であればNumberFormatExceptionが発生
+            if (rejects == null) {
+                number = csv.getInt(0);
+                amount = csv.getLong(2);
+                toNumber = transfer ? csv.getInt(3) : 0;
+            } else {
+                // 除外する場合は、行ごとに例外を発生させずに判定する
+                number = csv.tryGetInt(0);
+                amount = csv.tryGetLong(2);
+                toNumber = transfer ? csv.tryGetInt(3) : 0;
+                if (csv.hasInvalidNumber()) {
+                    reject(Constants.ERR_MSG_AMOUNT_FORMAT);
+                    continue;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 現在行の取引タイプを判別する。（文字列を生成せずにバッファ上で比較する）
+     * @return 取引種別コード（Constants.TRANSACTION_CODE_DEPOSIT / WITHDRAW / GET_BALANCE / TRANSFER_OUT）。
+     *         不正な取引タイプの行を除外ファイルに書き込んだ場合は REJECTED
+     * @throws IOException 不正な取引タイプの場合（除外ファイルを指定していない場合）、除外ファイルの書き込みに失敗した場合
+     */
+    public int type() throws IOException {
+        if (transfer) {
+            return Constants.TRANSACTION_CODE_TRANSFER_OUT;
+        } else if (csv.fieldEquals(1, Constants.TRANSACTION_DEPOSIT_CSV)) {
+            return Constants.TRANSACTION_CODE_DEPOSIT;
+        } else if (csv.fieldEquals(1, Constants.TRANSACTION_WITHDRAW_CSV)) {
+            return Constants.TRANSACTION_CODE_WITHDRAW;
+        } else if (csv.fieldEquals(1, Constants.TRANSACTION_GET_BALANCE_CSV)) {
+            return Constants.TRANSACTION_CODE_GET_BALANCE;
+        }
+        if (rejects == null) {
+            throw new IOException(Constants.ERR_MSG_TRANSACTION_TYPE + csv.getString(1)
+                + String.format(Constants.ERR_MSG_ROW_DATA_FORMAT, csv.line()));
+        }
+        reject(Constants.ERR_MSG_TRANSACTION_TYPE + csv.getString(1));
+        return REJECTED;
+    }
+
+    /** @return 振込の行の場合は true */
+    public boolean isTransfer() {
+        return transfer;
+    }
+
+    /** @return 口座番号（振込の場合は振込元） */
+    public int accountNumber() {
+        return number;
+    }
+
+    /** @return 振込先の口座番号（振込以外は 0） */
+    public int toAccountNumber() {
+        return toNumber;
+    }
+
+    /** @return 金額 */
+    public long amount() {
+        return amount;
+    }
+
+    /** @return 現在行の処理を開始した時刻（Metrics.start の戻り値。Metrics.Timer.CSV_ROW の記録用） */
+    public long rowStart() {
+        return start;
+    }
+
+    /**
+     * 形式エラーの取引の行を除外ファイルに書き込む。
+     */
+    private void reject(String reason) throws IOException {
+        rejects.reject(fileName, csv, reason);
+        Metrics.record(Metrics.Timer.CSV_ROW, start, Metrics.Counter.REJECTED_ROW);
+    }
+}
@@ -0,0 +1,557 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * CSVファイルを 1 行ずつ読み込むための軽量リーダークラス。
+ * 固定サイズのバイトバッファに読み込んだ内容をそのまま走査し、
+ * 行ごとに String や String[] を生成せずに項目の位置だけを記録する。
+ * 数値項目はバッファから直接 int に変換する。
+ * 大きなファイルはメモリマップした区間（ウィンドウ）をずらしながら、
+ * コピーせずに直接走査することもできる（open 参照）。
+ * ファイルの一部の範囲（追記された部分など）のみを読み込むこともできる（openRange 参照）。
+ *
+ * 行・項目の扱いは従来の BufferedReader.readLine() + String.split(",") + trim() と同じ。
+ * - 改行は LF / CR / CRLF のいずれも行末として扱う
+ * - 末尾の空項目は項目数に数えない（split と同じ）
+ * - 項目前後の空白・制御文字は取り除く（trim と同じ）
+ */
+public class CsvRowReader implements AutoCloseable {
+
+    /** 読み込みバッファの初期サイズ */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** 1 行あたりの項目位置を記録する配列の初期サイズ */
+    private static final int INITIAL_FIELDS = 8;
+
+    /** 読み込み元（メモリマップ時は null） */
+    private final InputStream in;
+
+    /** メモリマップ時の読み込み元（ストリーム読み込み時は null） */
+    private final FileChannel channel;
+
+    /** 文字列化する際の文字コード（FileReader と同じ既定の文字コード） */
+    private final Charset charset;
+
+    /**
+     * 読み込みバッファ。
+     * ストリーム読み込み時はヒープ上の配列（1 行が収まらない場合のみ拡張する）、
+     * メモリマップ時はファイルの一部をマップした区間。
+     */
+    private ByteBuffer buf;
+
+    /** メモリマップする区間のサイズ（1 行が収まらない場合のみ拡張する） */
+    private int windowSize;
+
+    /** バッファ先頭のファイル上の位置 */
+    private long bufferOffset;
+
+    /** これまでに読み込んだ行数 */
+    private long rowCount;
+
+    /** バッファ内の未処理データの開始位置 */
+    private int pos;
+
+    /** バッファ内の有効データの終了位置 */
+    private int limit;
+
+    /** ストリーム読み込み時に、これ以降読み込んでよいバイト数（範囲を指定しない場合は Long.MAX_VALUE） */
+    private long remainingBytes = Long.MAX_VALUE;
+
+    /** 読み込み元の終端に達したか */
+    private boolean eof;
+
+    /** 直前の行が CR で終わった場合、次の LF を読み飛ばす */
+    private boolean skipLf;
+
+    /** 現在行の開始位置・終了位置（改行を含まない） */
+    private int rowStart;
+    private int rowEnd;
+
+    /** 各項目の開始位置・終了位置（trim 済み） */
+    private int[] fieldStarts = new int[INITIAL_FIELDS];
+    private int[] fieldEnds = new int[INITIAL_FIELDS];
+
+    /** 現在行の項目数（split(",") と同じ数え方） */
+    private int fieldCount;
+
+    /** 直前の parseLong で数値でない項目を変換したか */
+    private boolean parseFailed;
+
+    /** 現在行で tryGetInt / tryGetLong が数値でない項目を変換したか */
+    private boolean invalidNumber;
+
+    /**
+     * ファイル名を指定してリーダーを作成する。
+     * @param fileName 読み込むファイル名
+     * @throws IOException ファイルを開けない場合
+     */
+    public CsvRowReader(String fileName) throws IOException {
+        this(new FileInputStream(fileName));
+    }
+
+    /**
+     * 入力ストリームを指定してリーダーを作成する。
+     * @param in 読み込み元
+     */
+    public CsvRowReader(InputStream in) {
+        this.in = in;
+        this.channel = null;
+        this.charset = Charset.defaultCharset();
+        this.buf = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * ファイルをメモリマップして読み込むリーダーを作成する。
+     * @param channel 読み込むファイルのチャネル
+     * @param windowSize 一度にマップする区間のサイズ
+     */
+    private CsvRowReader(FileChannel channel, int windowSize) {
+        this.in = null;
+        this.channel = channel;
+        this.charset = Charset.defaultCharset();
+        this.windowSize = windowSize;
+        this.buf = ByteBuffer.allocate(0);
+    }
+
+    /**
+     * 読み込み方式を選んでリーダーを作成する。
+     * メモリマップが指定され、かつ通常ファイルで一定サイズ以上の場合のみマップして読み込む。
+     * 小さなファイルやパイプ・標準入力などは従来どおりストリームで読み込む。
+     * @param fileName 読み込むファイル名
+     * @param mapped メモリマップを使用するか
+     * @return リーダー
+     * @throws IOException ファイルを開けない場合
+     */
+    public static CsvRowReader open(String fileName, boolean mapped) throws IOException {
+        Path path = Paths.get(fileName);
+        if (mapped && Files.isRegularFile(path) && Files.size(path) >= Constants.MMAP_MIN_FILE_SIZE) {
+            return new CsvRowReader(FileChannel.open(path, StandardOpenOption.READ), Constants.MMAP_WINDOW_SIZE);
+        }
+        return new CsvRowReader(fileName);
+    }
+
+    /**
+     * ファイルの指定した範囲のみを読み込むリーダーを作成する。（追跡モードで追記された部分を読み込む場合など）
+     * bytesRead() と rowOffset() はファイル先頭からの位置を返す。
+     * @param file 読み込むファイル
+     * @param start 読み込みを開始する位置（行の先頭であること）
+     * @param end 読み込みを終了する位置（この位置の直前で行が終わること）
+     * @return リーダー
+     * @throws IOException ファイルを開けない場合
+     */
+    public static CsvRowReader openRange(Path file, long start, long end) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ch.position(start);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        CsvRowReader reader = new CsvRowReader(Channels.newInputStream(ch));
+        reader.bufferOffset = start;
+        reader.remainingBytes = end - start;
+        return reader;
+    }
+
+    /**
+     * 次の行を読み込み、項目の位置を解析する。
+     * @return 行が読み込めた場合は true。終端に達した場合は false。
+     * @throws IOException 読み込みに失敗した場合
+     */
+    public boolean next() throws IOException {
+        int i = pos;
+        while (true) {
+            // 前の行が CR で終わっていれば、続く LF は同じ改行として読み飛ばす
+            if (skipLf && i < limit) {
+                if (buf.get(i) == '\n') {
+                    i++;
+                }
+                pos = i;
+                skipLf = false;
+            }
+            for (; i < limit; i++) {
+                byte b = buf.get(i);
+                if (b == '\n' || b == '\r') {
+                    setRow(pos, i);
+                    pos = i + 1;
+                    skipLf = (b == '\r');
+                    return true;
+                }
+            }
+            if (eof) {
+                if (pos < limit) {
+                    // 改行で終わらない最終行
+                    setRow(pos, limit);
+                    pos = limit;
+                    return true;
+                }
+                return false;
+            }
+            i -= pos;
+            fill();
+        }
+    }
+
+    /**
+     * これまでに読み込んだ行数を返す。
+     * @return 行数
+     */
+    public long rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * これまでに処理したバイト数を返す。（改行を含む）
+     * @return バイト数
+     */
+    public long bytesRead() {
+        return bufferOffset + pos;
+    }
+
+    /**
+     * 現在行の先頭の位置を返す。（形式エラーの行から読み込みを再開する場合など）
+     * @return 読み込み元の先頭からのバイト数
+     */
+    public long rowOffset() {
+        return bufferOffset + rowStart;
+    }
+
+    /**
+     * 現在行の項目数を返す。
+     * @return 項目数
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * 指定した項目を int として返す。
+     * Integer.parseInt と同じ規則で変換し、数値でなければ NumberFormatException をスローする。
+     * @param index 項目番号（0 始まり）
+     * @return 変換した値
+     */
+    public int getInt(int index) {
+        long value = parseLong(index);
+        if (parseFailed || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw numberFormatError(fieldStarts[index], fieldEnds[index]);
+        }
+        return (int) value;
+    }
+
+    /**
+     * 指定した項目を long として返す。（金額用）
+     * Long.parseLong と同じ規則で変換し、数値でなければ NumberFormatException をスローする。
+     * @param index 項目番号（0 始まり）
+     * @return 変換した値
+     */
+    public long getLong(int index) {
+        long value = parseLong(index);
+        if (parseFailed) {
+            throw numberFormatError(fieldStarts[index], fieldEnds[index]);
+        }
+        return value;
+    }
+
+    /**
+     * 指定した項目を int として返す。数値でない場合は例外をスローせず、0 を返して hasInvalidNumber() を true にする。
+     * 形式エラーの行を除外して読み込みを続ける場合に、行ごとに例外を発生させないために使用する。
+     * @param index 項目番号（0 始まり）
+     * @return 変換した値（数値でない場合は 0）
+     */
+    public int tryGetInt(int index) {
+        long value = parseLong(index);
+        if (parseFailed || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            invalidNumber = true;
+            return 0;
+        }
+        return (int) value;
+    }
+
+    /**
+     * 指定した項目を long として返す。数値でない場合は例外をスローせず、0 を返して hasInvalidNumber() を true にする。
+     * @param index 項目番号（0 始まり）
+     * @return 変換した値（数値でない場合は 0）
+     */
+    public long tryGetLong(int index) {
+        long value = parseLong(index);
+        if (parseFailed) {
+            invalidNumber = true;
+            return 0;
+        }
+        return value;
+    }
+
+    /**
+     * 現在行で tryGetInt / tryGetLong が数値でない項目を変換したかを返す。（次の行を読み込むとリセットする）
+     * @return 数値でない項目があった場合は true
+     */
+    public boolean hasInvalidNumber() {
+        return invalidNumber;
+    }
+
+    /**
+     * 指定した項目を文字列として返す。（trim 済み）
+     * @param index 項目番号（0 始まり）
+     * @return 項目の文字列
+     */
+    public String getString(int index) {
+        return decode(fieldStarts[index], fieldEnds[index]);
+    }
+
+    /**
+     * 指定した項目が ASCII 文字列と一致するかを判定する。
+     * 取引タイプの判別など、文字列を生成せずに比較したい場合に使用する。
+     * @param index 項目番号（0 始まり）
+     * @param ascii 比較する ASCII 文字列
+     * @return 一致する場合は true
+     */
+    public boolean fieldEquals(int index, String ascii) {
+        int start = fieldStarts[index];
+        int len = fieldEnds[index] - start;
+        if (len != ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (buf.get(start + i) != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 現在行の内容を文字列として返す。（エラーメッセージ用）
+     * @return 行データ
+     */
+    public String line() {
+        return decode(rowStart, rowEnd);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        } else {
+            in.close();
+        }
+    }
+
+    // ---- 内部処理 ----
+
+    /**
+     * 未処理のデータをバッファの先頭に詰め、続きを読み込む。
+     * 1 行がバッファ全体を占めている場合のみバッファを拡張する。
+     */
+    private void fill() throws IOException {
+        if (channel != null) {
+            remap();
+            return;
+        }
+        byte[] array = buf.array();
+        int remaining = limit - pos;
+        if (pos > 0) {
+            System.arraycopy(array, pos, array, 0, remaining);
+        } else if (remaining == array.length) {
+            byte[] larger = new byte[array.length * 2];
+            System.arraycopy(array, 0, larger, 0, remaining);
+            array = larger;
+            buf = ByteBuffer.wrap(array);
+        }
+        bufferOffset += pos;
+        pos = 0;
+        limit = remaining;
+
+        int n = remainingBytes == 0 ? -1
+            : in.read(array, limit, (int) Math.min(array.length - limit, remainingBytes));
+        if (n == -1) {
+            eof = true;
+        } else {
+            limit += n;
+            remainingBytes -= n;
+        }
+    }
+
+    /**
+     * 未処理データの先頭から次の区間をマップし直す。（データのコピーは行わない）
+     * 1 行が区間全体を占めている場合のみ区間を拡張する。
+     */
+    private void remap() throws IOException {
+        if (pos == 0 && limit == windowSize) {
+            windowSize = (int) Math.min((long) windowSize * 2, Integer.MAX_VALUE);
+        }
+        long start = bufferOffset + pos;
+        long size = Math.min(windowSize, channel.size() - start);
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        bufferOffset = start;
+        pos = 0;
+        limit = (int) size;
+
+        // ファイル末尾までマップできた場合、以降の読み込みはない
+        if (start + size == channel.size()) {
+            eof = true;
+        }
+    }
+
+    /**
+     * 指定した項目を Long.parseLong と同じ規則で変換する。
+     * 数値でない場合は例外をスローせず、parseFailed を true にする。
+     */
+    private long parseLong(int index) {
+        parseFailed = false;
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        if (start == end) {
+            parseFailed = true;
+            return 0;
+        }
+
+        int i = start;
+        boolean negative = false;
+        long limitValue = -Long.MAX_VALUE;
+        byte first = buf.get(i);
+        if (first == '-' || first == '+') {
+            if (end - start == 1) {
+                parseFailed = true;
+                return 0;
+            }
+            if (first == '-') {
+                negative = true;
+                limitValue = Long.MIN_VALUE;
+            }
+            i++;
+        }
+
+        // 桁あふれを避けるため、Long.parseLong と同様に負の値で積み上げる
+        long multmin = limitValue / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            byte b = buf.get(i);
+            int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                if (b < 0) {
+                    // 全角数字など ASCII 以外の文字は従来どおり Long.parseLong に任せる
+                    return parseNonAscii(start, end);
+                }
+                parseFailed = true;
+                return 0;
+            }
+            if (result < multmin) {
+                parseFailed = true;
+                return 0;
+            }
+            result *= 10;
+            if (result < limitValue + digit) {
+                parseFailed = true;
+                return 0;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * ASCII 以外の文字を含む項目を Long.parseLong で変換する。（全角数字などのまれな場合のみ）
+     */
+    private long parseNonAscii(int start, int end) {
+        try {
+            return Long.parseLong(decode(start, end));
+        } catch (NumberFormatException e) {
+            parseFailed = true;
+            return 0;
+        }
+    }
+
+    /**
+     * バッファの指定範囲を文字列に変換する。
+     */
+    private String decode(int start, int end) {
+        if (buf.hasArray()) {
+            return new String(buf.array(), start, end - start, charset);
+        }
+        byte[] bytes = new byte[end - start];
+        buf.get(start, bytes);
+        return new String(bytes, charset);
+    }
+
+    /**
+     * 行の範囲を記録し、カンマ区切りの項目位置を解析する。
+     * @param start 行の開始位置
+     * @param end 行の終了位置（改行を含まない）
+     */
+    private void setRow(int start, int end) {
+        rowCount++;
+        invalidNumber = false;
+        rowStart = start;
+        rowEnd = end;
+
+        // 空行は split と同様に空文字 1 項目として扱う
+        if (start == end) {
+            fieldStarts[0] = start;
+            fieldEnds[0] = end;
+            fieldCount = 1;
+            return;
+        }
+
+        int count = 0;
+        int lastNonEmpty = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i < end && buf.get(i) != ',') {
+                continue;
+            }
+            if (count == fieldStarts.length) {
+                growFields();
+            }
+            // 末尾の空項目を除外するため、空でない最後の項目を覚えておく
+            if (i > fieldStart) {
+                lastNonEmpty = count + 1;
+            }
+            storeTrimmed(count, fieldStart, i);
+            count++;
+            fieldStart = i + 1;
+        }
+        fieldCount = lastNonEmpty;
+    }
+
+    /**
+     * 項目の前後の空白・制御文字（0x20 以下）を除いた範囲を記録する。
+     * UTF-8 の多バイト文字は 0x80 以上のため、String.trim() と同じ結果になる。
+     */
+    private void storeTrimmed(int index, int start, int end) {
+        while (start < end && (buf.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buf.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+        fieldStarts[index] = start;
+        fieldEnds[index] = end;
+    }
+
+    /** 項目位置を記録する配列を拡張する。 */
+    private void growFields() {
+        int[] starts = new int[fieldStarts.length * 2];
+        int[] ends = new int[fieldEnds.length * 2];
+        System.arraycopy(fieldStarts, 0, starts, 0, fieldStarts.length);
+        System.arraycopy(fieldEnds, 0, ends, 0, fieldEnds.length);
+        fieldStarts = starts;
+        fieldEnds = ends;
+    }
+
+    /**
+     * Integer.parseInt と同じ形式のメッセージで NumberFormatException を生成する。
+     */
+    private NumberFormatException numberFormatError(int start, int end) {
+        return new NumberFormatException(
+            "For input string: \"" + decode(start, end) + "\"");
+    }
+}
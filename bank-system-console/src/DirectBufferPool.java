@@ -0,0 +1,72 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * 同じサイズのダイレクトバッファを再利用するためのプール。
+ * ダイレクトバッファは作成・解放のコストが高く、GC でも回収されにくいため、
+ * 接続の終了時に返却されたバッファを保持しておき、次の接続で使用する。
+ *
+ * スレッドセーフではない。（BinaryBankServer のイベントループなど、1 つのスレッドからのみ使用すること）
+ */
+public class DirectBufferPool {
+
+    /** バッファ 1 つのサイズ（バイト数） */
+    private final int bufferSize;
+
+    /** 保持しておくバッファの最大数 */
+    private final int maxPooled;
+
+    /** 返却されたバッファ */
+    private final ArrayDeque<ByteBuffer> free;
+
+    /** これまでに作成したバッファの数 */
+    private long allocatedCount;
+
+    /**
+     * @param bufferSize バッファ 1 つのサイズ（バイト数）
+     * @param maxPooled 保持しておくバッファの最大数（超えて返却されたバッファは破棄する）
+     */
+    public DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.free = new ArrayDeque<>(Math.min(maxPooled, 64));
+    }
+
+    /**
+     * バッファを取得する。返却済みのバッファがあれば再利用し、なければ作成する。
+     * @return 空の（position 0, limit = capacity の）バッファ
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.pollLast();
+        if (buffer == null) {
+            allocatedCount++;
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * バッファを返却する。返却後は使用しないこと。
+     */
+    public void release(ByteBuffer buffer) {
+        if (free.size() < maxPooled) {
+            buffer.clear();
+            free.addLast(buffer);
+        }
+    }
+
+    /** @return バッファ 1 つのサイズ（バイト数） */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /** @return これまでに作成したバッファの数 */
+    public long getAllocatedCount() {
+        return allocatedCount;
+    }
+
+    /** @return 再利用のために保持しているバッファの数 */
+    public int getPooledCount() {
+        return free.size();
+    }
+}
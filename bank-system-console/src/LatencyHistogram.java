@@ -0,0 +1,153 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 処理時間（ナノ秒）の分布を記録するヒストグラム。
+ * HdrHistogram と同じく、値を 2 のべき乗ごとの区間に分け、各区間をさらに 128 等分して件数を数える。
+ * 記録した値は相対誤差 1% 未満で集計でき、大きな値でも配列のサイズは固定のまま。
+ *
+ * 記録（record）は配列の要素を 1 つ加算するだけで、オブジェクトを生成しない。
+ * 複数スレッドから同時に記録してよい。
+ * 集計は snapshot() で取得した時点の複製に対して行う。
+ */
+public class LatencyHistogram {
+
+    /** 1 区間の分割数（2 のべき乗の指数） */
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** 配列のサイズ（long の正の値をすべて表せる区間数） */
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    /** 区間ごとの件数 */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /** 記録した値の合計 */
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /** 記録した値の最大値 */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * 処理時間を 1 件記録する。
+     * @param nanos 処理時間（ナノ秒）。負の値は 0 として記録する。
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(indexOf(nanos));
+        totalNanos.addAndGet(nanos);
+
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // 他のスレッドが更新した場合は読み直す
+        }
+    }
+
+    /**
+     * 記録した内容をすべて消去する。
+     * 記録中のスレッドがある場合、その記録が残るかどうかは保証しない。
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * 現時点の記録内容の複製を返す。
+     * @return 集計用の複製
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, totalNanos.get(), maxNanos.get());
+    }
+
+    /**
+     * 値に対応する区間の位置を返す。
+     * 128 未満はそのまま、それ以上は上位 8 ビットで区間を決める。
+     */
+    private static int indexOf(long value) {
+        int msb = 63 - Long.numberOfLeadingZeros(value | 1);
+        if (msb < SUB_BUCKET_BITS) {
+            return (int) value;
+        }
+        int shift = msb - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * 区間に含まれる最大の値を返す。
+     */
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * ある時点の記録内容の複製。変更されないため、複数スレッドから参照してよい。
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /** @return 記録件数 */
+        public long getCount() {
+            return count;
+        }
+
+        /** @return 平均値（ナノ秒）。記録がない場合は 0 */
+        public double getMean() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        /** @return 最大値（ナノ秒） */
+        public long getMax() {
+            return maxNanos;
+        }
+
+        /**
+         * 指定したパーセンタイルの値を返す。（相対誤差 1% 未満）
+         * @param percentile パーセンタイル（0〜100）
+         * @return 値（ナノ秒）。記録がない場合は 0
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            double p = Math.min(Math.max(percentile, 0), 100);
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // 区間の上限は実際の最大値を超えることがあるため、最大値で抑える
+                    return Math.min(highestValueAt(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+    }
+}
@@ -1,6 +1,40 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 /**
  * CSVファイルに記載された処理を実行するためのエントリポイントクラス。
  * 処理完了後、システムを終了する。
+ * 起動オプション --mmap を指定すると、transaction.csv をメモリマップで読み込み、
+ * 終了時に処理性能を表示する。
+ * 起動オプション --parallel=N を指定すると、取引を N スレッドで並列に実行する。
+ * 起動オプション --output=buffered / --output=summary / --flush-every=N で、
+ * 入出金結果・残高照会メッセージの出力方法を変更できる。
+ * 起動オプション --metrics を指定すると、終了時に処理件数と処理時間の分布を表示する。
+ * 起動オプション --journal=ファイル名 を指定すると、口座開設・入出金をジャーナルに記録する。
+ * ジャーナルに口座が記録されている場合は、account.csv の代わりにジャーナルから口座を復元し、
+ * transaction.csv のうち前回までに反映した位置より後に追記された取引のみを、復元後の残高に対して実行する。
+ * 前回の実行が取引の途中で停止していた場合は、二重に実行しないよう取引を実行せずに終了する。
+ * fsync の間隔は --journal-group=N（件数）と --journal-delay=N（ミリ秒）で変更できる。
+ * 起動オプション --snapshot を指定すると、終了時に全口座のスナップショットを保存し、ジャーナルの記録を削除する。
+ * --snapshot-interval=N（秒）を指定すると、実行中も N 秒ごとにスナップショットを保存する。
+ * スナップショットがある場合は、スナップショットを読み込んでから、それ以降のジャーナルの記録を再実行する。
+ * 起動オプション --follow（または --follow=ファイル名・ディレクトリ名）を指定すると、追跡モードで起動し、
+ * transaction.csv（または指定したファイル・ディレクトリ）に追記された取引を、標準入力が閉じられるまで続けて実行する。
+ * 口座の状態と読み込み済みの位置は --checkpoint-interval=N（秒）ごとと終了時に保存し、次回はその位置から再開する。
+ * 起動オプション --history-limit=N を指定すると、残高照会で出力する取引履歴を最新の N 件に制限する。
+ * 起動オプション --report-cache（または --report-cache=N（メガバイト））を指定すると、残高照会で出力する取引履歴の行を
+ * 口座ごとにキャッシュし、追加された行のみを整形する。終了時にヒット率などを表示する。
+ * 起動オプション --statistics を指定すると、取引のたびに集計値（TransactionStatistics）を更新し、
+ * 終了時に口座数・残高の合計と日付ごとの入出金・振込の件数と金額を表示する。
+ * 起動オプション --reject-file=ファイル名 を指定すると、CSV の形式エラーの行で中断せず、
+ * その行を行番号と理由とともに指定したファイルに書き込んで、残りの行の処理を続ける。
+ * 起動オプション --account-table を指定すると、口座ごとのオブジェクトを生成しない口座表（AccountTable）に口座を読み込み、
+ * 取引を実行する。取引履歴を保持しないため、結果は件数のみを出力する。（--output=summary と同じ）
+ * --reject-file / --parallel / --statistics は口座台帳の場合と同様に使用できる。（--journal / --follow は使用できない）
  */
 public class Main {
 
@@ -8,11 +42,381 @@ public class Main {
 
         System.out.println(Constants.MSG_SYSTEM_START);
 
+        boolean useMappedFile = Arrays.asList(args).contains(Constants.OPTION_MMAP);
+        boolean showMetrics = Arrays.asList(args).contains(Constants.OPTION_METRICS);
+        Metrics.setEnabled(showMetrics);
+        TransactionStatistics statistics = Arrays.asList(args).contains(Constants.OPTION_STATISTICS)
+            ? new TransactionStatistics() : null;
+
         // BankCsvOperation で、口座の読み込み、取引の実行、および出力を行う
-        BankCsvOperation csvOp = new BankCsvOperation();
-        csvOp.loadData();
+        BankCsvOperation csvOp = new BankCsvOperation(useMappedFile);
+        String journalFile = null;
+        int journalGroupSize = Constants.JOURNAL_GROUP_SIZE;
+        long journalDelay = Constants.JOURNAL_MAX_DELAY_MILLIS;
+        boolean useSnapshot = false;
+        long snapshotInterval = 0;
+        String followSource = null;
+        long checkpointInterval = Constants.FOLLOW_CHECKPOINT_SECONDS;
+        int historyLimit = 0;
+        ReportCache reportCache = null;
+        String rejectFile = null;
+        boolean useAccountTable = false;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith(Constants.OPTION_PARALLEL)) {
+                    csvOp.setReplayThreads((int) optionValue(arg, Constants.OPTION_PARALLEL, 1, Integer.MAX_VALUE));
+                } else if (arg.equals(Constants.OPTION_OUTPUT + Constants.OPTION_OUTPUT_BUFFERED)) {
+                    csvOp.setOutputSink(new BatchOutputSink(BatchOutputSink.Mode.BUFFERED, 0));
+                } else if (arg.equals(Constants.OPTION_OUTPUT + Constants.OPTION_OUTPUT_SUMMARY)) {
+                    csvOp.setOutputSink(new BatchOutputSink(BatchOutputSink.Mode.SUMMARY, 0));
+                } else if (arg.startsWith(Constants.OPTION_FLUSH_EVERY)) {
+                    int lines = (int) optionValue(arg, Constants.OPTION_FLUSH_EVERY, 1, Integer.MAX_VALUE);
+                    csvOp.setOutputSink(new BatchOutputSink(BatchOutputSink.Mode.FLUSH_EVERY_N, lines));
+                } else if (arg.startsWith(Constants.OPTION_JOURNAL)) {
+                    journalFile = arg.substring(Constants.OPTION_JOURNAL.length());
+                } else if (arg.startsWith(Constants.OPTION_JOURNAL_GROUP)) {
+                    journalGroupSize = (int) optionValue(arg, Constants.OPTION_JOURNAL_GROUP, 1, Integer.MAX_VALUE);
+                } else if (arg.startsWith(Constants.OPTION_JOURNAL_DELAY)) {
+                    journalDelay = optionValue(arg, Constants.OPTION_JOURNAL_DELAY, 0, Long.MAX_VALUE);
+                } else if (arg.equals(Constants.OPTION_SNAPSHOT)) {
+                    useSnapshot = true;
+                } else if (arg.startsWith(Constants.OPTION_SNAPSHOT_INTERVAL)) {
+                    useSnapshot = true;
+                    snapshotInterval = optionValue(arg, Constants.OPTION_SNAPSHOT_INTERVAL, 0, Long.MAX_VALUE);
+                } else if (arg.equals(Constants.OPTION_FOLLOW)) {
+                    followSource = Constants.FILE_TRANSACTION_CSV;
+                } else if (arg.startsWith(Constants.OPTION_FOLLOW + "=")) {
+                    followSource = arg.substring(Constants.OPTION_FOLLOW.length() + 1);
+                } else if (arg.startsWith(Constants.OPTION_CHECKPOINT_INTERVAL)) {
+                    checkpointInterval = optionValue(arg, Constants.OPTION_CHECKPOINT_INTERVAL, 1, Long.MAX_VALUE);
+                } else if (arg.startsWith(Constants.OPTION_HISTORY_LIMIT)) {
+                    historyLimit = (int) optionValue(arg, Constants.OPTION_HISTORY_LIMIT, 0, Integer.MAX_VALUE);
+                } else if (arg.equals(Constants.OPTION_REPORT_CACHE)) {
+                    reportCache = new ReportCache(Constants.REPORT_CACHE_MEGABYTES * 1024 * 1024);
+                } else if (arg.startsWith(Constants.OPTION_REPORT_CACHE + "=")) {
+                    long megabytes = optionValue(arg, Constants.OPTION_REPORT_CACHE + "=", 1,
+                        Constants.REPORT_CACHE_MAX_MEGABYTES);
+                    reportCache = new ReportCache(megabytes * 1024 * 1024);
+                } else if (arg.startsWith(Constants.OPTION_REJECT_FILE)) {
+                    rejectFile = arg.substring(Constants.OPTION_REJECT_FILE.length());
+                } else if (arg.equals(Constants.OPTION_ACCOUNT_TABLE)) {
+                    useAccountTable = true;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // 起動オプションの値が不正な場合（メッセージは optionValue で作成する）
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (historyLimit > 0) {
+            // 出力先は --output などで差し替えられるため、すべてのオプションを読み込んでから設定する
+            csvOp.getOutputSink().setHistoryLimit(historyLimit);
+        }
+        csvOp.getOutputSink().setReportCache(reportCache);
+
+        if (followSource != null && journalFile != null) {
+            System.out.println(Constants.ERR_MSG_FOLLOW_WITH_JOURNAL);
+            return;
+        }
+        if (useAccountTable && (journalFile != null || followSource != null)) {
+            System.out.println(Constants.ERR_MSG_ACCOUNT_TABLE_OPTIONS);
+            return;
+        }
+        CsvRejectWriter rejects = null;
+        if (rejectFile != null) {
+            try {
+                rejects = new CsvRejectWriter(Paths.get(rejectFile));
+            } catch (IOException e) {
+                System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+                System.out.println(Constants.MSG_REJECT_FILE_ERROR + rejectFile);
+                return;
+            }
+            csvOp.setRejectWriter(rejects);
+        }
+
+        try {
+            if (useAccountTable) {
+                runAccountTable(csvOp, statistics);
+            } else if (followSource != null) {
+                if (!runFollow(csvOp, Paths.get(followSource), checkpointInterval, statistics)) {
+                    return;
+                }
+            } else if (journalFile == null) {
+                AccountRegistry accounts = csvOp.loadAccounts();
+                startStatistics(statistics, accounts);
+                csvOp.loadData(accounts);
+            } else if (!runWithJournal(csvOp, Paths.get(journalFile), journalGroupSize, journalDelay,
+                    useSnapshot, snapshotInterval, statistics)) {
+                return;
+            }
+        } finally {
+            if (rejects != null) {
+                closeRejects(rejects);
+            }
+        }
 
         // 処理完了後、システムを終了する
         System.out.println(Constants.MSG_EXIT_CSV);
+        if (useMappedFile) {
+            csvOp.printThroughput();
+        }
+        if (showMetrics) {
+            Metrics.printSummary();
+        }
+        if (statistics != null) {
+            statistics.printSummary();
+        }
+        if (reportCache != null) {
+            reportCache.printSummary();
+        }
+    }
+
+    /**
+     * 起動オプションの値（"--parallel=8" の "8" など）を整数に変換する。
+     * @param arg 起動オプション
+     * @param option 値の前までのオプション名（Constants.OPTION_*）
+     * @param min 最小値
+     * @param max 最大値
+     * @return 値
+     * @throws IllegalArgumentException 整数でない場合、範囲外の場合（表示用のメッセージを持つ）
+     */
+    private static long optionValue(String arg, String option, long min, long max) {
+        long value = 0;
+        boolean valid;
+        try {
+            value = Long.parseLong(arg.substring(option.length()));
+            valid = value >= min && value <= max;
+        } catch (NumberFormatException e) {
+            valid = false;
+        }
+        if (!valid) {
+            // 上限が型の最大値の場合は、下限のみを表示する
+            throw new IllegalArgumentException(max == Integer.MAX_VALUE || max == Long.MAX_VALUE
+                ? String.format(Constants.ERR_MSG_OPTION_VALUE_FORMAT, arg, min)
+                : String.format(Constants.ERR_MSG_OPTION_RANGE_FORMAT, arg, min, max));
+        }
+        return value;
+    }
+
+    /**
+     * 口座表（AccountTable）に account.csv の口座を読み込み、transaction.csv の取引を実行する。
+     * 結果は件数のみを出力し、最後に口座数と残高の合計を表示する。
+     * 形式エラー・除外ファイル・並列実行の扱いは、口座台帳の場合と同じ。（BankCsvOperation で読み込む）
+     * @param csvOp 取引の実行に使用する BankCsvOperation（除外ファイル・スレッド数を設定済み）
+     * @param statistics 取引の集計先（null の場合は集計しない）
+     */
+    private static void runAccountTable(BankCsvOperation csvOp, TransactionStatistics statistics) {
+        // 口座表は取引履歴を保持しないため、件数のみを出力する
+        csvOp.setOutputSink(new BatchOutputSink(BatchOutputSink.Mode.SUMMARY, 0));
+        AccountTable table = csvOp.loadAccountTable(Constants.FILE_ACCOUNT_CSV);
+        table.setStatistics(statistics);
+        csvOp.loadData(table, Constants.FILE_TRANSACTION_CSV);
+        System.out.printf(Constants.MSG_ACCOUNT_TABLE_TOTAL_FORMAT, table.size(), table.totalBalance());
+    }
+
+    /**
+     * 除外ファイルを閉じ、書き込んだ件数を表示する。
+     */
+    private static void closeRejects(CsvRejectWriter rejects) {
+        try {
+            rejects.close();
+            System.out.printf(Constants.MSG_REJECTED_FORMAT, rejects.getCount(), rejects.getFile());
+        } catch (IOException e) {
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+            System.out.println(Constants.MSG_REJECT_FILE_ERROR + rejects.getFile());
+        }
+    }
+
+    /**
+     * 読み込み・復元済みの口座の取引履歴を集計に加え、以降の取引を集計するよう設定する。
+     * @param statistics 集計先。null の場合は何もしない（--statistics を指定していない）
+     */
+    private static void startStatistics(TransactionStatistics statistics, AccountRegistry accounts) {
+        if (statistics != null) {
+            statistics.addAccounts(accounts.getAccounts());
+            Bank.setStatistics(statistics);
+        }
+    }
+
+    /**
+     * ジャーナルから口座を復元してから取引を実行し、最後にすべての記録を永続化する。
+     * スナップショットがある場合は、先に読み込んでからそれ以降の記録を再実行する。
+     * 口座がない場合（初回起動時）は、account.csv から口座を読み込む。
+     * transaction.csv は、ジャーナル・スナップショットに記録した反映済みの位置から実行し、実行後の位置を記録する。
+     * 反映済みの位置がわからない場合（前回が取引の途中で停止した、または位置を記録していない）は、取引を実行しない。
+     * @param useSnapshot 終了時にスナップショットを保存する場合は true
+     * @param snapshotInterval 実行中にスナップショットを保存する間隔（秒）。0 の場合は終了時のみ
+     * @param statistics 取引の集計先（null の場合は集計しない）
+     * @return ジャーナル・スナップショットの読み書きに失敗した場合は false
+     */
+    private static boolean runWithJournal(BankCsvOperation csvOp, Path file, int groupSize, long delayMillis,
+            boolean useSnapshot, long snapshotInterval, TransactionStatistics statistics) {
+        Path snapshotFile = file.resolveSibling(file.getFileName() + Constants.SNAPSHOT_FILE_SUFFIX);
+        AccountRegistry accounts = new AccountRegistry();
+        BankSnapshot.SourcePosition[] source = {BankSnapshot.SourcePosition.NONE};
+        if (Files.exists(snapshotFile)) {
+            try {
+                long seq = BankSnapshot.load(snapshotFile, accounts, source);
+                System.out.printf(Constants.MSG_SNAPSHOT_LOADED_FORMAT, accounts.size(), seq);
+            } catch (IOException e) {
+                System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+                System.out.println(Constants.MSG_SNAPSHOT_ERROR + snapshotFile);
+                return false;
+            }
+        }
+
+        TransactionJournal journal;
+        try {
+            long records = TransactionJournal.recover(file, accounts, source);
+            if (accounts.size() > 0) {
+                System.out.printf(Constants.MSG_JOURNAL_RECOVERED_FORMAT, accounts.size(), records);
+            }
+            if (accounts.size() > 0 && (source[0].getFileName().isEmpty() || source[0].isApplying())) {
+                // どの行まで反映したかわからないため、取引データを実行し直すと二重に実行するおそれがある
+                System.out.println(Constants.ERR_MSG_JOURNAL_SOURCE_UNKNOWN + file);
+                return false;
+            }
+            journal = new TransactionJournal(file, groupSize, delayMillis);
+        } catch (IOException e) {
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+            System.out.println(Constants.MSG_JOURNAL_ERROR + file);
+            return false;
+        }
+
+        Bank.setJournal(journal);
+        SnapshotScheduler snapshots = null;
+        boolean closed = true;
+        try {
+            long offset = 0;
+            if (accounts.size() == 0) {
+                accounts = csvOp.loadAccounts();
+            } else {
+                offset = source[0].getOffset();
+                if (offset > 0) {
+                    System.out.printf(Constants.MSG_JOURNAL_RESUMED_FORMAT, Constants.FILE_TRANSACTION_CSV, offset);
+                }
+            }
+            // 口座の読み込みが終わってから開始する（チェックポイント中に台帳へ口座を追加しないため）
+            if (useSnapshot) {
+                snapshots = new SnapshotScheduler(snapshotFile, accounts, journal);
+                if (snapshotInterval > 0) {
+                    snapshots.start(snapshotInterval);
+                }
+            }
+            startStatistics(statistics, accounts);
+            // 実行中に停止した場合に、再起動時に反映済みの行を特定できないことがわかるよう、先に記録する
+            journal.appendSource(BankSnapshot.SourcePosition.applying(Constants.FILE_TRANSACTION_CSV));
+            long applied = csvOp.loadData(accounts, Constants.FILE_TRANSACTION_CSV, offset);
+            journal.appendSource(new BankSnapshot.SourcePosition(Constants.FILE_TRANSACTION_CSV, applied));
+        } finally {
+            Bank.setJournal(null);
+            if (snapshots != null) {
+                closed = closeSnapshots(snapshots, snapshotFile);
+            }
+            closed = closeJournal(journal, file) && closed;
+        }
+        return closed;
+    }
+
+    /**
+     * 追跡モードで実行する。チェックポイントがあれば口座と読み込み位置を復元し、なければ account.csv を読み込む。
+     * 標準入力が閉じられるか、プロセスが終了を要求される（Ctrl+C など）と、チェックポイントを保存して終了する。
+     * @param checkpointInterval チェックポイントの間隔（秒）
+     * @param statistics 取引の集計先（null の場合は集計しない）
+     * @return チェックポイント・取引データの読み書きに失敗した場合と、CSV形式エラーの行で追跡を終了した場合は false
+     */
+    private static boolean runFollow(BankCsvOperation csvOp, Path source, long checkpointInterval,
+            TransactionStatistics statistics) {
+        AccountRegistry accounts = new AccountRegistry();
+        BankSnapshot.SourcePosition start;
+        try {
+            start = TransactionFollower.restore(source, accounts);
+        } catch (IOException e) {
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+            System.out.println(Constants.MSG_FOLLOW_ERROR + TransactionFollower.checkpointFileFor(source));
+            return false;
+        }
+        if (start != null) {
+            System.out.printf(Constants.MSG_FOLLOW_RESTORED_FORMAT, accounts.size());
+        } else {
+            accounts = csvOp.loadAccounts();
+            start = BankSnapshot.SourcePosition.NONE;
+        }
+
+        startStatistics(statistics, accounts);
+        TransactionFollower follower = new TransactionFollower(csvOp, accounts, source, start);
+        follower.setCheckpointInterval(TimeUnit.SECONDS.toMillis(checkpointInterval));
+        System.out.printf(Constants.MSG_FOLLOW_STARTED_FORMAT, source, start.getFileName(), start.getOffset());
+
+        // 標準入力が閉じられた場合と、終了を要求された場合は、チェックポイントを保存してから終了する
+        Thread stdinWatcher = new Thread(() -> {
+            try {
+                while (System.in.read() >= 0) {
+                    // 入力内容は使用しない
+                }
+            } catch (IOException e) {
+                // 標準入力を読めない場合も終了する
+            }
+            follower.stop();
+        }, "follow-stdin");
+        stdinWatcher.setDaemon(true);
+        stdinWatcher.start();
+        Thread shutdownHook = new Thread(() -> {
+            follower.stop();
+            try {
+                follower.awaitStopped(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "follow-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        boolean completed;
+        try {
+            completed = follower.run();
+        } catch (IOException e) {
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+            System.out.println(Constants.MSG_FOLLOW_ERROR + TransactionFollower.checkpointFileFor(source));
+            return false;
+        } finally {
+            csvOp.printSummary();
+            System.out.printf(Constants.MSG_FOLLOW_STOPPED_FORMAT, follower.getRowCount(),
+                follower.getCheckpointCount());
+        }
+        if (!completed) {
+            System.out.println(Constants.MSG_FOLLOW_CSV_STOPPED + source);
+        }
+        return completed;
+    }
+
+    /**
+     * 定期保存を停止し、最後のスナップショットを保存する。
+     * @return 書き込みに失敗した場合は false
+     */
+    private static boolean closeSnapshots(SnapshotScheduler snapshots, Path file) {
+        try {
+            snapshots.close();
+            snapshots.checkpoint();
+            return true;
+        } catch (IOException e) {
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+            System.out.println(Constants.MSG_SNAPSHOT_ERROR + file);
+            return false;
+        }
+    }
+
+    /**
+     * 残りの記録を永続化してジャーナルを閉じる。
+     * @return 書き込みに失敗した場合は false
+     */
+    private static boolean closeJournal(TransactionJournal journal, Path file) {
+        try {
+            journal.close();
+            return true;
+        } catch (IOException e) {
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+            System.out.println(Constants.MSG_JOURNAL_ERROR + file);
+            return false;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,201 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 入出金・振込・口座検索・CSV取引の件数と処理時間を記録するクラス。
+ * 記録はアプリ全体で共有し、setEnabled(true) で有効にした場合のみ行う。
+ *
+ * 計測する処理では、次のように開始時刻を取得してから結果を記録する。
+ * <pre>
+ *   long start = Metrics.start();
+ *   ...
+ *   Metrics.record(Metrics.Timer.DEPOSIT, start, Metrics.Counter.DEPOSIT_SUCCESS);
+ * </pre>
+ * 無効の場合、start() は時刻を取得せずに 0 を返し、record() は何もしない。
+ * そのため、無効時の負荷はフラグの確認と分岐のみ。
+ * 処理の途中で有効・無効を切り替えた場合、その処理は記録されない。
+ */
+public class Metrics {
+
+    /** 件数を数える結果の種類 */
+    public enum Counter {
+        /** 入金成功 */
+        DEPOSIT_SUCCESS,
+        /** 出金成功 */
+        WITHDRAW_SUCCESS,
+        /** 振込成功 */
+        TRANSFER_SUCCESS,
+        /** 金額不正による入出金・振込の失敗 */
+        INVALID_AMOUNT,
+        /** 残高不足による出金・振込の失敗 */
+        INSUFFICIENT_BALANCE,
+        /** 残高の上限超過による入金・振込の失敗 */
+        BALANCE_OVERFLOW,
+        /** 口座が見つからずスキップした取引 */
+        UNKNOWN_ACCOUNT,
+        /** 形式エラーのため除外ファイルに書き込んだ行 */
+        REJECTED_ROW
+    }
+
+    /** 処理時間を計測する処理の種類 */
+    public enum Timer {
+        DEPOSIT(Constants.TRANSACTION_DEPOSIT),
+        WITHDRAW(Constants.TRANSACTION_WITHDRAW),
+        TRANSFER(Constants.TRANSACTION_TRANSFER),
+        ACCOUNT_LOOKUP(Constants.METRICS_LABEL_ACCOUNT_LOOKUP),
+        CSV_ROW(Constants.METRICS_LABEL_CSV_ROW);
+
+        /** 表示名 */
+        private final String label;
+
+        Timer(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /** 計測が有効か */
+    private static volatile boolean enabled;
+
+    /** 結果ごとの件数 */
+    private static final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+    /** 処理ごとの処理時間 */
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[Timer.values().length];
+
+    static {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * 計測の有効・無効を切り替える。
+     * @param enabled 有効にする場合は true
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /** @return 計測が有効な場合は true */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 計測の開始時刻を返す。
+     * @return 開始時刻（ナノ秒）。無効の場合は 0
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * 処理時間を記録する。
+     * @param timer 処理の種類
+     * @param start start() で取得した開始時刻
+     */
+    public static void record(Timer timer, long start) {
+        if (start != 0L) {
+            histograms[timer.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 処理時間と結果を記録する。
+     * @param timer 処理の種類
+     * @param start start() で取得した開始時刻
+     * @param outcome 結果の種類
+     */
+    public static void record(Timer timer, long start, Counter outcome) {
+        if (start != 0L) {
+            histograms[timer.ordinal()].record(System.nanoTime() - start);
+            counters[outcome.ordinal()].increment();
+        }
+    }
+
+    /**
+     * 記録した内容をすべて消去する。
+     */
+    public static void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * 現時点の記録内容を返す。
+     * @return 記録内容の複製
+     */
+    public static Snapshot snapshot() {
+        long[] counts = new long[counters.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = counters[i].sum();
+        }
+        LatencyHistogram.Snapshot[] latencies = new LatencyHistogram.Snapshot[histograms.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = histograms[i].snapshot();
+        }
+        return new Snapshot(counts, latencies);
+    }
+
+    /**
+     * 現時点の記録内容を出力する。処理時間は記録がある処理のみ出力する。
+     */
+    public static void printSummary() {
+        Snapshot s = snapshot();
+        System.out.printf(Constants.MSG_METRICS_COUNTER_FORMAT,
+            s.getCount(Counter.DEPOSIT_SUCCESS), s.getCount(Counter.WITHDRAW_SUCCESS),
+            s.getCount(Counter.TRANSFER_SUCCESS), s.getCount(Counter.INVALID_AMOUNT), s.getCount(Counter.INSUFFICIENT_BALANCE),
+            s.getCount(Counter.BALANCE_OVERFLOW), s.getCount(Counter.UNKNOWN_ACCOUNT), s.getCount(Counter.REJECTED_ROW));
+
+        System.out.println(Constants.MSG_METRICS_LATENCY_HEADER);
+        for (Timer timer : Timer.values()) {
+            LatencyHistogram.Snapshot h = s.getLatency(timer);
+            if (h.getCount() == 0) {
+                continue;
+            }
+            System.out.printf(Constants.MSG_METRICS_LATENCY_FORMAT, timer.getLabel(), h.getCount(),
+                h.getMean() / 1000, h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(99) / 1000.0,
+                h.getValueAtPercentile(99.9) / 1000.0, h.getMax() / 1000.0);
+        }
+    }
+
+    /**
+     * ある時点の記録内容の複製。
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final LatencyHistogram.Snapshot[] latencies;
+
+        private Snapshot(long[] counts, LatencyHistogram.Snapshot[] latencies) {
+            this.counts = counts;
+            this.latencies = latencies;
+        }
+
+        /**
+         * @param counter 結果の種類
+         * @return 件数
+         */
+        public long getCount(Counter counter) {
+            return counts[counter.ordinal()];
+        }
+
+        /**
+         * @param timer 処理の種類
+         * @return 処理時間の分布
+         */
+        public LatencyHistogram.Snapshot getLatency(Timer timer) {
+            return latencies[timer.ordinal()];
+        }
+    }
+}
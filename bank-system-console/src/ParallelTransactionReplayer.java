@@ -0,0 +1,342 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * CSVの取引を複数スレッドで並列に実行するためのクラス。
+ * 口座番号ごとに担当スレッド（シャード）を固定することで、
+ * 同じ口座に対する取引はファイルの記載順どおりに実行される。
+ * 口座が異なる取引は互いに独立しているため、最終的な残高と取引履歴は
+ * 1 スレッドで順番に実行した場合と完全に一致する。
+ * 口座のオブジェクトを持たない口座表（AccountTable）の場合は、口座を null、口座番号をスロットとして割り当てる。
+ * （口座ごとに一意な番号であれば、担当スレッドの決め方と実行順序は変わらない）
+ *
+ * 取引はシャードごとにまとめて（バッチ単位で）受け渡し、
+ * 使い終わったバッチは再利用するため、行ごとのオブジェクト生成は発生しない。
+ * 受け渡し用のキューは容量固定で、実行が追いつかない場合は読み込み側が待機する。
+ *
+ * 振込は振込元・振込先の両方のシャードに割り当て、両方のシャードがその位置に達した時点で、
+ * 後から達したシャードが実行する。先に達したシャードは実行が終わるまで待機するため、
+ * 両方の口座について、振込の前後の取引の順序は記載順どおりになる。
+ * 振込は記載順にすべてのシャードのキューに並ぶため、シャード同士が互いを待ち続けることはない。
+ * 待機するのは関係する 2 つのシャードのみで、他のシャードは実行を続ける。
+ */
+public class ParallelTransactionReplayer {
+
+    /**
+     * 取引 1 件を実行する処理。
+     * 各シャードのスレッドから呼び出される。
+     */
+    public interface TransactionHandler {
+        void apply(Bank target, int number, int type, long amount);
+    }
+
+    /**
+     * 振込 1 件を実行する処理。
+     * 振込元・振込先のどちらかのシャードのスレッドから呼び出される。
+     */
+    public interface TransferHandler {
+        void transfer(Bank from, int fromNumber, Bank to, int toNumber, long amount);
+    }
+
+    /** 1 バッチあたりの取引件数 */
+    private static final int BATCH_SIZE = 1024;
+
+    /** シャードごとのキュー容量（バッチ数） */
+    private static final int QUEUE_CAPACITY = 16;
+
+    /** 振込の実行を待つシャードが、他のシャードの例外を確認する間隔（ミリ秒） */
+    private static final long TRANSFER_POLL_MILLIS = 10;
+
+    /** 取引を実行する処理 */
+    private final TransactionHandler handler;
+
+    /** 振込を実行する処理 */
+    private final TransferHandler transferHandler;
+
+    /** シャード（担当スレッド）の一覧 */
+    private final Shard[] shards;
+
+    /** いずれかのシャードで発生した例外（最初の 1 件のみ保持） */
+    private volatile RuntimeException failure;
+
+    /**
+     * スレッド数を指定して並列実行を開始する。
+     * @param threads スレッド数（シャード数）
+     * @param handler 取引を実行する処理
+     * @param transferHandler 振込を実行する処理
+     */
+    public ParallelTransactionReplayer(int threads, TransactionHandler handler, TransferHandler transferHandler) {
+        this.handler = handler;
+        this.transferHandler = transferHandler;
+        this.shards = new Shard[threads];
+        for (int i = 0; i < threads; i++) {
+            shards[i] = new Shard(i);
+            shards[i].start();
+        }
+    }
+
+    /**
+     * 取引を担当シャードに割り当てる。
+     * 同じ口座番号の取引は必ず同じシャードに割り当てられる。
+     * @param target 対象口座
+     * @param number 口座番号
+     * @param type 取引種別コード
+     * @param amount 金額
+     * @throws IOException 待機中に割り込まれた場合
+     */
+    public void submit(Bank target, int number, int type, long amount) throws IOException {
+        checkFailure();
+        Shard shard = shards[Math.floorMod(number, shards.length)];
+        if (shard.add(target, number, type, amount, null)) {
+            shard.dispatch();
+        }
+    }
+
+    /**
+     * 振込を振込元・振込先の担当シャードに割り当てる。
+     * 担当シャードが異なる場合は、両方のシャードが待機せずにこの位置に達するよう、書き込み中のバッチを実行待ちに回す。
+     * @param from 振込元の口座
+     * @param fromNumber 振込元の口座番号
+     * @param to 振込先の口座
+     * @param toNumber 振込先の口座番号
+     * @param amount 金額
+     * @throws IOException 待機中に割り込まれた場合
+     */
+    public void submitTransfer(Bank from, int fromNumber, Bank to, int toNumber, long amount) throws IOException {
+        checkFailure();
+        Shard first = shards[Math.floorMod(fromNumber, shards.length)];
+        Shard second = shards[Math.floorMod(toNumber, shards.length)];
+        Transfer transfer = new Transfer(from, fromNumber, to, toNumber, amount, first == second ? 1 : 2);
+        if (first == second) {
+            if (first.add(from, fromNumber, Constants.TRANSACTION_CODE_TRANSFER_OUT, amount, transfer)) {
+                first.dispatch();
+            }
+            return;
+        }
+        first.add(from, fromNumber, Constants.TRANSACTION_CODE_TRANSFER_OUT, amount, transfer);
+        second.add(to, toNumber, Constants.TRANSACTION_CODE_TRANSFER_IN, amount, transfer);
+        first.dispatch();
+        second.dispatch();
+    }
+
+    /**
+     * 割り当て済みの取引がすべて実行されるまで待機し、スレッドを終了する。
+     * @throws IOException 待機中に割り込まれた場合
+     */
+    public void finish() throws IOException {
+        try {
+            for (Shard shard : shards) {
+                if (shard.current.size > 0) {
+                    shard.dispatch();
+                }
+                shard.full.put(Batch.END);
+            }
+            for (Shard shard : shards) {
+                shard.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+        checkFailure();
+    }
+
+    /** シャードで例外が発生していれば、呼び出し元に伝える。 */
+    private void checkFailure() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 2 つのシャードにまたがる振込。両方のシャードが達した時点で実行する。
+     */
+    private static class Transfer {
+
+        final Bank from;
+        final int fromNumber;
+        final Bank to;
+        final int toNumber;
+        final long amount;
+
+        /** まだ達していないシャードの数 */
+        private int remaining;
+
+        /** 実行が終わったか */
+        private boolean done;
+
+        Transfer(Bank from, int fromNumber, Bank to, int toNumber, long amount, int parties) {
+            this.from = from;
+            this.fromNumber = fromNumber;
+            this.to = to;
+            this.toNumber = toNumber;
+            this.amount = amount;
+            this.remaining = parties;
+        }
+
+        /** @return 最後に達したシャード（実行する側）の場合は true */
+        synchronized boolean arrive() {
+            return --remaining == 0;
+        }
+
+        synchronized void complete() {
+            done = true;
+            notifyAll();
+        }
+
+        /**
+         * 実行が終わるまで待機する。
+         * @return 実行が終わった場合は true。待機中にいずれかのシャードで例外が発生した場合は false
+         */
+        synchronized boolean awaitDone(ParallelTransactionReplayer replayer) throws InterruptedException {
+            while (!done) {
+                if (replayer.failure != null) {
+                    return false;
+                }
+                wait(TRANSFER_POLL_MILLIS);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 取引をまとめて受け渡すための入れ物。
+     * 口座・口座番号・種別・金額を列ごとの配列で保持する。（振込の場合は振込の情報も保持する）
+     */
+    private static class Batch {
+
+        /** 終了を表す目印 */
+        static final Batch END = new Batch();
+
+        final Bank[] targets = new Bank[BATCH_SIZE];
+        final int[] numbers = new int[BATCH_SIZE];
+        final byte[] types = new byte[BATCH_SIZE];
+        final long[] amounts = new long[BATCH_SIZE];
+        final Transfer[] transfers = new Transfer[BATCH_SIZE];
+        int size;
+
+        /** 空にする。（口座への参照を残さない） */
+        void clear() {
+            Arrays.fill(targets, 0, size, null);
+            Arrays.fill(transfers, 0, size, null);
+            size = 0;
+        }
+    }
+
+    /**
+     * 一部の口座を担当し、割り当てられた取引を順番に実行するスレッド。
+     */
+    private class Shard extends Thread {
+
+        /** 実行待ちのバッチ */
+        final BlockingQueue<Batch> full = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        /** 再利用可能な空のバッチ */
+        final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 1);
+
+        /** 読み込み側が書き込み中のバッチ */
+        Batch current;
+
+        Shard(int index) {
+            super("replay-shard-" + index);
+            setDaemon(true);
+            for (int i = 0; i < QUEUE_CAPACITY; i++) {
+                free.add(new Batch());
+            }
+            current = new Batch();
+        }
+
+        /**
+         * 書き込み中のバッチに取引を追加する。
+         * @return バッチが一杯になった場合は true（呼び出し元が dispatch する）
+         */
+        boolean add(Bank target, int number, int type, long amount, Transfer transfer) {
+            Batch batch = current;
+            int i = batch.size;
+            batch.targets[i] = target;
+            batch.numbers[i] = number;
+            batch.types[i] = (byte) type;
+            batch.amounts[i] = amount;
+            batch.transfers[i] = transfer;
+            batch.size = i + 1;
+            return batch.size == BATCH_SIZE;
+        }
+
+        /**
+         * 書き込み中のバッチを実行待ちに回し、空のバッチを受け取る。
+         * 空きがない場合は実行が追いつくまで待機する。
+         */
+        void dispatch() throws IOException {
+            try {
+                full.put(current);
+                current = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Batch batch = full.take();
+                    if (batch == Batch.END) {
+                        return;
+                    }
+                    if (failure == null) {
+                        for (int i = 0; i < batch.size; i++) {
+                            Transfer transfer = batch.transfers[i];
+                            if (transfer == null) {
+                                handler.apply(batch.targets[i], batch.numbers[i], batch.types[i], batch.amounts[i]);
+                            } else if (!runTransfer(transfer)) {
+                                break;
+                            }
+                        }
+                    }
+                    batch.clear();
+                    free.put(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // 他のシャードと読み込み側に伝え、以降の取引は実行しない
+                failure = e;
+                drain();
+            }
+        }
+
+        /**
+         * 振込の位置に達したことを記録し、最後に達した場合は実行する。先に達した場合は実行が終わるまで待機する。
+         * @return 続けて実行してよい場合は true。待機中に他のシャードで例外が発生した場合は false
+         */
+        private boolean runTransfer(Transfer transfer) throws InterruptedException {
+            if (!transfer.arrive()) {
+                return transfer.awaitDone(ParallelTransactionReplayer.this);
+            }
+            try {
+                transferHandler.transfer(transfer.from, transfer.fromNumber, transfer.to, transfer.toNumber,
+                    transfer.amount);
+            } finally {
+                transfer.complete();
+            }
+            return true;
+        }
+
+        /** 例外発生後、読み込み側が待機し続けないよう、実行せずにバッチを返却する。 */
+        private void drain() {
+            try {
+                Batch batch;
+                while ((batch = full.take()) != Batch.END) {
+                    batch.clear();
+                    free.put(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
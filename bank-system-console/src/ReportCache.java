@@ -0,0 +1,256 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 残高照会で出力する取引履歴の行を、口座ごとに文字コード変換済みのまま保持するキャッシュ。
+ * 同じ口座の残高照会が繰り返される場合に、前回までに出力した行は保持しているデータをそのまま書き込み、
+ * その後に追加された取引履歴の行だけを整形する。
+ * 取引履歴は追加のみで変更されないため、入出金のたびに無効化する必要はなく、
+ * 次の残高照会の時点で、保持している件数より後ろの履歴だけを追加する。
+ *
+ * 保持するデータの合計（バイト数）には上限があり、超えた場合は最も長く参照されていない口座から破棄する。
+ * 最新の N 件のみを出力する場合（--history-limit）は、出力しなくなった古い行も破棄する。
+ *
+ * ヒット率（保持しているデータを使用できた残高照会の割合）と、整形せずに済んだバイト数を get メソッドで参照できる。
+ *
+ * スレッドセーフではない。（BatchOutputSink は自身のロック内で使用する）
+ */
+public class ReportCache {
+
+    /** 口座ごとのデータ（参照順。先頭が最も長く参照されていない口座） */
+    private final LinkedHashMap<Bank, Lines> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** 保持するデータの合計の上限（バイト数） */
+    private final long maxBytes;
+
+    /** 保持しているデータの合計（配列の確保済みのサイズ） */
+    private long cachedBytes;
+
+    /** 保持しているデータを使用した回数・使用できなかった回数・破棄した口座数 */
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /** 保持しているデータを書き込んだバイト数（整形せずに済んだ量） */
+    private long bytesSaved;
+
+    /**
+     * @param maxBytes 保持するデータの合計の上限（バイト数）
+     */
+    public ReportCache(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 口座の取引履歴のうち、位置 from 以降の行を書き込む。（行の形式は TransactionHistory.Cursor.appendDetail と同じ）
+     * 口座のロック内で呼び出すこと。
+     * @param bank 口座
+     * @param from 先頭の位置（最新の N 件のみを出力する場合は、件数 - N）
+     * @param out 出力先（保持しているデータと同じ出力先、または同じ文字コードの出力先）
+     */
+    public void appendHistory(Bank bank, int from, ReportWriter out) {
+        TransactionHistory history = bank.getTransactionHistory();
+        int size = history.size();
+        Lines entry = entries.get(bank);
+        if (entry != null && (entry.history != history || entry.count > size || from < entry.base || from > entry.count)) {
+            // 取引履歴が差し替えられた場合、保持していない古い行を出力する場合は作り直す
+            remove(bank, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            entry = new Lines(history, from);
+            entries.put(bank, entry);
+        } else {
+            hits++;
+            if (from > entry.base) {
+                cachedBytes += entry.trim(from);
+            }
+        }
+
+        // 保持している行
+        int begin = entry.offsetOf(from);
+        out.append(entry.data, begin, entry.length - begin);
+        bytesSaved += entry.length - begin;
+
+        // その後に追加された行を整形し、書き込んだデータを保持する
+        if (entry.count < size) {
+            int mark = out.position();
+            TransactionHistory.Cursor c = history.page(entry.count, size - entry.count);
+            while (c.next()) {
+                c.appendDetail(out);
+                out.newLine();
+            }
+            cachedBytes += entry.append(out, mark, out.position(), size);
+        }
+        evict(bank);
+    }
+
+    /** @return 保持しているデータを使用した残高照会の回数 */
+    public long getHits() {
+        return hits;
+    }
+
+    /** @return 保持しているデータがなく、すべての行を整形した残高照会の回数 */
+    public long getMisses() {
+        return misses;
+    }
+
+    /** @return ヒット率（0 から 1。残高照会がない場合は 0） */
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /** @return 保持しているデータを書き込んだバイト数（整形せずに済んだ量） */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    /** @return 保持しているデータの合計（バイト数） */
+    public long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /** @return データを保持している口座数 */
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    /** @return 上限を超えたため破棄した口座数 */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * ヒット率・整形せずに済んだバイト数などを表示する。
+     */
+    public void printSummary() {
+        System.out.printf(Constants.MSG_REPORT_CACHE_FORMAT, hits, misses, getHitRate() * 100, bytesSaved,
+            entries.size(), cachedBytes, evictions);
+    }
+
+    // ---- 内部処理 ----
+
+    private void remove(Bank bank, Lines entry) {
+        entries.remove(bank);
+        cachedBytes -= entry.footprint();
+    }
+
+    /** 合計が上限以下になるまで、最も長く参照されていない口座から破棄する。（current は最後に破棄する） */
+    private void evict(Bank current) {
+        Iterator<Map.Entry<Bank, Lines>> it = entries.entrySet().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Bank, Lines> eldest = it.next();
+            if (eldest.getKey() == current) {
+                continue;
+            }
+            it.remove();
+            cachedBytes -= eldest.getValue().footprint();
+            evictions++;
+        }
+        if (cachedBytes > maxBytes) {
+            // 1 口座分だけで上限を超える場合は保持しない
+            remove(current, entries.get(current));
+            evictions++;
+        }
+    }
+
+    /**
+     * 1 口座分のデータ。取引履歴の位置 base から count の前までの行を保持する。
+     */
+    private static final class Lines {
+
+        /** 行の位置と保持するデータの量の目安（バイト数） */
+        private static final int INITIAL_LINES = 8;
+        private static final int INITIAL_BYTES = 1024;
+
+        /** 対象の取引履歴（口座の復元などで差し替えられた場合は作り直す） */
+        final TransactionHistory history;
+
+        /** 保持している最初の行の位置と、最後の行の次の位置 */
+        int base;
+        int count;
+
+        /** 文字コード変換済みの行 */
+        byte[] data = new byte[0];
+        int length;
+
+        /** 各行の終わりの位置（data 内のバイト位置。lineEnds[i] は位置 base + i の行） */
+        int[] lineEnds = new int[0];
+
+        Lines(TransactionHistory history, int base) {
+            this.history = history;
+            this.base = base;
+            this.count = base;
+        }
+
+        /** 配列の確保済みのサイズ（バイト数） */
+        long footprint() {
+            return data.length + (long) lineEnds.length * Integer.BYTES;
+        }
+
+        /** @return 位置 index の行の先頭の data 内の位置 */
+        int offsetOf(int index) {
+            return index == base ? 0 : lineEnds[index - base - 1];
+        }
+
+        /**
+         * 出力先の from から to までに書き込まれた行を追加する。
+         * @param newCount 追加後の、最後の行の次の位置
+         * @return 配列の確保済みのサイズの増加量
+         */
+        long append(ReportWriter out, int from, int to, int newCount) {
+            long before = footprint();
+            int bytes = to - from;
+            int lines = newCount - count;
+            if (length + bytes > data.length) {
+                data = Arrays.copyOf(data, Math.max(length + bytes, Math.max(INITIAL_BYTES, data.length + (data.length >> 1))));
+            }
+            int used = count - base;
+            if (used + lines > lineEnds.length) {
+                lineEnds = Arrays.copyOf(lineEnds, Math.max(used + lines, Math.max(INITIAL_LINES, lineEnds.length + (lineEnds.length >> 1))));
+            }
+            out.copyTo(from, to, data, length);
+            // 改行（行区切りの最後の文字）の位置から各行の終わりを求める
+            int line = used;
+            for (int i = length; i < length + bytes; i++) {
+                if (data[i] == '\n') {
+                    lineEnds[line++] = i + 1;
+                }
+            }
+            length += bytes;
+            count = newCount;
+            return footprint() - before;
+        }
+
+        /**
+         * 位置 newBase より前の行を破棄する。（破棄する量が保持している量の半分以上の場合のみ）
+         * @return 配列の確保済みのサイズの増加量（負の値）
+         */
+        long trim(int newBase) {
+            int dropBytes = offsetOf(newBase);
+            if (dropBytes == 0 || dropBytes * 2L < length) {
+                return 0;
+            }
+            long before = footprint();
+            int dropLines = newBase - base;
+            int keepLines = count - newBase;
+            byte[] newData = Arrays.copyOfRange(data, dropBytes, length);
+            int[] newEnds = new int[Math.max(keepLines, INITIAL_LINES)];
+            for (int i = 0; i < keepLines; i++) {
+                newEnds[i] = lineEnds[dropLines + i] - dropBytes;
+            }
+            data = newData;
+            lineEnds = newEnds;
+            length -= dropBytes;
+            base = newBase;
+            return footprint() - before;
+        }
+    }
+}
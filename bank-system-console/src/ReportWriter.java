@@ -0,0 +1,270 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+
+/**
+ * 残高照会や取引履歴などのレポートを出力するための、再利用可能なバッファ付き出力クラス。
+ * 数値や日付は内部の作業用配列で文字に変換するため、出力のたびに String を生成しない。
+ * レポート 1 件分を書き込んでから flush() でまとめて出力する。
+ * flush() は出力先への 1 回の書き込みになるため、他スレッドの出力と行が混ざることはない。
+ *
+ * 他の出力（System.out.println など）と順序が入れ替わらないよう、
+ * レポートの最後には必ず flush() を呼び出すこと。
+ * 複数スレッドから使用する場合は、このインスタンスで synchronized して書き込むこと。
+ */
+public class ReportWriter {
+
+    /** 出力バッファの初期サイズ（バイト数。大きなレポートの場合は拡張する） */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** 標準出力用の共有インスタンス */
+    private static ReportWriter stdout;
+
+    /** 出力先 */
+    private final PrintStream target;
+
+    /** 文字コード変換後のレポート 1 件分のデータ（使い回す） */
+    private final ByteArrayBuffer bytes = new ByteArrayBuffer(BUFFER_SIZE);
+
+    /** バッファ付きの出力（bytes に書き込む） */
+    private final Writer out;
+
+    /** 改行文字 */
+    private final String lineSeparator = System.lineSeparator();
+
+    /** 数値を文字に変換するための作業用配列（long の最大桁数 + 符号） */
+    private final char[] digits = new char[20];
+
+    /** 直前に変換した日付（同じ日付が続く場合は変換結果を再利用する） */
+    private int cachedEpochDay = Integer.MIN_VALUE;
+    private final char[] cachedDate = new char[32];
+    private int cachedDateLength;
+
+    /**
+     * 出力先を指定して作成する。
+     * @param target 出力先
+     */
+    public ReportWriter(PrintStream target) {
+        this.target = target;
+        this.out = new BufferedWriter(new OutputStreamWriter(bytes, consoleCharset()));
+    }
+
+    /**
+     * 現在の System.out に出力するインスタンスを返す。
+     * System.setOut で出力先が変更された場合は、新しい出力先のインスタンスを返す。
+     * @return 標準出力用のインスタンス
+     */
+    public static synchronized ReportWriter stdout() {
+        if (stdout == null || stdout.target != System.out) {
+            stdout = new ReportWriter(System.out);
+        }
+        return stdout;
+    }
+
+    /**
+     * 文字列を書き込む。
+     * @param s 文字列
+     * @return このインスタンス
+     */
+    public ReportWriter append(String s) {
+        try {
+            out.write(s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    /**
+     * 整数を 10 進数で書き込む。（%d と同じ形式）
+     * @param value 値
+     * @return このインスタンス
+     */
+    public ReportWriter append(long value) {
+        return appendZeroPadded(value, 0);
+    }
+
+    /**
+     * 整数を指定桁数になるよう 0 埋めして書き込む。（%07d などと同じ形式）
+     * @param value 値
+     * @param width 桁数（符号を含む）
+     * @return このインスタンス
+     */
+    public ReportWriter appendZeroPadded(long value, int width) {
+        // 後ろの桁から作業用配列に詰める（Long.MIN_VALUE も扱えるよう負の値で計算する）
+        int pos = digits.length;
+        long v = value < 0 ? value : -value;
+        do {
+            digits[--pos] = (char) ('0' - v % 10);
+            v /= 10;
+        } while (v != 0);
+
+        int signWidth = value < 0 ? 1 : 0;
+        try {
+            if (value < 0) {
+                out.write('-');
+            }
+            for (int i = digits.length - pos + signWidth; i < width; i++) {
+                out.write('0');
+            }
+            out.write(digits, pos, digits.length - pos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    /**
+     * 日付を yyyy-MM-dd 形式で書き込む。
+     * @param epochDay 日付（1970-01-01 からの日数）
+     * @return このインスタンス
+     */
+    public ReportWriter appendDate(int epochDay) {
+        if (epochDay != cachedEpochDay) {
+            cacheDate(epochDay);
+        }
+        try {
+            out.write(cachedDate, 0, cachedDateLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    /**
+     * 文字コード変換済みのデータを書き込む。（position / copyTo で取り出したデータの再利用用）
+     * @param data データ（このインスタンスと同じ文字コードのもの）
+     * @param offset 開始位置
+     * @param length バイト数
+     * @return このインスタンス
+     */
+    public ReportWriter append(byte[] data, int offset, int length) {
+        flushChars();
+        bytes.write(data, offset, length);
+        return this;
+    }
+
+    /**
+     * 出力していないデータのバイト数を返す。（書き込んだ範囲を copyTo で取り出すための位置として使用する）
+     * 位置は flush / flushIfFull で出力するまでの間のみ有効。
+     * @return 文字コード変換後のバイト数
+     */
+    public int position() {
+        flushChars();
+        return bytes.size();
+    }
+
+    /**
+     * 出力していないデータのうち、位置 from から to の前までを配列にコピーする。
+     * @param from 開始位置（position の戻り値）
+     * @param to 終了位置（position の戻り値）
+     * @param dest コピー先
+     * @param destOffset コピー先の開始位置
+     */
+    public void copyTo(int from, int to, byte[] dest, int destOffset) {
+        System.arraycopy(bytes.array(), from, dest, destOffset, to - from);
+    }
+
+    /**
+     * 改行を書き込む。
+     * @return このインスタンス
+     */
+    public ReportWriter newLine() {
+        return append(lineSeparator);
+    }
+
+    /**
+     * バッファの内容を出力先にまとめて出力する。
+     */
+    public void flush() {
+        try {
+            out.flush();
+            // 内部配列をコピーせず、出力先に 1 回で書き込む
+            bytes.writeTo(target);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        target.flush();
+        bytes.reset();
+    }
+
+    /**
+     * 溜まったデータが一定量を超えている場合のみ出力する。
+     * 大量のメッセージを書き込む場合に、メモリ使用量を抑えるために使用する。
+     */
+    public void flushIfFull() {
+        if (bytes.size() >= BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    // ---- 内部処理 ----
+
+    /** 書き込んだ文字を文字コード変換して bytes に移す。 */
+    private void flushChars() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 日付を yyyy-MM-dd 形式の文字に変換して保持する。
+     * 4 桁に収まらない年は DateTimeFormatter に任せる。
+     */
+    private void cacheDate(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        int year = date.getYear();
+        if (year < 1 || year > 9999) {
+            String s = Transaction.DATE_FORMATTER.format(date);
+            s.getChars(0, s.length(), cachedDate, 0);
+            cachedDateLength = s.length();
+        } else {
+            int month = date.getMonthValue();
+            int day = date.getDayOfMonth();
+            cachedDate[0] = (char) ('0' + year / 1000);
+            cachedDate[1] = (char) ('0' + year / 100 % 10);
+            cachedDate[2] = (char) ('0' + year / 10 % 10);
+            cachedDate[3] = (char) ('0' + year % 10);
+            cachedDate[4] = '-';
+            cachedDate[5] = (char) ('0' + month / 10);
+            cachedDate[6] = (char) ('0' + month % 10);
+            cachedDate[7] = '-';
+            cachedDate[8] = (char) ('0' + day / 10);
+            cachedDate[9] = (char) ('0' + day % 10);
+            cachedDateLength = 10;
+        }
+        cachedEpochDay = epochDay;
+    }
+
+    /** 内部の配列を参照できる ByteArrayOutputStream */
+    private static final class ByteArrayBuffer extends ByteArrayOutputStream {
+
+        ByteArrayBuffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * System.out と同じ文字コードを返す。
+     * （Java 18 以降は stdout.encoding、それ以前は sun.stdout.encoding または既定の文字コード）
+     */
+    private static Charset consoleCharset() {
+        String name = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        if (name != null && Charset.isSupported(name)) {
+            return Charset.forName(name);
+        }
+        return Charset.defaultCharset();
+    }
+}
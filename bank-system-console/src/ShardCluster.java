@@ -0,0 +1,432 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 口座番号の範囲で分割したシャードを、同じホスト上の別々のプロセス（ShardWorker）として起動・停止するクラス。
+ * 口座を複数のプロセスに分けることで、1 つの JVM のヒープ・GC に全口座を載せずに済む。
+ * 要求の振り分けは connect で作成する ShardRouter で行う。
+ *
+ * 作業ディレクトリには次のファイルを置く。
+ * - 割り当て表（Constants.SHARD_MAP_FILE）: ShardMap の文字列形式
+ * - シャードごとの状態ファイル（Constants.SHARD_STATE_FILE_FORMAT）: ShardWorker が停止時に保存する口座の状態
+ * - 転送済みの位置（Constants.SHARD_SOURCE_FILE）: main が転送した transaction.csv の位置。次回はこの位置から転送する
+ *
+ * シャードを追加する場合は、すべてのワーカーを停止してから rebalance で状態ファイルを新しい割り当て表に合わせて書き直し、
+ * 新しい割り当て表で起動し直す。担当範囲が変わらない口座は、シャードの番号が変わってもそのまま引き継がれる。
+ *
+ * 単独で起動する場合（java -cp out ShardCluster）は、割り当て表に従ってワーカーを起動し、
+ * transaction.csv の入金・出金・残高照会をルーター経由で各シャードに転送してから、ワーカーを停止する。
+ * 前回までに転送した行は状態ファイルに反映済みのため、転送済みの位置から続きを転送する。
+ * 状態ファイルがあるのに位置が記録されていない場合と、前回の転送が途中で停止した場合は、二重に転送しないよう中断する。
+ *   --shards=N         割り当て表がない場合のシャード数（account.csv の行数をもとに口座番号の範囲を N 等分する）
+ *   --add-shard        起動前に、最も広い範囲を 2 つに分けてシャードを 1 つ追加する
+ *   --dir=ディレクトリ  作業ディレクトリ（既定は Constants.SHARD_DIR）
+ *   --split            転送せずに、transaction.csv をシャードごとのファイルに分けて作業ディレクトリに書き込む
+ */
+public class ShardCluster implements AutoCloseable {
+
+    /** 割り当て表 */
+    private final ShardMap map;
+
+    /** シャードごとのワーカープロセス */
+    private final Process[] processes;
+
+    /** シャードごとの待ち受けポートと口座数 */
+    private final int[] ports;
+    private final int[] accountCounts;
+
+    private ShardCluster(ShardMap map) {
+        this.map = map;
+        this.processes = new Process[map.size()];
+        this.ports = new int[map.size()];
+        this.accountCounts = new int[map.size()];
+    }
+
+    /**
+     * 割り当て表に従ってワーカーを起動し、すべてのワーカーが待ち受けを開始するまで待つ。
+     * @param map 割り当て表
+     * @param dir 作業ディレクトリ（状態ファイルの置き場所）
+     * @param accountFile 状態ファイルがないシャードが口座を読み込む口座情報のファイル
+     * @param jvmOptions ワーカーの JVM に渡すオプション（-Xmx など）
+     * @return 起動したクラスター
+     * @throws IOException 起動できないワーカーがある場合（起動済みのワーカーは停止する）
+     */
+    public static ShardCluster start(ShardMap map, Path dir, String accountFile, List<String> jvmOptions)
+            throws IOException {
+        Files.createDirectories(dir);
+        ShardCluster cluster = new ShardCluster(map);
+        try {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            for (int i = 0; i < map.size(); i++) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.addAll(jvmOptions);
+                // 口座情報のファイルを同じ文字コードで読み込むよう、既定の文字コードを引き継ぐ
+                command.add("-Dfile.encoding=" + Charset.defaultCharset().name());
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(ShardWorker.class.getName());
+                command.add(Integer.toString(i));
+                command.add(map.toString());
+                command.add(stateFile(dir, i).toString());
+                command.add(accountFile);
+                ProcessBuilder builder = new ProcessBuilder(command);
+                builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+                cluster.processes[i] = builder.start();
+            }
+            // 各ワーカーの口座の読み込みは並行して進む。起動した順に待ち受けの開始を待つ
+            for (int i = 0; i < map.size(); i++) {
+                cluster.awaitReady(i);
+            }
+        } catch (IOException e) {
+            cluster.destroy();
+            throw e;
+        }
+        return cluster;
+    }
+
+    /**
+     * 全シャードに接続するルーターを作成する。
+     * @return ルーター
+     * @throws IOException 接続できない場合
+     */
+    public ShardRouter connect() throws IOException {
+        return new ShardRouter(map, ports.clone());
+    }
+
+    /** @return 割り当て表 */
+    public ShardMap getMap() {
+        return map;
+    }
+
+    /** @return シャードの待ち受けポート */
+    public int getPort(int shard) {
+        return ports[shard];
+    }
+
+    /** @return シャードが起動時に読み込んだ口座数 */
+    public int getAccountCount(int shard) {
+        return accountCounts[shard];
+    }
+
+    /**
+     * すべてのワーカーを停止する。各ワーカーは状態ファイルを保存してから終了する。
+     * @throws IOException 正常に終了しなかったワーカーがある場合
+     */
+    @Override
+    public void close() throws IOException {
+        for (Process process : processes) {
+            process.getOutputStream().close();
+        }
+        IOException error = null;
+        for (int i = 0; i < processes.length; i++) {
+            try {
+                if (!processes[i].waitFor(Constants.SHARD_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    processes[i].destroyForcibly();
+                    error = new IOException(Constants.MSG_SHARD_STOP_ERROR + i);
+                } else if (processes[i].exitValue() != 0) {
+                    error = new IOException(Constants.MSG_SHARD_STOP_ERROR + i);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                destroy();
+                throw new IOException(Constants.MSG_SHARD_STOP_ERROR + i, e);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * シャードの状態ファイルのパスを返す。
+     * @param dir 作業ディレクトリ
+     * @param shard シャードの番号
+     * @return 状態ファイル
+     */
+    public static Path stateFile(Path dir, int shard) {
+        return dir.resolve(String.format(Constants.SHARD_STATE_FILE_FORMAT, shard));
+    }
+
+    /**
+     * 割り当て表を読み込む。
+     * @param dir 作業ディレクトリ
+     * @return 割り当て表。ファイルがない場合は null
+     * @throws IOException 読み込みに失敗した場合、形式が不正な場合
+     */
+    public static ShardMap loadMap(Path dir) throws IOException {
+        Path file = dir.resolve(Constants.SHARD_MAP_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return ShardMap.parse(Files.readString(file, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 割り当て表を保存する。（一時ファイルに書き込んでから置き換える）
+     * @param dir 作業ディレクトリ
+     * @param map 割り当て表
+     */
+    public static void saveMap(Path dir, ShardMap map) throws IOException {
+        Path file = dir.resolve(Constants.SHARD_MAP_FILE);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, map.toString(), StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 転送済みの位置を読み込む。
+     * @param dir 作業ディレクトリ
+     * @return 転送済みの位置。ファイルがない場合は null
+     * @throws IOException 読み込みに失敗した場合、形式が不正な場合
+     */
+    public static BankSnapshot.SourcePosition loadSource(Path dir) throws IOException {
+        Path file = dir.resolve(Constants.SHARD_SOURCE_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        // 形式: 位置 ファイル名（ファイル名に空白を含んでもよいよう、最初の空白で区切る）
+        String text = Files.readString(file, StandardCharsets.UTF_8).strip();
+        int space = text.indexOf(' ');
+        try {
+            return new BankSnapshot.SourcePosition(text.substring(space + 1), Long.parseLong(text.substring(0, space)));
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new IOException(Constants.ERR_MSG_SHARD_SOURCE_FORMAT + text, e);
+        }
+    }
+
+    /**
+     * 転送済みの位置を保存する。（一時ファイルに書き込んでから置き換える）
+     * @param dir 作業ディレクトリ
+     * @param source 転送済みの位置（転送中の場合は BankSnapshot.SourcePosition.applying の値）
+     */
+    public static void saveSource(Path dir, BankSnapshot.SourcePosition source) throws IOException {
+        Path file = dir.resolve(Constants.SHARD_SOURCE_FILE);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, source.getOffset() + " " + source.getFileName(), StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 状態ファイルを新しい割り当て表に合わせて書き直す。（すべてのワーカーを停止してから呼び出すこと）
+     * 新しいシャードごとに、担当範囲が重なる元のシャードの状態ファイルだけを読み込み、担当する口座を集めて書き込む。
+     * 一度に読み込むのは元のシャード 1 つと新しいシャード 1 つ分の口座のみ。
+     * すべての新しい状態ファイルを一時ファイルに書き終えてから置き換え、最後に割り当て表を保存する。
+     * @param dir 作業ディレクトリ
+     * @param from 現在の割り当て表
+     * @param to 新しい割り当て表
+     * @return 担当するシャードの番号が変わった口座数
+     * @throws IOException 状態ファイルの読み書きに失敗した場合
+     */
+    public static long rebalance(Path dir, ShardMap from, ShardMap to) throws IOException {
+        long moved = 0;
+        int loadedShard = -1;
+        AccountRegistry loaded = null;
+        Path[] temps = new Path[to.size()];
+        for (int j = 0; j < to.size(); j++) {
+            AccountRegistry target = new AccountRegistry();
+            for (int i = 0; i < from.size(); i++) {
+                if (!to.overlaps(j, from, i)) {
+                    continue;
+                }
+                if (i != loadedShard) {
+                    loaded = new AccountRegistry();
+                    loadedShard = i;
+                    Path file = stateFile(dir, i);
+                    if (Files.exists(file)) {
+                        BankSnapshot.load(file, loaded);
+                    }
+                }
+                for (Bank bank : loaded.getAccounts()) {
+                    if (to.shardOf(bank.getAccount().getAccountNumber()) == j) {
+                        target.register(bank);
+                        if (i != j) {
+                            moved++;
+                        }
+                    }
+                }
+            }
+            temps[j] = stateFile(dir, j).resolveSibling(stateFile(dir, j).getFileName() + Constants.SHARD_REBALANCE_SUFFIX);
+            BankSnapshot.capture(target, 0).writeTo(temps[j]);
+        }
+        for (int j = 0; j < to.size(); j++) {
+            Files.move(temps[j], stateFile(dir, j), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        for (int i = to.size(); i < from.size(); i++) {
+            Files.deleteIfExists(stateFile(dir, i));
+        }
+        saveMap(dir, to);
+        return moved;
+    }
+
+    // ---- 内部処理 ----
+
+    /** ワーカーが待ち受けを開始した行を出力するまで待ち、ポート番号と口座数を取得する。 */
+    private void awaitReady(int shard) throws IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(processes[shard].getInputStream(), Charset.defaultCharset()));
+        String prefix = Constants.SHARD_READY_FORMAT.substring(0, Constants.SHARD_READY_FORMAT.indexOf('%'));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(prefix)) {
+                String[] fields = line.substring(prefix.length()).trim().split(" ");
+                ports[shard] = Integer.parseInt(fields[0]);
+                accountCounts[shard] = Integer.parseInt(fields[1]);
+                return;
+            }
+            // 読み込みエラーなどのメッセージはそのまま表示する
+            System.out.println(line);
+        }
+        throw new IOException(Constants.MSG_SHARD_LOAD_ERROR + shard);
+    }
+
+    /** すべてのワーカーを強制終了する。 */
+    private void destroy() {
+        for (Process process : processes) {
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * 割り当て表に従ってワーカーを起動し、transaction.csv の取引を転送する。
+     */
+    public static void main(String[] args) throws IOException {
+        System.out.println(Constants.MSG_SYSTEM_START);
+        Path dir = Paths.get(Constants.SHARD_DIR);
+        int shards = Constants.SHARD_COUNT;
+        boolean addShard = false;
+        boolean split = false;
+        for (String arg : args) {
+            if (arg.startsWith(Constants.OPTION_SHARDS)) {
+                shards = Integer.parseInt(arg.substring(Constants.OPTION_SHARDS.length()));
+            } else if (arg.equals(Constants.OPTION_ADD_SHARD)) {
+                addShard = true;
+            } else if (arg.startsWith(Constants.OPTION_SHARD_DIR)) {
+                dir = Paths.get(arg.substring(Constants.OPTION_SHARD_DIR.length()));
+            } else if (arg.equals(Constants.OPTION_SPLIT)) {
+                split = true;
+            }
+        }
+        Files.createDirectories(dir);
+
+        ShardMap map = loadMap(dir);
+        if (map == null) {
+            // account.csv の行番号が口座番号になるため、行数の範囲を分割する
+            map = ShardMap.even(shards, 1, countRows(Constants.FILE_ACCOUNT_CSV) + 1);
+            saveMap(dir, map);
+        }
+        // 状態ファイルには前回までに転送した行が反映されているため、転送済みの位置から続きを転送する
+        BankSnapshot.SourcePosition source = loadSource(dir);
+        boolean unknown = source == null ? hasStateFiles(dir, map)
+            : source.isApplying() || !source.getFileName().equals(Constants.FILE_TRANSACTION_CSV);
+        if (!split && unknown) {
+            System.out.println(Constants.ERR_MSG_SHARD_SOURCE_UNKNOWN + dir);
+            return;
+        }
+        if (addShard) {
+            ShardMap next = map.split();
+            long moved = rebalance(dir, map, next);
+            System.out.printf(Constants.MSG_SHARD_REBALANCED_FORMAT, map.size(), next.size(), next, moved);
+            map = next;
+        }
+
+        if (split) {
+            Path[] outputs = new Path[map.size()];
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i] = dir.resolve(String.format(Constants.SHARD_TRANSACTION_FILE_FORMAT, i));
+            }
+            try (CsvRowReader csv = new CsvRowReader(Constants.FILE_TRANSACTION_CSV)) {
+                long cross = ShardRouter.split(csv, map, outputs, dir.resolve(Constants.SHARD_CROSS_FILE));
+                System.out.printf(Constants.MSG_SHARD_SPLIT_FORMAT, csv.rowCount(), map.size(), cross);
+            }
+            System.out.println(Constants.MSG_EXIT_CSV);
+            return;
+        }
+
+        Path transactionFile = Paths.get(Constants.FILE_TRANSACTION_CSV);
+        long size = Files.size(transactionFile);
+        long offset = source == null ? 0 : source.getOffset();
+        if (size < offset) {
+            System.out.println(Constants.MSG_FOLLOW_RESTARTED + Constants.FILE_TRANSACTION_CSV);
+            offset = 0;
+        } else if (offset > 0) {
+            System.out.printf(Constants.MSG_JOURNAL_RESUMED_FORMAT, Constants.FILE_TRANSACTION_CSV, offset);
+        }
+
+        long start = System.nanoTime();
+        long next;
+        try (ShardCluster cluster = start(map, dir, Constants.FILE_ACCOUNT_CSV, List.of())) {
+            // ワーカーが状態ファイルを保存し終えるまでは、どこまで反映されたかを特定できないことを記録しておく
+            saveSource(dir, BankSnapshot.SourcePosition.applying(Constants.FILE_TRANSACTION_CSV));
+            long accounts = 0;
+            for (int i = 0; i < map.size(); i++) {
+                accounts += cluster.getAccountCount(i);
+            }
+            System.out.printf(Constants.MSG_SHARD_STARTED_FORMAT, map.size(), accounts, map);
+            try (ShardRouter router = cluster.connect();
+                 CsvRowReader csv = offset == 0 ? new CsvRowReader(Constants.FILE_TRANSACTION_CSV)
+                     : CsvRowReader.openRange(transactionFile, offset, size)) {
+                try {
+                    router.replay(csv);
+                    next = csv.bytesRead();
+                } catch (IOException e) {
+                    System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+                    System.out.println(Constants.MSG_CSV_LOAD_ERROR + Constants.FILE_TRANSACTION_CSV);
+                    // 中断した行は転送していないため、次回はその行から転送する
+                    next = csv.rowOffset();
+                } catch (NumberFormatException e) {
+                    System.out.println(Constants.ERR_MSG_DETAIL_HEADER + Constants.ERR_MSG_AMOUNT_FORMAT);
+                    System.out.println(Constants.MSG_CSV_LOAD_ERROR + Constants.FILE_TRANSACTION_CSV);
+                    next = csv.rowOffset();
+                }
+                System.out.printf(Constants.MSG_SHARD_SUMMARY_FORMAT, csv.rowCount(), router.getResponseCount(),
+                    router.getResultCount(Constants.RESULT_SUCCESS), router.getResultCount(Constants.RESULT_INVALID_AMOUNT),
+                    router.getResultCount(Constants.RESULT_INSUFFICIENT_BALANCE),
+                    router.getResultCount(Constants.RESULT_BALANCE_OVERFLOW), router.getResultCount(Constants.RESULT_NO_ACCOUNT),
+                    router.getSkippedTransfers(), (System.nanoTime() - start) / 1e9);
+            }
+        } catch (IOException e) {
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+            return;
+        }
+        // すべてのワーカーが状態ファイルを保存してから、転送済みの位置を記録する
+        saveSource(dir, new BankSnapshot.SourcePosition(Constants.FILE_TRANSACTION_CSV, next));
+        System.out.println(Constants.MSG_EXIT_CSV);
+    }
+
+    /** 割り当て表のシャードの状態ファイルが 1 つでもあるかを返す。 */
+    private static boolean hasStateFiles(Path dir, ShardMap map) {
+        for (int i = 0; i < map.size(); i++) {
+            if (Files.exists(stateFile(dir, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** ファイルの行数を数える。 */
+    private static long countRows(String fileName) throws IOException {
+        try (CsvRowReader csv = new CsvRowReader(fileName)) {
+            while (csv.next()) {
+                // 行数のみを数える
+            }
+            return csv.rowCount();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.Arrays;
+
+/**
+ * 口座番号の範囲による口座の分割（シャード）の割り当て表。
+ * シャード i は口座番号 start(i) 以上 start(i + 1) 未満の口座を担当する。
+ * 先頭のシャードは start(0) より小さい番号を、最後のシャードは最大値までの番号もあわせて担当するため、
+ * すべての口座番号がいずれか 1 つのシャードに割り当てられる。
+ *
+ * シャードを追加する場合は split() で最も広い範囲を 2 つに分け、ShardCluster.rebalance で
+ * 移動する範囲の口座のみを新しいシャードに移す。（他のシャードの口座は移動しない）
+ *
+ * 文字列形式（toString / parse）は各シャードの開始番号と範囲の上限のカンマ区切り。（例: "1,5001,10001"）
+ * 作成後は変更しない。（split は新しいインスタンスを返す）
+ */
+public final class ShardMap {
+
+    /** 各シャードの担当範囲の開始番号（昇順） */
+    private final int[] starts;
+
+    /** 担当範囲の上限（最後のシャードの範囲の終わり。split で分ける範囲の計算に使用する） */
+    private final long limit;
+
+    private ShardMap(int[] starts, long limit) {
+        this.starts = starts;
+        this.limit = limit;
+    }
+
+    /**
+     * 口座番号 min 以上 max 未満を、ほぼ同じ幅の範囲に分割する。
+     * @param shards シャード数（1 以上）
+     * @param min 口座番号の最小値
+     * @param max 口座番号の最大値 + 1
+     * @return 割り当て表
+     */
+    public static ShardMap even(int shards, int min, long max) {
+        if (shards < 1 || max - min < shards) {
+            throw new IllegalArgumentException("shards: " + shards + " range: " + min + ".." + max);
+        }
+        int[] starts = new int[shards];
+        long width = max - min;
+        for (int i = 0; i < shards; i++) {
+            starts[i] = (int) (min + width * i / shards);
+        }
+        return new ShardMap(starts, max);
+    }
+
+    /**
+     * 自動採番の口座番号の範囲（Constants.ACCOUNT_MIN から ACCOUNT_RANGE 件）を分割する。
+     * @param shards シャード数（1 以上）
+     * @return 割り当て表
+     */
+    public static ShardMap even(int shards) {
+        return even(shards, Constants.ACCOUNT_MIN, (long) Constants.ACCOUNT_MIN + Constants.ACCOUNT_RANGE);
+    }
+
+    /**
+     * 文字列形式（toString の戻り値）から作成する。
+     * @param text 各シャードの開始番号のカンマ区切りと、末尾に範囲の上限（"開始番号,...,上限"）
+     * @return 割り当て表
+     * @throws IllegalArgumentException 形式が不正な場合（昇順でない場合を含む）
+     */
+    public static ShardMap parse(String text) {
+        String[] fields = text.trim().split(",");
+        if (fields.length < 2) {
+            throw new IllegalArgumentException(Constants.ERR_MSG_SHARD_MAP_FORMAT + text);
+        }
+        int[] starts = new int[fields.length - 1];
+        long limit;
+        try {
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = Integer.parseInt(fields[i].trim());
+            }
+            limit = Long.parseLong(fields[fields.length - 1].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(Constants.ERR_MSG_SHARD_MAP_FORMAT + text, e);
+        }
+        for (int i = 1; i < starts.length; i++) {
+            if (starts[i] <= starts[i - 1]) {
+                throw new IllegalArgumentException(Constants.ERR_MSG_SHARD_MAP_FORMAT + text);
+            }
+        }
+        if (limit <= starts[starts.length - 1]) {
+            throw new IllegalArgumentException(Constants.ERR_MSG_SHARD_MAP_FORMAT + text);
+        }
+        return new ShardMap(starts, limit);
+    }
+
+    /** @return シャード数 */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * 口座番号を担当するシャードを返す。
+     * @param accountNumber 口座番号
+     * @return シャードの番号（0 始まり）
+     */
+    public int shardOf(int accountNumber) {
+        int i = Arrays.binarySearch(starts, accountNumber);
+        if (i >= 0) {
+            return i;
+        }
+        // 挿入位置の 1 つ前のシャードの範囲に含まれる（先頭より小さい番号は先頭のシャード）
+        return Math.max(-i - 2, 0);
+    }
+
+    /**
+     * シャードの担当範囲の開始番号を返す。（先頭のシャードは、これより小さい番号も担当する）
+     * @param shard シャードの番号
+     * @return 開始番号
+     */
+    public int start(int shard) {
+        return starts[shard];
+    }
+
+    /**
+     * シャードの担当範囲の終わり（この番号は含まない）を返す。（最後のシャードは、これ以上の番号も担当する）
+     * @param shard シャードの番号
+     * @return 終わりの番号
+     */
+    public long end(int shard) {
+        return shard + 1 < starts.length ? starts[shard + 1] : limit;
+    }
+
+    /**
+     * 最も広い担当範囲を 2 つに分けた割り当て表を返す。分けた範囲の後半を新しいシャードとし、
+     * それより後ろのシャードの番号は 1 つずつ後ろにずれる。
+     * @return シャードを 1 つ追加した割り当て表
+     * @throws IllegalStateException 分けられる範囲がない場合（すべての範囲の幅が 1）
+     */
+    public ShardMap split() {
+        int widest = 0;
+        for (int i = 1; i < starts.length; i++) {
+            if (end(i) - starts[i] > end(widest) - starts[widest]) {
+                widest = i;
+            }
+        }
+        long width = end(widest) - starts[widest];
+        if (width < 2) {
+            throw new IllegalStateException(Constants.ERR_MSG_SHARD_MAP_FORMAT + this);
+        }
+        int[] next = new int[starts.length + 1];
+        System.arraycopy(starts, 0, next, 0, widest + 1);
+        next[widest + 1] = (int) (starts[widest] + width / 2);
+        System.arraycopy(starts, widest + 1, next, widest + 2, starts.length - widest - 1);
+        return new ShardMap(next, limit);
+    }
+
+    /**
+     * 2 つの割り当て表で、担当範囲が重なるかを返す。（口座の移動元を調べる場合に使用する）
+     * @param shard この割り当て表のシャード
+     * @param other もう一方の割り当て表
+     * @param otherShard もう一方のシャード
+     * @return 重なる場合は true
+     */
+    public boolean overlaps(int shard, ShardMap other, int otherShard) {
+        // 先頭・最後のシャードは範囲外の番号も担当するため、範囲を広げて比較する
+        long from = shard == 0 ? Long.MIN_VALUE : starts[shard];
+        long to = shard == starts.length - 1 ? Long.MAX_VALUE : end(shard);
+        long otherFrom = otherShard == 0 ? Long.MIN_VALUE : other.starts[otherShard];
+        long otherTo = otherShard == other.starts.length - 1 ? Long.MAX_VALUE : other.end(otherShard);
+        return from < otherTo && otherFrom < to;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ShardMap && ((ShardMap) o).limit == limit && Arrays.equals(((ShardMap) o).starts, starts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(starts) * 31 + Long.hashCode(limit);
+    }
+
+    /**
+     * 文字列形式（各シャードの開始番号と範囲の上限のカンマ区切り）を返す。
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int start : starts) {
+            sb.append(start).append(',');
+        }
+        return sb.append(limit).toString();
+    }
+}
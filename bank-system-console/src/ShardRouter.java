@@ -0,0 +1,250 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 口座番号の範囲で分割したシャード（ShardWorker）に、入金・出金・残高照会を振り分けるルーター。
+ * シャードごとに BinaryBankClient で接続し、割り当て表（ShardMap）で口座番号から担当するシャードを選んで転送する。
+ *
+ * submit は応答を待たずに要求を送り（パイプライン化）、シャードごとの未受信の要求が Constants.SHARD_WINDOW 件に
+ * 達した場合のみ、そのシャードの応答を受信する。受信した応答は結果コードごとの件数に加える。
+ * 同じ口座の要求は常に同じ接続で送るため、同じ口座の取引は送った順に実行される。
+ * execute は、それまでに送った要求の応答を受信してから 1 件を実行し、結果を返す。
+ *
+ * 振込はバイナリプロトコルに対応する要求がないため転送しない。（replay では件数のみを数える）
+ * split で transaction.csv をシャードごとのファイルに分けることもできる。
+ *
+ * スレッドセーフではない。
+ */
+public class ShardRouter implements AutoCloseable {
+
+    /** 割り当て表 */
+    private final ShardMap map;
+
+    /** シャードごとの接続 */
+    private final BinaryBankClient[] clients;
+
+    /** シャードごとの未受信の要求数 */
+    private final int[] pending;
+
+    /** 次の要求ID */
+    private long nextRequestId = 1;
+
+    /** 受信した応答の結果コード（Constants.RESULT_*）ごとの件数 */
+    private final long[] results = new long[Constants.RESULT_BAD_REQUEST + 1];
+
+    /** replay で転送しなかった振込の件数 */
+    private long transfers;
+
+    /** execute で最後に受信した残高 */
+    private long lastBalance;
+
+    /**
+     * 各シャードに接続する。
+     * @param map 割り当て表
+     * @param ports シャードごとの待ち受けポート（ループバックアドレス）
+     * @throws IOException 接続できない場合
+     */
+    public ShardRouter(ShardMap map, int[] ports) throws IOException {
+        if (ports.length != map.size()) {
+            throw new IllegalArgumentException("ports: " + ports.length + " shards: " + map.size());
+        }
+        this.map = map;
+        this.clients = new BinaryBankClient[ports.length];
+        this.pending = new int[ports.length];
+        try {
+            for (int i = 0; i < ports.length; i++) {
+                clients[i] = new BinaryBankClient(InetAddress.getLoopbackAddress().getHostAddress(), ports[i]);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * 要求を担当するシャードに送る。応答は待たない。（結果は件数のみを記録する）
+     * @param type 取引種別コード（Constants.TRANSACTION_CODE_DEPOSIT / WITHDRAW / GET_BALANCE）
+     * @param accountNumber 口座番号
+     * @param amount 金額（残高照会の場合は 0）
+     */
+    public void submit(int type, int accountNumber, long amount) throws IOException {
+        int shard = map.shardOf(accountNumber);
+        if (pending[shard] == Constants.SHARD_WINDOW) {
+            receive(shard);
+        }
+        clients[shard].send(nextRequestId++, type, accountNumber, amount);
+        pending[shard]++;
+    }
+
+    /**
+     * 要求を 1 件実行し、応答を待って結果を返す。（それまでに送った要求の応答を先に受信する）
+     * @param type 取引種別コード
+     * @param accountNumber 口座番号
+     * @param amount 金額（残高照会の場合は 0）
+     * @return 結果コード（Constants.RESULT_*）。残高は getLastBalance で取得する
+     */
+    public byte execute(int type, int accountNumber, long amount) throws IOException {
+        int shard = map.shardOf(accountNumber);
+        submit(type, accountNumber, amount);
+        while (pending[shard] > 1) {
+            receive(shard);
+        }
+        receive(shard);
+        lastBalance = clients[shard].getBalance();
+        return clients[shard].getResult();
+    }
+
+    /**
+     * すべてのシャードの未受信の応答を受信する。
+     */
+    public void drain() throws IOException {
+        for (int shard = 0; shard < clients.length; shard++) {
+            while (pending[shard] > 0) {
+                receive(shard);
+            }
+        }
+    }
+
+    /**
+     * 取引データを読み込み、入金・出金・残高照会を担当するシャードに転送する。最後にすべての応答を受信する。
+     * 形式エラー（項目数不正・不正な取引タイプ・非数）の行に達した場合は、Main と同様にそれ以降の行を転送しない。
+     * （形式の確認は CsvRowDecoder で行うため、エラーメッセージも Main と同じ）
+     * @param csv 取引データのリーダー
+     * @return 読み込んだ行数
+     * @throws IOException 形式エラーの行がある場合、シャードとの通信に失敗した場合
+     * @throws NumberFormatException 口座番号・金額が数値でない場合
+     */
+    public long replay(CsvRowReader csv) throws IOException {
+        CsvRowDecoder rows = new CsvRowDecoder(csv, null, null);
+        try {
+            while (rows.nextTransaction()) {
+                if (rows.isTransfer()) {
+                    transfers++;
+                    continue;
+                }
+                int type = rows.type();
+                submit(type, rows.accountNumber(), type == Constants.TRANSACTION_CODE_GET_BALANCE ? 0 : rows.amount());
+            }
+        } finally {
+            // 中断した場合も、転送済みの要求の応答はすべて受信する
+            drain();
+        }
+        return csv.rowCount();
+    }
+
+    /**
+     * 取引データを、行の口座番号を担当するシャードごとのファイルに分ける。（各行の内容は変更しない）
+     * 振込は振込元と振込先が同じシャードの場合のみそのシャードのファイルに書き込み、
+     * 異なるシャードの場合は crossShard に書き込む。口座番号が数値でない行は先頭のシャードのファイルに書き込む。
+     * @param csv 取引データのリーダー
+     * @param map 割り当て表
+     * @param outputs シャードごとの書き込み先
+     * @param crossShard 異なるシャード間の振込の書き込み先
+     * @return 異なるシャード間の振込の件数
+     */
+    public static long split(CsvRowReader csv, ShardMap map, Path[] outputs, Path crossShard) throws IOException {
+        BufferedWriter[] writers = new BufferedWriter[outputs.length];
+        long crossRows = 0;
+        try (BufferedWriter cross = Files.newBufferedWriter(crossShard, Charset.defaultCharset())) {
+            try {
+                for (int i = 0; i < outputs.length; i++) {
+                    writers[i] = Files.newBufferedWriter(outputs[i], Charset.defaultCharset());
+                }
+                while (csv.next()) {
+                    int shard = csv.fieldCount() >= 1 ? map.shardOf(csv.tryGetInt(0)) : 0;
+                    if (csv.fieldCount() == 4 && csv.fieldEquals(1, Constants.TRANSACTION_TRANSFER_CSV)
+                            && map.shardOf(csv.tryGetInt(3)) != shard) {
+                        shard = -1;
+                    }
+                    if (csv.hasInvalidNumber()) {
+                        shard = 0;
+                    }
+                    BufferedWriter w = shard < 0 ? cross : writers[shard];
+                    w.write(csv.line());
+                    w.newLine();
+                    if (shard < 0) {
+                        crossRows++;
+                    }
+                }
+            } finally {
+                for (BufferedWriter w : writers) {
+                    if (w != null) {
+                        w.close();
+                    }
+                }
+            }
+        }
+        return crossRows;
+    }
+
+    /** @return execute で最後に受信した残高 */
+    public long getLastBalance() {
+        return lastBalance;
+    }
+
+    /**
+     * 受信した応答のうち、指定した結果コードの件数を返す。
+     * @param result 結果コード（Constants.RESULT_*）
+     * @return 件数
+     */
+    public long getResultCount(byte result) {
+        return results[result];
+    }
+
+    /** @return 受信した応答の件数 */
+    public long getResponseCount() {
+        long total = 0;
+        for (long count : results) {
+            total += count;
+        }
+        return total;
+    }
+
+    /** @return replay で転送しなかった振込の件数 */
+    public long getSkippedTransfers() {
+        return transfers;
+    }
+
+    /** @return 割り当て表 */
+    public ShardMap getMap() {
+        return map;
+    }
+
+    /**
+     * すべての接続を閉じる。（未受信の応答は受信しない）
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (BinaryBankClient client : clients) {
+            if (client == null) {
+                continue;
+            }
+            try {
+                client.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // ---- 内部処理 ----
+
+    /** シャードの応答を 1 件受信し、結果コードごとの件数に加える。 */
+    private void receive(int shard) throws IOException {
+        BinaryBankClient client = clients[shard];
+        client.receive();
+        pending[shard]--;
+        byte result = client.getResult();
+        if (result >= 0 && result < results.length) {
+            results[result]++;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * シャード 1 つ分の口座を保持するワーカープロセス。（ShardCluster が起動する）
+ * 割り当て表（ShardMap）で自分が担当する範囲の口座だけを読み込み、BinaryBankServer で
+ * ループバックアドレスの空いているポートで待ち受ける。
+ * 待ち受けを開始したら、標準出力に Constants.SHARD_READY_FORMAT の形式でポート番号と口座数を出力する。
+ *
+ * 口座の状態はシャードごとの状態ファイル（BankSnapshot の形式）に保存する。
+ * 起動時に状態ファイルがあれば読み込み、なければ account.csv の担当範囲の行から口座を作成する。
+ * （口座番号は account.csv の行番号。Main で読み込む場合と同じ）
+ * 標準入力が閉じられると待ち受けを停止し、状態ファイルを保存してから終了する。
+ *
+ * 起動方法:
+ *   java -cp out ShardWorker シャード番号 割り当て表 状態ファイル [口座情報のファイル]
+ */
+public class ShardWorker {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println(Constants.MSG_SHARD_WORKER_USAGE);
+            System.exit(2);
+        }
+        int shard = Integer.parseInt(args[0]);
+        ShardMap map = ShardMap.parse(args[1]);
+        Path stateFile = Paths.get(args[2]);
+        String accountFile = args.length > 3 ? args[3] : Constants.FILE_ACCOUNT_CSV;
+
+        AccountRegistry accounts = new AccountRegistry();
+        try {
+            if (Files.exists(stateFile)) {
+                BankSnapshot.load(stateFile, accounts);
+            } else {
+                loadAccounts(accountFile, map, shard, accounts);
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println(Constants.ERR_MSG_DETAIL_HEADER + e.getMessage());
+            System.out.println(Constants.MSG_SHARD_LOAD_ERROR + shard);
+            System.exit(1);
+        }
+
+        BinaryBankServer server;
+        try {
+            server = new BinaryBankServer(accounts, 0);
+        } catch (IOException e) {
+            System.out.println(Constants.MSG_SERVER_ERROR + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.printf(Constants.SHARD_READY_FORMAT, server.getPort(), accounts.size());
+        System.out.flush();
+
+        // 標準入力が閉じられる（ShardCluster が停止する）まで待つ
+        while (System.in.read() >= 0) {
+            // 入力内容は使用しない
+        }
+        server.close();
+        BankSnapshot.capture(accounts, 0).writeTo(stateFile);
+    }
+
+    /**
+     * 口座情報のファイルのうち、このシャードが担当する行の口座を作成する。
+     * 形式エラーの行がある場合は、Main と同様にすべての口座を読み込まない。（例外をスローする）
+     */
+    private static void loadAccounts(String fileName, ShardMap map, int shard, AccountRegistry accounts)
+            throws IOException {
+        try (CsvRowReader csv = new CsvRowReader(fileName)) {
+            CsvRowDecoder rows = new CsvRowDecoder(csv, null, fileName);
+            while (rows.nextAccount()) {
+                // 担当外の行も形式は確認する（口座番号は行番号）
+                if (map.shardOf(rows.accountNumber()) == shard) {
+                    accounts.register(new Bank(rows.holderName(), rows.initialBalance(), rows.accountNumber()));
+                }
+            }
+        }
+    }
+}
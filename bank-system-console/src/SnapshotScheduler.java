@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * スナップショットの保存と、保存済みの記録のジャーナルからの削除（チェックポイント）を行うクラス。
+ * start() を呼び出すと、専用のスレッドで一定間隔ごとにチェックポイントを行う。
+ *
+ * チェックポイントは次の順で行い、どの時点で停止しても記録は失われない。
+ *   1. ジャーナルの最後の記録の通し番号と取引データの反映位置を取得し、全口座の状態を取得する
+ *      （口座ごとに短時間ロックするのみ）
+ *   2. スナップショットを一時ファイルに書き込み、fsync してから置き換える
+ *   3. ジャーナルから 1 の番号以前の記録を削除する
+ * 2 と 3 の間で停止した場合は、両方に含まれる記録を復元時に読み飛ばす。
+ */
+public class SnapshotScheduler implements AutoCloseable {
+
+    /** スナップショットのファイル */
+    private final Path file;
+
+    /** 口座台帳（チェックポイント中に口座を追加しないこと） */
+    private final AccountRegistry accounts;
+
+    /** 記録を削除するジャーナル */
+    private final TransactionJournal journal;
+
+    /** 定期実行用のスレッド（start() で作成） */
+    private ScheduledExecutorService executor;
+
+    /** 定期実行で発生した例外（以降の定期実行は行わない） */
+    private volatile IOException failure;
+
+    /** チェックポイントの回数 */
+    private long checkpointCount;
+
+    /**
+     * @param file スナップショットのファイル
+     * @param accounts 口座台帳
+     * @param journal 口座開設・入出金を記録しているジャーナル
+     */
+    public SnapshotScheduler(Path file, AccountRegistry accounts, TransactionJournal journal) {
+        this.file = file;
+        this.accounts = accounts;
+        this.journal = journal;
+    }
+
+    /**
+     * 一定間隔ごとのチェックポイントを開始する。
+     * @param intervalSeconds 間隔（秒、1 以上）
+     */
+    public synchronized void start(long intervalSeconds) {
+        if (intervalSeconds < 1) {
+            throw new IllegalArgumentException("intervalSeconds: " + intervalSeconds);
+        }
+        if (executor != null) {
+            throw new IllegalStateException("Already started");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "snapshot-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::runScheduled, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * チェックポイントを 1 回行う。
+     * @return 保存したスナップショット
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public synchronized BankSnapshot checkpoint() throws IOException {
+        long seq = journal.getLastSeq();
+        // 通し番号の後に取得する（seq 以前の反映位置の記録を削除しても、スナップショットに残る）
+        BankSnapshot snapshot = BankSnapshot.capture(accounts, seq, journal.getSource());
+        snapshot.writeTo(file);
+        journal.truncateThrough(seq);
+        checkpointCount++;
+        return snapshot;
+    }
+
+    /** @return チェックポイントの回数 */
+    public synchronized long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * 定期実行を停止する。（実行中のチェックポイントは完了を待つ）
+     * ジャーナルを閉じる前に呼び出すこと。
+     * @throws IOException 定期実行でチェックポイントに失敗していた場合、または待機中に割り込まれた場合
+     */
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService e;
+        synchronized (this) {
+            e = executor;
+        }
+        if (e != null) {
+            e.shutdown();
+            try {
+                e.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(ex.getMessage());
+            }
+        }
+        IOException f = failure;
+        if (f != null) {
+            throw f;
+        }
+    }
+
+    /** 定期実行の処理。失敗した場合は以降の定期実行を取りやめる。（ジャーナルは削除されずに残る） */
+    private void runScheduled() {
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            failure = e;
+            executor.shutdown();
+        }
+    }
+}
@@ -6,6 +6,9 @@ import java.time.format.DateTimeFormatter;
  */
 public class Transaction {
 
+    /** 日付の表示形式（生成コストが高いため使い回す） */
+    static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(Constants.DATE_FORMAT);
+
     /** 取引日時 */
     private LocalDate dateTime;
 
@@ -13,10 +16,10 @@ public class Transaction {
     private String type;
 
     /** 金額 */
-    private int amount;
+    private long amount;
     
     /** 取引後の残高 */
-    private int balanceSnapshot;
+    private long balanceSnapshot;
 
     /**
      * コンストラクタ：取引種別と金額を受け取り、日時は現在時刻を設定。
@@ -24,20 +27,63 @@ public class Transaction {
      * @param amount 取引金額
      * @param balanceSnapshot 取引後の残高を記録したもの
      */
-    public Transaction(String type, int amount, int balanceSnapshot) {
-        this.dateTime = LocalDate.now();
+    public Transaction(String type, long amount, long balanceSnapshot) {
+        this(LocalDate.now(), type, amount, balanceSnapshot);
+    }
+
+    /**
+     * コンストラクタ：取引日を指定して生成する。（TransactionHistory からの復元用）
+     * @param dateTime 取引日
+     * @param type 取引種別 (入金/出金)
+     * @param amount 取引金額
+     * @param balanceSnapshot 取引後の残高を記録したもの
+     */
+    Transaction(LocalDate dateTime, String type, long amount, long balanceSnapshot) {
+        this.dateTime = dateTime;
         this.type = type;
         this.amount = amount;
         this.balanceSnapshot = balanceSnapshot;
     }
 
+    /**
+     * 取引種別を返す。
+     * @return 取引種別
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * 取引金額を返す。
+     * @return 取引金額
+     */
+    public long getAmount() {
+        return amount;
+    }
+
+    /**
+     * 取引後の残高を返す。
+     * @return 取引後の残高
+     */
+    public long getBalanceSnapshot() {
+        return balanceSnapshot;
+    }
+
     /**
      * 取引内容を整形して「日時 - 種別：金額」形式の文字列で返す。
      * @return 整形された取引詳細文字列
      */
     public String getDetail() {
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern(Constants.DATE_FORMAT);
-        return "日付: " + fmt.format(dateTime) 
+        return formatDetail(dateTime, type, amount, balanceSnapshot);
+    }
+
+    /**
+     * 取引内容を「日時 - 種別：金額」形式の文字列に整形する。
+     * Transaction オブジェクトを持たない TransactionHistory からも同じ形式で出力するために使用する。
+     * @return 整形された取引詳細文字列
+     */
+    static String formatDetail(LocalDate dateTime, String type, long amount, long balanceSnapshot) {
+        return "日付: " + DATE_FORMATTER.format(dateTime) 
              + " 取引種類: " + type 
              + " 金額: " + amount + "円"
              + " 残高: " + balanceSnapshot + "円";
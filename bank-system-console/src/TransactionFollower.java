@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 取引データのファイル（transaction.csv など）への追記を監視し、追記された行だけを続けて実行するクラス（追跡モード）。
+ * 口座は読み込んだまま保持するため、取引のたびに account.csv を読み込み直したり、先頭から実行し直したりしない。
+ *
+ * 対象は次のいずれか。
+ * - ファイル: 末尾に追記された行を実行する。改行（LF）で終わっていない最後の行は、改行が追記されるまで待つ。
+ *   ファイルが読み込み済みの位置より短くなった場合（作り直された場合）は、先頭から読み込む。
+ *   ファイルがまだない場合は、作成されるまで待つ。
+ * - ディレクトリ: 拡張子 .csv のファイルをファイル名の順に実行する。より後ろの名前のファイルが追加された時点で、
+ *   前のファイルは完了したものとして最後の行まで実行し、次のファイルに進む。最後のファイルはファイルと同様に追記を監視する。
+ *   （後から追加するファイルには、日時を含む名前など、既存のファイルより後ろに並ぶ名前を付けること）
+ *
+ * 一定間隔ごとと終了時に、全口座の状態と読み込み済みの位置（ファイル名とバイト位置）を 1 つのファイル
+ * （BankSnapshot 形式のチェックポイント）に保存する。保存は取引を実行していない間に行うため、状態と位置は常に一致する。
+ * 再起動時はチェックポイントから口座を復元し、保存した位置から読み込みを再開する。
+ * 途中で停止した場合も、最後のチェックポイント以降の行を実行し直すだけで、同じ取引を二重に実行することはない。
+ *
+ * CSV形式エラーの行に達した場合は、その行の前までを実行してチェックポイントを保存し、追跡を終了する。
+ * （再起動すると、その行から読み込みを再開する）
+ *
+ * スレッドセーフではない。run() を呼び出したスレッド以外からは stop() のみを呼び出すこと。
+ */
+public class TransactionFollower {
+
+    /** 改行を探すために末尾から読み込む単位（バイト数） */
+    private static final int SCAN_BLOCK_SIZE = 8 * 1024;
+
+    /** 取引の実行に使用する CSV 操作（出力先・スレッド数などの設定を含む） */
+    private final BankCsvOperation csvOp;
+
+    /** 口座台帳 */
+    private final AccountRegistry accounts;
+
+    /** 監視するファイルまたはディレクトリ */
+    private final Path source;
+
+    /** source がディレクトリか */
+    private final boolean directory;
+
+    /** チェックポイントのファイル */
+    private final Path checkpointFile;
+
+    /** 追記を確認する間隔とチェックポイントの間隔（ミリ秒） */
+    private long pollMillis = Constants.FOLLOW_POLL_MILLIS;
+    private long checkpointMillis = TimeUnit.SECONDS.toMillis(Constants.FOLLOW_CHECKPOINT_SECONDS);
+
+    /** 読み込み済みの位置（ファイルの場合、ファイル名は空文字列） */
+    private BankSnapshot.SourcePosition position;
+
+    /** 最後のチェックポイント以降に取引を実行したか */
+    private boolean dirty;
+
+    /** 実行した行数とチェックポイントの回数 */
+    private long rowCount;
+    private long checkpointCount;
+
+    /** stop() が呼び出されたか */
+    private volatile boolean stopping;
+
+    /** 待機中の run() を stop() で起こすためのロック */
+    private final Object sleeper = new Object();
+
+    /** run() が終了したことを通知する */
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * @param csvOp 取引の実行に使用する CSV 操作
+     * @param accounts 口座台帳（チェックポイントから復元したもの、または account.csv から読み込んだもの）
+     * @param source 監視するファイルまたはディレクトリ
+     * @param start 読み込みを開始する位置（restore() の戻り値。初回は SourcePosition.NONE）
+     */
+    public TransactionFollower(BankCsvOperation csvOp, AccountRegistry accounts, Path source,
+            BankSnapshot.SourcePosition start) {
+        this.csvOp = csvOp;
+        this.accounts = accounts;
+        this.source = source;
+        this.directory = Files.isDirectory(source);
+        this.checkpointFile = checkpointFileFor(source);
+        this.position = start;
+    }
+
+    /**
+     * 監視対象に対応するチェックポイントのファイルを返す。（対象の名前に .checkpoint を付加する）
+     */
+    public static Path checkpointFileFor(Path source) {
+        return source.toAbsolutePath().resolveSibling(source.getFileName() + Constants.FOLLOW_CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * チェックポイントがあれば、口座を台帳に復元し、読み込み済みの位置を返す。
+     * @param source 監視するファイルまたはディレクトリ
+     * @param accounts 復元した口座の登録先
+     * @return 読み込み済みの位置。チェックポイントがない場合は null
+     * @throws IOException チェックポイントの形式が不正な場合、読み込みに失敗した場合
+     */
+    public static BankSnapshot.SourcePosition restore(Path source, AccountRegistry accounts) throws IOException {
+        Path file = checkpointFileFor(source);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        BankSnapshot.SourcePosition[] position = new BankSnapshot.SourcePosition[1];
+        BankSnapshot.load(file, accounts, position);
+        return position[0];
+    }
+
+    /** @param millis 追記を確認する間隔（ミリ秒） */
+    public void setPollInterval(long millis) {
+        this.pollMillis = millis;
+    }
+
+    /** @param millis チェックポイントの間隔（ミリ秒） */
+    public void setCheckpointInterval(long millis) {
+        this.checkpointMillis = millis;
+    }
+
+    /** @return 読み込み済みの位置 */
+    public BankSnapshot.SourcePosition getPosition() {
+        return position;
+    }
+
+    /** @return これまでに実行した行数 */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /** @return これまでのチェックポイントの回数 */
+    public long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * stop() が呼び出されるか、CSV形式エラーの行に達するまで、追記された行を実行し続ける。
+     * 一定間隔ごとと終了時にチェックポイントを保存する。
+     * @return stop() で終了した場合は true、CSV形式エラーで終了した場合は false
+     * @throws IOException 取引データ・チェックポイントの読み書きに失敗した場合
+     */
+    public boolean run() throws IOException {
+        try {
+            long lastCheckpoint = System.nanoTime();
+            boolean completed = true;
+            while (!stopping) {
+                if (!poll()) {
+                    completed = false;
+                    break;
+                }
+                if (dirty && System.nanoTime() - lastCheckpoint >= TimeUnit.MILLISECONDS.toNanos(checkpointMillis)) {
+                    checkpoint();
+                    lastCheckpoint = System.nanoTime();
+                }
+                synchronized (sleeper) {
+                    if (!stopping) {
+                        sleeper.wait(pollMillis);
+                    }
+                }
+            }
+            if (dirty || !Files.exists(checkpointFile)) {
+                checkpoint();
+            }
+            return completed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (dirty) {
+                checkpoint();
+            }
+            return true;
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * run() を終了させる。（別のスレッドから呼び出す）
+     */
+    public void stop() {
+        stopping = true;
+        synchronized (sleeper) {
+            sleeper.notifyAll();
+        }
+    }
+
+    /**
+     * run() が終了するまで待つ。（終了時のチェックポイントの保存を含む）
+     * @return 時間内に終了した場合は true
+     */
+    public boolean awaitStopped(long timeout, TimeUnit unit) throws InterruptedException {
+        return stopped.await(timeout, unit);
+    }
+
+    /**
+     * 前回の確認以降に追記された行を実行する。
+     * @return CSV形式エラーの行に達した場合は false
+     * @throws IOException 取引データの読み込みに失敗した場合
+     */
+    public boolean poll() throws IOException {
+        if (!directory) {
+            return drain(source, false);
+        }
+        List<String> names;
+        try (Stream<Path> files = Files.list(source)) {
+            names = files.filter(Files::isRegularFile)
+                .map(p -> p.getFileName().toString())
+                .filter(name -> name.endsWith(Constants.FOLLOW_FILE_EXTENSION))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            int order = name.compareTo(position.getFileName());
+            if (order < 0) {
+                // 実行済みのファイル
+                continue;
+            }
+            if (order > 0) {
+                position = new BankSnapshot.SourcePosition(name, 0);
+                dirty = true;
+            }
+            // 後ろにファイルがある場合、このファイルへの追記は終わっている
+            boolean complete = i < names.size() - 1;
+            if (!drain(source.resolve(name), complete)) {
+                return false;
+            }
+            if (!complete) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * チェックポイント（全口座の状態と読み込み済みの位置）を保存する。
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void checkpoint() throws IOException {
+        BankSnapshot.capture(accounts, 0, position).writeTo(checkpointFile);
+        checkpointCount++;
+        dirty = false;
+    }
+
+    // ---- 内部処理 ----
+
+    /**
+     * ファイルの読み込み済みの位置から、完全な行の終わりまでを実行する。
+     * @param complete ファイルへの追記が終わっている場合は true（改行で終わらない最後の行も実行する）
+     * @return CSV形式エラーの行に達した場合は false
+     */
+    private boolean drain(Path file, boolean complete) throws IOException {
+        if (!Files.exists(file)) {
+            // ファイルが作成されるまで待つ
+            return true;
+        }
+        long size = Files.size(file);
+        long offset = position.getOffset();
+        if (size < offset) {
+            System.out.println(Constants.MSG_FOLLOW_RESTARTED + file);
+            offset = 0;
+            position = new BankSnapshot.SourcePosition(position.getFileName(), 0);
+            dirty = true;
+        }
+        long end = complete ? size : lineEnd(file, offset, size);
+        if (end <= offset) {
+            return true;
+        }
+
+        boolean applied;
+        long next;
+        try (CsvRowReader csv = CsvRowReader.openRange(file, offset, end)) {
+            applied = csvOp.applyTransactions(csv, accounts, file.toString());
+            // 形式エラーの場合は、その行から読み込みを再開する
+            next = applied ? end : csv.rowOffset();
+            rowCount += applied ? csv.rowCount() : csv.rowCount() - 1;
+        }
+        if (next > offset) {
+            position = new BankSnapshot.SourcePosition(position.getFileName(), next);
+            dirty = true;
+        }
+        return applied;
+    }
+
+    /**
+     * from から size までの範囲で、最後の改行（LF）の直後の位置を返す。
+     * @return 改行がない場合は from
+     */
+    private static long lineEnd(Path file, long from, long size) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK_SIZE);
+            long blockEnd = size;
+            while (blockEnd > from) {
+                long blockStart = Math.max(from, blockEnd - SCAN_BLOCK_SIZE);
+                block.clear().limit((int) (blockEnd - blockStart));
+                while (block.hasRemaining()) {
+                    if (ch.read(block, blockStart + block.position()) < 0) {
+                        // 確認中にファイルが短くなった場合は、次の確認で処理する
+                        return from;
+                    }
+                }
+                for (int i = block.limit() - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n') {
+                        return blockStart + i + 1;
+                    }
+                }
+                blockEnd = blockStart;
+            }
+            return from;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 1 口座分の取引履歴を、列ごとの配列（日付・種別・金額・取引後残高）で保持するクラス。
+ * 取引 1 件ごとに Transaction / LocalDate オブジェクトを生成しないため、
+ * 履歴が大量にあってもメモリ使用量を抑えられる。（1 件あたり 21 バイト + 配列の余裕分）
+ *
+ * 履歴の参照は Cursor で 1 件ずつ行う。全件のほか、最新の N 件（recent）、位置を指定したページ（page）、
+ * 期間（between）を指定して参照できる。取引は日付の順に追加されるため、日付の列そのものを索引として
+ * 二分探索し、期間の参照でも全件を走査しない。（時計の巻き戻しなどで日付の順に並んでいない履歴は、
+ * 範囲内を走査して期間外の履歴を読み飛ばす）
+ * スレッドセーフではないため、追加・参照は Bank のロック内で行う前提。
+ *
+ * 履歴は追加のみで、追加済みの要素は変更しない。（配列の拡張時も新しい配列にコピーする）
+ * そのため、ある時点の件数と配列を保持しておけば、ロックの外でもその時点までの履歴を読み取れる。
+ * （BankSnapshot はこの性質を利用して、書き込み中も取引を止めずにスナップショットを出力する）
+ */
+public class TransactionHistory {
+
+    /** 配列の初期サイズ（初期預金 + 数件の取引が収まる程度） */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** 取引日（1970-01-01 からの日数） */
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+
+    /** 取引種別コード（Constants.TRANSACTION_CODE_*） */
+    private byte[] types = new byte[INITIAL_CAPACITY];
+
+    /** 取引金額 */
+    private long[] amounts = new long[INITIAL_CAPACITY];
+
+    /** 取引後の残高 */
+    private long[] balanceSnapshots = new long[INITIAL_CAPACITY];
+
+    /** 履歴の件数 */
+    private int size;
+
+    /** 取引日が日付の順（昇順）に並んでいるか（false の場合、期間の参照で二分探索を使用しない） */
+    private boolean dateOrdered = true;
+
+    /**
+     * 空の履歴を作成する。
+     */
+    public TransactionHistory() {
+    }
+
+    /**
+     * 各列の配列から履歴を復元する。（スナップショットからの復元用。配列はそのまま使用する）
+     * @param epochDays 取引日
+     * @param types 取引種別コード
+     * @param amounts 取引金額
+     * @param balanceSnapshots 取引後の残高
+     * @param size 件数（各配列の長さ以下）
+     */
+    TransactionHistory(int[] epochDays, byte[] types, long[] amounts, long[] balanceSnapshots, int size) {
+        this.epochDays = epochDays;
+        this.types = types;
+        this.amounts = amounts;
+        this.balanceSnapshots = balanceSnapshots;
+        this.size = size;
+        for (int i = 1; i < size && dateOrdered; i++) {
+            dateOrdered = epochDays[i - 1] <= epochDays[i];
+        }
+        if (epochDays.length == 0) {
+            grow();
+        }
+    }
+
+    /**
+     * 本日付で取引を 1 件追加する。
+     * @param type 取引種別コード
+     * @param amount 取引金額
+     * @param balanceSnapshot 取引後の残高
+     */
+    public void add(int type, long amount, long balanceSnapshot) {
+        add((int) LocalDate.now().toEpochDay(), type, amount, balanceSnapshot);
+    }
+
+    /**
+     * 取引日を指定して取引を 1 件追加する。
+     * @param epochDay 取引日（1970-01-01 からの日数）
+     * @param type 取引種別コード
+     * @param amount 取引金額
+     * @param balanceSnapshot 取引後の残高
+     */
+    public void add(int epochDay, int type, long amount, long balanceSnapshot) {
+        if (size == epochDays.length) {
+            grow();
+        }
+        if (size > 0 && epochDay < epochDays[size - 1]) {
+            dateOrdered = false;
+        }
+        epochDays[size] = epochDay;
+        types[size] = (byte) type;
+        amounts[size] = amount;
+        balanceSnapshots[size] = balanceSnapshot;
+        size++;
+    }
+
+    /**
+     * 履歴の件数を返す。
+     * @return 件数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 履歴がないかを返す。
+     * @return 履歴が 0 件の場合は true
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 履歴を先頭から 1 件ずつ参照するカーソルを返す。
+     * @return カーソル
+     */
+    public Cursor cursor() {
+        return new Cursor(0, size, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 最新の N 件を古い順に参照するカーソルを返す。
+     * @param count 件数の上限
+     * @return カーソル
+     */
+    public Cursor recent(int count) {
+        return new Cursor(Math.max(0, size - Math.max(0, count)), size, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 位置 start から最大 count 件を参照するカーソルを返す。
+     * 履歴は追加のみのため、位置は次のページを取得するためのカーソルとして使用できる。
+     * （次のページの位置は Cursor.end()）
+     * @param start 先頭の位置（0 から始まる）
+     * @param count 件数の上限
+     * @return カーソル
+     */
+    public Cursor page(int start, int count) {
+        int from = Math.min(Math.max(0, start), size);
+        int to = (int) Math.min(size, (long) from + Math.max(0, count));
+        return new Cursor(from, to, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 取引日が from から to まで（両端を含む）の履歴を参照するカーソルを返す。
+     * @param from 期間の開始日
+     * @param to 期間の終了日
+     * @return カーソル
+     */
+    public Cursor between(LocalDate from, LocalDate to) {
+        int fromDay = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, from.toEpochDay()));
+        int toDay = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, to.toEpochDay()));
+        if (fromDay > toDay) {
+            return new Cursor(0, 0, fromDay, toDay);
+        }
+        if (!dateOrdered) {
+            return new Cursor(0, size, fromDay, toDay);
+        }
+        return new Cursor(lowerBound(fromDay), toDay == Integer.MAX_VALUE ? size : lowerBound(toDay + 1),
+            fromDay, toDay);
+    }
+
+    /**
+     * 履歴を Transaction のリストとして参照するビューを返す。
+     * 要素を取り出すたびに Transaction を生成するため、件数が多い場合は cursor を使用すること。
+     * @return 読み取り専用のリスト
+     */
+    public List<Transaction> asList() {
+        return new AbstractList<Transaction>() {
+            @Override
+            public Transaction get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                }
+                return new Transaction(LocalDate.ofEpochDay(epochDays[index]), typeName(types[index]),
+                    amounts[index], balanceSnapshots[index]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * 取引種別コードを表示用の文字列に変換する。
+     * @param type 取引種別コード
+     * @return 取引種別（入金/出金/振込出金/振込入金/初期預金）
+     */
+    public static String typeName(int type) {
+        switch (type) {
+            case Constants.TRANSACTION_CODE_DEPOSIT:
+                return Constants.TRANSACTION_DEPOSIT;
+            case Constants.TRANSACTION_CODE_WITHDRAW:
+                return Constants.TRANSACTION_WITHDRAW;
+            case Constants.TRANSACTION_CODE_TRANSFER_OUT:
+                return Constants.TRANSACTION_TRANSFER_OUT;
+            case Constants.TRANSACTION_CODE_TRANSFER_IN:
+                return Constants.TRANSACTION_TRANSFER_IN;
+            default:
+                return Constants.TRANSACTION_INITIAL;
+        }
+    }
+
+    // ---- スナップショット用（Bank のロック内で、件数と合わせて取得すること） ----
+
+    int[] epochDayColumn() {
+        return epochDays;
+    }
+
+    byte[] typeColumn() {
+        return types;
+    }
+
+    long[] amountColumn() {
+        return amounts;
+    }
+
+    long[] balanceSnapshotColumn() {
+        return balanceSnapshots;
+    }
+
+    /**
+     * 取引日が epochDay 以降の最初の位置を二分探索で求める。（日付の順に並んでいる場合のみ使用する）
+     * @return 該当する履歴がない場合は size
+     */
+    private int lowerBound(int epochDay) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDays[mid] < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** 各列の配列を 1.5 倍に拡張する。 */
+    private void grow() {
+        int capacity = Math.max(INITIAL_CAPACITY, epochDays.length + (epochDays.length >> 1));
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        types = Arrays.copyOf(types, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        balanceSnapshots = Arrays.copyOf(balanceSnapshots, capacity);
+    }
+
+    /**
+     * 履歴を 1 件ずつ参照するためのカーソル。
+     * next() で次の履歴に進み、各項目を取得する。
+     * 参照できるのは、カーソルを作成した時点の範囲（位置 start から end の前まで）の履歴のみ。
+     */
+    public class Cursor {
+
+        /** 参照する範囲（start から end の前まで） */
+        private final int start;
+        private final int end;
+
+        /** 参照する取引日の範囲（両端を含む） */
+        private final int fromDay;
+        private final int toDay;
+
+        /** 現在参照している履歴の位置 */
+        private int index;
+
+        private Cursor(int start, int end, int fromDay, int toDay) {
+            this.start = start;
+            this.end = end;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.index = start - 1;
+        }
+
+        /**
+         * 次の履歴に進む。
+         * @return 次の履歴がある場合は true
+         */
+        public boolean next() {
+            while (index + 1 < end) {
+                index++;
+                int day = epochDays[index];
+                if (day >= fromDay && day <= toDay) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** @return 範囲の先頭の位置 */
+        public int start() {
+            return start;
+        }
+
+        /** @return 範囲の末尾の次の位置（page で次のページを取得する場合の先頭の位置） */
+        public int end() {
+            return end;
+        }
+
+        /** @return 取引日（1970-01-01 からの日数） */
+        public int epochDay() {
+            return epochDays[index];
+        }
+
+        /** @return 取引種別コード */
+        public int type() {
+            return types[index];
+        }
+
+        /** @return 取引金額 */
+        public long amount() {
+            return amounts[index];
+        }
+
+        /** @return 取引後の残高 */
+        public long balanceSnapshot() {
+            return balanceSnapshots[index];
+        }
+
+        /**
+         * 現在の履歴を「日付 - 種別：金額」形式の文字列で返す。（Transaction.getDetail と同じ形式）
+         * @return 整形された取引詳細文字列
+         */
+        public String getDetail() {
+            return Transaction.formatDetail(LocalDate.ofEpochDay(epochDays[index]), typeName(types[index]),
+                amounts[index], balanceSnapshots[index]);
+        }
+
+        /**
+         * 現在の履歴を getDetail と同じ形式で出力先に書き込む。（文字列を生成しない）
+         * @param out 出力先
+         */
+        public void appendDetail(ReportWriter out) {
+            out.append("日付: ").appendDate(epochDays[index])
+               .append(" 取引種類: ").append(typeName(types[index]))
+               .append(" 金額: ").append(amounts[index]).append("円")
+               .append(" 残高: ").append(balanceSnapshots[index]).append("円");
+        }
+    }
+}
@@ -0,0 +1,693 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * 口座開設・入金・出金・振込を記録する追記専用のジャーナル（バイナリ形式）。
+ * 再起動時は recover() でジャーナルを先頭から再実行し、残高と取引履歴を復元する。
+ * スナップショット（BankSnapshot）を保存した場合は、truncateThrough() でそれまでの記録を削除できる。
+ * 取引データ（transaction.csv）の反映済みの位置も appendSource() で記録し、再起動時は recover() で取得した位置から
+ * 取引データの実行を再開する。（反映済みの行を二重に実行しないため）
+ *
+ * 記録はメモリ上のバッファに追加し、専用のスレッドがまとめてファイルに書き込んで fsync する（グループコミット）。
+ * fsync は「未書き込みの記録が groupSize 件に達した時」または「最初の未書き込みの記録から maxDelay 経過した時」の
+ * 早い方で行い、その時点の未書き込みの記録をすべてまとめて書き込む。
+ * そのため、記録が永続化されるまでの遅れは maxDelay（+ fsync の時間）以内に収まる。
+ * 永続化を待つ必要がある場合は、append の戻り値を awaitDurable() に渡すか、sync() を呼び出す。
+ *
+ * 記録には 1 から始まる通し番号を付ける。番号はファイルには書き込まず、ヘッダの基準番号からの位置で決まる。
+ * 口座（Bank）は反映済みの最後の記録の番号を保持しており、復元時はそれ以下の記録を読み飛ばす。
+ *
+ * ファイル形式（数値はすべてビッグエンディアン）:
+ *   ヘッダ: マジックナンバー（int）, 基準番号（long, 先頭の記録の通し番号 - 1）
+ *   記録:   種別（byte）, 口座番号（int）, 金額（long, 円）, 取引日（int, 1970-01-01 からの日数）,
+ *           [口座開設・反映位置のみ] 名義（反映位置は取引データのファイル名）の長さ（short）, 名義（UTF-8）,
+ *           [振込のみ] 振込先の口座番号（int）,
+ *           CRC32（int, 種別から直前までのバイト列）
+ * 口座開設の金額は初期残高。書き込み途中で停止した末尾の記録は、復元時に CRC で検出して切り捨てる。
+ * 振込の口座番号は振込元で、振込元・振込先の両方を 1 件の記録で反映する。
+ * 反映位置の金額は取引データの反映済みの位置（バイト数。反映中は -1）で、口座番号・取引日は 0。
+ * 記録の削除は、残す記録を一時ファイルにコピーしてから置き換えるため、途中で停止しても記録は失われない。
+ *
+ * 複数スレッドから同時に追記してよい。
+ */
+public class TransactionJournal implements AutoCloseable {
+
+    /** ファイル先頭のマジックナンバー（"BKJ4"。取引データの反映位置を記録する形式） */
+    private static final int MAGIC = 0x424B4A34;
+
+    /** ヘッダのサイズ（マジックナンバー + 基準番号） */
+    private static final int HEADER_SIZE = 4 + 8;
+
+    /** 記録の種別 */
+    static final byte RECORD_OPEN = Constants.TRANSACTION_CODE_INITIAL;
+    static final byte RECORD_DEPOSIT = Constants.TRANSACTION_CODE_DEPOSIT;
+    static final byte RECORD_WITHDRAW = Constants.TRANSACTION_CODE_WITHDRAW;
+    static final byte RECORD_TRANSFER = Constants.TRANSACTION_CODE_TRANSFER_OUT;
+
+    /** 取引データの反映位置の記録の種別（取引種別コードと重ならない値） */
+    static final byte RECORD_SOURCE = 16;
+
+    /** 記録の固定部分のサイズ（種別 + 口座番号 + 金額 + 取引日） */
+    private static final int FIXED_SIZE = 1 + 4 + 8 + 4;
+
+    /** 振込先の口座番号のサイズ */
+    private static final int COUNTERPART_SIZE = 4;
+
+    /** CRC32 のサイズ */
+    private static final int CRC_SIZE = 4;
+
+    /** 名義の最大バイト数 */
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+
+    /** バッファのサイズ（バイト数） */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** ジャーナルファイル */
+    private final Path file;
+
+    /** 書き込み先（記録の削除時に開き直す。書き込み用スレッドのみが使用する） */
+    private FileChannel channel;
+
+    /** 待ち時間を待たずに fsync する未書き込みの件数 */
+    private final int groupSize;
+
+    /** 記録してから fsync するまでの最大待ち時間（ナノ秒） */
+    private final long maxDelayNanos;
+
+    /** 記録を追加中のバッファと、書き込み済みで再利用を待つバッファ */
+    private ByteBuffer active = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** CRC 計算用（ロック内で使い回す） */
+    private final CRC32 crc = new CRC32();
+
+    /** 追加した記録の通し番号（最後の記録） */
+    private long appendedSeq;
+
+    /** 永続化済みの記録の通し番号（最後の記録） */
+    private long durableSeq;
+
+    /** ファイルの基準番号（削除済みの最後の記録の通し番号） */
+    private long baseSeq;
+
+    /** 最後に記録した取引データの反映位置（記録していない場合は SourcePosition.NONE） */
+    private BankSnapshot.SourcePosition source = BankSnapshot.SourcePosition.NONE;
+
+    /** 削除を要求された最後の記録の通し番号 */
+    private long truncateRequest;
+
+    /** 未書き込みの記録の件数と、最初の記録の追加時刻 */
+    private int pendingRecords;
+    private long firstPendingNanos;
+
+    /** 待ち時間を待たずに書き込む必要があるか（バッファが一杯・sync 呼び出し時） */
+    private boolean flushRequested;
+
+    /** fsync の回数 */
+    private long syncCount;
+
+    /** close が呼び出されたか */
+    private boolean closing;
+
+    /** 書き込み用スレッドで発生した例外 */
+    private IOException failure;
+
+    /** 書き込み用スレッド */
+    private final Thread flusher;
+
+    /**
+     * ジャーナルを開き、末尾に追記する。ファイルがない場合は作成する。
+     * 既存のファイルは先に recover() で検証・復元しておくこと。
+     * （開く際にも記録の件数を数えるため、破損した末尾があればここで切り捨てる）
+     * @param file ジャーナルファイル
+     * @param groupSize 未書き込みの記録がこの件数に達したら、待ち時間を待たずに fsync する（1 以上）
+     * @param maxDelayMillis 記録してから fsync するまでの最大待ち時間（ミリ秒、0 以上）
+     * @throws IOException ファイルを開けない場合、ファイルの形式が不正な場合
+     */
+    public TransactionJournal(Path file, int groupSize, long maxDelayMillis) throws IOException {
+        if (groupSize < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("groupSize: " + groupSize + ", maxDelayMillis: " + maxDelayMillis);
+        }
+        this.file = file;
+        this.groupSize = groupSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+
+        long[] range = scan(file, null);
+        baseSeq = range[0];
+        appendedSeq = range[1];
+        durableSeq = range[1];
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                writeHeader(channel, 0);
+                channel.force(true);
+            }
+            channel.position(channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        flusher = new Thread(this::runFlusher, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * 入金・出金を記録する。
+     * @param type 記録の種別（RECORD_DEPOSIT / RECORD_WITHDRAW）
+     * @param accountNumber 口座番号
+     * @param amount 金額
+     * @param epochDay 取引日（1970-01-01 からの日数）
+     * @return 記録の通し番号（awaitDurable に渡す）
+     * @throws UncheckedIOException 以前の書き込みに失敗している場合
+     */
+    public long append(byte type, int accountNumber, long amount, int epochDay) {
+        return append(type, accountNumber, amount, epochDay, null, 0);
+    }
+
+    /**
+     * 振込を記録する。
+     * @param fromNumber 振込元の口座番号
+     * @param toNumber 振込先の口座番号
+     * @param amount 金額
+     * @param epochDay 取引日（1970-01-01 からの日数）
+     * @return 記録の通し番号（awaitDurable に渡す）
+     * @throws UncheckedIOException 以前の書き込みに失敗している場合
+     */
+    public long appendTransfer(int fromNumber, int toNumber, long amount, int epochDay) {
+        return append(RECORD_TRANSFER, fromNumber, amount, epochDay, null, toNumber);
+    }
+
+    /**
+     * 口座開設を記録する。
+     * @param accountNumber 口座番号
+     * @param holderName 名義
+     * @param initialBalance 初期残高
+     * @param epochDay 開設日（1970-01-01 からの日数）
+     * @return 記録の通し番号（awaitDurable に渡す）
+     * @throws UncheckedIOException 以前の書き込みに失敗している場合
+     */
+    public long appendOpen(int accountNumber, String holderName, long initialBalance, int epochDay) {
+        byte[] name = holderName.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("holderName is too long: " + name.length + " bytes");
+        }
+        return append(RECORD_OPEN, accountNumber, initialBalance, epochDay, name, 0);
+    }
+
+    /**
+     * 取引データの反映位置を記録する。
+     * 取引データの実行を始める前に SourcePosition.applying() を、終えた後に反映済みの位置を記録すること。
+     * （反映中のまま停止した場合は、再起動時に反映済みの行を特定できないことが recover() でわかる）
+     * @param position 反映位置
+     * @return 記録の通し番号（awaitDurable に渡す）
+     * @throws UncheckedIOException 以前の書き込みに失敗している場合
+     */
+    public synchronized long appendSource(BankSnapshot.SourcePosition position) {
+        byte[] name = position.getFileName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("fileName is too long: " + name.length + " bytes");
+        }
+        long seq = append(RECORD_SOURCE, 0, position.getOffset(), 0, name, 0);
+        source = position;
+        return seq;
+    }
+
+    /**
+     * 最後に記録した取引データの反映位置を返す。（スナップショットに保存するため）
+     * getLastSeq() の後に呼び出すこと。（その番号までの記録を削除しても、反映位置が失われない）
+     * @return 反映位置。このインスタンスで記録していない場合は SourcePosition.NONE
+     */
+    public synchronized BankSnapshot.SourcePosition getSource() {
+        return source;
+    }
+
+    /**
+     * 指定した記録が永続化されるまで待機する。
+     * @param seq append の戻り値
+     * @throws IOException 書き込みに失敗した場合、または待機中に割り込まれた場合
+     */
+    public synchronized void awaitDurable(long seq) throws IOException {
+        try {
+            while (durableSeq < seq) {
+                checkFailure();
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    /**
+     * これまでに追加したすべての記録を、待ち時間を待たずに永続化する。
+     * @throws IOException 書き込みに失敗した場合、または待機中に割り込まれた場合
+     */
+    public void sync() throws IOException {
+        long seq;
+        synchronized (this) {
+            seq = appendedSeq;
+            flushRequested = true;
+            notifyAll();
+        }
+        awaitDurable(seq);
+    }
+
+    /** @return fsync の回数 */
+    public synchronized long getSyncCount() {
+        return syncCount;
+    }
+
+    /** @return 最後に追加した記録の通し番号（記録がない場合は 0） */
+    public synchronized long getLastSeq() {
+        return appendedSeq;
+    }
+
+    /**
+     * 指定した番号以前の記録をファイルから削除する。
+     * スナップショットを永続化した後に、スナップショットに含まれる記録を削除するために使用する。
+     * 記録を永続化してから、書き込み用スレッドが残りの記録をコピーしたファイルに置き換えるまで待機する。
+     * 置き換えの間も記録の追加は続けられる。（バッファに溜まり、置き換え後に書き込まれる）
+     * @param seq 削除する最後の記録の通し番号（getLastSeq() 以下）
+     * @throws IOException 書き込みに失敗した場合、または待機中に割り込まれた場合
+     */
+    public synchronized void truncateThrough(long seq) throws IOException {
+        if (closing) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        if (seq > appendedSeq) {
+            throw new IllegalArgumentException("seq: " + seq + ", last: " + appendedSeq);
+        }
+        if (seq <= baseSeq) {
+            return;
+        }
+        truncateRequest = Math.max(truncateRequest, seq);
+        flushRequested = true;
+        notifyAll();
+        try {
+            while (baseSeq < seq) {
+                checkFailure();
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    /**
+     * 残りの記録をすべて永続化してからファイルを閉じる。
+     * @throws IOException 書き込みに失敗した場合
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closing = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } finally {
+            channel.close();
+        }
+        synchronized (this) {
+            checkFailure();
+        }
+    }
+
+    /**
+     * ジャーナルを先頭から再実行し、口座を台帳に復元する。
+     * 台帳の口座（スナップショットから復元したもの）に反映済みの記録は読み飛ばす。
+     * 書き込み途中の記録（長さ不足・CRC 不一致）がある場合は、その位置でファイルを切り詰める。
+     * 記録は先頭から順に永続化されるため、不正な記録は末尾にのみ発生する前提で、それ以降はすべて破棄する。
+     * ファイルがない場合は何もしない。
+     * @param file ジャーナルファイル
+     * @param accounts 復元した口座の登録先
+     * @return 再実行した記録の件数（読み飛ばした記録は含まない）
+     * @throws IOException ファイルの形式が不正な場合、読み込みに失敗した場合
+     */
+    public static long recover(Path file, AccountRegistry accounts) throws IOException {
+        return recover(file, accounts, null);
+    }
+
+    /**
+     * ジャーナルを先頭から再実行し、口座を台帳に復元する。最後に記録された取引データの反映位置もあわせて取得する。
+     * @param file ジャーナルファイル
+     * @param accounts 復元した口座の登録先
+     * @param source 反映位置の格納先（[0] に格納する。反映位置の記録がない場合は変更しない。不要な場合は null）
+     * @return 再実行した記録の件数（読み飛ばした記録・反映位置の記録は含まない）
+     * @throws IOException ファイルの形式が不正な場合、読み込みに失敗した場合
+     */
+    public static long recover(Path file, AccountRegistry accounts, BankSnapshot.SourcePosition[] source)
+            throws IOException {
+        long[] applied = new long[1];
+        scan(file, (seq, type, number, amount, epochDay, name, counterpart) -> {
+            if (type == RECORD_SOURCE) {
+                if (source != null) {
+                    source[0] = new BankSnapshot.SourcePosition(name, amount);
+                }
+            } else if (apply(accounts, seq, type, number, amount, epochDay, name, counterpart, file)) {
+                applied[0]++;
+            }
+        });
+        return applied[0];
+    }
+
+    /**
+     * ファイルやディレクトリの内容を永続化する。（ファイル名の変更を永続化するため、ディレクトリにも使用する）
+     * ディレクトリを開けない OS では何もしない。
+     */
+    static void force(Path path) {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // Windows などではディレクトリを開けないため、ファイル名の変更は OS に任せる
+        }
+    }
+
+    // ---- 内部処理 ----
+
+    /** 復元時に記録 1 件ずつ呼び出す処理 */
+    private interface RecordHandler {
+        void accept(long seq, byte type, int number, long amount, int epochDay, String name, int counterpart)
+            throws IOException;
+    }
+
+    /**
+     * ジャーナルを先頭から読み込み、記録ごとに handler を呼び出す。（null の場合は件数を数えるだけ）
+     * 不正な末尾の記録はファイルから切り捨てる。
+     * @return 基準番号と最後の記録の通し番号。ファイルがない場合はどちらも 0
+     */
+    private static long[] scan(Path file, RecordHandler handler) throws IOException {
+        if (!Files.exists(file)) {
+            return new long[] {0, 0};
+        }
+        long size = Files.size(file);
+        if (size == 0) {
+            return new long[] {0, 0};
+        }
+
+        CRC32 crc = new CRC32();
+        long base;
+        long seq;
+        long validEnd = 0;
+        try (DataInputStream in = new DataInputStream(
+                new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE), crc))) {
+            if (size < HEADER_SIZE || in.readInt() != MAGIC) {
+                throw new IOException(Constants.ERR_MSG_JOURNAL_FORMAT + file);
+            }
+            base = in.readLong();
+            seq = base;
+            validEnd = HEADER_SIZE;
+
+            try {
+                while (validEnd < size) {
+                    crc.reset();
+                    byte type = in.readByte();
+                    int number = in.readInt();
+                    long amount = in.readLong();
+                    int epochDay = in.readInt();
+                    int recordSize = FIXED_SIZE + CRC_SIZE;
+                    byte[] name = null;
+                    if (type == RECORD_OPEN || type == RECORD_SOURCE) {
+                        name = new byte[in.readUnsignedShort()];
+                        in.readFully(name);
+                        recordSize += 2 + name.length;
+                    }
+                    int counterpart = 0;
+                    if (type == RECORD_TRANSFER) {
+                        counterpart = in.readInt();
+                        recordSize += COUNTERPART_SIZE;
+                    }
+                    // CRC の値を読み込む前に、ここまでの計算結果を取り出しておく
+                    int actual = (int) crc.getValue();
+                    if (in.readInt() != actual) {
+                        break;
+                    }
+                    seq++;
+                    if (handler != null) {
+                        handler.accept(seq, type, number, amount, epochDay,
+                            name != null ? new String(name, StandardCharsets.UTF_8) : null, counterpart);
+                    }
+                    validEnd += recordSize;
+                }
+            } catch (EOFException e) {
+                // 書き込み途中で停止した末尾の記録
+            }
+        }
+
+        if (validEnd < size) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(validEnd);
+                ch.force(true);
+            }
+        }
+        return new long[] {base, seq};
+    }
+
+    /**
+     * 記録 1 件を口座に反映する。（復元用）
+     * 振込は振込元・振込先のそれぞれについて、その口座に反映済みでなければ反映する。
+     * @return 口座に反映済みで読み飛ばした場合は false
+     */
+    private static boolean apply(AccountRegistry accounts, long seq, byte type, int number, long amount,
+            int epochDay, String name, int counterpart, Path file) throws IOException {
+        Bank bank = accounts.find(number);
+        if (type == RECORD_OPEN) {
+            if (bank != null && bank.getJournalSeq() >= seq) {
+                return false;
+            }
+            if (!accounts.register(new Bank(name, amount, number, epochDay, seq))) {
+                throw new IOException(Constants.ERR_MSG_JOURNAL_FORMAT + file);
+            }
+            return true;
+        }
+        if (type == RECORD_TRANSFER) {
+            Bank to = accounts.find(counterpart);
+            if (bank == null || to == null || to == bank) {
+                throw new IOException(Constants.ERR_MSG_JOURNAL_FORMAT + file);
+            }
+            boolean applied = false;
+            if (seq > bank.getJournalSeq()) {
+                bank.replay((byte) Constants.TRANSACTION_CODE_TRANSFER_OUT, amount, epochDay, seq);
+                applied = true;
+            }
+            if (seq > to.getJournalSeq()) {
+                to.replay((byte) Constants.TRANSACTION_CODE_TRANSFER_IN, amount, epochDay, seq);
+                applied = true;
+            }
+            return applied;
+        }
+        if (bank == null || (type != RECORD_DEPOSIT && type != RECORD_WITHDRAW)) {
+            throw new IOException(Constants.ERR_MSG_JOURNAL_FORMAT + file);
+        }
+        if (seq <= bank.getJournalSeq()) {
+            return false;
+        }
+        bank.replay(type, amount, epochDay, seq);
+        return true;
+    }
+
+    /** ヘッダを書き込む。 */
+    private static void writeHeader(FileChannel ch, long base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(base);
+        header.flip();
+        while (header.hasRemaining()) {
+            ch.write(header, header.position());
+        }
+    }
+
+    private synchronized long append(byte type, int accountNumber, long amount, int epochDay, byte[] name,
+            int counterpart) {
+        if (closing) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        int size = FIXED_SIZE + (name != null ? 2 + name.length : 0)
+            + (type == RECORD_TRANSFER ? COUNTERPART_SIZE : 0) + CRC_SIZE;
+        try {
+            // バッファに空きがない場合は、書き込み用スレッドがバッファを入れ替えるまで待つ
+            while (active.remaining() < size) {
+                checkFailure();
+                flushRequested = true;
+                notifyAll();
+                wait();
+            }
+            checkFailure();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException(e.getMessage()));
+        }
+
+        int start = active.position();
+        active.put(type).putInt(accountNumber).putLong(amount).putInt(epochDay);
+        if (name != null) {
+            active.putShort((short) name.length).put(name);
+        }
+        if (type == RECORD_TRANSFER) {
+            active.putInt(counterpart);
+        }
+        crc.reset();
+        crc.update(active.array(), start, active.position() - start);
+        active.putInt((int) crc.getValue());
+
+        if (pendingRecords++ == 0) {
+            firstPendingNanos = System.nanoTime();
+            notifyAll();
+        } else if (pendingRecords >= groupSize) {
+            notifyAll();
+        }
+        return ++appendedSeq;
+    }
+
+    /** 書き込み用スレッドで例外が発生していれば、呼び出し元に伝える。（ロック内で呼び出す） */
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException(failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * 書き込み用スレッドの処理。
+     * 件数または待ち時間の条件を満たすまで待ってからバッファを入れ替え、ロックの外で書き込みと fsync を行う。
+     * 記録の削除を要求されている場合は、対象の記録が永続化された時点で先に削除する。
+     */
+    private void runFlusher() {
+        try {
+            while (true) {
+                ByteBuffer batch = null;
+                long batchSeq = 0;
+                long truncateFrom = 0;
+                long truncateTo = 0;
+                synchronized (this) {
+                    while (pendingRecords == 0 && !closing && truncateRequest <= baseSeq) {
+                        wait();
+                    }
+                    if (truncateRequest > baseSeq && truncateRequest <= durableSeq) {
+                        truncateFrom = baseSeq;
+                        truncateTo = truncateRequest;
+                    } else if (pendingRecords == 0) {
+                        return;
+                    } else {
+                        long deadline = firstPendingNanos + maxDelayNanos;
+                        long remaining;
+                        while (pendingRecords < groupSize && !closing && !flushRequested
+                                && (remaining = deadline - System.nanoTime()) > 0) {
+                            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                        }
+                        batch = active;
+                        active = spare;
+                        spare = null;
+                        batchSeq = appendedSeq;
+                        pendingRecords = 0;
+                        flushRequested = false;
+                        // バッファの空きを待っている追記側を再開する
+                        notifyAll();
+                    }
+                }
+
+                if (batch == null) {
+                    rewrite(truncateFrom, truncateTo);
+                    synchronized (this) {
+                        baseSeq = truncateTo;
+                        notifyAll();
+                    }
+                    continue;
+                }
+
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+                batch.clear();
+
+                synchronized (this) {
+                    spare = batch;
+                    durableSeq = batchSeq;
+                    syncCount++;
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                failure = new InterruptedIOException(e.getMessage());
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 通し番号 through 以前の記録を削除したファイルに置き換える。（書き込み用スレッドで呼び出す）
+     * 残す記録を一時ファイルにコピーして fsync してから、ファイル名の変更で置き換える。
+     * @param from 現在のファイルの基準番号
+     * @param through 削除する最後の記録の通し番号
+     */
+    private void rewrite(long from, long through) throws IOException {
+        // 削除する記録を読み飛ばし、残す記録の開始位置を求める
+        long offset = HEADER_SIZE;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            in.skipNBytes(HEADER_SIZE);
+            for (long seq = from; seq < through; seq++) {
+                byte type = in.readByte();
+                in.skipNBytes(FIXED_SIZE - 1);
+                int recordSize = FIXED_SIZE + CRC_SIZE;
+                if (type == RECORD_OPEN || type == RECORD_SOURCE) {
+                    int nameLength = in.readUnsignedShort();
+                    in.skipNBytes(nameLength);
+                    recordSize += 2 + nameLength;
+                } else if (type == RECORD_TRANSFER) {
+                    in.skipNBytes(COUNTERPART_SIZE);
+                    recordSize += COUNTERPART_SIZE;
+                }
+                in.skipNBytes(CRC_SIZE);
+                offset += recordSize;
+            }
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out, through);
+            out.position(HEADER_SIZE);
+            long end = channel.size();
+            long position = offset;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, out);
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        force(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+}
@@ -0,0 +1,508 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 取引履歴から求める集計値（読み取り用のモデル）を、取引のたびに差分で更新して保持するクラス。
+ * 日付ごと・口座ごとに、取引種別ごとの件数と金額の合計、取引後の残高の最小値・最大値を保持し、
+ * 全口座の残高の合計とあわせて、取引履歴を走査せずに参照できる。
+ * （口座ごとの参照は O(1)、日付ごとの参照は Constants.STATISTICS_STRIPES に比例し、期間の参照はさらに日数に比例する）
+ *
+ * Bank.setStatistics で設定すると、口座開設（初期預金）・入金・出金・振込のたびに、
+ * 取引履歴への追加と同じロックの中で record が呼び出される。
+ * 設定する前に作成・復元された口座は、addAccounts で取引履歴から集計に加えること。
+ *
+ * 集計値は int / long の配列で保持し、取引ごとにオブジェクトを生成しない。
+ * 口座は口座番号のハッシュ値で Constants.STATISTICS_STRIPES 個の単位（Stripe）に振り分け、
+ * 単位ごとに口座ごとの集計値と、その単位の口座の日付ごと・全体の集計値を保持する。
+ * 口座番号から列の位置は AccountIndex で、日付は単位ごとの最初の日付からの日数で求める。
+ *
+ * スレッドセーフ。更新は単位ごとのロックで同期するため、口座の異なる取引（--parallel・BankServer の
+ * 複数の接続など）は、口座のロックの中で呼び出されても互いを待たない。
+ * 日付ごと・全体の参照は単位ごとの値を合計して求める。（単位ごとに順にロックするため、
+ * 更新中に参照した場合は単位ごとに取得した時点が異なる）
+ */
+public class TransactionStatistics {
+
+    /** 取引種別コードの数（Constants.TRANSACTION_CODE_* の最大値 + 1） */
+    private static final int TYPE_COUNT = Constants.TRANSACTION_CODE_TRANSFER_IN + 1;
+
+    /** 列の初期サイズ */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * 口座番号のハッシュ値から単位を選ぶときのシフト量。
+     * AccountIndex はハッシュ値の下位ビットを使うため、単位は上位ビットで選ぶ。
+     */
+    private static final int STRIPE_SHIFT = Integer.numberOfLeadingZeros(Constants.STATISTICS_STRIPES - 1);
+
+    /** 口座番号のハッシュ値で振り分けた集計値の単位 */
+    private final Stripe[] stripes = new Stripe[Constants.STATISTICS_STRIPES];
+
+    public TransactionStatistics() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * 口座の取引履歴をすべて集計に加える。（集計を開始する前に作成・復元された口座用）
+     * 同じ口座を 2 回加えないこと。
+     * @param banks 口座
+     */
+    public void addAccounts(Collection<Bank> banks) {
+        for (Bank bank : banks) {
+            int number = bank.getAccount().getAccountNumber();
+            // 取引履歴への追加と同じ順（口座 → 集計）でロックする
+            synchronized (bank) {
+                TransactionHistory.Cursor c = bank.getTransactionHistory().cursor();
+                while (c.next()) {
+                    record(number, c.epochDay(), c.type(), c.amount(), c.balanceSnapshot());
+                }
+            }
+        }
+    }
+
+    /**
+     * 取引 1 件を集計に加える。（Bank から、取引履歴に追加したときに呼び出される）
+     * @param accountNumber 口座番号
+     * @param epochDay 取引日（1970-01-01 からの日数）
+     * @param type 取引種別コード（Constants.TRANSACTION_CODE_*）
+     * @param amount 金額
+     * @param balance 取引後の残高
+     */
+    public void record(int accountNumber, int epochDay, int type, long amount, long balance) {
+        Stripe stripe = stripeOf(accountNumber);
+        synchronized (stripe) {
+            stripe.record(accountNumber, epochDay, type, amount, balance);
+        }
+    }
+
+    // ---- 全体の参照 ----
+
+    /** @return 集計に加えた口座数 */
+    public int getAccountCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.accountCount;
+            }
+        }
+        return count;
+    }
+
+    /** @return 全口座の残高の合計 */
+    public long getTotalBalance() {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                total += stripe.totalBalance;
+            }
+        }
+        return total;
+    }
+
+    /** @return 集計した取引の件数（初期預金を含む） */
+    public long getEntryCount() {
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.entryCount;
+            }
+        }
+        return count;
+    }
+
+    // ---- 日付ごとの参照 ----
+
+    /**
+     * @param type 取引種別コード
+     * @return その日の取引種別ごとの件数
+     */
+    public long getDayCount(LocalDate day, int type) {
+        return sumDays(false, type, day, day);
+    }
+
+    /**
+     * @param type 取引種別コード
+     * @return その日の取引種別ごとの金額の合計
+     */
+    public long getDayTotal(LocalDate day, int type) {
+        return sumDays(true, type, day, day);
+    }
+
+    /** @return その日の取引後の残高の最小値（取引がない場合は 0） */
+    public long getDayMinBalance(LocalDate day) {
+        long min = Long.MAX_VALUE;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                int index = stripe.existingDayIndex(day);
+                if (index >= 0 && stripe.hasEntries(index)) {
+                    min = Math.min(min, stripe.dayMinBalances[index]);
+                }
+            }
+        }
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    /** @return その日の取引後の残高の最大値（取引がない場合は 0） */
+    public long getDayMaxBalance(LocalDate day) {
+        long max = Long.MIN_VALUE;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                int index = stripe.existingDayIndex(day);
+                if (index >= 0 && stripe.hasEntries(index)) {
+                    max = Math.max(max, stripe.dayMaxBalances[index]);
+                }
+            }
+        }
+        return max == Long.MIN_VALUE ? 0 : max;
+    }
+
+    /**
+     * 期間内（両端を含む）の取引種別ごとの件数を返す。（日数に比例する時間で求める）
+     * @param type 取引種別コード
+     */
+    public long getCount(int type, LocalDate from, LocalDate to) {
+        return sumDays(false, type, from, to);
+    }
+
+    /**
+     * 期間内（両端を含む）の取引種別ごとの金額の合計を返す。（日数に比例する時間で求める）
+     * @param type 取引種別コード
+     */
+    public long getTotal(int type, LocalDate from, LocalDate to) {
+        return sumDays(true, type, from, to);
+    }
+
+    /** @return 取引のある最初の日付（取引がない場合は null） */
+    public LocalDate getFirstDay() {
+        long first = Long.MAX_VALUE;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (stripe.dayCount > 0) {
+                    first = Math.min(first, stripe.firstDay);
+                }
+            }
+        }
+        return first == Long.MAX_VALUE ? null : LocalDate.ofEpochDay(first);
+    }
+
+    /** @return 取引のある最後の日付（取引がない場合は null） */
+    public LocalDate getLastDay() {
+        long last = Long.MIN_VALUE;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int day = stripe.dayCount - 1; day >= 0; day--) {
+                    if (stripe.hasEntries(day)) {
+                        last = Math.max(last, stripe.firstDay + day);
+                        break;
+                    }
+                }
+            }
+        }
+        return last == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(last);
+    }
+
+    // ---- 口座ごとの参照 ----
+
+    /** @return 集計に加えた口座の場合は true */
+    public boolean containsAccount(int accountNumber) {
+        Stripe stripe = stripeOf(accountNumber);
+        synchronized (stripe) {
+            return stripe.accounts.get(accountNumber) >= 0;
+        }
+    }
+
+    /**
+     * @param type 取引種別コード
+     * @return 口座の取引種別ごとの件数（集計に加えていない口座の場合は 0）
+     */
+    public long getAccountCount(int accountNumber, int type) {
+        Stripe stripe = stripeOf(accountNumber);
+        synchronized (stripe) {
+            int index = stripe.accounts.get(accountNumber);
+            return index < 0 ? 0 : stripe.accountCounts[index * TYPE_COUNT + type];
+        }
+    }
+
+    /**
+     * @param type 取引種別コード
+     * @return 口座の取引種別ごとの金額の合計（集計に加えていない口座の場合は 0）
+     */
+    public long getAccountTotal(int accountNumber, int type) {
+        Stripe stripe = stripeOf(accountNumber);
+        synchronized (stripe) {
+            int index = stripe.accounts.get(accountNumber);
+            return index < 0 ? 0 : stripe.accountAmounts[index * TYPE_COUNT + type];
+        }
+    }
+
+    /** @return 口座の最後の取引後の残高（集計に加えていない口座の場合は 0） */
+    public long getBalance(int accountNumber) {
+        Stripe stripe = stripeOf(accountNumber);
+        synchronized (stripe) {
+            int index = stripe.accounts.get(accountNumber);
+            return index < 0 ? 0 : stripe.balances[index];
+        }
+    }
+
+    /** @return 口座の取引後の残高の最小値（集計に加えていない口座の場合は 0） */
+    public long getMinBalance(int accountNumber) {
+        Stripe stripe = stripeOf(accountNumber);
+        synchronized (stripe) {
+            int index = stripe.accounts.get(accountNumber);
+            return index < 0 ? 0 : stripe.minBalances[index];
+        }
+    }
+
+    /** @return 口座の取引後の残高の最大値（集計に加えていない口座の場合は 0） */
+    public long getMaxBalance(int accountNumber) {
+        Stripe stripe = stripeOf(accountNumber);
+        synchronized (stripe) {
+            int index = stripe.accounts.get(accountNumber);
+            return index < 0 ? 0 : stripe.maxBalances[index];
+        }
+    }
+
+    /**
+     * 口座数・残高の合計と、日付ごとの入金・出金・振込の件数と金額を表示する。
+     * （単位ごとの日付の集計値を 1 つにまとめてから表示する）
+     */
+    public void printSummary() {
+        Stripe merged = new Stripe();
+        int accountCount = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                merged.addDays(stripe);
+                accountCount += stripe.accountCount;
+                merged.totalBalance += stripe.totalBalance;
+                merged.entryCount += stripe.entryCount;
+            }
+        }
+        System.out.println(Constants.MSG_STATISTICS_HEADER);
+        System.out.printf(Constants.MSG_STATISTICS_TOTAL_FORMAT, accountCount, merged.totalBalance, merged.entryCount);
+        for (int day = 0; day < merged.dayCount; day++) {
+            if (!merged.hasEntries(day)) {
+                continue;
+            }
+            int base = day * TYPE_COUNT;
+            long[] counts = merged.dayCounts;
+            long[] amounts = merged.dayAmounts;
+            System.out.printf(Constants.MSG_STATISTICS_DAY_FORMAT, LocalDate.ofEpochDay(merged.firstDay + day),
+                counts[base + Constants.TRANSACTION_CODE_DEPOSIT], amounts[base + Constants.TRANSACTION_CODE_DEPOSIT],
+                counts[base + Constants.TRANSACTION_CODE_WITHDRAW], amounts[base + Constants.TRANSACTION_CODE_WITHDRAW],
+                counts[base + Constants.TRANSACTION_CODE_TRANSFER_OUT],
+                amounts[base + Constants.TRANSACTION_CODE_TRANSFER_OUT],
+                merged.dayMinBalances[day], merged.dayMaxBalances[day]);
+        }
+    }
+
+    // ---- 内部処理 ----
+
+    /** 口座番号の集計値を保持する単位を返す。 */
+    private Stripe stripeOf(int accountNumber) {
+        return stripes[(AccountRegistry.hash(accountNumber) >>> STRIPE_SHIFT) & (stripes.length - 1)];
+    }
+
+    /**
+     * 期間内の取引種別ごとの件数または金額を、全単位について合計する。
+     * @param amounts 金額の場合は true、件数の場合は false
+     */
+    private long sumDays(boolean amounts, int type, LocalDate from, LocalDate to) {
+        long sum = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                sum += stripe.sumDays(amounts ? stripe.dayAmounts : stripe.dayCounts, type, from, to);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 単位ごとの集計値。（口座はこの単位に振り分けられたもののみ、日付・全体はそれらの口座の取引のみを集計する）
+     * フィールド・メソッドは、このインスタンスで同期してから使用すること。
+     */
+    private static final class Stripe {
+
+        // ---- 口座ごとの集計値（列の位置は集計に加えた順） ----
+
+        /** 口座番号から列の位置を求める索引 */
+        private final AccountIndex accounts = new AccountIndex(INITIAL_CAPACITY);
+
+        /** 最後の取引後の残高 */
+        private long[] balances = new long[INITIAL_CAPACITY];
+
+        /** 取引後の残高の最小値・最大値 */
+        private long[] minBalances = new long[INITIAL_CAPACITY];
+        private long[] maxBalances = new long[INITIAL_CAPACITY];
+
+        /** 取引種別ごとの件数と金額の合計（位置 * TYPE_COUNT + 取引種別コード） */
+        private long[] accountCounts = new long[INITIAL_CAPACITY * TYPE_COUNT];
+        private long[] accountAmounts = new long[INITIAL_CAPACITY * TYPE_COUNT];
+
+        /** 集計に加えた口座数 */
+        private int accountCount;
+
+        // ---- 日付ごとの集計値（列の位置は firstDay からの日数） ----
+
+        /** 列の先頭の日付（1970-01-01 からの日数） */
+        private int firstDay;
+
+        /** 列に含まれる日数（0 の場合は取引なし） */
+        private int dayCount;
+
+        /** 取引種別ごとの件数と金額の合計（日数 * TYPE_COUNT + 取引種別コード） */
+        private long[] dayCounts = new long[0];
+        private long[] dayAmounts = new long[0];
+
+        /** その日の取引後の残高の最小値・最大値（この単位の全口座） */
+        private long[] dayMinBalances = new long[0];
+        private long[] dayMaxBalances = new long[0];
+
+        // ---- 全体の集計値 ----
+
+        /** この単位の全口座の残高の合計 */
+        private long totalBalance;
+
+        /** 集計した取引の件数 */
+        private long entryCount;
+
+        void record(int accountNumber, int epochDay, int type, long amount, long balance) {
+            int account = accounts.get(accountNumber);
+            if (account < 0) {
+                account = addAccount(accountNumber);
+                minBalances[account] = balance;
+                maxBalances[account] = balance;
+            } else {
+                minBalances[account] = Math.min(minBalances[account], balance);
+                maxBalances[account] = Math.max(maxBalances[account], balance);
+            }
+            totalBalance += balance - balances[account];
+            balances[account] = balance;
+            accountCounts[account * TYPE_COUNT + type]++;
+            accountAmounts[account * TYPE_COUNT + type] += amount;
+
+            int day = dayIndex(epochDay);
+            if (!hasEntries(day)) {
+                dayMinBalances[day] = balance;
+                dayMaxBalances[day] = balance;
+            } else {
+                dayMinBalances[day] = Math.min(dayMinBalances[day], balance);
+                dayMaxBalances[day] = Math.max(dayMaxBalances[day], balance);
+            }
+            dayCounts[day * TYPE_COUNT + type]++;
+            dayAmounts[day * TYPE_COUNT + type] += amount;
+            entryCount++;
+        }
+
+        /** 別の単位の日付ごとの集計値を加える。（printSummary 用） */
+        void addDays(Stripe other) {
+            for (int day = 0; day < other.dayCount; day++) {
+                if (!other.hasEntries(day)) {
+                    continue;
+                }
+                int index = dayIndex(other.firstDay + day);
+                if (!hasEntries(index)) {
+                    dayMinBalances[index] = other.dayMinBalances[day];
+                    dayMaxBalances[index] = other.dayMaxBalances[day];
+                } else {
+                    dayMinBalances[index] = Math.min(dayMinBalances[index], other.dayMinBalances[day]);
+                    dayMaxBalances[index] = Math.max(dayMaxBalances[index], other.dayMaxBalances[day]);
+                }
+                for (int type = 0; type < TYPE_COUNT; type++) {
+                    dayCounts[index * TYPE_COUNT + type] += other.dayCounts[day * TYPE_COUNT + type];
+                    dayAmounts[index * TYPE_COUNT + type] += other.dayAmounts[day * TYPE_COUNT + type];
+                }
+            }
+        }
+
+        /** 期間内の日付について、列の値の合計を求める。 */
+        long sumDays(long[] column, int type, LocalDate from, LocalDate to) {
+            if (dayCount == 0) {
+                return 0;
+            }
+            long start = Math.max(from.toEpochDay() - firstDay, 0);
+            long end = Math.min(to.toEpochDay() - firstDay, dayCount - 1);
+            long sum = 0;
+            for (long day = start; day <= end; day++) {
+                sum += column[(int) day * TYPE_COUNT + type];
+            }
+            return sum;
+        }
+
+        /** その日に取引があるかを返す。 */
+        boolean hasEntries(int day) {
+            int base = day * TYPE_COUNT;
+            for (int type = 0; type < TYPE_COUNT; type++) {
+                if (dayCounts[base + type] != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** @return 日付の列の位置。列の範囲外の場合は -1 */
+        int existingDayIndex(LocalDate day) {
+            long index = day.toEpochDay() - firstDay;
+            return dayCount == 0 || index < 0 || index >= dayCount ? -1 : (int) index;
+        }
+
+        /** 日付の列の位置を返す。列の範囲外の場合は、列を拡張する。 */
+        private int dayIndex(int epochDay) {
+            if (dayCount == 0) {
+                firstDay = epochDay;
+                dayCount = 1;
+                growDays(INITIAL_CAPACITY, 0);
+                return 0;
+            }
+            if (epochDay < firstDay) {
+                // 先頭に日数を追加する（時計の巻き戻しや、過去の日付の記録の復元）
+                int shift = firstDay - epochDay;
+                growDays(dayCount + shift, shift);
+                firstDay = epochDay;
+                dayCount += shift;
+                return 0;
+            }
+            int index = epochDay - firstDay;
+            if (index >= dayCount) {
+                int capacity = dayMinBalances.length;
+                if (index >= capacity) {
+                    growDays(Math.max(index + 1, capacity + (capacity >> 1)), 0);
+                }
+                dayCount = index + 1;
+            }
+            return index;
+        }
+
+        /** 日付の列を capacity 日分に拡張し、既存の値を shift 日分後ろに移す。 */
+        private void growDays(int capacity, int shift) {
+            capacity = Math.max(capacity, dayMinBalances.length);
+            dayCounts = shifted(dayCounts, capacity * TYPE_COUNT, shift * TYPE_COUNT);
+            dayAmounts = shifted(dayAmounts, capacity * TYPE_COUNT, shift * TYPE_COUNT);
+            dayMinBalances = shifted(dayMinBalances, capacity, shift);
+            dayMaxBalances = shifted(dayMaxBalances, capacity, shift);
+        }
+
+        private static long[] shifted(long[] column, int length, int shift) {
+            long[] result = new long[length];
+            System.arraycopy(column, 0, result, shift, Math.min(column.length, length - shift));
+            return result;
+        }
+
+        /** 口座を列に追加し、索引に登録する。 */
+        private int addAccount(int accountNumber) {
+            if (accountCount == balances.length) {
+                int capacity = accountCount + (accountCount >> 1);
+                balances = Arrays.copyOf(balances, capacity);
+                minBalances = Arrays.copyOf(minBalances, capacity);
+                maxBalances = Arrays.copyOf(maxBalances, capacity);
+                accountCounts = Arrays.copyOf(accountCounts, capacity * TYPE_COUNT);
+                accountAmounts = Arrays.copyOf(accountAmounts, capacity * TYPE_COUNT);
+            }
+            int index = accountCount++;
+            accounts.put(accountNumber, index);
+            return index;
+        }
+    }
+}